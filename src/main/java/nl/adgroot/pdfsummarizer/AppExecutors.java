@@ -22,6 +22,10 @@ public final class AppExecutors implements AutoCloseable {
   }
 
   public static AppExecutors create(AppConfig cfg) {
+    if (cfg.execution.virtualThreads) {
+      return createVirtual();
+    }
+
     ExecutorService permitPoolExecutor = Executors.newCachedThreadPool(r -> {
       Thread t = new Thread(r, "llm-permit");
       t.setDaemon(false);
@@ -52,6 +56,28 @@ public final class AppExecutors implements AutoCloseable {
     return new AppExecutors(permitPoolExecutor, cpuPool, writerPool);
   }
 
+  /**
+   * Permit waits and chapter writes on virtual threads: blocking there costs no platform thread.
+   * Parsing and prompt rendering stay on a fixed pool of one platform thread per processor.
+   */
+  private static AppExecutors createVirtual() {
+    int cpuThreads = Runtime.getRuntime().availableProcessors();
+    AtomicInteger n = new AtomicInteger(1);
+    ExecutorService cpuPool = Executors.newFixedThreadPool(cpuThreads,
+        r -> new Thread(r, "cpu-worker-" + n.getAndIncrement()));
+
+    // Still a single thread, so chapter files keep being written one at a time
+    ExecutorService writerPool = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("writer").factory());
+
+    log.info("Executors: virtual threads, cpuPool=%d threads", cpuThreads);
+    return new AppExecutors(virtualThreads("llm-permit-"), cpuPool, writerPool);
+  }
+
+  /** Unbounded executor starting one named virtual thread per task. */
+  public static ExecutorService virtualThreads(String namePrefix) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+  }
+
   public ExecutorService permitPoolExecutor() {
     return permitPoolExecutor;
   }
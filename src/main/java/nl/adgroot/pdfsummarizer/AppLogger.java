@@ -1,19 +1,27 @@
 package nl.adgroot.pdfsummarizer;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Supplier;
 import java.util.logging.*;
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 
 public class AppLogger {
 
-    private static final String RESET  = "\u001B[0m";
-    private static final String GRAY   = "\u001B[90m";
-    private static final String WHITE  = "\u001B[97m";
-    private static final String YELLOW = "\u001B[33m";
-    private static final String RED    = "\u001B[31m";
+    static final String RESET  = "\u001B[0m";
+    static final String GRAY   = "\u001B[90m";
+    static final String WHITE  = "\u001B[97m";
+    static final String YELLOW = "\u001B[33m";
+    static final String RED    = "\u001B[31m";
+
+    private static final String LOG_FILE = "app.log";
 
     private static final Logger ROOT = Logger.getLogger("nl.adgroot.pdfsummarizer");
 
+    private static FileHandler fileHandler;
+    // Set by configure() when logging.async is on; records then bypass the JUL handlers
+    private static volatile AsyncLogWriter async;
+
     static {
         ROOT.setUseParentHandlers(false);
 
@@ -60,7 +68,7 @@ public class AppLogger {
 
             // File handler — plain text, no ANSI codes
             try {
-                FileHandler fileHandler = new FileHandler("app.log", /* append= */ true);
+                fileHandler = new FileHandler(LOG_FILE, /* append= */ true);
                 fileHandler.setLevel(Level.ALL);
                 fileHandler.setFormatter(new Formatter() {
                     @Override
@@ -83,14 +91,14 @@ public class AppLogger {
         }
     }
 
-    private static String colorFor(Level level) {
+    static String colorFor(Level level) {
         if (level.intValue() <= Level.FINE.intValue())    return GRAY;
         if (level.intValue() <= Level.INFO.intValue())    return WHITE;
         if (level.intValue() <= Level.WARNING.intValue()) return YELLOW;
         return RED;
     }
 
-    private static String label(Level level) {
+    static String label(Level level) {
         if (level == Level.FINE)    return "DEBUG";
         if (level == Level.INFO)    return "INFO";
         if (level == Level.WARNING) return "WARN";
@@ -98,7 +106,7 @@ public class AppLogger {
         return level.getName();
     }
 
-    private static String stackTraceOf(Throwable t) {
+    static String stackTraceOf(Throwable t) {
         StringBuilder sb = new StringBuilder();
         sb.append(t).append(System.lineSeparator());
         for (StackTraceElement e : t.getStackTrace()) {
@@ -119,25 +127,38 @@ public class AppLogger {
         return new AppLogger(clazz);
     }
 
-    public void info(String msg) { logger.info(msg); }
-    public void info(String fmt, Object... args) {
-        if (logger.isLoggable(Level.INFO)) logger.info(String.format(fmt, args));
-    }
+    public void info(String msg) { log(Level.INFO, msg, null, null, null); }
+    public void info(String fmt, Object... args) { log(Level.INFO, fmt, args, null, null); }
+    /** The supplier only runs when INFO is enabled; in async mode it runs on the log thread. */
+    public void info(Supplier<String> msg) { log(Level.INFO, null, null, msg, null); }
 
-    public void debug(String msg) { logger.fine(msg); }
-    public void debug(String fmt, Object... args) {
-        if (logger.isLoggable(Level.FINE)) logger.fine(String.format(fmt, args));
-    }
+    public void debug(String msg) { log(Level.FINE, msg, null, null, null); }
+    public void debug(String fmt, Object... args) { log(Level.FINE, fmt, args, null, null); }
+    public void debug(Supplier<String> msg) { log(Level.FINE, null, null, msg, null); }
 
-    public void warn(String msg) { logger.warning(msg); }
-    public void warn(String fmt, Object... args) {
-        if (logger.isLoggable(Level.WARNING)) logger.warning(String.format(fmt, args));
-    }
+    public void warn(String msg) { log(Level.WARNING, msg, null, null, null); }
+    public void warn(String fmt, Object... args) { log(Level.WARNING, fmt, args, null, null); }
+    public void warn(Supplier<String> msg) { log(Level.WARNING, null, null, msg, null); }
+
+    public void error(String msg) { log(Level.SEVERE, msg, null, null, null); }
+    public void error(String msg, Throwable t) { log(Level.SEVERE, msg, null, null, t); }
+    public void error(String fmt, Object... args) { log(Level.SEVERE, fmt, args, null, null); }
 
-    public void error(String msg) { logger.severe(msg); }
-    public void error(String msg, Throwable t) { logger.log(Level.SEVERE, msg, t); }
-    public void error(String fmt, Object... args) {
-        if (logger.isLoggable(Level.SEVERE)) logger.severe(String.format(fmt, args));
+    private void log(Level level, String fmt, Object[] args, Supplier<String> supplier, Throwable t) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        AsyncLogWriter writer = async;
+        if (writer != null) {
+            writer.enqueue(level, logger.getName(), fmt, args, supplier, t);
+            return;
+        }
+        String msg = supplier != null ? supplier.get() : args == null ? fmt : String.format(fmt, args);
+        if (t != null) {
+            logger.log(level, msg, t);
+        } else {
+            logger.log(level, msg);
+        }
     }
 
     /** Apply log level from config. Call once after ConfigLoader.load(). */
@@ -150,5 +171,49 @@ public class AppLogger {
         };
         ROOT.setLevel(level);
         for (Handler h : ROOT.getHandlers()) h.setLevel(level);
+
+        boolean json = "json".equalsIgnoreCase(cfg.logging.format);
+        if (json && fileHandler != null) {
+            fileHandler.setFormatter(new Formatter() {
+                @Override
+                public String format(LogRecord r) {
+                    StringBuilder sb = new StringBuilder(128);
+                    AsyncLogWriter.appendJson(sb, new AsyncLogWriter.Entry(r.getMillis(), r.getLevel(),
+                        r.getLoggerName(), Thread.currentThread().getName(), null, null, null, r.getThrown()),
+                        r.getMessage());
+                    return sb.toString();
+                }
+            });
+        }
+        if (cfg.logging.async && async == null && ROOT.getLevel() != Level.OFF && fileHandler != null) {
+            startAsync(cfg.logging.bufferSize, json);
+        }
+    }
+
+    /** Replaces the synchronous handlers by the {@link AsyncLogWriter}; it is drained on exit. */
+    private static synchronized void startAsync(int bufferSize, boolean json) {
+        try {
+            AsyncLogWriter writer = new AsyncLogWriter(bufferSize, Path.of(LOG_FILE), json, System.out, System.err);
+            for (Handler h : ROOT.getHandlers()) {
+                ROOT.removeHandler(h);
+                h.close();
+            }
+            fileHandler = null;
+            async = writer;
+            Runtime.getRuntime().addShutdownHook(new Thread(AppLogger::stopAsync, "log-flush"));
+        } catch (IOException e) {
+            System.err.println("AppLogger: async logging unavailable, staying synchronous: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Shutdown hook: waits until what the async writer holds is written. Its thread keeps draining
+     * while other shutdown hooks (such as the run's abort hook) still log.
+     */
+    static void stopAsync() {
+        AsyncLogWriter writer = async;
+        if (writer != null) {
+            writer.awaitFlushed(java.time.Duration.ofSeconds(5));
+        }
     }
 }
\ No newline at end of file
@@ -1,25 +1,40 @@
 package nl.adgroot.pdfsummarizer;
 
+import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import nl.adgroot.pdfsummarizer.checkpoint.CheckpointJournal;
+import nl.adgroot.pdfsummarizer.checkpoint.DeadLetterQueue;
+import nl.adgroot.pdfsummarizer.checkpoint.PageManifest;
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 import nl.adgroot.pdfsummarizer.llm.LlmClient;
 import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.metrics.MetricsServer;
+import nl.adgroot.pdfsummarizer.metrics.RunReport;
 import nl.adgroot.pdfsummarizer.notes.NotesWriter;
 import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PdfPreviewComposer;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PreparedPdf;
+import nl.adgroot.pdfsummarizer.pipeline.AdaptiveBatchBudget;
 import nl.adgroot.pdfsummarizer.pipeline.BatchContext;
 import nl.adgroot.pdfsummarizer.pipeline.BatchPipeline;
+import nl.adgroot.pdfsummarizer.pipeline.BatchScheduler;
+import nl.adgroot.pdfsummarizer.pipeline.CancellationScope;
 import nl.adgroot.pdfsummarizer.pipeline.ChapterProcessor;
+import nl.adgroot.pdfsummarizer.pipeline.DebugSink;
+import nl.adgroot.pdfsummarizer.pipeline.FollowUpBudget;
+import nl.adgroot.pdfsummarizer.pipeline.TokenEstimator;
 import nl.adgroot.pdfsummarizer.prompts.PromptTemplates;
-import nl.adgroot.pdfsummarizer.pdf.parsing.Chapter;
 
 public class AppRunner {
 
+  private static final AppLogger log = AppLogger.getLogger(AppRunner.class);
+
   private final ChapterProcessor chapterProcessor;
   private final BatchPipeline pipeline;
   private final NotesWriter writer;
@@ -47,27 +62,195 @@ public class AppRunner {
       PromptTemplates prompts,
       Path outDir
   ) throws Exception {
-    List<PdfObject> pages = prepared.pdfPages();
-    ProgressTracker tracker = new ProgressTracker(pages.size());
+    run(prepared, topic, cfg, llms, permitPool, exec, prompts, outDir, new RunReport(topic));
+  }
+
+  /** @param report collects phase timings; written to {@code report.file} when the report is enabled */
+  public void run(
+      PreparedPdf prepared,
+      String topic,
+      AppConfig cfg,
+      List<LlmClient> llms,
+      ServerPermitPool permitPool,
+      AppExecutors exec,
+      PromptTemplates prompts,
+      Path outDir,
+      RunReport report
+  ) throws Exception {
+    run(prepared, topic, cfg, llms, permitPool, exec, prompts, outDir, report,
+        new ProgressTracker(prepared.pdfPages().size()));
+  }
 
-    BatchContext ctx = new BatchContext(
-        llms, permitPool,
-        exec.permitPoolExecutor(), exec.cpuPool(),
-        prompts, cfg, topic, tracker, outDir
-    );
+  /** @param tracker progress of this run, for callers that report it while the run is going on */
+  public void run(
+      PreparedPdf prepared,
+      String topic,
+      AppConfig cfg,
+      List<LlmClient> llms,
+      ServerPermitPool permitPool,
+      AppExecutors exec,
+      PromptTemplates prompts,
+      Path outDir,
+      RunReport report,
+      ProgressTracker tracker
+  ) throws Exception {
+    List<PdfObject> pages = prepared.pdfPages();
 
-    List<CompletableFuture<Void>> chapterWrites = new ArrayList<>();
+    // Root of the cancellation tree: Ctrl-C, the run deadline or a failed chapter cancel it, which
+    // fails every pending batch and hangs up every HTTP call still in flight
+    CancellationScope runScope = CancellationScope.root("run",
+        cfg.execution.runDeadlineMinutes > 0 ? Duration.ofMinutes(cfg.execution.runDeadlineMinutes) : null);
+    CountDownLatch finished = new CountDownLatch(1);
+    Thread abortHook = new Thread(() -> abort(runScope, finished, cfg.execution.shutdownGraceSeconds),
+        "run-abort");
+    Runtime.getRuntime().addShutdownHook(abortHook);
 
-    for (Chapter chapter : prepared.tableOfContent()) {
-      chapterWrites.add(chapterProcessor.processChapterAsync(
-          chapter, pages, pipeline, ctx, exec.writerPool(), writer
-      ));
+    long llmStartNs = System.nanoTime();
+    try {
+      runChapters(prepared, topic, cfg, llms, permitPool, exec, prompts, outDir, tracker, runScope);
+    } finally {
+      report.phase("llm", System.nanoTime() - llmStartNs);
+      report.phase("write", tracker.writeNanos());
+      finished.countDown();
+      runScope.close();
+      try {
+        Runtime.getRuntime().removeShutdownHook(abortHook);
+      } catch (IllegalStateException shuttingDown) {
+        // The hook is running and waits for the latch above
+      }
     }
 
-    CompletableFuture.allOf(chapterWrites.toArray(new CompletableFuture[0])).join();
-
+    if (cfg.checkpoint.pageManifest) {
+      try {
+        PageManifest.write(outDir, CheckpointJournal.editionFingerprint(cfg, prompts, llms), pages);
+      } catch (IOException e) {
+        log.warn("MANIFEST could not write %s: %s", outDir.resolve(PageManifest.FILE_NAME), e);
+      }
+    }
     if (cfg.preview.enabled && cfg.preview.combinePdfWithNotes) {
+      long previewStartNs = System.nanoTime();
       composer.composeOriginalPlusTextPages(pages, outDir.resolve("preview-combined.pdf"));
+      report.phase("preview", System.nanoTime() - previewStartNs);
+    }
+    if (cfg.report.enabled) {
+      report.write(outDir.resolve(cfg.report.file), cfg, llms, tracker, permitPool);
+    }
+  }
+
+  private void runChapters(
+      PreparedPdf prepared,
+      String topic,
+      AppConfig cfg,
+      List<LlmClient> llms,
+      ServerPermitPool permitPool,
+      AppExecutors exec,
+      PromptTemplates prompts,
+      Path outDir,
+      ProgressTracker tracker,
+      CancellationScope runScope
+  ) throws Exception {
+    List<PdfObject> pages = prepared.pdfPages();
+
+    try (DebugSink debug = cfg.debug.enabled
+            ? DebugSink.create(outDir.resolve("debug"), cfg.debug.queueCapacity)
+            : DebugSink.disabled();
+         CheckpointJournal checkpoint = cfg.checkpoint.enabled
+            ? CheckpointJournal.open(outDir,
+                CheckpointJournal.fingerprint(cfg, prompts, llms, topic), cfg.checkpoint.resume,
+                previousEdition(cfg, prompts, llms))
+            : CheckpointJournal.disabled();
+         DeadLetterQueue deadLetters = cfg.retry.deadLetterQueue
+            ? DeadLetterQueue.open(outDir)
+            : DeadLetterQueue.disabled();
+         var _ = cfg.metrics.enabled
+            ? MetricsServer.start(cfg.metrics, tracker, permitPool, deadLetters)
+            : MetricsServer.disabled()) {
+
+      BatchContext ctx = new BatchContext(
+          llms, permitPool,
+          exec.permitPoolExecutor(), exec.cpuPool(),
+          prompts, cfg, topic, tracker, outDir, debug, checkpoint, deadLetters,
+          cfg.followUp.enabled ? FollowUpBudget.of(cfg.followUp.maxRequests) : FollowUpBudget.disabled(),
+          createScheduler(cfg, permitPool),
+          cfg.chunking.calibrateTokenEstimate ? TokenEstimator.calibrating() : TokenEstimator.fixed(),
+          cfg.chunking.adaptiveBatchSize
+              ? AdaptiveBatchBudget.adaptive(cfg.chunking.minTokensPerChunk, cfg.chunking.maxTokensPerChunk)
+              : AdaptiveBatchBudget.fixed(cfg.chunking.maxTokensPerChunk),
+          runScope
+      );
+      tracker.eta().plan(ctx.tokens().estimatePages(pages));
+
+      List<CompletableFuture<Void>> chapterWrites = chapterProcessor.processChaptersAsync(
+          prepared.tableOfContent(), pages, pipeline, ctx, exec.writerPool(), writer
+      );
+      if (cfg.execution.cancelOnChapterFailure) {
+        chapterWrites.forEach(w -> w.whenComplete((v, ex) -> {
+          if (ex != null && !runScope.isCancelled()) {
+            log.error("CANCEL run: a chapter failed: " + ex);
+            runScope.cancel("a chapter failed: " + ex);
+          }
+        }));
+      }
+      // Every primary batch is queued: dispatch them, and replay dead letters once they have finished
+      ctx.scheduler().start();
+      deadLetters.seal();
+
+      CompletableFuture.allOf(chapterWrites.toArray(new CompletableFuture[0])).join();
+      if (checkpoint.reusedCount() > 0) {
+        log.info("PREVIOUS reused the cards of %d of %d page(s) from %s",
+            checkpoint.reusedCount(), pages.size(), cfg.checkpoint.previous);
+      }
+    }
+  }
+
+  /** The page manifest of {@code checkpoint.previous}, or null when there is none to reuse. */
+  private static PageManifest previousEdition(AppConfig cfg, PromptTemplates prompts, List<LlmClient> llms) {
+    if (cfg.checkpoint.previous == null || cfg.checkpoint.previous.isBlank()) {
+      return null;
+    }
+    Path dir = Path.of(cfg.checkpoint.previous);
+    PageManifest manifest;
+    try {
+      manifest = PageManifest.load(dir);
+    } catch (IOException e) {
+      log.warn("PREVIOUS cannot read the page manifest of %s, every page goes to the LLM: %s", dir, e);
+      return null;
+    }
+    if (!manifest.fingerprint().equals(CheckpointJournal.editionFingerprint(cfg, prompts, llms))) {
+      log.warn("PREVIOUS %s was made with other prompts, models or card settings; its cards are not reused", dir);
+      return null;
+    }
+    log.info("PREVIOUS %d page(s) of %s can be reused", manifest.size(), dir);
+    return manifest;
+  }
+
+  /** Shutdown hook: cancels the run and gives it a moment to hang up and flush its journals. */
+  private static void abort(CancellationScope runScope, CountDownLatch finished, int graceSeconds) {
+    if (finished.getCount() == 0) {
+      return;
+    }
+    log.warn("ABORT cancelling the run; waiting up to %ds for it to stop", graceSeconds);
+    runScope.cancel("aborted");
+    try {
+      if (!finished.await(Math.max(0, graceSeconds), TimeUnit.SECONDS)) {
+        log.warn("ABORT run did not stop within %ds", graceSeconds);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static BatchScheduler createScheduler(AppConfig cfg, ServerPermitPool permitPool) {
+    int ahead = cfg.chunking.boundedDispatch ? Math.max(0, cfg.chunking.batchesAheadOfPermits) : 0;
+    // Priorities need batches to wait in the scheduler's queue instead of on the server permits
+    Duration aging = cfg.chunking.priorityScheduling
+        ? Duration.ofSeconds(Math.max(0, cfg.chunking.priorityAgingSeconds))
+        : null;
+    if (cfg.chunking.longestFirstScheduling) {
+      return BatchScheduler.longestFirst(permitPool.totalPermits() + ahead, aging);
     }
+    return cfg.chunking.boundedDispatch || aging != null
+        ? BatchScheduler.bounded(permitPool.totalPermits() + ahead, aging)
+        : BatchScheduler.immediate();
   }
 }
\ No newline at end of file
@@ -0,0 +1,272 @@
+package nl.adgroot.pdfsummarizer;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Asynchronous log output: pool threads put records in a {@link LogRingBuffer} and return, one
+ * background thread formats them and writes them to the console and the log file, flushing once per
+ * batch of records instead of once per record.
+ *
+ * <p>Messages are formatted on the log thread. Arguments that are not immutable values (strings,
+ * boxed numbers, enums, throwables, paths) are turned into strings by the caller first, so a list
+ * that changes afterwards is still logged as it was; {@link Supplier} messages run on the log
+ * thread.
+ *
+ * <p>When the buffer is full, DEBUG and INFO records are dropped and counted; WARN and ERROR
+ * records wait for space.
+ */
+final class AsyncLogWriter {
+
+    // Flush at least this often while records keep coming
+    private static final int FLUSH_EVERY_RECORDS = 256;
+    private static final long IDLE_PARK_NANOS = Duration.ofMillis(50).toNanos();
+
+    /** One log call, as captured on the calling thread. */
+    record Entry(
+        long epochMillis, Level level, String logger, String thread,
+        String format, Object[] args, Supplier<String> supplier, Throwable thrown
+    ) {}
+
+    private final LogRingBuffer<Entry> ring;
+    private final boolean json;
+    private final PrintStream stdout;
+    private final PrintStream stderr;
+    private final Writer file;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong enqueued = new AtomicLong();
+    // Records written and flushed so far; only the log thread writes it
+    private volatile long flushed;
+    private long written;
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+    private final StringBuilder line = new StringBuilder(256);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param logFile where records are appended; {@code null} for console only
+     * @param json whether the file gets one JSON object per line instead of plain text
+     */
+    AsyncLogWriter(int bufferSize, Path logFile, boolean json, PrintStream stdout, PrintStream stderr)
+        throws IOException {
+        this.ring = new LogRingBuffer<>(bufferSize);
+        this.json = json;
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.file = logFile == null ? null : new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(logFile.toFile(), true), StandardCharsets.UTF_8), 64 * 1024);
+        this.thread = new Thread(this::drain, "log-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void enqueue(Level level, String logger, String format, Object[] args, Supplier<String> supplier,
+        Throwable thrown) {
+        Entry entry = new Entry(System.currentTimeMillis(), level, logger, Thread.currentThread().getName(),
+            format, capture(args), supplier, thrown);
+        while (!ring.offer(entry)) {
+            if (level.intValue() < Level.WARNING.intValue() || !running) {
+                dropped.incrementAndGet();
+                return;
+            }
+            wakeUp();
+            LockSupport.parkNanos(10_000);
+        }
+        enqueued.incrementAndGet();
+        if (sleeping.get()) {
+            wakeUp();
+        }
+    }
+
+    private void wakeUp() {
+        if (sleeping.compareAndSet(true, false)) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // Values that cannot change after the call stay as they are; anything else is rendered now
+    private static Object[] capture(Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        for (int i = 0; i < args.length; i++) {
+            Object a = args[i];
+            if (a != null && !(a instanceof String || a instanceof Number && a.getClass().getName().startsWith("java.lang.")
+                || a instanceof Boolean || a instanceof Character || a instanceof Enum<?>
+                || a instanceof Throwable || a instanceof Path)) {
+                args[i] = String.valueOf(a);
+            }
+        }
+        return args;
+    }
+
+    private void drain() {
+        int sinceFlush = 0;
+        while (true) {
+            Entry e = ring.poll();
+            if (e == null) {
+                flush();
+                sinceFlush = 0;
+                if (!running && ring.isEmpty()) {
+                    return;
+                }
+                sleeping.set(true);
+                if (ring.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                sleeping.set(false);
+                continue;
+            }
+            write(e);
+            written++;
+            if (++sinceFlush >= FLUSH_EVERY_RECORDS) {
+                flush();
+                sinceFlush = 0;
+            }
+        }
+    }
+
+    private void write(Entry e) {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            write(new Entry(e.epochMillis(), Level.WARNING, AsyncLogWriter.class.getName(), thread.getName(),
+                lost + " log records dropped: the log buffer was full", null, null, null));
+        }
+        String message;
+        try {
+            message = e.supplier() != null ? e.supplier().get()
+                : e.args() == null ? e.format() : String.format(e.format(), e.args());
+        } catch (RuntimeException ex) {
+            message = e.format() + " [log formatting failed: " + ex + "]";
+        }
+        boolean error = e.level().intValue() >= Level.SEVERE.intValue();
+
+        line.setLength(0);
+        line.append(error ? AppLogger.RED : AppLogger.colorFor(e.level()))
+            .append('[').append(AppLogger.label(e.level())).append("] ").append(message).append(AppLogger.RESET)
+            .append(System.lineSeparator());
+        if (error && e.thrown() != null) {
+            line.append(AppLogger.RED).append(AppLogger.stackTraceOf(e.thrown())).append(AppLogger.RESET);
+        }
+        (error ? stderr : stdout).append(line);
+
+        if (file == null) {
+            return;
+        }
+        line.setLength(0);
+        if (json) {
+            appendJson(line, e, message);
+        } else {
+            line.append('[').append(AppLogger.label(e.level())).append("] ").append(message)
+                .append(System.lineSeparator());
+            if (e.thrown() != null) {
+                line.append(AppLogger.stackTraceOf(e.thrown()));
+            }
+        }
+        try {
+            file.append(line);
+        } catch (IOException ex) {
+            stderr.println("AppLogger: could not write log file: " + ex.getMessage());
+        }
+    }
+
+    /** One JSON object per record: ts, level, logger, thread, msg and, when there is one, error. */
+    static void appendJson(StringBuilder sb, Entry e, String message) {
+        sb.append("{\"ts\":\"").append(Instant.ofEpochMilli(e.epochMillis())).append('"');
+        sb.append(",\"level\":\"").append(AppLogger.label(e.level())).append('"');
+        sb.append(",\"logger\":");
+        appendJsonString(sb, e.logger());
+        sb.append(",\"thread\":");
+        appendJsonString(sb, e.thread());
+        sb.append(",\"msg\":");
+        appendJsonString(sb, message.strip());
+        if (e.thrown() != null) {
+            sb.append(",\"error\":");
+            appendJsonString(sb, AppLogger.stackTraceOf(e.thrown()));
+        }
+        sb.append('}').append('\n');
+    }
+
+    private static void appendJsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private void flush() {
+        long done = written;
+        stdout.flush();
+        stderr.flush();
+        if (file != null) {
+            try {
+                file.flush();
+            } catch (IOException ex) {
+                stderr.println("AppLogger: could not flush log file: " + ex.getMessage());
+                return;
+            }
+        }
+        // Only now may awaitFlushed() return: the records have left the writer buffers
+        flushed = done;
+    }
+
+    /** Waits until every record queued so far is written and flushed, or the timeout passes. */
+    void awaitFlushed(Duration timeout) {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (flushed < target && System.nanoTime() - deadline < 0 && thread.isAlive()) {
+            wakeUp();
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    /** Writes every record still queued, then stops the log thread. */
+    void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(Duration.ofSeconds(5).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+                // Nothing left to report it to
+            }
+        }
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+}
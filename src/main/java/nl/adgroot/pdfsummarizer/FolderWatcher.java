@@ -0,0 +1,317 @@
+package nl.adgroot.pdfsummarizer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import nl.adgroot.pdfsummarizer.checkpoint.PageManifest;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+
+/**
+ * Watch mode ({@code pdfsummarizer watch <input-dir> <output-root>}): PDFs dropped into the input
+ * directory are summarized into {@code <output-root>/<pdf name>/} by a {@link JobManager}, so at most
+ * {@code daemon.maxConcurrentJobs} run at once.
+ *
+ * <p>A file is only queued once its size and modification time have not changed for
+ * {@code watch.settleSeconds}, so a PDF that is still being copied in is not read half-written.
+ * The SHA-256 of every PDF that was summarized is appended to {@code <output-root>/<watch.ledgerFile>};
+ * after a restart only new files and files whose content changed are processed.
+ *
+ * <p>Before a changed PDF is processed again its old output directory is moved aside to
+ * {@code <output-root>/.<pdf name>.previous} and given to the new run as {@code checkpoint.previous}:
+ * pages whose text is in that run's page manifest reuse their cards wherever they moved to, only new
+ * or changed pages go to the LLM, and chapter files of renamed or removed chapters are not left
+ * behind. The moved-aside directory is deleted once the new run succeeds; after a failed run it is
+ * kept for the next attempt.
+ */
+public final class FolderWatcher implements AutoCloseable {
+
+  private static final AppLogger log = AppLogger.getLogger(FolderWatcher.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  // Size and modification time last seen for a file that is not yet queued, and since when
+  private record Seen(long size, long modifiedMillis, long sinceNs) {}
+
+  // previous: the moved-aside output of the last version, or null
+  private record Running(String file, String sha256, JobManager.Job job, Path previous) {}
+
+  private final Path inputDir;
+  private final Path outputRoot;
+  private final Path ledger;
+  private final AppConfig.WatchConfig cfg;
+  private final JobManager jobs;
+  private final LongSupplier clock;
+  private final WatchService watchService;
+  // Only touched by the thread calling run() / tick()
+  private final Map<Path, Seen> candidates = new HashMap<>();
+  private final Map<Path, Running> running = new HashMap<>();
+  private final Map<String, String> processed;
+
+  FolderWatcher(
+      Path inputDir, Path outputRoot, AppConfig.WatchConfig cfg, JobManager jobs, LongSupplier clock
+  ) throws IOException {
+    this.inputDir = inputDir;
+    this.outputRoot = outputRoot;
+    this.ledger = outputRoot.resolve(cfg.ledgerFile);
+    this.cfg = cfg;
+    this.jobs = jobs;
+    this.clock = clock;
+    Files.createDirectories(outputRoot);
+    this.processed = loadLedger(ledger);
+    this.watchService = FileSystems.getDefault().newWatchService();
+    inputDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+    // Files dropped while the watcher was not running
+    rescan();
+  }
+
+  public static FolderWatcher start(
+      Path inputDir, Path outputRoot, AppConfig.WatchConfig cfg, JobManager jobs
+  ) throws IOException {
+    FolderWatcher watcher = new FolderWatcher(inputDir, outputRoot, cfg, jobs, System::nanoTime);
+    log.info("WATCH %s -> %s (%d PDFs processed before)", inputDir, outputRoot, watcher.processed.size());
+    return watcher;
+  }
+
+  /** Watches until {@code stop} is counted down. */
+  public void run(CountDownLatch stop) throws InterruptedException, IOException {
+    long pollMillis = Math.max(100, Duration.ofSeconds(Math.max(1, cfg.pollSeconds)).toMillis());
+    while (!stop.await(0, TimeUnit.MILLISECONDS)) {
+      WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+      if (key != null) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW) {
+            rescan();
+          } else if (event.context() instanceof Path name) {
+            offer(inputDir.resolve(name));
+          }
+        }
+        if (!key.reset()) {
+          log.error("WATCH " + inputDir + " is no longer accessible; stopping");
+          return;
+        }
+      }
+      tick();
+    }
+  }
+
+  /** Number of files waiting to settle, for tests. */
+  int pendingFiles() {
+    return candidates.size();
+  }
+
+  private void rescan() throws IOException {
+    try (Stream<Path> files = Files.list(inputDir)) {
+      files.forEach(this::offer);
+    }
+  }
+
+  private void offer(Path file) {
+    if (isPdf(file) && !candidates.containsKey(file)) {
+      candidates.put(file, new Seen(-1, -1, clock.getAsLong()));
+    }
+  }
+
+  private static boolean isPdf(Path file) {
+    return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf");
+  }
+
+  /** Queues the files that have settled and records the jobs that finished. */
+  void tick() {
+    long now = clock.getAsLong();
+    long settleNs = Duration.ofSeconds(Math.max(0, cfg.settleSeconds)).toNanos();
+
+    Iterator<Map.Entry<Path, Seen>> it = candidates.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Path, Seen> entry = it.next();
+      Path file = entry.getKey();
+      BasicFileAttributes attrs;
+      try {
+        attrs = Files.readAttributes(file, BasicFileAttributes.class);
+      } catch (IOException gone) {
+        it.remove();
+        continue;
+      }
+      if (!attrs.isRegularFile()) {
+        it.remove();
+        continue;
+      }
+      Seen seen = entry.getValue();
+      long modified = attrs.lastModifiedTime().toMillis();
+      if (attrs.size() != seen.size() || modified != seen.modifiedMillis()) {
+        // Still being written: wait until it stops changing
+        entry.setValue(new Seen(attrs.size(), modified, now));
+        continue;
+      }
+      if (now - seen.sinceNs() < settleNs || running.containsKey(file)) {
+        continue;
+      }
+      it.remove();
+      queue(file);
+    }
+
+    finishJobs();
+  }
+
+  private void queue(Path file) {
+    String name = file.getFileName().toString();
+    String sha256;
+    try {
+      sha256 = sha256(file);
+    } catch (IOException e) {
+      log.warn("WATCH cannot read %s: %s", file, e);
+      return;
+    }
+    if (sha256.equals(processed.get(name))) {
+      log.debug("WATCH %s unchanged since it was processed", name);
+      return;
+    }
+    String stem = name.substring(0, name.length() - ".pdf".length());
+    Path outDir = outputRoot.resolve(stem);
+    Path previous = outputRoot.resolve("." + stem + ".previous");
+    try {
+      if (Files.isDirectory(previous)) {
+        // The last attempt did not succeed: drop its partial output, keep the last good one
+        deleteTree(outDir);
+      } else if (Files.isDirectory(outDir)) {
+        Files.move(outDir, previous);
+      }
+    } catch (IOException e) {
+      log.warn("WATCH cannot move the old output of %s aside: %s", name, e);
+      return;
+    }
+
+    // Every watched PDF gets a manifest, so its next version can reuse the unchanged pages
+    ObjectNode checkpoint = MAPPER.createObjectNode().put("pageManifest", true);
+    boolean changed = Files.isRegularFile(previous.resolve(PageManifest.FILE_NAME));
+    if (changed) {
+      checkpoint.put("previous", previous.toString());
+    }
+    ObjectNode overrides = MAPPER.createObjectNode();
+    overrides.set("checkpoint", checkpoint);
+    try {
+      JobManager.Job job = jobs.submit(file, outDir, false, overrides);
+      running.put(file, new Running(name, sha256, job, Files.isDirectory(previous) ? previous : null));
+      log.info("WATCH queued %s as job %s%s", name, job.id(), changed ? " (changed, reusing unchanged pages)" : "");
+    } catch (IllegalArgumentException e) {
+      log.warn("WATCH cannot process %s: %s", name, e.getMessage());
+    }
+  }
+
+  private void finishJobs() {
+    Iterator<Running> it = running.values().iterator();
+    while (it.hasNext()) {
+      Running run = it.next();
+      if (!run.job().isFinished()) {
+        continue;
+      }
+      it.remove();
+      if (run.job().state() == JobManager.State.SUCCEEDED) {
+        processed.put(run.file(), run.sha256());
+        appendToLedger(run);
+        if (run.previous() != null) {
+          try {
+            deleteTree(run.previous());
+          } catch (IOException e) {
+            log.warn("WATCH could not delete %s: %s", run.previous(), e);
+          }
+        }
+      } else {
+        log.warn("WATCH %s failed (%s); it is retried when it changes or on restart", run.file(), run.job().error());
+      }
+    }
+  }
+
+  private void appendToLedger(Running run) {
+    String line = MAPPER.createObjectNode()
+        .put("file", run.file())
+        .put("sha256", run.sha256())
+        .put("processedAt", Instant.now().toString())
+        .toString() + "\n";
+    try {
+      Files.writeString(ledger, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      log.warn("WATCH could not record %s in %s: %s", run.file(), ledger, e);
+    }
+  }
+
+  /** File name → SHA-256 of its last processed version; later lines win. */
+  private static Map<String, String> loadLedger(Path ledger) throws IOException {
+    Map<String, String> processed = new HashMap<>();
+    if (!Files.exists(ledger)) {
+      return processed;
+    }
+    List<String> lines = Files.readAllLines(ledger, StandardCharsets.UTF_8);
+    for (String line : lines) {
+      if (line.isBlank()) continue;
+      try {
+        JsonNode node = MAPPER.readTree(line);
+        processed.put(node.get("file").asText(), node.get("sha256").asText());
+      } catch (IOException | NullPointerException e) {
+        // A line cut short by a crash: that file is simply processed again
+        log.warn("WATCH skipping unreadable ledger line: %s", line);
+      }
+    }
+    return processed;
+  }
+
+  private static void deleteTree(Path dir) throws IOException {
+    if (!Files.exists(dir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(p);
+      }
+    }
+  }
+
+  static String sha256(Path file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream is = Files.newInputStream(file)) {
+      for (int n; (n = is.read(buffer)) > 0; ) {
+        digest.update(buffer, 0, n);
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+}
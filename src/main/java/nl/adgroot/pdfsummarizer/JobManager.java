@@ -0,0 +1,318 @@
+package nl.adgroot.pdfsummarizer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.LlmClient;
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.metrics.RunReport;
+import nl.adgroot.pdfsummarizer.notes.NotesWriter;
+import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfPreparationService;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfPreviewComposer;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PreparedPdf;
+import nl.adgroot.pdfsummarizer.pdf.reader.PdfBoxPdfSplitter;
+import nl.adgroot.pdfsummarizer.pdf.reader.PdfBoxTextExtractor;
+import nl.adgroot.pdfsummarizer.pipeline.BatchPipeline;
+import nl.adgroot.pdfsummarizer.pipeline.ChapterProcessor;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplates;
+
+/**
+ * Runs summarizer jobs inside one long-lived process ({@code pdfsummarizer daemon} or
+ * {@code watch}): the executors, LLM clients (with their open connections), prompts, pipeline and
+ * preview font are created once and shared by every job, and jobs running at the same time share
+ * the servers' permits.
+ *
+ * <p>A job may override config settings that only affect its own run. Settings that shaped the
+ * shared parts ({@link #SHARED_SETTINGS}) are refused.
+ */
+public final class JobManager implements AutoCloseable {
+
+  private static final AppLogger log = AppLogger.getLogger(JobManager.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /** Config paths fixed for the daemon's lifetime: a job cannot override them. */
+  static final Set<String> SHARED_SETTINGS = Set.of(
+      "ollama", "openai", "logging", "metrics", "jfr", "trace", "daemon", "watch", "execution.virtualThreads");
+
+  public enum State { QUEUED, PREPARING, RUNNING, SUCCEEDED, FAILED }
+
+  /** One submitted PDF. Its state and progress can be read from any thread. */
+  public static final class Job {
+    private final String id;
+    private final Path pdf;
+    private final Path outputDir;
+    private final boolean resume;
+    private final AppConfig cfg;
+    private final Instant submittedAt = Instant.now();
+    private volatile State state = State.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile ProgressTracker tracker;
+    private volatile String error;
+
+    private Job(String id, Path pdf, Path outputDir, boolean resume, AppConfig cfg) {
+      this.id = id;
+      this.pdf = pdf;
+      this.outputDir = outputDir;
+      this.resume = resume;
+      this.cfg = cfg;
+    }
+
+    public String id() { return id; }
+    public Path pdf() { return pdf; }
+    public Path outputDir() { return outputDir; }
+    public boolean resume() { return resume; }
+    public State state() { return state; }
+    public Instant submittedAt() { return submittedAt; }
+    public Instant startedAt() { return startedAt; }
+    public Instant finishedAt() { return finishedAt; }
+    /** Null until the PDF is prepared and the LLM phase starts. */
+    public ProgressTracker tracker() { return tracker; }
+    public String error() { return error; }
+
+    public boolean isFinished() {
+      return state == State.SUCCEEDED || state == State.FAILED;
+    }
+  }
+
+  private final AppConfig baseCfg;
+  private final List<LlmClient> llms;
+  private final ServerPermitPool permitPool;
+  private final BatchPipeline pipeline;
+  private final PromptTemplates prompts;
+  private final AppExecutors exec;
+  private final PdfPreviewComposer composer;
+  private final ThreadPoolExecutor jobPool;
+  private final AtomicInteger nextId = new AtomicInteger(1);
+  // Guarded by itself; in submission order
+  private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+  public JobManager(
+      AppConfig baseCfg,
+      List<LlmClient> llms,
+      ServerPermitPool permitPool,
+      BatchPipeline pipeline,
+      PromptTemplates prompts,
+      AppExecutors exec,
+      PdfPreviewComposer composer
+  ) {
+    this.baseCfg = baseCfg;
+    this.llms = llms;
+    this.permitPool = permitPool;
+    this.pipeline = pipeline;
+    this.prompts = prompts;
+    this.exec = exec;
+    this.composer = composer;
+    AtomicInteger n = new AtomicInteger(1);
+    int concurrent = Math.max(1, baseCfg.daemon.maxConcurrentJobs);
+    this.jobPool = new ThreadPoolExecutor(concurrent, concurrent, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        r -> new Thread(r, "job-" + n.getAndIncrement()));
+  }
+
+  /**
+   * Queues a job.
+   *
+   * @param overrides config values to change for this job, shaped like config.json; may be null
+   * @throws IllegalArgumentException when the paths or overrides are not acceptable, or another job
+   *                                  that has not finished writes to the same output directory
+   */
+  public Job submit(Path pdf, Path outputDir, boolean resume, JsonNode overrides) {
+    Path pdfPath = pdf.toAbsolutePath().normalize();
+    Path outPath = outputDir.toAbsolutePath().normalize();
+    validate(pdfPath, outPath, resume);
+    AppConfig cfg = configFor(overrides);
+    cfg.checkpoint.resume = resume;
+
+    Job job;
+    synchronized (jobs) {
+      // Two runs in one directory would interleave their checkpoint journals and chapter files
+      for (Job other : jobs.values()) {
+        if (!other.isFinished() && other.outputDir().equals(outPath)) {
+          throw new IllegalArgumentException("Output directory is in use by job " + other.id() + ": " + outPath);
+        }
+      }
+      job = new Job(String.valueOf(nextId.getAndIncrement()), pdfPath, outPath, resume, cfg);
+      jobs.put(job.id(), job);
+      forgetOldFinishedJobs();
+    }
+    log.info("JOB %s queued: %s -> %s", job.id(), pdfPath, outPath);
+    jobPool.execute(() -> run(job));
+    return job;
+  }
+
+  public Job job(String id) {
+    synchronized (jobs) {
+      return jobs.get(id);
+    }
+  }
+
+  public List<Job> jobs() {
+    synchronized (jobs) {
+      return new ArrayList<>(jobs.values());
+    }
+  }
+
+  private void forgetOldFinishedJobs() {
+    long finished = jobs.values().stream().filter(Job::isFinished).count();
+    Iterator<Job> it = jobs.values().iterator();
+    while (finished > Math.max(0, baseCfg.daemon.keepFinishedJobs) && it.hasNext()) {
+      if (it.next().isFinished()) {
+        it.remove();
+        finished--;
+      }
+    }
+  }
+
+  private static void validate(Path pdf, Path outputDir, boolean resume) {
+    if (!Files.isRegularFile(pdf) || !pdf.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+      throw new IllegalArgumentException("Not a PDF file: " + pdf);
+    }
+    if (Files.isSymbolicLink(pdf)) {
+      throw new IllegalArgumentException("Symbolic links are not allowed for the input PDF: " + pdf);
+    }
+    Path parent = outputDir.getParent();
+    if (parent != null && !Files.isDirectory(parent)) {
+      throw new IllegalArgumentException("Parent of the output directory does not exist: " + outputDir);
+    }
+    if (resume && !Files.isDirectory(outputDir)) {
+      throw new IllegalArgumentException("resume needs the output directory of the interrupted run: " + outputDir);
+    }
+  }
+
+  /** A copy of the daemon's config with {@code overrides} merged in. */
+  AppConfig configFor(JsonNode overrides) {
+    ObjectNode tree = MAPPER.valueToTree(baseCfg);
+    if (overrides != null && !overrides.isNull()) {
+      if (!overrides.isObject()) {
+        throw new IllegalArgumentException("config overrides must be a JSON object");
+      }
+      merge("", tree, overrides);
+    }
+    AppConfig cfg;
+    try {
+      cfg = MAPPER.treeToValue(tree, AppConfig.class);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Invalid config overrides: " + e.getOriginalMessage());
+    }
+    // One metrics endpoint per process; job progress is served by the job API instead
+    cfg.metrics.enabled = false;
+    return cfg;
+  }
+
+  private static void merge(String prefix, ObjectNode target, JsonNode overrides) {
+    Iterator<Map.Entry<String, JsonNode>> fields = overrides.fields();
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> field = fields.next();
+      String path = prefix + field.getKey();
+      if (SHARED_SETTINGS.contains(path)) {
+        throw new IllegalArgumentException(path + " is shared by all jobs and cannot be overridden per job");
+      }
+      JsonNode current = target.get(field.getKey());
+      if (current instanceof ObjectNode object && field.getValue().isObject()) {
+        merge(path + ".", object, field.getValue());
+      } else {
+        target.set(field.getKey(), field.getValue());
+      }
+    }
+  }
+
+  private void run(Job job) {
+    if (jobPool.isShutdown()) {
+      return;
+    }
+    job.startedAt = Instant.now();
+    job.state = State.PREPARING;
+    PreparedPdf prepared = null;
+    try {
+      Files.createDirectories(job.outputDir());
+      RunReport report = RunReport.forSharedProcess(job.pdf().getFileName().toString());
+      PdfPreparationService preparation = new PdfPreparationService(
+          new PdfBoxTextExtractor(), new PdfBoxPdfSplitter()
+      );
+      prepared = preparation.loadAndPrepare(job.pdf(), job.cfg);
+      report.preparation(preparation.phaseNanos());
+
+      ProgressTracker tracker = new ProgressTracker(prepared.pdfPages().size());
+      job.tracker = tracker;
+      job.state = State.RUNNING;
+      String topic = PdfPreparationService.filenameToTopic(job.pdf().getFileName().toString());
+      new AppRunner(
+          new ChapterProcessor(),
+          pipeline,
+          new NotesWriter(job.resume()),
+          composer
+      ).run(
+          prepared, topic, job.cfg,
+          llms, permitPool,
+          exec, prompts, job.outputDir(), report, tracker
+      );
+      job.state = State.SUCCEEDED;
+      log.info("JOB %s done: %s", job.id(), job.outputDir());
+    } catch (Exception | Error e) {
+      job.error = e.toString();
+      job.state = State.FAILED;
+      log.error("JOB " + job.id() + " failed: " + e);
+    } finally {
+      job.finishedAt = Instant.now();
+      if (prepared != null) {
+        closeDocuments(prepared);
+      }
+    }
+  }
+
+  // A single run ends with the process; here every job's PDF must be let go
+  private static void closeDocuments(PreparedPdf prepared) {
+    prepared.pdfPages().stream()
+        .map(PdfObject::getDocument)
+        .filter(Objects::nonNull)
+        .distinct()
+        .forEach(doc -> {
+          try {
+            doc.close();
+          } catch (IOException e) {
+            log.warn("JOB could not close a PDF document: %s", e);
+          }
+        });
+  }
+
+  /** Stops taking jobs and waits for the running ones; queued jobs that have not started are dropped. */
+  @Override
+  public void close() throws InterruptedException {
+    // Not shutdownNow(): running jobs are cancelled by their own shutdown hooks, not by interrupts
+    List<Runnable> dropped = new ArrayList<>();
+    jobPool.getQueue().drainTo(dropped);
+    jobPool.shutdown();
+    if (!dropped.isEmpty()) {
+      log.warn("JOB %d queued jobs dropped at shutdown", dropped.size());
+      for (Job job : jobs()) {
+        if (job.state == State.QUEUED) {
+          job.error = "the daemon stopped before the job started";
+          job.state = State.FAILED;
+        }
+      }
+    }
+    if (!jobPool.awaitTermination(1, TimeUnit.MINUTES)) {
+      log.error("JOB running jobs did not stop within a minute");
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package nl.adgroot.pdfsummarizer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.notes.EtaModel;
+import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
+
+/**
+ * Local HTTP API of {@code pdfsummarizer daemon}, on the JDK's {@link HttpServer}:
+ *
+ * <ul>
+ *   <li>{@code POST /jobs} with {@code {"pdf": ..., "outputDir": ..., "resume": false, "config": {...}}}
+ *       queues a job and answers 202 with its status; {@code config} holds per-job overrides
+ *   <li>{@code GET /jobs} lists every job's status
+ *   <li>{@code GET /jobs/<id>} is one job's status: state, paths, times, error
+ *   <li>{@code GET /jobs/<id>/progress} is its pages, batches, tokens and ETA
+ * </ul>
+ *
+ * Relative paths are resolved against the daemon's working directory. Binds to
+ * {@code daemon.host}, 127.0.0.1 by default: there is no authentication.
+ */
+public final class JobServer implements AutoCloseable {
+
+  private static final AppLogger log = AppLogger.getLogger(JobServer.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final HttpServer server;
+  private final JobManager jobs;
+  private final ExecutorService api = Executors.newSingleThreadExecutor(r -> new Thread(r, "job-api"));
+
+  private JobServer(HttpServer server, JobManager jobs) {
+    this.server = server;
+    this.jobs = jobs;
+  }
+
+  /** Unlike the metrics endpoint, the daemon is useless without its API: a taken port fails. */
+  public static JobServer start(AppConfig.DaemonConfig cfg, JobManager jobs) throws IOException {
+    HttpServer http = HttpServer.create(new InetSocketAddress(cfg.host, cfg.port), 0);
+    JobServer server = new JobServer(http, jobs);
+    http.createContext("/jobs", server::handle);
+    http.setExecutor(server.api);
+    http.start();
+    log.info("DAEMON accepting jobs at http://%s:%d/jobs", cfg.host, http.getAddress().getPort());
+    return server;
+  }
+
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      route(exchange);
+    }
+  }
+
+  private void route(HttpExchange exchange) throws IOException {
+    try {
+      String method = exchange.getRequestMethod();
+      // "", "<id>" or "<id>/progress"
+      String rest = exchange.getRequestURI().getPath().substring("/jobs".length()).replaceAll("^/+|/+$", "");
+      String[] parts = rest.isEmpty() ? new String[0] : rest.split("/");
+
+      if (parts.length == 0 && "POST".equals(method)) {
+        submit(exchange);
+      } else if (parts.length == 0 && "GET".equals(method)) {
+        ArrayNode list = MAPPER.createArrayNode();
+        jobs.jobs().forEach(job -> list.add(status(job)));
+        respond(exchange, 200, list);
+      } else if (parts.length == 0 || parts.length == 1 || parts.length == 2 && parts[1].equals("progress")) {
+        if (!"GET".equals(method)) {
+          respond(exchange, 405, error("method not allowed: " + method));
+          return;
+        }
+        JobManager.Job job = parts.length == 0 ? null : jobs.job(parts[0]);
+        if (job == null) {
+          respond(exchange, 404, error("no such job: " + rest));
+        } else {
+          respond(exchange, 200, parts.length == 1 ? status(job) : progress(job));
+        }
+      } else {
+        respond(exchange, 404, error("not found: " + exchange.getRequestURI().getPath()));
+      }
+    } catch (RuntimeException e) {
+      log.error("DAEMON request failed: " + e);
+      respond(exchange, 500, error(e.toString()));
+    }
+  }
+
+  private void submit(HttpExchange exchange) throws IOException {
+    JsonNode body;
+    try (InputStream is = exchange.getRequestBody()) {
+      body = MAPPER.readTree(is);
+    } catch (IOException e) {
+      respond(exchange, 400, error("request body is not JSON: " + e.getMessage()));
+      return;
+    }
+    if (body == null || !body.hasNonNull("pdf") || !body.hasNonNull("outputDir")) {
+      respond(exchange, 400, error("pdf and outputDir are required"));
+      return;
+    }
+    try {
+      JobManager.Job job = jobs.submit(
+          Path.of(body.get("pdf").asText()),
+          Path.of(body.get("outputDir").asText()),
+          body.path("resume").asBoolean(false),
+          body.get("config"));
+      exchange.getResponseHeaders().set("Location", "/jobs/" + job.id());
+      respond(exchange, 202, status(job));
+    } catch (IllegalArgumentException e) {
+      // Also covers InvalidPathException
+      respond(exchange, 400, error(e.getMessage()));
+    }
+  }
+
+  static ObjectNode status(JobManager.Job job) {
+    ObjectNode node = MAPPER.createObjectNode();
+    node.put("id", job.id());
+    node.put("state", job.state().name());
+    node.put("pdf", job.pdf().toString());
+    node.put("outputDir", job.outputDir().toString());
+    node.put("resume", job.resume());
+    node.put("submittedAt", job.submittedAt().toString());
+    node.put("startedAt", text(job.startedAt()));
+    node.put("finishedAt", text(job.finishedAt()));
+    node.put("error", job.error());
+    return node;
+  }
+
+  static ObjectNode progress(JobManager.Job job) {
+    ObjectNode node = MAPPER.createObjectNode();
+    node.put("id", job.id());
+    node.put("state", job.state().name());
+    ProgressTracker tracker = job.tracker();
+    if (tracker == null) {
+      return node;
+    }
+    ObjectNode pages = node.putObject("pages");
+    pages.put("total", tracker.totalPages());
+    pages.put("done", tracker.donePages());
+    pages.put("restored", tracker.restoredPages());
+    ObjectNode batches = node.putObject("batches");
+    batches.put("finished", tracker.finishedBatches());
+    batches.put("failed", tracker.failedBatches());
+    ObjectNode tokens = node.putObject("tokens");
+    tokens.put("prompt", tracker.promptTokens());
+    tokens.put("generated", tracker.generatedTokens());
+    EtaModel.Estimate eta = job.isFinished() ? null : tracker.eta().estimate();
+    if (eta != null) {
+      ObjectNode etaNode = node.putObject("etaSeconds");
+      etaNode.put("estimate", eta.seconds());
+      etaNode.put("low", eta.lowSeconds());
+      etaNode.put("high", eta.highSeconds());
+    }
+    return node;
+  }
+
+  private static String text(Instant instant) {
+    return instant == null ? null : instant.toString();
+  }
+
+  private static ObjectNode error(String message) {
+    return MAPPER.createObjectNode().put("error", message);
+  }
+
+  private static void respond(HttpExchange exchange, int code, JsonNode body) throws IOException {
+    byte[] bytes = MAPPER.writeValueAsBytes(body);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(bytes);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    api.shutdown();
+  }
+}
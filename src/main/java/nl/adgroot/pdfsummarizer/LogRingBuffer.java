@@ -0,0 +1,76 @@
+package nl.adgroot.pdfsummarizer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for many producers and one consumer (after Dmitry Vyukov's bounded
+ * queue): a producer claims a slot with one CAS on the tail, the consumer needs no atomic
+ * read-modify-write at all. Each slot's sequence number tells whose turn it is, so a slow producer
+ * never blocks the others and a full buffer is detected without locking.
+ */
+final class LogRingBuffer<E> {
+
+    private final Object[] items;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Only the consumer thread reads and writes this
+    private long head;
+
+    /** @param capacity rounded up to a power of two */
+    LogRingBuffer(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.items = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return items.length;
+    }
+
+    /** Adds {@code item}; false when the buffer is full. Safe from any thread. */
+    boolean offer(E item) {
+        long pos = tail.get();
+        for (;;) {
+            int slot = (int) (pos & mask);
+            long diff = sequences.get(slot) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    items[slot] = item;
+                    // Publishes the item to the consumer
+                    sequences.set(slot, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /** Takes the oldest item, or {@code null} when empty. Consumer thread only. */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        int slot = (int) (head & mask);
+        if (sequences.get(slot) != head + 1) {
+            return null;
+        }
+        E item = (E) items[slot];
+        items[slot] = null;
+        // Hands the slot back to the producers for the next lap
+        sequences.set(slot, head + items.length);
+        head++;
+        return item;
+    }
+
+    boolean isEmpty() {
+        return sequences.get((int) (head & mask)) != head + 1;
+    }
+}
@@ -1,12 +1,22 @@
 package nl.adgroot.pdfsummarizer;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import nl.adgroot.pdfsummarizer.checkpoint.PageManifest;
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 import nl.adgroot.pdfsummarizer.config.ConfigLoader;
+import nl.adgroot.pdfsummarizer.metrics.JfrRecording;
+import nl.adgroot.pdfsummarizer.metrics.RunReport;
+import nl.adgroot.pdfsummarizer.metrics.RunReportDiff;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder;
 import nl.adgroot.pdfsummarizer.notes.NotesWriter;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PdfPreparationService;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PdfPreviewComposer;
@@ -21,50 +31,184 @@ public class Main {
 
   private static final AppLogger log = AppLogger.getLogger(Main.class);
 
-  record AppArgs(Path pdfPath, Path outputPath) {}
+  record AppArgs(Path pdfPath, Path outputPath, boolean resume, Path previous) {}
 
   public static void main(String[] args) throws Exception {
+    if (args.length > 0 && "diff-reports".equals(args[0])) {
+      diffReports(args);
+      return;
+    }
+    if (args.length > 0 && "daemon".equals(args[0])) {
+      daemon();
+      return;
+    }
+    if (args.length > 0 && "watch".equals(args[0])) {
+      watch(args);
+      return;
+    }
     AppArgs appArgs = validateInputParameters(args);
 
     AppConfig cfg = ConfigLoader.loadResource("config.json");
     AppLogger.configure(cfg);
+    cfg.checkpoint.resume = appArgs.resume();
+    if (appArgs.previous() != null) {
+      cfg.checkpoint.previous = appArgs.previous().toString();
+      if (!cfg.checkpoint.enabled) {
+        log.warn("--previous needs checkpoint.enabled; every page goes to the LLM");
+      }
+    }
 
     PipelineFactory.PipelineSetup pipelineSetup = PipelineFactory.create(cfg);
     LlmFactory.LlmSetup llmSetup = LlmFactory.create(cfg);
 
-    PreparedPdf prepared = new PdfPreparationService(
-        new PdfBoxTextExtractor(), new PdfBoxPdfSplitter()
-    ).loadAndPrepare(appArgs.pdfPath(), cfg);
-
-    String topic = PdfPreparationService.filenameToTopic(appArgs.pdfPath().getFileName().toString());
-
-    try (AppExecutors exec = AppExecutors.create(cfg)) {
-      new AppRunner(
-          new ChapterProcessor(),
-          pipelineSetup.pipeline(),
-          new NotesWriter(),
-          new PdfPreviewComposer()
-      ).run(
-          prepared, topic, cfg,
-          llmSetup.llms(), llmSetup.permitPool(),
-          exec, pipelineSetup.prompts(), appArgs.outputPath()
+    // Started before the PDF is read, so the recordings cover text extraction too
+    try (var _ = cfg.jfr.enabled
+        ? JfrRecording.start(cfg.jfr, appArgs.outputPath())
+        : JfrRecording.disabled();
+        var _ = cfg.trace.enabled
+            ? TraceRecorder.start(cfg.trace, appArgs.outputPath())
+            : TraceRecorder.disabled()) {
+      RunReport report = new RunReport(appArgs.pdfPath().getFileName().toString());
+      PdfPreparationService preparation = new PdfPreparationService(
+          new PdfBoxTextExtractor(), new PdfBoxPdfSplitter()
       );
+      PreparedPdf prepared = preparation.loadAndPrepare(appArgs.pdfPath(), cfg);
+      report.preparation(preparation.phaseNanos());
+
+      String topic = PdfPreparationService.filenameToTopic(appArgs.pdfPath().getFileName().toString());
+
+      try (AppExecutors exec = AppExecutors.create(cfg)) {
+        new AppRunner(
+            new ChapterProcessor(),
+            pipelineSetup.pipeline(),
+            new NotesWriter(appArgs.resume()),
+            new PdfPreviewComposer()
+        ).run(
+            prepared, topic, cfg,
+            llmSetup.llms(), llmSetup.permitPool(),
+            exec, pipelineSetup.prompts(), appArgs.outputPath(), report
+        );
+      }
     }
 
     log.info("Done. All chapters written.");
   }
 
+  /**
+   * {@code daemon}: keeps executors, LLM clients, prompts and fonts loaded and runs the jobs posted
+   * to the {@link JobServer} until Ctrl-C.
+   */
+  static void daemon() throws Exception {
+    runJobs((cfg, jobs, stop) -> {
+      try (var _ = JobServer.start(cfg.daemon, jobs)) {
+        stop.await();
+      }
+    });
+  }
+
+  /** {@code watch <input-dir> <output-root>}: summarizes every PDF dropped into the input directory. */
+  static void watch(String[] args) throws Exception {
+    if (args.length != 3) {
+      log.error("Usage: pdfsummarizer watch <input-dir> <output-root>");
+      System.exit(1);
+    }
+    Path inputDir = Paths.get(args[1]).toAbsolutePath().normalize();
+    Path outputRoot = Paths.get(args[2]).toAbsolutePath().normalize();
+    if (!Files.isDirectory(inputDir)) {
+      log.error("Not a directory: " + inputDir);
+      System.exit(1);
+    }
+    runJobs((cfg, jobs, stop) -> {
+      try (FolderWatcher watcher = FolderWatcher.start(inputDir, outputRoot, cfg.watch, jobs)) {
+        watcher.run(stop);
+      }
+    });
+  }
+
+  private interface JobsMode {
+    void run(AppConfig cfg, JobManager jobs, CountDownLatch stop) throws Exception;
+  }
+
+  /** Creates the parts every job shares once, then runs {@code mode} until Ctrl-C. */
+  private static void runJobs(JobsMode mode) throws Exception {
+    AppConfig cfg = ConfigLoader.loadResource("config.json");
+    AppLogger.configure(cfg);
+    if (cfg.jfr.enabled || cfg.trace.enabled) {
+      // Recordings would mix the jobs running side by side; profile a single run instead
+      log.warn("JOB jfr and trace are not recorded in daemon or watch mode");
+    }
+
+    PipelineFactory.PipelineSetup pipelineSetup = PipelineFactory.create(cfg);
+    LlmFactory.LlmSetup llmSetup = LlmFactory.create(cfg);
+
+    CountDownLatch stop = new CountDownLatch(1);
+    CountDownLatch stopped = new CountDownLatch(1);
+    // Each running job's own hook cancels it; this one lets main close down before the JVM exits
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      stop.countDown();
+      try {
+        stopped.await(cfg.execution.shutdownGraceSeconds + 5L, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "jobs-stop"));
+
+    try (AppExecutors exec = AppExecutors.create(cfg);
+        JobManager jobs = new JobManager(cfg, llmSetup.llms(), llmSetup.permitPool(),
+            pipelineSetup.pipeline(), pipelineSetup.prompts(), exec, new PdfPreviewComposer())) {
+      mode.run(cfg, jobs, stop);
+      log.info("Stopping: no new jobs are started");
+    } finally {
+      stopped.countDown();
+    }
+  }
+
+  /** {@code diff-reports <before.json> <after.json>}: prints how the second run differs from the first. */
+  static void diffReports(String[] args) throws IOException {
+    if (args.length != 3) {
+      log.error("Usage: pdfsummarizer diff-reports <before.json> <after.json>");
+      System.exit(1);
+    }
+    for (int i = 1; i < 3; i++) {
+      if (!Files.isRegularFile(Paths.get(args[i]))) {
+        log.error("Not a run report: " + args[i]);
+        System.exit(1);
+      }
+    }
+    System.out.print(RunReportDiff.diff(Paths.get(args[1]), Paths.get(args[2])));
+  }
+
   static AppArgs validateInputParameters(String[] args) {
-    if (args.length < 2) {
-      log.error("Usage: pdfsummarizer <path-to-pdf> <output-path>");
+    List<String> positional = new ArrayList<>();
+    boolean resume = false;
+    String previousArg = null;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if ("--resume".equals(arg)) {
+        resume = true;
+      } else if ("--previous".equals(arg) && i + 1 < args.length) {
+        previousArg = args[++i];
+      } else if (arg.startsWith("--")) {
+        log.error("Unknown option: " + arg);
+        System.exit(1);
+      } else {
+        positional.add(arg);
+      }
+    }
+
+    if (positional.size() < 2) {
+      log.error("Usage: pdfsummarizer <path-to-pdf> <output-path> [--resume] [--previous <old-output-path>]\n"
+          + "       pdfsummarizer daemon\n"
+          + "       pdfsummarizer watch <input-dir> <output-root>\n"
+          + "       pdfsummarizer diff-reports <before.json> <after.json>");
       System.exit(1);
     }
 
     Path pdfPath = null;
     Path outputPath = null;
     try {
-      pdfPath = Paths.get(args[0]).toAbsolutePath().normalize();
-      outputPath = Paths.get(args[1]).toAbsolutePath().normalize();
+      pdfPath = Paths.get(positional.get(0)).toAbsolutePath().normalize();
+      outputPath = Paths.get(positional.get(1)).toAbsolutePath().normalize();
     } catch (InvalidPathException e) {
       log.error("One of the provided paths is invalid", e);
       System.exit(1);
@@ -92,6 +236,20 @@ public class Main {
       System.exit(1);
     }
 
-    return new AppArgs(pdfPath, outputPath);
+    if (resume && !Files.isDirectory(outputPath)) {
+      log.error("--resume needs the output directory of the interrupted run");
+      System.exit(1);
+    }
+
+    Path previous = null;
+    if (previousArg != null) {
+      previous = Paths.get(previousArg).toAbsolutePath().normalize();
+      if (!Files.isRegularFile(previous.resolve(PageManifest.FILE_NAME))) {
+        log.error("--previous needs the output directory of an earlier run, with its " + PageManifest.FILE_NAME);
+        System.exit(1);
+      }
+    }
+
+    return new AppArgs(pdfPath, outputPath, resume, previous);
   }
 }
\ No newline at end of file
@@ -0,0 +1,264 @@
+package nl.adgroot.pdfsummarizer.checkpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.checkpoint.records.CheckpointEntry;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.LlmClient;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplate;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplates;
+
+/**
+ * Append-only journal of completed batches ({@code <outDir>/checkpoint.jsonl}, one JSON object per
+ * line). Every line is forced to disk before {@link #record} returns, so an interrupted run loses
+ * at most the batches that were still in flight.
+ *
+ * <p>On resume the journal is read back and a page counts as done only when its entry was produced
+ * with the current prompt/model fingerprint and the page text is unchanged.
+ *
+ * <p>Given the {@link PageManifest} of a previous edition's run, pages that are not in the journal
+ * are looked up there by their normalised text. A page found there is journaled as if this run had
+ * made its cards, so this run can be resumed like any other.
+ */
+public class CheckpointJournal implements AutoCloseable {
+
+  public static final String FILE_NAME = "checkpoint.jsonl";
+
+  private static final AppLogger log = AppLogger.getLogger(CheckpointJournal.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final FileChannel channel;
+  private final String fingerprint;
+  private final Map<Integer, CheckpointEntry> restorable;
+  private final PageManifest previous;
+  private final AtomicInteger reused = new AtomicInteger();
+
+  private CheckpointJournal(
+      FileChannel channel, String fingerprint, Map<Integer, CheckpointEntry> restorable, PageManifest previous
+  ) {
+    this.channel = channel;
+    this.fingerprint = fingerprint;
+    this.restorable = restorable;
+    this.previous = previous;
+  }
+
+  /** A journal that records nothing and restores nothing. */
+  public static CheckpointJournal disabled() {
+    return new CheckpointJournal(null, "", Map.of(), null);
+  }
+
+  public static CheckpointJournal open(Path outDir, String fingerprint, boolean resume) throws IOException {
+    return open(outDir, fingerprint, resume, null);
+  }
+
+  /**
+   * Opens the journal in {@code outDir}. With {@code resume} the existing entries are loaded and
+   * new ones are appended; otherwise any previous journal is truncated.
+   *
+   * @param previous manifest of a previous edition to reuse pages from; {@code null} for none. Its
+   *                 fingerprint must already have been checked against {@link #editionFingerprint}.
+   */
+  public static CheckpointJournal open(Path outDir, String fingerprint, boolean resume, PageManifest previous)
+      throws IOException {
+    Path file = outDir.resolve(FILE_NAME);
+    Map<Integer, CheckpointEntry> restorable = resume ? load(file, fingerprint) : Map.of();
+
+    Files.createDirectories(outDir);
+    FileChannel channel = resume
+        ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+        : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    return new CheckpointJournal(channel, fingerprint, restorable, previous);
+  }
+
+  /**
+   * Fingerprint of everything that shapes LLM output: pipeline mode, prompt templates, models and
+   * card settings. Entries written under a different fingerprint are not reused on resume.
+   */
+  public static String fingerprint(AppConfig cfg, PromptTemplates prompts, List<LlmClient> llms, String topic) {
+    return sha256(describe(cfg, prompts, llms).append("topic=").append(topic).append('\n').toString());
+  }
+
+  /**
+   * {@link #fingerprint} without the topic, for {@link PageManifest}s: a new edition of a book
+   * usually comes with a new file name.
+   */
+  public static String editionFingerprint(AppConfig cfg, PromptTemplates prompts, List<LlmClient> llms) {
+    return sha256(describe(cfg, prompts, llms).toString());
+  }
+
+  private static StringBuilder describe(AppConfig cfg, PromptTemplates prompts, List<LlmClient> llms) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("threeStage=").append(cfg.ollama.pipeline3StepsMode).append('\n');
+    sb.append("temperature=").append(cfg.ollama.temperature).append('\n');
+    sb.append("maxCards=").append(cfg.cards.maxCardsPerChunk).append('\n');
+    sb.append("maxConcepts=").append(cfg.cards.maxConceptsPerPage).append('\n');
+    for (LlmClient llm : llms) {
+      sb.append("model=").append(llm.getModel()).append('\n');
+    }
+    for (PromptTemplate t : new PromptTemplate[] {prompts.single(), prompts.step1(), prompts.step2(), prompts.step3()}) {
+      sb.append("prompt=").append(t == null ? "" : t.text()).append('\n');
+    }
+    return sb;
+  }
+
+  public boolean isEnabled() {
+    return channel != null;
+  }
+
+  /** Number of pages that can be restored from the journal or the previous edition. */
+  public int restorableCount() {
+    return restorable.size() + (previous == null ? 0 : previous.size());
+  }
+
+  /** Pages whose cards were taken from the previous edition so far. */
+  public int reusedCount() {
+    return reused.get();
+  }
+
+  /**
+   * Returns the journaled batch that covers {@code page}, if it is still valid for this run, or
+   * else a single-page entry made from the previous edition's page with the same text.
+   */
+  public Optional<CheckpointEntry> lookup(PdfObject page) {
+    CheckpointEntry entry = restorable.get(page.getIndex());
+    String expected = entry == null || entry.pageHashes() == null ? null : entry.pageHashes().get(page.getIndex());
+    if (entry != null && pageHash(page).equals(expected)) {
+      return Optional.of(entry);
+    }
+    if (previous == null) {
+      return Optional.empty();
+    }
+    return previous.lookup(page).map(old -> {
+      CheckpointEntry reuse = new CheckpointEntry(
+          page.getChapter(),
+          List.of(page.getIndex()),
+          fingerprint,
+          Map.of(page.getIndex(), pageHash(page)),
+          Map.of(page.getIndex(), old.cards() == null ? List.of() : old.cards()),
+          old.concepts(),
+          old.rawCards(),
+          System.currentTimeMillis()
+      );
+      append(reuse);
+      reused.incrementAndGet();
+      return reuse;
+    });
+  }
+
+  /** Appends one completed batch and forces it to disk. */
+  public void record(String chapter, List<PdfObject> batch, Map<Integer, List<String>> cardsByIndex) {
+    if (channel == null) return;
+
+    PdfObject.StageDebugInfo stages = batch.isEmpty() ? null : batch.getFirst().getStageDebugInfo();
+    Map<Integer, String> hashes = new LinkedHashMap<>();
+    Map<Integer, List<String>> cards = new LinkedHashMap<>();
+    for (PdfObject p : batch) {
+      hashes.put(p.getIndex(), pageHash(p));
+      cards.put(p.getIndex(), cardsByIndex.getOrDefault(p.getIndex(), List.of()));
+    }
+
+    CheckpointEntry entry = new CheckpointEntry(
+        chapter,
+        batch.stream().map(PdfObject::getIndex).toList(),
+        fingerprint,
+        hashes,
+        cards,
+        stages == null ? null : stages.concepts(),
+        stages == null ? null : stages.rawCards(),
+        System.currentTimeMillis()
+    );
+    append(entry);
+  }
+
+  private void append(CheckpointEntry entry) {
+    if (channel == null) return;
+    try {
+      byte[] line = (MAPPER.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+      synchronized (this) {
+        ByteBuffer buf = ByteBuffer.wrap(line);
+        while (buf.hasRemaining()) channel.write(buf);
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      log.error("Could not write checkpoint for chapter '" + entry.chapter() + "': " + e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) channel.close();
+  }
+
+  private static Map<Integer, CheckpointEntry> load(Path file, String fingerprint) throws IOException {
+    Map<Integer, CheckpointEntry> byPage = new HashMap<>();
+    if (!Files.exists(file)) {
+      log.warn("Resume requested but no checkpoint found at " + file.toAbsolutePath());
+      return byPage;
+    }
+
+    int lineNr = 0;
+    int stale = 0;
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNr++;
+        if (line.isBlank()) continue;
+
+        CheckpointEntry entry;
+        try {
+          entry = MAPPER.readValue(line, CheckpointEntry.class);
+        } catch (IOException e) {
+          // typically the last line of a run that was killed mid-write
+          log.warn("Skipping unreadable checkpoint line %d: %s", lineNr, e.getMessage());
+          continue;
+        }
+
+        if (!fingerprint.equals(entry.fingerprint())) {
+          stale++;
+          continue;
+        }
+        for (Integer idx : entry.pages()) {
+          byPage.put(idx, entry); // later entries win
+        }
+      }
+    }
+
+    log.info("Checkpoint: %d page(s) restorable, %d batch(es) ignored because prompts/models changed",
+        byPage.size(), stale);
+    return byPage;
+  }
+
+  private static String pageHash(PdfObject page) {
+    String text = page.getTextReadFromPdf();
+    return sha256(text == null ? "" : text).substring(0, 16);
+  }
+
+  private static String sha256(String s) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(md.digest(s.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
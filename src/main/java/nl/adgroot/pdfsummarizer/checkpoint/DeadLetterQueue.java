@@ -0,0 +1,188 @@
+package nl.adgroot.pdfsummarizer.checkpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.checkpoint.records.DeadLetter;
+
+/**
+ * Parks batches that failed all of their stage retries, so one bad batch does not cost its pages
+ * while the rest of the run goes on. Each parked batch is appended to
+ * {@code <outDir>/dead-letter.jsonl} right away and replayed once, after every primary batch has
+ * finished and the servers are no longer busy with the main workload.
+ *
+ * <p>When the queue is closed the file is rewritten to hold only the batches whose replay failed
+ * as well (and removed when there are none). It is a report for the user and is never read back:
+ * the next run deletes it on open. Those pages are missing from the checkpoint journal, so
+ * {@code --resume} sends them again like any page that never completed, from the first stage.
+ */
+public class DeadLetterQueue implements AutoCloseable {
+
+  public static final String FILE_NAME = "dead-letter.jsonl";
+
+  private static final AppLogger log = AppLogger.getLogger(DeadLetterQueue.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private record Parked(DeadLetter letter, Runnable replay) {}
+
+  private final Path file;
+  private final List<Parked> parked = new ArrayList<>();
+  private final List<DeadLetter> unresolved = new ArrayList<>();
+  private int pendingPrimaries;
+  private boolean sealed;
+  private boolean replayed;
+
+  private DeadLetterQueue(Path file) {
+    this.file = file;
+  }
+
+  /** A queue that parks nothing: failed batches fail their chapter's batch future right away. */
+  public static DeadLetterQueue disabled() {
+    return new DeadLetterQueue(null);
+  }
+
+  /** Opens the queue in {@code outDir}, discarding the dead letters of a previous run. */
+  public static DeadLetterQueue open(Path outDir) throws IOException {
+    Files.createDirectories(outDir);
+    Path file = outDir.resolve(FILE_NAME);
+    Files.deleteIfExists(file);
+    return new DeadLetterQueue(file);
+  }
+
+  public boolean isEnabled() {
+    return file != null;
+  }
+
+  /** Registers a primary batch; replays wait until every tracked batch has completed. */
+  public void track(CompletableFuture<?> primary) {
+    if (file == null) return;
+    synchronized (this) {
+      pendingPrimaries++;
+    }
+    primary.whenComplete((res, ex) -> {
+      boolean drained;
+      synchronized (this) {
+        pendingPrimaries--;
+        drained = sealed && pendingPrimaries == 0;
+      }
+      if (drained) replayParked();
+    });
+  }
+
+  /** Declares that all primary batches have been tracked; replays may start once they drain. */
+  public void seal() {
+    if (file == null) return;
+    boolean drained;
+    synchronized (this) {
+      sealed = true;
+      drained = pendingPrimaries == 0;
+    }
+    if (drained) replayParked();
+  }
+
+  /**
+   * Parks a failed batch. The returned future completes with the outcome of {@code replay}, which
+   * is invoked once after the main workload has drained.
+   */
+  public <T> CompletableFuture<T> defer(DeadLetter letter, Throwable failure, Supplier<CompletableFuture<T>> replay) {
+    if (file == null) return CompletableFuture.failedFuture(failure);
+
+    log.warn("DEAD LETTER chapter='%s' pages=%s stage=%s error=%s",
+        letter.chapter(), letter.pages(), letter.stage(), letter.error());
+    append(letter);
+
+    CompletableFuture<T> outcome = new CompletableFuture<>();
+    Runnable run = () -> {
+      log.info("REPLAY chapter='%s' pages=%s from stage=%s", letter.chapter(), letter.pages(), letter.stage());
+      CompletableFuture<T> attempt;
+      try {
+        attempt = replay.get();
+      } catch (RuntimeException e) {
+        attempt = CompletableFuture.failedFuture(e);
+      }
+      attempt.whenComplete((res, ex) -> {
+        if (ex == null) {
+          outcome.complete(res);
+          return;
+        }
+        log.error("REPLAY FAILED chapter='%s' pages=%s error=%s", letter.chapter(), letter.pages(), ex);
+        synchronized (this) {
+          unresolved.add(letter);
+        }
+        outcome.completeExceptionally(ex);
+      });
+    };
+
+    boolean runNow;
+    synchronized (this) {
+      runNow = replayed;
+      parked.add(new Parked(letter, run));
+    }
+    // A batch that fails during the replay phase (e.g. a replay's sibling) is replayed directly
+    if (runNow) run.run();
+    return outcome;
+  }
+
+  /** Number of batches parked so far, replayed or not. */
+  public synchronized int size() {
+    return parked.size();
+  }
+
+  /**
+   * Rewrites the dead-letter file to the batches whose replay also failed. Call after every
+   * chapter future has completed.
+   */
+  @Override
+  public void close() {
+    if (file == null) return;
+    List<DeadLetter> remaining;
+    synchronized (this) {
+      remaining = List.copyOf(unresolved);
+    }
+    try {
+      if (remaining.isEmpty()) {
+        Files.deleteIfExists(file);
+        return;
+      }
+      StringBuilder sb = new StringBuilder();
+      for (DeadLetter d : remaining) {
+        sb.append(MAPPER.writeValueAsString(d)).append('\n');
+      }
+      Files.writeString(file, sb, StandardCharsets.UTF_8);
+      log.warn("%d batch(es) failed after replay; see %s (rerun with --resume)", remaining.size(), file);
+    } catch (IOException e) {
+      log.error("Could not update dead-letter file " + file + ": " + e.getMessage());
+    }
+  }
+
+  private void replayParked() {
+    List<Parked> toRun;
+    synchronized (this) {
+      if (replayed) return;
+      replayed = true;
+      toRun = List.copyOf(parked);
+    }
+    if (!toRun.isEmpty()) {
+      log.info("Main workload drained; replaying %d dead-lettered batch(es)", toRun.size());
+    }
+    toRun.forEach(p -> p.replay().run());
+  }
+
+  private synchronized void append(DeadLetter letter) {
+    try {
+      Files.writeString(file, MAPPER.writeValueAsString(letter) + "\n", StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+    } catch (IOException e) {
+      log.error("Could not write dead-letter file " + file + ": " + e.getMessage());
+    }
+  }
+}
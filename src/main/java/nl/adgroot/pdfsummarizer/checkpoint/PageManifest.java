@@ -0,0 +1,136 @@
+package nl.adgroot.pdfsummarizer.checkpoint;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
+
+/**
+ * Per-page results of a finished run ({@code <outDir>/page-manifest.json}): the fingerprint of each
+ * page's normalised text with the cards made for it. A run of a new edition of the same book given
+ * {@code --previous <old outDir>} reuses the cards of every page whose text did not change, wherever
+ * that page moved to, and only sends new or changed pages to the LLM.
+ *
+ * <p>Normalising drops what typically changes between editions without changing the content: lines
+ * holding only a page number, words hyphenated across a line break, and runs of whitespace.
+ */
+public final class PageManifest {
+
+  public static final String FILE_NAME = "page-manifest.json";
+  public static final int VERSION = 1;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  // Arabic or roman numerals, optionally preceded by "page"
+  private static final Pattern PAGE_NUMBER_LINE = Pattern.compile(
+      "(?m)^\\s*(?:page\\s+)?(?:\\d+|m{0,3}(?:cm|cd|d?c{0,3})(?:xc|xl|l?x{0,3})(?:ix|iv|v?i{0,3}))\\s*$",
+      Pattern.CASE_INSENSITIVE);
+  private static final Pattern HYPHENATED_BREAK = Pattern.compile("(\\p{L})-\\s*\\n\\s*(\\p{L})");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  /**
+   * One page of the manifest.
+   *
+   * @param index    content index of the page in its own run
+   * @param chapter  chapter the page belonged to
+   * @param text     {@link #textFingerprint} of the page
+   * @param cards    final cards of the page
+   * @param concepts three-stage step 1 output, {@code null} for single-stage runs
+   * @param rawCards three-stage step 2 output, {@code null} for single-stage runs
+   */
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public record Page(int index, String chapter, String text, List<String> cards, String concepts, String rawCards) {}
+
+  /**
+   * @param fingerprint {@link CheckpointJournal#editionFingerprint} of the run: pages are only reused
+   *                    by a run with the same prompts, models and card settings
+   */
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  record Contents(int version, String fingerprint, List<Page> pages) {}
+
+  private final String fingerprint;
+  private final Map<String, Page> byText;
+
+  private PageManifest(String fingerprint, Map<String, Page> byText) {
+    this.fingerprint = fingerprint;
+    this.byText = byText;
+  }
+
+  /** Reads the manifest in {@code outDir}. */
+  public static PageManifest load(Path outDir) throws IOException {
+    Path file = outDir.resolve(FILE_NAME);
+    if (!Files.exists(file)) {
+      throw new IOException("No " + FILE_NAME + " in " + outDir.toAbsolutePath());
+    }
+    Contents contents = MAPPER.readValue(file.toFile(), Contents.class);
+    Map<String, Page> byText = new HashMap<>();
+    for (Page page : contents.pages() == null ? List.<Page>of() : contents.pages()) {
+      // Pages with the same text got the same cards; keep the first
+      byText.putIfAbsent(page.text(), page);
+    }
+    return new PageManifest(contents.fingerprint(), byText);
+  }
+
+  /** Writes the manifest of the pages that got a result; failed pages are left out. */
+  public static void write(Path outDir, String fingerprint, List<PdfObject> pages) throws IOException {
+    List<Page> done = new ArrayList<>();
+    for (PdfObject p : pages) {
+      if (p.getNotes() == null) continue;
+      PdfObject.StageDebugInfo stages = p.getStageDebugInfo();
+      done.add(new Page(p.getIndex(), p.getChapter(), textFingerprint(p.getTextReadFromPdf()),
+          List.copyOf(p.getCards()),
+          stages == null ? null : stages.concepts(),
+          stages == null ? null : stages.rawCards()));
+    }
+    Files.createDirectories(outDir);
+    Path tmp = outDir.resolve(FILE_NAME + ".tmp");
+    MAPPER.writeValue(tmp.toFile(), new Contents(VERSION, fingerprint, done));
+    Files.move(tmp, outDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  public String fingerprint() {
+    return fingerprint;
+  }
+
+  public int size() {
+    return byText.size();
+  }
+
+  /** The previous edition's page with the same normalised text as {@code page}, if any. */
+  public Optional<Page> lookup(PdfObject page) {
+    return Optional.ofNullable(byText.get(textFingerprint(page.getTextReadFromPdf())));
+  }
+
+  /** SHA-256 of the {@link #normalise normalised} text, 32 hex characters. */
+  public static String textFingerprint(String text) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      byte[] digest = md.digest(normalise(text).getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest, 0, 16);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  static String normalise(String text) {
+    if (text == null) return "";
+    String s = Normalizer.normalize(text, Normalizer.Form.NFKC).replace("\r\n", "\n");
+    s = PAGE_NUMBER_LINE.matcher(s).replaceAll("");
+    s = HYPHENATED_BREAK.matcher(s).replaceAll("$1$2");
+    return WHITESPACE.matcher(s).replaceAll(" ").strip();
+  }
+}
@@ -0,0 +1,29 @@
+package nl.adgroot.pdfsummarizer.checkpoint.records;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One completed batch, as stored in the checkpoint journal.
+ *
+ * @param chapter     chapter header the batch belonged to
+ * @param pages       PdfObject indexes of the batch, in order
+ * @param fingerprint prompt/model fingerprint of the run that produced the batch
+ * @param pageHashes  hash of each page's extracted text, keyed by page index
+ * @param cards       final cards per page index
+ * @param concepts    three-stage step 1 output, {@code null} for single-stage runs
+ * @param rawCards    three-stage step 2 output, {@code null} for single-stage runs
+ * @param completedAt epoch millis at which the batch was journaled
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record CheckpointEntry(
+    String chapter,
+    List<Integer> pages,
+    String fingerprint,
+    Map<Integer, String> pageHashes,
+    Map<Integer, List<String>> cards,
+    String concepts,
+    String rawCards,
+    long completedAt
+) {}
@@ -0,0 +1,26 @@
+package nl.adgroot.pdfsummarizer.checkpoint.records;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.List;
+
+/**
+ * A batch that failed all of its retries, as stored in the dead-letter file.
+ *
+ * @param chapter  chapter header the batch belonged to
+ * @param pages    PdfObject indexes of the batch, in order
+ * @param stage    stage that failed: {@code single}, {@code step1}, {@code step2} or {@code step3}
+ * @param concepts three-stage step 1 output if step 1 completed, otherwise {@code null}
+ * @param rawCards three-stage step 2 output if step 2 completed, otherwise {@code null}
+ * @param error    the last error, as text
+ * @param failedAt epoch millis of the failure
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record DeadLetter(
+    String chapter,
+    List<Integer> pages,
+    String stage,
+    String concepts,
+    String rawCards,
+    String error,
+    long failedAt
+) {}
@@ -11,11 +11,72 @@ public class AppConfig {
   public PreviewConfig preview = new PreviewConfig();
   public OutputConfig output = new OutputConfig();
   public LoggingConfig logging = new LoggingConfig();
+  public DebugConfig debug = new DebugConfig();
+  public CheckpointConfig checkpoint = new CheckpointConfig();
+  public RetryConfig retry = new RetryConfig();
+  public FollowUpConfig followUp = new FollowUpConfig();
+  public ExecutionConfig execution = new ExecutionConfig();
+  public MetricsConfig metrics = new MetricsConfig();
+  public JfrConfig jfr = new JfrConfig();
+  public TraceConfig trace = new TraceConfig();
+  public ReportConfig report = new ReportConfig();
+  public DaemonConfig daemon = new DaemonConfig();
+  public WatchConfig watch = new WatchConfig();
 
   @JsonIgnoreProperties(ignoreUnknown = true)
   public static class LoggingConfig {
     /** One of: DEBUG, INFO, WARN, ERROR */
     public String level = "INFO";
+    // Hands records to a background writer thread through a lock-free ring buffer instead of
+    // formatting and writing them on the calling thread.
+    public boolean async = false;
+    // Format of app.log: "text" or "json" (one JSON object per line). The console stays text.
+    public String format = "text";
+    // Records the async buffer holds before DEBUG and INFO records are dropped.
+    public int bufferSize = 8192;
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class DebugConfig {
+    // When false, intermediate three-stage outputs are not written to <outDir>/debug/ at all.
+    public boolean enabled = true;
+    // Records the debug writer may lag behind before pipeline threads block.
+    public int queueCapacity = 1024;
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class CheckpointConfig {
+    // When true, every completed batch is appended to <outDir>/checkpoint.jsonl and forced to disk.
+    // On by default, unlike the other new features: --resume and watch mode depend on it.
+    public boolean enabled = true;
+    // Set by the --resume command line flag: reuse journaled batches instead of re-running them.
+    public boolean resume = false;
+    // When true, the cards of every page are written to <outDir>/page-manifest.json at the end of a
+    // run, keyed by a fingerprint of the page's normalised text.
+    public boolean pageManifest = false;
+    // Set by --previous <dir>: output directory of a run on an earlier edition of the book. Pages whose
+    // normalised text is in its page manifest reuse those cards instead of going to the LLM.
+    public String previous = null;
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class RetryConfig {
+    // Extra attempts for a failed batch stage, each on another server where possible.
+    public int stageRetries = 1;
+    // When true, batches that still fail are parked in <outDir>/dead-letter.jsonl and replayed
+    // once after the rest of the run has finished.
+    public boolean deadLetterQueue = true;
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class FollowUpConfig {
+    // When true, pages a batched response left out (or left without cards) are asked for again
+    // in one small follow-up request per batch.
+    public boolean enabled = false;
+    // Follow-up requests allowed per run.
+    public int maxRequests = 50;
+    // Pages with less extracted text than this are expected to yield no cards and are not re-asked.
+    public int minPageChars = 200;
   }
 
   @JsonIgnoreProperties(ignoreUnknown = true)
@@ -45,6 +106,10 @@ public class AppConfig {
     // "single"     false → uses prompt.txt (one LLM call per batch).
     // "three-stage" true → uses prompt_step1_concepts.txt → prompt_step2_cards.txt → prompt_step3_refine.txt.
     public boolean pipeline3StepsMode = false;
+
+    // When true, cards are requested as schema-constrained JSON ({"pages":[{page, cards:[{q,a}]}]})
+    // instead of ===PAGE n=== blocks → uses prompt_json.txt / prompt_step3_refine_json.txt.
+    public boolean structuredOutput = false;
   }
   @JsonIgnoreProperties(ignoreUnknown = true)
   public static class OpenAiConfig {
@@ -59,7 +124,32 @@ public class AppConfig {
   @JsonIgnoreProperties(ignoreUnknown = true)
   public static class ChunkingConfig {
     public int maxTokensPerChunk = 12000;
+    // With packSmallChapters, chapters below this many content tokens share a request.
     public int minTokensPerChunk = 2000;
+    // When true, small chapters are packed first-fit-decreasing into shared requests of at most
+    // maxTokensPerChunk, each page labelled with its section. Needs ollama.localBatching.
+    public boolean packSmallChapters = false;
+    // When true, token estimates start from a tokenizer-like count and are calibrated per document
+    // against the prompt token counts servers report, instead of assuming 4 chars per token.
+    public boolean calibrateTokenEstimate = false;
+    // When true, the token budget of requests adapts between minTokensPerChunk and
+    // maxTokensPerChunk towards the most pages per second of server time.
+    public boolean adaptiveBatchSize = false;
+    // When true, batches of all chapters are dispatched largest-first from one queue instead of
+    // chapter by chapter in TOC order.
+    public boolean longestFirstScheduling = false;
+    // When true, at most batchesAheadOfPermits batches beyond the free server permits are handed to
+    // the pipeline; the rest wait as page lists, without rendered prompts.
+    public boolean boundedDispatch = false;
+    public int batchesAheadOfPermits = 2;
+    // When true, batches are dispatched by priority class: preview pages, then chapters whose
+    // header contains one of priorityChapters, then the first earlyChapters chapters of the TOC,
+    // then the rest. A class is dispatched as if queued priorityAgingSeconds after the one above
+    // it, so it jumps ahead of lower classes without starving them.
+    public boolean priorityScheduling = false;
+    public String[] priorityChapters = {};
+    public int earlyChapters = 2;
+    public int priorityAgingSeconds = 120;
   }
 
   @JsonIgnoreProperties(ignoreUnknown = true)
@@ -80,5 +170,84 @@ public class AppConfig {
   @JsonIgnoreProperties(ignoreUnknown = true)
   public static class OutputConfig {
     public int maxFilenameLength = 120;
+    // When true, chapter files grow while the chapter is processed (cards in page order) instead
+    // of being written in one go once every batch of the chapter is done. Written pages then drop
+    // their cards unless checkpoint.pageManifest needs them.
+    public boolean incrementalChapterFiles = false;
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class MetricsConfig {
+    // When true, the run serves Prometheus text-format metrics at http://host:port/metrics.
+    public boolean enabled = false;
+    public String host = "127.0.0.1";
+    // 0 = any free port (logged at start)
+    public int port = 9464;
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class JfrConfig {
+    // When true, the run is flight-recorded to <outDir>/<file> with the JDK preset baseSettings
+    // ("default" or "profile") plus the pipeline events of pdfsummarizer.jfc.
+    public boolean enabled = false;
+    public String baseSettings = "profile";
+    public String file = "recording.jfr";
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class TraceConfig {
+    // When true, a timeline of the run (extraction, batches, stages, permit waits, HTTP calls) is
+    // written to <outDir>/<file> in the Chrome Trace Event format, for Perfetto or chrome://tracing.
+    public boolean enabled = false;
+    public String file = "trace.json";
+    // Spans are held in memory until the run ends; once this many are kept, later ones are dropped.
+    public int maxSpans = 200_000;
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class ReportConfig {
+    // When true, a machine-readable summary of the run is written to <outDir>/<file>; compare two
+    // with: pdfsummarizer diff-reports <before.json> <after.json>
+    public boolean enabled = false;
+    public String file = "run-report.json";
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class DaemonConfig {
+    // Where `pdfsummarizer daemon` accepts jobs: POST http://host:port/jobs. 0 = any free port.
+    public String host = "127.0.0.1";
+    public int port = 8470;
+    // Jobs running at the same time; they share the LLM servers' permits. Others wait in order.
+    public int maxConcurrentJobs = 2;
+    // Finished jobs whose status is kept; the oldest are forgotten first.
+    public int keepFinishedJobs = 100;
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class WatchConfig {
+    // `pdfsummarizer watch` queues a PDF once its size and modification time have been unchanged
+    // this long, so files still being copied in are not read half-written.
+    public int settleSeconds = 5;
+    // How often pending files are checked and finished jobs are recorded.
+    public int pollSeconds = 1;
+    // In the output root: file name and SHA-256 of every processed PDF, so a restart skips them.
+    public String ledgerFile = "watch-ledger.jsonl";
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class ExecutionConfig {
+    // When true, permit waits, HTTP calls and file writes run on virtual threads, and parsing and
+    // prompt rendering on a CPU pool sized to the available processors.
+    public boolean virtualThreads = false;
+    // Minutes a whole run, or a single batch from the moment it is sent, may take before it is
+    // cancelled along with its HTTP calls. 0 = no deadline. A cancelled batch is dead-lettered.
+    public long runDeadlineMinutes = 0;
+    public long batchDeadlineMinutes = 0;
+    // When true, a chapter that fails cancels the rest of the run instead of letting it finish. A chapter
+    // fails when any of its batches is still failing after the dead-letter replay, also with
+    // incremental chapter files, so leave this off to keep the other chapters of a long run.
+    public boolean cancelOnChapterFailure = false;
+    // Seconds Ctrl-C waits for cancelled batches to hang up and the journals to be flushed.
+    public int shutdownGraceSeconds = 10;
   }
-}
\ No newline at end of file
+}
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.time.Duration;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
 import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
@@ -28,21 +29,40 @@ public class ChatGptClient implements LlmClient {
   private final String model;
 
   public ChatGptClient(AppConfig.OpenAiConfig cfg, String apiKey) {
+    this(cfg, apiKey, null);
+  }
+
+  /** @param httpExecutor runs the HTTP calls, or {@code null} for OkHttp's own thread pool */
+  public ChatGptClient(AppConfig.OpenAiConfig cfg, String apiKey, ExecutorService httpExecutor) {
     this.url = cfg.baseUrl + cfg.responsesPath;
     this.apiKey = apiKey;
     this.model = cfg.model;
-    this.http = HttpClientFactory.create(Duration.ofSeconds(cfg.timeoutSeconds), cfg.concurrency);
+    this.http = HttpClientFactory.create(Duration.ofSeconds(cfg.timeoutSeconds), cfg.concurrency,
+        httpExecutor);
     this.retryPolicy = RetryPolicy.defaults();
   }
 
   @Override
   public CompletableFuture<LlmResult> generateAsync(String prompt) {
+    return generateAsync(prompt, null);
+  }
+
+  /** Sends {@code schema} as a strict {@code json_schema} text format of the Responses API. */
+  @Override
+  public CompletableFuture<LlmResult> generateAsync(String prompt, JsonNode schema) {
     ObjectNode body = MAPPER.createObjectNode();
     body.put("model", model);
     body.putArray("input")
         .addObject()
         .put("role", "user")
         .put("content", prompt);
+    if (schema != null) {
+      body.putObject("text").putObject("format")
+          .put("type", "json_schema")
+          .put("name", "cards")
+          .put("strict", true)
+          .set("schema", schema);
+    }
 
     Request req = new Request.Builder()
         .url(url)
@@ -70,7 +90,9 @@ public class ChatGptClient implements LlmClient {
       text = extractTextFallback(json);
     }
 
-    return new LlmResult(text, new LlmMetrics(0, 0, 0, 0, 0));
+    JsonNode usage = json.path("usage");
+    return new LlmResult(text, new LlmMetrics(0, 0, 0,
+        usage.path("input_tokens").asInt(), usage.path("output_tokens").asInt()));
   }
 
   private static String extractTextFallback(JsonNode json) {
@@ -93,4 +115,9 @@ public class ChatGptClient implements LlmClient {
   public String getUrl() {
     return url;
   }
+
+  @Override
+  public String getModel() {
+    return model;
+  }
 }
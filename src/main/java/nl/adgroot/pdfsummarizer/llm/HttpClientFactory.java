@@ -1,6 +1,7 @@
 package nl.adgroot.pdfsummarizer.llm;
 
 import java.time.Duration;
+import java.util.concurrent.ExecutorService;
 import okhttp3.ConnectionPool;
 import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
@@ -10,7 +11,12 @@ public final class HttpClientFactory {
   private HttpClientFactory() {}
 
   public static OkHttpClient create(Duration timeout, int concurrency) {
-    Dispatcher dispatcher = new Dispatcher();
+    return create(timeout, concurrency, null);
+  }
+
+  /** @param callExecutor runs the calls, or {@code null} for OkHttp's own cached thread pool */
+  public static OkHttpClient create(Duration timeout, int concurrency, ExecutorService callExecutor) {
+    Dispatcher dispatcher = callExecutor == null ? new Dispatcher() : new Dispatcher(callExecutor);
     dispatcher.setMaxRequests(concurrency);
     dispatcher.setMaxRequestsPerHost(concurrency);
 
@@ -1,10 +1,24 @@
 package nl.adgroot.pdfsummarizer.llm;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import java.util.concurrent.CompletableFuture;
 import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
 
 public interface LlmClient {
   CompletableFuture<LlmResult> generateAsync(String prompt);
+
+  /**
+   * Generates a response constrained to the JSON {@code schema}; {@code null} means free text.
+   * Clients without structured-output support ignore the schema.
+   */
+  default CompletableFuture<LlmResult> generateAsync(String prompt, JsonNode schema) {
+    return generateAsync(prompt);
+  }
   String getName(); // optional, for logging
   String getUrl();
+
+  /** Model identifier used for this client; part of the checkpoint fingerprint. */
+  default String getModel() {
+    return getName();
+  }
 }
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.time.Duration;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
 import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
@@ -29,20 +30,35 @@ public class OllamaClient implements LlmClient {
   private final double temperature;
 
   public OllamaClient(AppConfig.OllamaConfig cfg, String url, String model) {
+    this(cfg, url, model, null);
+  }
+
+  /** @param httpExecutor runs the HTTP calls, or {@code null} for OkHttp's own thread pool */
+  public OllamaClient(AppConfig.OllamaConfig cfg, String url, String model, ExecutorService httpExecutor) {
     this.url = url;
     this.model = model;
     this.temperature = cfg.temperature;
-    this.http = HttpClientFactory.create(Duration.ofSeconds(cfg.timeoutSeconds), cfg.concurrency);
+    this.http = HttpClientFactory.create(Duration.ofSeconds(cfg.timeoutSeconds), cfg.concurrency,
+        httpExecutor);
     this.retryPolicy = RetryPolicy.defaults();
   }
 
   @Override
   public CompletableFuture<LlmResult> generateAsync(String prompt) {
+    return generateAsync(prompt, null);
+  }
+
+  /** Sends {@code schema} as Ollama's {@code format}, which constrains decoding to that shape. */
+  @Override
+  public CompletableFuture<LlmResult> generateAsync(String prompt, JsonNode schema) {
     ObjectNode req = MAPPER.createObjectNode();
     req.put("model", model);
     req.put("prompt", prompt);
     req.put("stream", false);
     req.put("temperature", temperature);
+    if (schema != null) {
+      req.set("format", schema);
+    }
 
     Request request = new Request.Builder()
         .url(url)
@@ -94,6 +110,7 @@ public class OllamaClient implements LlmClient {
     return url;
   }
 
+  @Override
   public String getModel() {
     return model;
   }
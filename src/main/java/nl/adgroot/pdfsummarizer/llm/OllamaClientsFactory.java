@@ -2,6 +2,7 @@ package nl.adgroot.pdfsummarizer.llm;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 
@@ -22,6 +23,11 @@ public final class OllamaClientsFactory {
    * - if multiple models are configured, map by server index (wrap around)
    */
   public static List<LlmClient> create(AppConfig.OllamaConfig cfg) {
+    return create(cfg, null);
+  }
+
+  /** @param httpExecutor runs the HTTP calls of all clients, or {@code null} for OkHttp's default */
+  public static List<LlmClient> create(AppConfig.OllamaConfig cfg, ExecutorService httpExecutor) {
 
     List<LlmClient> clients = new ArrayList<>();
     int servers = Math.max(1, cfg.servers);
@@ -34,7 +40,7 @@ public final class OllamaClientsFactory {
       String url = "http://" + cfg.host + ":" + port + path;
       String model = models[i % models.length];
 
-      clients.add(new OllamaClient(cfg, url, model));
+      clients.add(new OllamaClient(cfg, url, model, httpExecutor));
     }
 
     return clients;
@@ -2,7 +2,12 @@ package nl.adgroot.pdfsummarizer.llm;
 
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
+import nl.adgroot.pdfsummarizer.metrics.JfrEvents.HttpCallEvent;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder.Span;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.OkHttpClient;
@@ -16,12 +21,19 @@ import okhttp3.Response;
  * {@code maxRetries} times. All other responses (including non-2xx error codes) are
  * forwarded to the {@link ResponseProcessor} so each client can format its own error
  * message.
+ *
+ * <p>When the caller fails or cancels the future first (a cancelled run, a batch deadline), the
+ * in-flight call is cancelled and nothing is retried: the connection closes and the server stops
+ * generating the response.
  */
 public class RetryPolicy {
 
   private static final int DEFAULT_MAX_RETRIES = 5;
   private static final long DEFAULT_BASE_DELAY_MS = 500;
 
+  // Retried HTTP calls of all clients in this JVM, for the metrics endpoint
+  private static final LongAdder RETRIES = new LongAdder();
+
   private final int maxRetries;
   private final long baseDelayMs;
 
@@ -34,6 +46,11 @@ public class RetryPolicy {
     return new RetryPolicy(DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY_MS);
   }
 
+  /** HTTP calls retried so far, by any policy. */
+  public static long retries() {
+    return RETRIES.sum();
+  }
+
   /**
    * Parses a successful (non-retryable) HTTP response into an {@link LlmResult}.
    * Throw any exception to fail the future.
@@ -47,32 +64,63 @@ public class RetryPolicy {
   public void enqueue(OkHttpClient http, Request request,
       CompletableFuture<LlmResult> future,
       ResponseProcessor processor) {
-    enqueue(http, request, future, processor, 0);
+    AtomicReference<Call> inFlight = new AtomicReference<>();
+    future.whenComplete((r, ex) -> {
+      Call call = inFlight.get();
+      if (ex != null && call != null) {
+        call.cancel();
+      }
+    });
+    enqueue(http, request, future, processor, inFlight, 0);
   }
 
   private void enqueue(OkHttpClient http, Request request,
       CompletableFuture<LlmResult> future,
       ResponseProcessor processor,
+      AtomicReference<Call> inFlight,
       int attempt) {
 
-    http.newCall(request).enqueue(new Callback() {
+    if (future.isDone()) {
+      return;
+    }
+    Call newCall = http.newCall(request);
+    inFlight.set(newCall);
+    if (future.isDone()) {
+      // Failed between the check and set: the whenComplete hook may have seen the previous call
+      newCall.cancel();
+      return;
+    }
+
+    HttpCallEvent event = new HttpCallEvent();
+    event.begin();
+    TraceRecorder trace = TraceRecorder.active();
+    Span span = trace.isEnabled()
+        ? trace.begin("http " + request.url().host() + ":" + request.url().port(), "POST " + request.url().encodedPath(), "http")
+        : Span.NONE;
+    newCall.enqueue(new Callback() {
 
       @Override
       public void onFailure(Call call, IOException e) {
-        retryOrFail(http, request, future, processor, attempt, e);
+        commit(event, span, request, attempt, -1, call.isCanceled() ? "cancelled" : retryOutcome(future, attempt));
+        retryOrFail(http, request, future, processor, inFlight, attempt, e);
       }
 
       @Override
       public void onResponse(Call call, Response resp) {
+        int code = -1;
         try (Response r = resp) {
-          int code = r.code();
+          code = r.code();
           if (isRetryable(code)) {
-            retryOrFail(http, request, future, processor, attempt,
+            commit(event, span, request, attempt, code, retryOutcome(future, attempt));
+            retryOrFail(http, request, future, processor, inFlight, attempt,
                 new IOException("Retryable HTTP " + code));
             return;
           }
-          future.complete(processor.process(r));
+          LlmResult result = processor.process(r);
+          commit(event, span, request, attempt, code, "ok");
+          future.complete(result);
         } catch (Exception e) {
+          commit(event, span, request, attempt, code, "failed");
           future.completeExceptionally(e);
         }
       }
@@ -82,13 +130,18 @@ public class RetryPolicy {
   private void retryOrFail(OkHttpClient http, Request request,
       CompletableFuture<LlmResult> future,
       ResponseProcessor processor,
+      AtomicReference<Call> inFlight,
       int attempt, Exception error) {
 
+    if (future.isDone()) {
+      return;
+    }
     if (attempt >= maxRetries) {
       future.completeExceptionally(error);
       return;
     }
 
+    RETRIES.increment();
     long delay = (long) (baseDelayMs * Math.pow(2, attempt));
     try {
       Thread.sleep(delay);
@@ -96,7 +149,25 @@ public class RetryPolicy {
       Thread.currentThread().interrupt();
     }
 
-    enqueue(http, request, future, processor, attempt + 1);
+    enqueue(http, request, future, processor, inFlight, attempt + 1);
+  }
+
+  private String retryOutcome(CompletableFuture<LlmResult> future, int attempt) {
+    return future.isDone() || attempt >= maxRetries ? "failed" : "retry";
+  }
+
+  private static void commit(
+      HttpCallEvent event, Span span, Request request, int attempt, int code, String outcome
+  ) {
+    span.arg("attempt", attempt).arg("status", code).arg("outcome", outcome).end();
+    event.end();
+    if (event.shouldCommit()) {
+      event.url = request.url().toString();
+      event.attempt = attempt;
+      event.statusCode = code;
+      event.outcome = outcome;
+      event.commit();
+    }
   }
 
   private static boolean isRetryable(int code) {
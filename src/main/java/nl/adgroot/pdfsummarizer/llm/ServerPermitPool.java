@@ -5,9 +5,17 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 
+import nl.adgroot.pdfsummarizer.metrics.JfrEvents.PermitWaitEvent;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder.Span;
+
 public class ServerPermitPool {
 
+  // How long a failover waits for another server before settling for the one that failed
+  private static final long FAILOVER_WAIT_MS = 5_000;
+
   private final Semaphore[] permits;
+  private final int permitsPerServer;
 
   /**
    * @param servers number of servers (>= 1)
@@ -18,6 +26,7 @@ public class ServerPermitPool {
     int s = Math.max(1, servers);
     int p = Math.max(1, permitsPerServer);
 
+    this.permitsPerServer = p;
     this.permits = new Semaphore[s];
     for (int i = 0; i < s; i++) {
       this.permits[i] = new Semaphore(p, fair);
@@ -28,15 +37,23 @@ public class ServerPermitPool {
     return permits.length;
   }
 
+  /** Number of calls that can run at once across all servers. */
+  public int totalPermits() {
+    return permits.length * permitsPerServer;
+  }
+
   /**
    * Blocks the calling thread until any server permit is available.
    * Returns the server index that was acquired.
    */
   public int acquireAny() {
+    PermitWaitEvent event = new PermitWaitEvent();
+    event.begin();
+    Span span = TraceRecorder.active().beginOnThread("permit wait", "permit");
     for (;;) {
       for (int i = 0; i < permits.length; i++) {
         if (permits[i].tryAcquire()) {
-          return i;
+          return waited(event, span, i);
         }
       }
       try {
@@ -56,6 +73,60 @@ public class ServerPermitPool {
     return CompletableFuture.supplyAsync(this::acquireAny, executor);
   }
 
+  /**
+   * Blocks until a permit is available, preferring any server other than {@code avoidIndex}.
+   * The avoided server is only used when no other server frees up within a few seconds, or when
+   * it is the only server.
+   */
+  public int acquireAnyExcept(int avoidIndex) {
+    long fallbackAt = System.nanoTime() + FAILOVER_WAIT_MS * 1_000_000;
+    PermitWaitEvent event = new PermitWaitEvent();
+    event.begin();
+    event.avoidedServer = avoidIndex;
+    Span span = TraceRecorder.active().beginOnThread("permit wait", "permit").arg("avoid", avoidIndex);
+    for (;;) {
+      for (int i = 0; i < permits.length; i++) {
+        if (i != avoidIndex && permits[i].tryAcquire()) {
+          return waited(event, span, i);
+        }
+      }
+      boolean mayFallBack = permits.length == 1 || System.nanoTime() - fallbackAt >= 0;
+      if (mayFallBack && avoidIndex >= 0 && avoidIndex < permits.length
+          && permits[avoidIndex].tryAcquire()) {
+        return waited(event, span, avoidIndex);
+      }
+      try {
+        Thread.sleep(2); // small backoff
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting for a server permit", e);
+      }
+    }
+  }
+
+  /**
+   * Asynchronous {@link #acquireAnyExcept(int)}.
+   */
+  public CompletableFuture<Integer> acquireAnyExceptAsync(Executor executor, int avoidIndex) {
+    Objects.requireNonNull(executor, "executor");
+    return CompletableFuture.supplyAsync(() -> acquireAnyExcept(avoidIndex), executor);
+  }
+
+  private static int waited(PermitWaitEvent event, Span span, int serverIndex) {
+    span.arg("server", serverIndex).end();
+    event.end();
+    if (event.shouldCommit()) {
+      event.server = serverIndex;
+      event.commit();
+    }
+    return serverIndex;
+  }
+
+  /** Permits of a server not held by any batch right now. */
+  public int availablePermits(int serverIndex) {
+    return permits[serverIndex].availablePermits();
+  }
+
   public void release(int serverIndex) {
     if (serverIndex < 0 || serverIndex >= permits.length) {
       throw new IllegalArgumentException("Invalid server index: " + serverIndex);
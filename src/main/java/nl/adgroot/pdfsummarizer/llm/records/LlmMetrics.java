@@ -16,4 +16,15 @@ public record LlmMetrics(
     return promptEvalDurationNs == 0 ? 0 :
         (promptEvalCount / (promptEvalDurationNs / 1_000_000_000.0));
   }
-}
\ No newline at end of file
+
+  /** Field-wise sum, for a batch that needed several calls. */
+  public LlmMetrics plus(LlmMetrics other) {
+    if (other == null) return this;
+    return new LlmMetrics(
+        totalDurationNs + other.totalDurationNs,
+        promptEvalDurationNs + other.promptEvalDurationNs,
+        evalDurationNs + other.evalDurationNs,
+        promptEvalCount + other.promptEvalCount,
+        evalCount + other.evalCount);
+  }
+}
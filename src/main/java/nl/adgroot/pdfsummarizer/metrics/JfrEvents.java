@@ -0,0 +1,100 @@
+package nl.adgroot.pdfsummarizer.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Custom Java Flight Recorder events, so a recording shows which chapter, batch, stage and server
+ * the OkHttp and PDFBox frames were working for. They cost next to nothing while no recording has
+ * them enabled; {@link JfrRecording} and {@code pdfsummarizer.jfc} enable them all.
+ *
+ * <p>Batch and stage events are committed on the thread that completes them, which for the
+ * asynchronous HTTP stages is not the thread that started them. Join on {@code batchId}.
+ */
+public final class JfrEvents {
+
+  private static final AtomicLong BATCH_IDS = new AtomicLong();
+
+  private JfrEvents() {}
+
+  /** Id of a new batch attempt, for {@link BatchEvent#batchId} and {@link StageEvent#batchId}. */
+  public static long nextBatchId() {
+    return BATCH_IDS.incrementAndGet();
+  }
+
+  @Name("pdfsummarizer.Batch")
+  @Label("Batch")
+  @Category({"PDF Summarizer", "Pipeline"})
+  @Description("One batch attempt, from waiting for a permit to parsed cards")
+  @StackTrace(false)
+  public static final class BatchEvent extends Event {
+    @Label("Batch Id") @Description("Unique per attempt; shared with the stage events")
+    public long batchId;
+    @Label("Pipeline") public String pipeline;
+    @Label("Chapter") public String chapter;
+    @Label("Page Indexes") public String pageIndexes;
+    @Label("Pages") public int pages;
+    @Label("Server") public int server = -1;
+    @Label("Estimated Tokens") public int estimatedTokens;
+    @Label("Failed") public boolean failed;
+  }
+
+  @Name("pdfsummarizer.Stage")
+  @Label("Batch Stage")
+  @Category({"PDF Summarizer", "Pipeline"})
+  @Description("One LLM call of a batch stage, including the client's HTTP retries")
+  @StackTrace(false)
+  public static final class StageEvent extends Event {
+    @Label("Batch Id") public long batchId;
+    @Label("Chapter") public String chapter;
+    @Label("Stage") public String stage;
+    @Label("Server") public int server;
+    @Label("Stage Retry") @Description("0 for the first attempt, then one per failover")
+    public int attempt;
+    @Label("Prompt Characters") @Description("UTF-16 characters, not bytes") public long promptChars;
+    @Label("Prompt Tokens") public int promptTokens;
+    @Label("Generated Tokens") public int generatedTokens;
+    @Label("Failed") public boolean failed;
+  }
+
+  @Name("pdfsummarizer.PermitWait")
+  @Label("Server Permit Wait")
+  @Category({"PDF Summarizer", "Scheduling"})
+  @StackTrace(false)
+  public static final class PermitWaitEvent extends Event {
+    @Label("Server") public int server = -1;
+    @Label("Avoided Server") @Description("Server a failover moves away from; -1 for none")
+    public int avoidedServer = -1;
+  }
+
+  @Name("pdfsummarizer.HttpCall")
+  @Label("LLM HTTP Call")
+  @Category({"PDF Summarizer", "LLM"})
+  @StackTrace(false)
+  public static final class HttpCallEvent extends Event {
+    @Label("URL") public String url;
+    @Label("Attempt") @Description("0 for the first call, then one per retry")
+    public int attempt;
+    @Label("Status Code") @Description("-1 when no response arrived")
+    public int statusCode = -1;
+    @Label("Outcome") @Description("ok, retry, failed or cancelled")
+    public String outcome;
+  }
+
+  @Name("pdfsummarizer.PdfPreparation")
+  @Label("PDF Preparation")
+  @Category({"PDF Summarizer", "PDF"})
+  @StackTrace(false)
+  public static final class PdfPreparationEvent extends Event {
+    @Label("File") public String file;
+    @Label("Phase") @Description("extract, split, toc or pages")
+    public String phase;
+    @Label("Pages") public int pages;
+    @Label("Chapters") public int chapters;
+  }
+}
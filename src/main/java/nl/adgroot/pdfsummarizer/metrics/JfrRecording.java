@@ -0,0 +1,91 @@
+package nl.adgroot.pdfsummarizer.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+
+/**
+ * Flight recording of a whole run, started from config instead of the command line. The settings
+ * are a JDK preset ({@code jfr.baseSettings}, "profile" by default) with {@code pdfsummarizer.jfc}
+ * on top, so CPU, GC and allocation samples line up with the batch, stage and HTTP events.
+ *
+ * <p>The file is written when the recording is closed, or by the JVM's own shutdown hook when the
+ * run is interrupted.
+ */
+public final class JfrRecording implements AutoCloseable {
+
+  private static final AppLogger log = AppLogger.getLogger(JfrRecording.class);
+
+  static final String SETTINGS_RESOURCE = "/pdfsummarizer.jfc";
+
+  private final Recording recording;
+  private final Path file;
+
+  private JfrRecording(Recording recording, Path file) {
+    this.recording = recording;
+    this.file = file;
+  }
+
+  public static JfrRecording disabled() {
+    return new JfrRecording(null, null);
+  }
+
+  public static JfrRecording start(AppConfig.JfrConfig cfg, Path outDir) throws IOException {
+    Map<String, String> settings = new HashMap<>();
+    try {
+      settings.putAll(Configuration.getConfiguration(cfg.baseSettings).getSettings());
+    } catch (IOException | ParseException e) {
+      log.warn("JFR preset '%s' not found, recording only the pipeline events: %s", cfg.baseSettings, e);
+    }
+    settings.putAll(pipelineSettings());
+
+    Path file = outDir.resolve(cfg.file);
+    Files.createDirectories(outDir);
+    Recording recording = new Recording(settings);
+    recording.setName("pdfsummarizer");
+    recording.setToDisk(true);
+    recording.setDestination(file);
+    recording.start();
+    log.info("JFR recording to %s (settings: %s + pdfsummarizer.jfc)", file.toAbsolutePath(), cfg.baseSettings);
+    return new JfrRecording(recording, file);
+  }
+
+  /** The settings of {@code pdfsummarizer.jfc}. */
+  static Map<String, String> pipelineSettings() throws IOException {
+    try (InputStream in = JfrRecording.class.getResourceAsStream(SETTINGS_RESOURCE)) {
+      if (in == null) {
+        throw new IOException("Missing resource " + SETTINGS_RESOURCE);
+      }
+      return Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8)).getSettings();
+    } catch (ParseException e) {
+      throw new IOException("Invalid " + SETTINGS_RESOURCE, e);
+    }
+  }
+
+  /** Where the recording is written; {@code null} when disabled. */
+  public Path file() {
+    return file;
+  }
+
+  @Override
+  public void close() {
+    if (recording == null) {
+      return;
+    }
+    // Stopping writes the destination file
+    recording.stop();
+    recording.close();
+    log.info("JFR recording written to %s", file.toAbsolutePath());
+  }
+}
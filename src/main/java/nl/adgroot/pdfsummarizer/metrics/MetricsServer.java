@@ -0,0 +1,225 @@
+package nl.adgroot.pdfsummarizer.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.checkpoint.DeadLetterQueue;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.RetryPolicy;
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.notes.EtaModel;
+import nl.adgroot.pdfsummarizer.notes.LatencyHistogram;
+import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
+import nl.adgroot.pdfsummarizer.pipeline.PagePipeline;
+import nl.adgroot.pdfsummarizer.pipeline.ThreeStagePagePipeline;
+
+/**
+ * Serves the progress of a run at {@code http://<host>:<port>/metrics} in the Prometheus text
+ * format, so a long run can be scraped and graphed: pages, tokens, in-flight batches, free permits
+ * per server, retries, failures, checkpoint hits, latency quantiles, heap and GC.
+ *
+ * <p>Uses the JDK's {@link HttpServer}. Every scrape reads the live counters; nothing is sampled
+ * in the background. When the port is taken the run goes on without the endpoint.
+ */
+public final class MetricsServer implements AutoCloseable {
+
+  private static final AppLogger log = AppLogger.getLogger(MetricsServer.class);
+
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+  private final HttpServer server;
+  private final ProgressTracker tracker;
+  private final ServerPermitPool permits;
+  private final DeadLetterQueue deadLetters;
+
+  private MetricsServer(
+      HttpServer server, ProgressTracker tracker, ServerPermitPool permits, DeadLetterQueue deadLetters
+  ) {
+    this.server = server;
+    this.tracker = tracker;
+    this.permits = permits;
+    this.deadLetters = deadLetters;
+  }
+
+  public static MetricsServer disabled() {
+    return new MetricsServer(null, null, null, null);
+  }
+
+  public static MetricsServer start(
+      AppConfig.MetricsConfig cfg, ProgressTracker tracker, ServerPermitPool permits, DeadLetterQueue deadLetters
+  ) {
+    HttpServer http;
+    try {
+      http = HttpServer.create(new InetSocketAddress(cfg.host, cfg.port), 0);
+    } catch (IOException e) {
+      log.warn("METRICS endpoint disabled: cannot listen on %s:%d: %s", cfg.host, cfg.port, e);
+      return disabled();
+    }
+    MetricsServer metrics = new MetricsServer(http, tracker, permits, deadLetters);
+    http.createContext("/metrics", metrics::handle);
+    http.start();
+    log.info("METRICS serving http://%s:%d/metrics", cfg.host, http.getAddress().getPort());
+    return metrics;
+  }
+
+  /** Port the endpoint listens on; -1 when disabled. */
+  public int port() {
+    return server == null ? -1 : server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    }
+  }
+
+  /** The current metrics in the Prometheus text exposition format. */
+  public String scrape() {
+    StringBuilder sb = new StringBuilder(4096);
+    if (tracker != null) {
+      appendProgress(sb);
+      appendLatencies(sb);
+    }
+    if (permits != null) {
+      header(sb, "pdfsummarizer_permits_free", "gauge", "Server permits not held by a batch");
+      for (int s = 0; s < permits.servers(); s++) {
+        sample(sb, "pdfsummarizer_permits_free", "server=\"" + s + "\"", permits.availablePermits(s));
+      }
+    }
+    if (deadLetters != null) {
+      gauge(sb, "pdfsummarizer_dead_letters", "Batches parked for replay", deadLetters.size());
+    }
+    appendJvm(sb);
+    return sb.toString();
+  }
+
+  private void appendProgress(StringBuilder sb) {
+    gauge(sb, "pdfsummarizer_pages", "Pages in this run", tracker.totalPages());
+    gauge(sb, "pdfsummarizer_pages_done", "Pages with a result, including restored ones", tracker.donePages());
+    counter(sb, "pdfsummarizer_pages_restored_total",
+        "Pages taken from the checkpoint journal instead of the LLM (cache hits)", tracker.restoredPages());
+    gauge(sb, "pdfsummarizer_batches_in_flight", "Batches waiting for a permit or running",
+        PagePipeline.inFlight() + ThreeStagePagePipeline.inFlight());
+    counter(sb, "pdfsummarizer_http_retries_total", "HTTP calls retried on the same server",
+        RetryPolicy.retries());
+    counter(sb, "pdfsummarizer_stage_retries_total", "Batch stages retried on another server",
+        tracker.stageRetries());
+    counter(sb, "pdfsummarizer_batch_failures_total", "Batch attempts that failed after all retries",
+        tracker.failedBatches());
+    EtaModel.Estimate eta = tracker.eta().estimate();
+    if (eta != null) {
+      header(sb, "pdfsummarizer_eta_seconds", "gauge", "Estimated time left, with the bounds of its 90% band");
+      sample(sb, "pdfsummarizer_eta_seconds", "bound=\"estimate\"", eta.seconds());
+      sample(sb, "pdfsummarizer_eta_seconds", "bound=\"low\"", eta.lowSeconds());
+      sample(sb, "pdfsummarizer_eta_seconds", "bound=\"high\"", eta.highSeconds());
+    }
+
+    header(sb, "pdfsummarizer_llm_calls_total", "counter", "Completed LLM calls");
+    for (int s : tracker.serverIndexes()) {
+      sample(sb, "pdfsummarizer_llm_calls_total", "server=\"" + s + "\"", tracker.serverCalls(s));
+    }
+    header(sb, "pdfsummarizer_prompt_tokens_total", "counter", "Prompt tokens evaluated by the servers");
+    for (int s : tracker.serverIndexes()) {
+      sample(sb, "pdfsummarizer_prompt_tokens_total", "server=\"" + s + "\"", tracker.serverPromptTokens(s));
+    }
+    header(sb, "pdfsummarizer_generated_tokens_total", "counter", "Tokens generated by the servers");
+    for (int s : tracker.serverIndexes()) {
+      sample(sb, "pdfsummarizer_generated_tokens_total", "server=\"" + s + "\"", tracker.serverGeneratedTokens(s));
+    }
+  }
+
+  private void appendLatencies(StringBuilder sb) {
+    String name = "pdfsummarizer_latency_seconds";
+    header(sb, name, "summary", "Latency per server, pipeline stage and phase");
+    for (int s : tracker.serverIndexes()) {
+      for (String stage : ProgressTracker.STAGES) {
+        for (ProgressTracker.Phase phase : ProgressTracker.Phase.values()) {
+          LatencyHistogram h = tracker.latency(s, stage, phase);
+          if (h.count() == 0) continue;
+          String labels = "server=\"" + s + "\",stage=\"" + stage + "\",phase=\""
+              + phase.name().toLowerCase(Locale.ROOT) + "\"";
+          for (double q : QUANTILES) {
+            sample(sb, name, labels + ",quantile=\"" + q + "\"", h.percentileMicros(q * 100) / 1e6);
+          }
+          sample(sb, name + "_sum", labels, h.sumMicros() / 1e6);
+          sample(sb, name + "_count", labels, h.count());
+        }
+      }
+    }
+  }
+
+  private static void appendJvm(StringBuilder sb) {
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    gauge(sb, "jvm_memory_heap_used_bytes", "Heap in use", heap.getUsed());
+    gauge(sb, "jvm_memory_heap_committed_bytes", "Heap committed by the JVM", heap.getCommitted());
+    gauge(sb, "jvm_memory_heap_max_bytes", "Maximum heap; -1 when undefined", heap.getMax());
+    gauge(sb, "jvm_threads_live", "Live platform threads", ManagementFactory.getThreadMXBean().getThreadCount());
+
+    header(sb, "jvm_gc_collections_total", "counter", "Garbage collections per collector");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      sample(sb, "jvm_gc_collections_total", "gc=\"" + escape(gc.getName()) + "\"", gc.getCollectionCount());
+    }
+    header(sb, "jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collection per collector");
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      sample(sb, "jvm_gc_collection_seconds_total", "gc=\"" + escape(gc.getName()) + "\"",
+          gc.getCollectionTime() / 1e3);
+    }
+  }
+
+  private static void gauge(StringBuilder sb, String name, String help, double value) {
+    header(sb, name, "gauge", help);
+    sample(sb, name, null, value);
+  }
+
+  private static void counter(StringBuilder sb, String name, String help, double value) {
+    header(sb, name, "counter", help);
+    sample(sb, name, null, value);
+  }
+
+  private static void header(StringBuilder sb, String name, String type, String help) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, String labels, double value) {
+    sb.append(name);
+    if (labels != null) sb.append('{').append(labels).append('}');
+    sb.append(' ');
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      sb.append((long) value);
+    } else {
+      sb.append(value);
+    }
+    sb.append('\n');
+  }
+
+  private static String escape(String label) {
+    return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  @Override
+  public void close() {
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+}
@@ -0,0 +1,201 @@
+package nl.adgroot.pdfsummarizer.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.LlmClient;
+import nl.adgroot.pdfsummarizer.llm.RetryPolicy;
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.notes.LatencyHistogram;
+import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
+
+/**
+ * Machine-readable summary of a run, written as {@code run-report.json} next to the notes: config,
+ * servers and their models, pages, batches, tokens, wall time per phase, per-server utilisation,
+ * retries, failures, checkpoint hits and peak heap. {@link RunReportDiff} compares two of them.
+ *
+ * <p>Phases: {@code load} opens the PDF pages, {@code extraction} reads their text, {@code toc}
+ * parses the table of contents and maps pages to chapters, {@code llm} runs every batch,
+ * {@code write} is the time spent writing chapter files (during {@code llm}) and {@code preview}
+ * composes the preview PDF.
+ *
+ * <p>HTTP retries and garbage collections are counted from the creation of the report. A job of
+ * the daemon shares the JVM with the jobs running next to it, so its report leaves out the HTTP
+ * retries, peak heap and garbage collections, which it cannot tell apart from theirs.
+ */
+public final class RunReport {
+
+  private static final AppLogger log = AppLogger.getLogger(RunReport.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+  /** Bumped when a field changes meaning, so a diff can tell reports apart. */
+  public static final int SCHEMA_VERSION = 1;
+
+  private final String pdf;
+  private final Instant startedAt = Instant.now();
+  private final long startNs = System.nanoTime();
+  private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+  private final boolean sharedProcess;
+  private final long retriesAtStart = RetryPolicy.retries();
+  private final long gcCollectionsAtStart = gcCollections();
+  private final long gcMillisAtStart = gcMillis();
+
+  public RunReport(String pdf) {
+    this(pdf, false);
+  }
+
+  private RunReport(String pdf, boolean sharedProcess) {
+    this.pdf = pdf;
+    this.sharedProcess = sharedProcess;
+  }
+
+  /** Report of a run that shares the JVM with other runs; the process-wide fields are left out. */
+  public static RunReport forSharedProcess(String pdf) {
+    return new RunReport(pdf, true);
+  }
+
+  /** Adds wall time to a phase. */
+  public synchronized void phase(String name, long nanos) {
+    phaseNanos.merge(name, nanos, Long::sum);
+  }
+
+  /** Takes the phases of {@code PdfPreparationService.phaseNanos()}. */
+  public void preparation(Map<String, Long> preparationNanos) {
+    phase("load", preparationNanos.getOrDefault("split", 0L));
+    phase("extraction", preparationNanos.getOrDefault("extract", 0L));
+    phase("toc", preparationNanos.getOrDefault("toc", 0L) + preparationNanos.getOrDefault("pages", 0L));
+  }
+
+  public synchronized long phaseNanos(String name) {
+    return phaseNanos.getOrDefault(name, 0L);
+  }
+
+  public ObjectNode toJson(AppConfig cfg, List<LlmClient> llms, ProgressTracker tracker, ServerPermitPool permits) {
+    ObjectNode root = MAPPER.createObjectNode();
+    root.put("schemaVersion", SCHEMA_VERSION);
+    root.put("pdf", pdf);
+    root.put("startedAt", startedAt.toString());
+    root.put("finishedAt", Instant.now().toString());
+    root.put("wallSeconds", seconds(System.nanoTime() - startNs));
+
+    ObjectNode phases = root.putObject("phases");
+    synchronized (this) {
+      for (String name : List.of("load", "extraction", "toc", "llm", "write", "preview")) {
+        phases.put(name, seconds(phaseNanos.getOrDefault(name, 0L)));
+      }
+    }
+
+    ObjectNode pages = root.putObject("pages");
+    pages.put("total", tracker.totalPages());
+    pages.put("done", tracker.donePages());
+    pages.put("restored", tracker.restoredPages());
+
+    ObjectNode batches = root.putObject("batches");
+    batches.put("finished", tracker.finishedBatches());
+    batches.put("failed", tracker.failedBatches());
+    batches.put("stageRetries", tracker.stageRetries());
+    if (!sharedProcess) {
+      batches.put("httpRetries", RetryPolicy.retries() - retriesAtStart);
+    }
+
+    ObjectNode tokens = root.putObject("tokens");
+    tokens.put("prompt", tracker.promptTokens());
+    tokens.put("generated", tracker.generatedTokens());
+
+    ObjectNode cache = root.putObject("cache");
+    cache.put("checkpointHits", tracker.restoredPages());
+    cache.put("checkpointHitRate",
+        tracker.totalPages() == 0 ? 0 : tracker.restoredPages() / (double) tracker.totalPages());
+
+    appendServers(root.putArray("servers"), llms, tracker, permits);
+    appendJvm(root.putObject("jvm"));
+    root.set("config", MAPPER.valueToTree(cfg));
+    return root;
+  }
+
+  private void appendServers(ArrayNode servers, List<LlmClient> llms, ProgressTracker tracker, ServerPermitPool permits) {
+    double llmSeconds = seconds(phaseNanos("llm"));
+    int permitsPerServer = permits.totalPermits() / Math.max(1, permits.servers());
+    for (int i = 0; i < llms.size(); i++) {
+      LatencyHistogram roundTrip = tracker.serverLatency(i, ProgressTracker.Phase.HTTP_ROUND_TRIP);
+      double busySeconds = roundTrip.sumMicros() / 1e6;
+      ObjectNode server = servers.addObject();
+      server.put("index", i);
+      server.put("url", llms.get(i).getUrl());
+      server.put("model", llms.get(i).getModel());
+      server.put("calls", tracker.serverCalls(i));
+      server.put("promptTokens", tracker.serverPromptTokens(i));
+      server.put("generatedTokens", tracker.serverGeneratedTokens(i));
+      server.put("busySeconds", busySeconds);
+      // Share of the server's permits in use during the LLM phase
+      server.put("utilisation", llmSeconds <= 0 ? 0 : busySeconds / (llmSeconds * permitsPerServer));
+      server.put("roundTripP50Seconds", roundTrip.percentileMicros(50) / 1e6);
+      server.put("roundTripP95Seconds", roundTrip.percentileMicros(95) / 1e6);
+    }
+  }
+
+  private void appendJvm(ObjectNode jvm) {
+    jvm.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+    if (sharedProcess) {
+      return;
+    }
+    // The peak cannot be reset per run without disturbing other readers; it covers the process
+    long peakHeap = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        peakHeap += pool.getPeakUsage().getUsed();
+      }
+    }
+    jvm.put("peakHeapBytes", peakHeap);
+    jvm.put("gcCollections", gcCollections() - gcCollectionsAtStart);
+    jvm.put("gcSeconds", (gcMillis() - gcMillisAtStart) / 1e3);
+  }
+
+  private static long gcCollections() {
+    long collections = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      collections += Math.max(0, gc.getCollectionCount());
+    }
+    return collections;
+  }
+
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return millis;
+  }
+
+  /** Writes the report; a failure is logged, it does not fail the run. */
+  public void write(
+      Path file, AppConfig cfg, List<LlmClient> llms, ProgressTracker tracker, ServerPermitPool permits
+  ) {
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      MAPPER.writeValue(file.toFile(), toJson(cfg, llms, tracker, permits));
+      log.info("REPORT written to %s", file.toAbsolutePath());
+    } catch (IOException e) {
+      log.warn("REPORT could not write %s: %s", file.toAbsolutePath(), e);
+    }
+  }
+
+  private static double seconds(long nanos) {
+    return nanos / 1e9;
+  }
+}
@@ -0,0 +1,128 @@
+package nl.adgroot.pdfsummarizer.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Side-by-side comparison of two {@link RunReport}s, for spotting performance regressions between
+ * versions or prompt changes: every number with its relative change, flagged better or worse when
+ * it moved at least {@value #NOTABLE_PERCENT}%, then the config values that differ.
+ *
+ * <p>Run as {@code pdfsummarizer diff-reports <before.json> <after.json>}.
+ */
+public final class RunReportDiff {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  static final double NOTABLE_PERCENT = 5;
+
+  private RunReportDiff() {}
+
+  public static String diff(Path before, Path after) throws IOException {
+    return diff(MAPPER.readTree(before.toFile()), MAPPER.readTree(after.toFile()));
+  }
+
+  public static String diff(JsonNode before, JsonNode after) {
+    Map<String, JsonNode> a = new LinkedHashMap<>();
+    Map<String, JsonNode> b = new LinkedHashMap<>();
+    flatten("", before, a);
+    flatten("", after, b);
+    Set<String> keys = new LinkedHashSet<>(a.keySet());
+    keys.addAll(b.keySet());
+
+    StringBuilder metrics = new StringBuilder();
+    StringBuilder config = new StringBuilder();
+    for (String key : keys) {
+      if (key.equals("startedAt") || key.equals("finishedAt")) continue;
+      JsonNode x = a.get(key);
+      JsonNode y = b.get(key);
+      if (key.startsWith("config.") || !isNumber(x) && !isNumber(y)) {
+        String xs = text(x);
+        String ys = text(y);
+        if (!xs.equals(ys)) {
+          config.append(String.format("  %s: %s -> %s%n", key, xs, ys));
+        }
+        continue;
+      }
+      metrics.append(row(key, x, y));
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%-40s %14s %14s %9s%n", "metric", "before", "after", "change"));
+    sb.append(metrics);
+    sb.append(config.isEmpty() ? "No config or text differences.\n" : "Config and text differences:\n" + config);
+    return sb.toString();
+  }
+
+  private static String row(String key, JsonNode x, JsonNode y) {
+    String change = "";
+    String verdict = "";
+    if (isNumber(x) && isNumber(y)) {
+      double before = x.asDouble();
+      double after = y.asDouble();
+      if (before != 0) {
+        double percent = (after - before) / Math.abs(before) * 100;
+        change = String.format(Locale.ROOT, "%+.1f%%", percent);
+        int direction = direction(key);
+        if (direction != 0 && Math.abs(percent) >= NOTABLE_PERCENT) {
+          verdict = percent * direction > 0 ? "  better" : "  WORSE";
+        }
+      } else if (after != 0) {
+        change = "new";
+      }
+    }
+    return String.format("%-40s %14s %14s %9s%s%n", key, number(x), number(y), change, verdict);
+  }
+
+  /** +1 when more is better, -1 when less is better, 0 when neither. */
+  static int direction(String key) {
+    String leaf = key.substring(key.lastIndexOf('.') + 1);
+    if (leaf.equals("utilisation") || leaf.startsWith("checkpointHit") || key.equals("pages.done")) {
+      return 1;
+    }
+    if (key.startsWith("phases.") || leaf.endsWith("Seconds") || leaf.endsWith("Retries")
+        || leaf.equals("failed") || leaf.startsWith("gc") || leaf.equals("peakHeapBytes")) {
+      return -1;
+    }
+    return 0;
+  }
+
+  private static void flatten(String prefix, JsonNode node, Map<String, JsonNode> out) {
+    if (node.isObject()) {
+      Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+      while (fields.hasNext()) {
+        Map.Entry<String, JsonNode> field = fields.next();
+        flatten(prefix.isEmpty() ? field.getKey() : prefix + "." + field.getKey(), field.getValue(), out);
+      }
+    } else if (node.isArray() && !prefix.startsWith("config.")) {
+      for (int i = 0; i < node.size(); i++) {
+        flatten(prefix + "[" + i + "]", node.get(i), out);
+      }
+    } else {
+      out.put(prefix, node);
+    }
+  }
+
+  private static boolean isNumber(JsonNode node) {
+    return node != null && node.isNumber();
+  }
+
+  private static String text(JsonNode node) {
+    return node == null ? "(none)" : node.isValueNode() ? node.asText() : node.toString();
+  }
+
+  private static String number(JsonNode node) {
+    if (node == null) return "-";
+    if (!node.isNumber()) return text(node);
+    if (node.isIntegralNumber()) return Long.toString(node.asLong());
+    return String.format(Locale.ROOT, "%.3f", node.asDouble());
+  }
+}
@@ -0,0 +1,334 @@
+package nl.adgroot.pdfsummarizer.metrics;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+
+/**
+ * Timeline of a run: spans for PDF extraction, batches, stages, permit waits, HTTP calls and
+ * parsing, written at the end as a Chrome Trace Event file that Perfetto (ui.perfetto.dev) or
+ * chrome://tracing open offline.
+ *
+ * <p>Every track ("server 0", "http localhost:11434", "llm-permit", ...) is split into lanes, one
+ * per span running at the same time, so concurrent batches on a server sit on separate rows and
+ * idle gaps show as empty space. A lane is a thread in the trace file.
+ *
+ * <p>There is one recorder per JVM, reached through {@link #active()} like the JFR events; while
+ * none is started, spans are a shared no-op and cost nothing. Finished spans are kept in memory until
+ * the file is written; beyond {@code trace.maxSpans} they are dropped and counted.
+ */
+public final class TraceRecorder implements AutoCloseable {
+
+  private static final AppLogger log = AppLogger.getLogger(TraceRecorder.class);
+
+  private static final TraceRecorder DISABLED = new TraceRecorder(null, 0);
+  private static volatile TraceRecorder active = DISABLED;
+
+  private final Path file;
+  private final long originNs = System.nanoTime();
+  private final Map<String, Track> tracks = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedQueue<Finished> finished = new ConcurrentLinkedQueue<>();
+  private final int maxSpans;
+  private final AtomicInteger kept = new AtomicInteger();
+  private final AtomicInteger dropped = new AtomicInteger();
+
+  private TraceRecorder(Path file, int maxSpans) {
+    this.file = file;
+    this.maxSpans = maxSpans;
+  }
+
+  /** Starts recording spans until {@link #close()}, which writes {@code trace.file} to {@code outDir}. */
+  public static TraceRecorder start(AppConfig.TraceConfig cfg, Path outDir) {
+    TraceRecorder recorder = new TraceRecorder(outDir.resolve(cfg.file), Math.max(0, cfg.maxSpans));
+    active = recorder;
+    log.info("TRACE recording run timeline to %s", recorder.file.toAbsolutePath());
+    return recorder;
+  }
+
+  public static TraceRecorder disabled() {
+    return DISABLED;
+  }
+
+  /** The recorder spans go to; a disabled one when no run is being traced. */
+  public static TraceRecorder active() {
+    return active;
+  }
+
+  public boolean isEnabled() {
+    return file != null;
+  }
+
+  /** Where the trace is written; {@code null} when disabled. */
+  public Path file() {
+    return file;
+  }
+
+  /**
+   * Opens a span on the first free lane of {@code track}.
+   *
+   * @param category trace category, e.g. "batch" or "http"; Perfetto can filter on it
+   */
+  public Span begin(String track, String name, String category) {
+    if (!isEnabled()) {
+      return Span.NONE;
+    }
+    Track t = tracks.computeIfAbsent(track, Track::new);
+    return new Span(this, t, t.acquire(), true, name, category);
+  }
+
+  /** Opens a span on a lane named after the calling thread's executor ("cpu-worker", "main", ...). */
+  public Span beginOnThread(String name, String category) {
+    if (!isEnabled()) {
+      return Span.NONE;
+    }
+    return begin(executorName(Thread.currentThread()), name, category);
+  }
+
+  // Strips the pool counter: cpu-worker-3 → cpu-worker
+  static String executorName(Thread thread) {
+    String name = thread.getName();
+    if (name.isEmpty()) {
+      return thread.isVirtual() ? "virtual" : "thread";
+    }
+    return name.replaceFirst("-\\d+$", "");
+  }
+
+  /** Number of finished spans kept so far. */
+  public int spans() {
+    return kept.get();
+  }
+
+  /** Number of finished spans left out because {@code trace.maxSpans} was reached. */
+  public int droppedSpans() {
+    return dropped.get();
+  }
+
+  private void add(Finished span) {
+    if (kept.getAndUpdate(n -> n < maxSpans ? n + 1 : n) < maxSpans) {
+      finished.add(span);
+    } else {
+      dropped.incrementAndGet();
+    }
+  }
+
+  /** One open span. Ending it twice is harmless. */
+  public static final class Span {
+
+    /** The span handed out while tracing is off. */
+    public static final Span NONE = new Span(null, null, -1, false, null, null);
+
+    private final TraceRecorder recorder;
+    private final Track track;
+    private final int lane;
+    private final boolean ownsLane;
+    private final String name;
+    private final String category;
+    private final long startNs = System.nanoTime();
+    private final Map<String, Object> args = new LinkedHashMap<>();
+    private boolean ended;
+
+    private Span(TraceRecorder recorder, Track track, int lane, boolean ownsLane, String name, String category) {
+      this.recorder = recorder;
+      this.track = track;
+      this.lane = lane;
+      this.ownsLane = ownsLane;
+      this.name = name;
+      this.category = category;
+    }
+
+    public Span arg(String key, Object value) {
+      if (recorder != null) {
+        synchronized (this) {
+          args.put(key, value);
+        }
+      }
+      return this;
+    }
+
+    /** Copies the arguments of {@code other}, e.g. to a batch's span on its failover server. */
+    public Span argsFrom(Span other) {
+      if (recorder != null && other.recorder != null) {
+        synchronized (other) {
+          Map<String, Object> copy = new LinkedHashMap<>(other.args);
+          synchronized (this) {
+            args.putAll(copy);
+          }
+        }
+      }
+      return this;
+    }
+
+    /** A span nested in this one, on the same lane; it must end before this span does. */
+    public Span child(String childName, String childCategory) {
+      if (recorder == null) {
+        return NONE;
+      }
+      return new Span(recorder, track, lane, false, childName, childCategory);
+    }
+
+    public void end() {
+      if (recorder == null) {
+        return;
+      }
+      Map<String, Object> snapshot;
+      synchronized (this) {
+        if (ended) {
+          return;
+        }
+        ended = true;
+        snapshot = Map.copyOf(args);
+      }
+      recorder.add(new Finished(track.name, lane, name, category,
+          startNs - recorder.originNs, System.nanoTime() - startNs, snapshot));
+      if (ownsLane) {
+        track.release(lane);
+      }
+    }
+  }
+
+  private record Finished(
+      String track, int lane, String name, String category, long startNs, long durationNs, Map<String, Object> args
+  ) {}
+
+  private static final class Track {
+    final String name;
+    private final BitSet busy = new BitSet();
+    private int lanes;
+
+    Track(String name) {
+      this.name = name;
+    }
+
+    synchronized int acquire() {
+      int lane = busy.nextClearBit(0);
+      busy.set(lane);
+      lanes = Math.max(lanes, lane + 1);
+      return lane;
+    }
+
+    synchronized void release(int lane) {
+      busy.clear(lane);
+    }
+
+    synchronized int lanes() {
+      return lanes;
+    }
+  }
+
+  /** Writes the spans finished so far as a Chrome Trace Event JSON file. */
+  public void write() throws IOException {
+    Files.createDirectories(file.toAbsolutePath().getParent());
+
+    // Servers first, then their HTTP connections, then the executors; lanes of a track together
+    List<Track> sorted = new ArrayList<>(tracks.values());
+    sorted.sort(Comparator.comparingInt((Track t) -> group(t.name)).thenComparing(t -> t.name));
+    Map<String, Integer> firstTid = new LinkedHashMap<>();
+    int tid = 1;
+    for (Track t : sorted) {
+      firstTid.put(t.name, tid);
+      tid += t.lanes();
+    }
+
+    try (JsonGenerator json = new JsonFactory().createGenerator(file.toFile(), JsonEncoding.UTF8)) {
+      json.writeStartObject();
+      json.writeStringField("displayTimeUnit", "ms");
+      json.writeArrayFieldStart("traceEvents");
+
+      json.writeStartObject();
+      json.writeStringField("ph", "M");
+      json.writeStringField("name", "process_name");
+      json.writeNumberField("pid", 1);
+      json.writeObjectFieldStart("args");
+      json.writeStringField("name", "pdfsummarizer");
+      json.writeEndObject();
+      json.writeEndObject();
+
+      for (Track t : sorted) {
+        for (int lane = 0; lane < t.lanes(); lane++) {
+          int laneTid = firstTid.get(t.name) + lane;
+          metadata(json, "thread_name", laneTid, "name", lane == 0 ? t.name : t.name + " #" + (lane + 1));
+          metadata(json, "thread_sort_index", laneTid, "sort_index", laneTid);
+        }
+      }
+
+      for (Finished span : finished) {
+        json.writeStartObject();
+        json.writeStringField("ph", "X");
+        json.writeStringField("name", span.name());
+        json.writeStringField("cat", span.category());
+        json.writeNumberField("pid", 1);
+        json.writeNumberField("tid", firstTid.get(span.track()) + span.lane());
+        json.writeNumberField("ts", span.startNs() / 1_000.0);
+        json.writeNumberField("dur", span.durationNs() / 1_000.0);
+        if (!span.args().isEmpty()) {
+          json.writeObjectFieldStart("args");
+          for (Map.Entry<String, Object> arg : span.args().entrySet()) {
+            json.writeFieldName(arg.getKey());
+            json.writeObject(arg.getValue() instanceof Number || arg.getValue() instanceof Boolean
+                ? arg.getValue() : String.valueOf(arg.getValue()));
+          }
+          json.writeEndObject();
+        }
+        json.writeEndObject();
+      }
+
+      json.writeEndArray();
+      json.writeEndObject();
+    }
+  }
+
+  private static int group(String track) {
+    if (track.startsWith("server ")) return 0;
+    if (track.startsWith("http ")) return 1;
+    return 2;
+  }
+
+  private static void metadata(JsonGenerator json, String name, int tid, String key, Object value)
+      throws IOException {
+    json.writeStartObject();
+    json.writeStringField("ph", "M");
+    json.writeStringField("name", name);
+    json.writeNumberField("pid", 1);
+    json.writeNumberField("tid", tid);
+    json.writeObjectFieldStart("args");
+    json.writeFieldName(key);
+    json.writeObject(value);
+    json.writeEndObject();
+    json.writeEndObject();
+  }
+
+  /** Stops recording and writes the trace file. */
+  @Override
+  public void close() {
+    if (!isEnabled()) {
+      return;
+    }
+    if (active == this) {
+      active = DISABLED;
+    }
+    try {
+      write();
+      log.info("TRACE %d spans written to %s", spans(), file.toAbsolutePath());
+      if (droppedSpans() > 0) {
+        log.warn("TRACE %d later spans left out: trace.maxSpans (%d) reached", droppedSpans(), maxSpans);
+      }
+    } catch (IOException e) {
+      log.warn("TRACE could not write %s: %s", file.toAbsolutePath(), e);
+    }
+  }
+}
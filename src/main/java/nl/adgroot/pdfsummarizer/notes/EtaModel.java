@@ -0,0 +1,227 @@
+package nl.adgroot.pdfsummarizer.notes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
+
+/**
+ * Remaining-time estimate from the work left instead of the pages left, so dense chapters, the
+ * three calls of a three-stage batch and a slow warm-up do not throw it off.
+ *
+ * <p>Work is counted in cost tokens: prompt tokens plus generated tokens weighted by how much
+ * longer the servers take per generated token than per prompt token. Every LLM call, of any stage,
+ * adds its cost to its server. Per server, the cost done per wall-clock second is smoothed with an
+ * exponentially weighted moving average (half-life {@value #HALF_LIFE_SECONDS} s) together with its
+ * variance; the servers' rates add up.
+ *
+ * <p>The work left is the estimated content tokens of the pages not done, less the estimated share
+ * of batches in flight, times the cost spent so far per content token (which includes retries and
+ * follow-ups). The ETA is that work over the summed rate; the interval takes the rate one
+ * {@value #Z_90} standard deviations up and down, a 90% band for the rate.
+ */
+public final class EtaModel {
+
+  static final double HALF_LIFE_SECONDS = 60;
+  // Rate samples span at least this long, so one call that ends after a quiet minute is not a spike
+  static final double MIN_WINDOW_SECONDS = 10;
+  // A server without a finished call for this long is left out of the summed rate
+  static final double STALE_SECONDS = 600;
+  static final double Z_90 = 1.645;
+  // An in-flight batch is never counted as more than this far along
+  private static final double MAX_IN_FLIGHT_PROGRESS = 0.9;
+
+  private final LongSupplier clock;
+
+  private long plannedTokens;
+  private long settledTokens;
+  private double costTokens;
+  private long completedTokens;
+
+  private long promptTokens;
+  private long promptNs;
+  private long generatedTokens;
+  private long generationNs;
+
+  private final Map<Integer, ServerRate> servers = new HashMap<>();
+  private final Map<InFlight, Integer> inFlight = new HashMap<>();
+
+  /** Cost throughput of one server. */
+  private static final class ServerRate {
+    long windowStartNs;
+    double windowCost;
+    long lastSampleNs;
+    int samples;
+    double mean;
+    double variance;
+    // Batch wall time per content token, to place in-flight batches
+    double secondsPerToken;
+  }
+
+  /** One estimate; {@code low} and {@code high} bound the 90% band. */
+  public record Estimate(double seconds, double lowSeconds, double highSeconds, double costPerSecond) {}
+
+  public EtaModel() {
+    this(System::nanoTime);
+  }
+
+  EtaModel(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  /** Adds the estimated content tokens of pages that are going to be sent. */
+  public synchronized void plan(long contentTokens) {
+    plannedTokens += contentTokens;
+  }
+
+  /** Counts planned tokens that need no LLM work after all, e.g. restored or given up pages. */
+  public synchronized void settle(long contentTokens) {
+    settledTokens += contentTokens;
+  }
+
+  /** A batch got a server permit. */
+  public synchronized InFlight start(int server, long contentTokens) {
+    InFlight batch = new InFlight(contentTokens, clock.getAsLong());
+    inFlight.put(batch, server);
+    // The first rate sample of a server starts with its first batch, not with the run
+    rate(server);
+    return batch;
+  }
+
+  /** A batch of {@link #start(int, long)}; finish it exactly once. */
+  public final class InFlight {
+    private final long contentTokens;
+    private final long startedNs;
+
+    private InFlight(long contentTokens, long startedNs) {
+      this.contentTokens = contentTokens;
+      this.startedNs = startedNs;
+    }
+
+    /**
+     * @param server where the batch ended, which differs from the start after a failover
+     * @param completed false when the batch failed; its pages stay in the work left
+     */
+    public void finish(int server, boolean completed) {
+      synchronized (EtaModel.this) {
+        if (inFlight.remove(this) == null) {
+          return;
+        }
+        if (!completed) {
+          return;
+        }
+        completedTokens += contentTokens;
+        if (contentTokens > 0 && server >= 0) {
+          double perToken = (clock.getAsLong() - startedNs) / 1e9 / contentTokens;
+          ServerRate rate = rate(server);
+          rate.secondsPerToken = rate.secondsPerToken == 0
+              ? perToken
+              : rate.secondsPerToken + 0.2 * (perToken - rate.secondsPerToken);
+        }
+      }
+    }
+  }
+
+  /** Adds the cost of one finished LLM call to its server's rate. */
+  public synchronized void recordCall(int server, LlmMetrics metrics) {
+    if (metrics == null) {
+      return;
+    }
+    promptTokens += metrics.promptEvalCount();
+    promptNs += metrics.promptEvalDurationNs();
+    generatedTokens += metrics.evalCount();
+    generationNs += metrics.evalDurationNs();
+
+    double cost = metrics.promptEvalCount() + generationWeight() * metrics.evalCount();
+    costTokens += cost;
+
+    long now = clock.getAsLong();
+    ServerRate rate = rate(server);
+    rate.windowCost += cost;
+    double window = (now - rate.windowStartNs) / 1e9;
+    if (window < MIN_WINDOW_SECONDS) {
+      return;
+    }
+    double sample = rate.windowCost / window;
+    if (rate.samples == 0) {
+      rate.mean = sample;
+    } else {
+      // Irregular-interval EWMA: the weight of a sample grows with the time it covers
+      double alpha = 1 - Math.exp(-window * Math.log(2) / HALF_LIFE_SECONDS);
+      double diff = sample - rate.mean;
+      rate.mean += alpha * diff;
+      rate.variance = (1 - alpha) * (rate.variance + alpha * diff * diff);
+    }
+    rate.samples++;
+    rate.lastSampleNs = now;
+    rate.windowStartNs = now;
+    rate.windowCost = 0;
+  }
+
+  /** Time per generated token over time per prompt token; 1 until both were measured. */
+  public synchronized double generationWeight() {
+    if (promptTokens == 0 || promptNs == 0 || generatedTokens == 0 || generationNs == 0) {
+      return 1;
+    }
+    return ((double) generationNs / generatedTokens) / ((double) promptNs / promptTokens);
+  }
+
+  /** Estimated content tokens not done yet, counting the share of batches in flight as done. */
+  public synchronized double remainingTokens() {
+    long now = clock.getAsLong();
+    double inFlightDone = 0;
+    for (Map.Entry<InFlight, Integer> e : inFlight.entrySet()) {
+      InFlight batch = e.getKey();
+      ServerRate rate = servers.get(e.getValue());
+      if (rate == null || rate.secondsPerToken == 0 || batch.contentTokens == 0) continue;
+      double expected = rate.secondsPerToken * batch.contentTokens;
+      double progress = Math.min(MAX_IN_FLIGHT_PROGRESS, (now - batch.startedNs) / 1e9 / expected);
+      inFlightDone += progress * batch.contentTokens;
+    }
+    return Math.max(0, plannedTokens - settledTokens - completedTokens - inFlightDone);
+  }
+
+  /**
+   * The current estimate, or {@code null} while warming up: before any server has a rate sample or
+   * any batch has completed.
+   */
+  public synchronized Estimate estimate() {
+    double remaining = remainingTokens();
+    if (remaining == 0 && plannedTokens > 0) {
+      return new Estimate(0, 0, 0, totalRate(clock.getAsLong())[0]);
+    }
+    if (completedTokens == 0 || costTokens == 0) {
+      return null;
+    }
+    double[] rate = totalRate(clock.getAsLong());
+    if (rate[0] <= 0) {
+      return null;
+    }
+    double work = remaining * (costTokens / completedTokens);
+    double spread = Z_90 * Math.sqrt(rate[1]);
+    double fast = rate[0] + spread;
+    // An interval with a rate near zero says nothing; cap the slow end at ten times the ETA
+    double slow = Math.max(rate[0] / 10, rate[0] - spread);
+    return new Estimate(work / rate[0], work / fast, work / slow, rate[0]);
+  }
+
+  // {summed mean, summed variance} over the servers with a recent rate sample
+  private double[] totalRate(long now) {
+    double mean = 0;
+    double variance = 0;
+    for (ServerRate rate : servers.values()) {
+      if (rate.samples == 0 || (now - rate.lastSampleNs) / 1e9 > STALE_SECONDS) continue;
+      mean += rate.mean;
+      variance += rate.variance;
+    }
+    return new double[] {mean, variance};
+  }
+
+  private ServerRate rate(int server) {
+    return servers.computeIfAbsent(server, s -> {
+      ServerRate rate = new ServerRate();
+      rate.windowStartNs = clock.getAsLong();
+      return rate;
+    });
+  }
+}
@@ -0,0 +1,192 @@
+package nl.adgroot.pdfsummarizer.notes;
+
+import java.util.ArrayList;
+import java.util.List;
+import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.notes.records.Card;
+
+/**
+ * Index-based scanner producing exactly the same {@link Card}s as {@link DefaultCardsParser},
+ * including the salvage of a {@code ?} glued to the question line, without running any regex.
+ *
+ * <p>Each card is found with one pass over the response; the only copies made are the trimmed card
+ * markdown itself and, for malformed cards, the salvaged version. The scanning rules mirror
+ * {@link java.util.regex.Pattern} in MULTILINE mode: {@code ^} matches after any line terminator
+ * ({@code \n}, {@code \r}, {@code \r\n}, {@code \u0085}, {@code \u2028}, {@code \u2029}) except
+ * between {@code \r} and {@code \n} and at the end of input, {@code $} matches before a line
+ * terminator and {@code \s} is ASCII whitespace.
+ */
+public class FastCardsParser implements CardsParser {
+
+  private static final AppLogger log = AppLogger.getLogger(FastCardsParser.class);
+
+  @Override
+  public List<Card> parse(String markdown) {
+    if (markdown == null || markdown.isBlank()) return List.of();
+
+    List<Card> cards = new ArrayList<>();
+    int len = markdown.length();
+    int partStart = 0;
+    int i = 0;
+    while (i < len) {
+      int splitEnd = matchSplitLine(markdown, i);
+      if (splitEnd >= 0) {
+        addCard(cards, markdown, partStart, i);
+        partStart = splitEnd;
+        i = splitEnd;
+      } else {
+        i = nextLineStart(markdown, i);
+      }
+    }
+    addCard(cards, markdown, partStart, len);
+    return cards;
+  }
+
+  private void addCard(List<Card> cards, String md, int from, int to) {
+    // String.trim(): strip chars <= ' ' on both ends
+    while (from < to && md.charAt(from) <= ' ') from++;
+    while (to > from && md.charAt(to - 1) <= ' ') to--;
+    if (from == to) return;
+
+    String cardMd = ensureSeparator(md.substring(from, to));
+    String title = extractTitle(cardMd);
+    cards.add(new Card(title == null ? "Untitled Card" : title, cardMd + "\n"));
+  }
+
+  /** Same contract as {@code DefaultCardsParser.ensureSeparator}. */
+  private String ensureSeparator(String cardMd) {
+    int len = cardMd.length();
+    int questionLineEnd = -1;
+
+    for (int i = 0; i < len; i = nextLineStart(cardMd, i)) {
+      if (!isLineStart(cardMd, i)) continue;
+      int end = lineEnd(cardMd, i);
+      // ^\?\s*$
+      if (cardMd.charAt(i) == '?' && dollarAfterWhitespace(cardMd, i + 1) >= 0) {
+        return cardMd; // already well-formed
+      }
+      // ^(.+\?)[\t ]*$ — first match wins
+      if (questionLineEnd < 0 && endsWithQuestionMark(cardMd, i, end)) {
+        questionLineEnd = end;
+      }
+    }
+
+    if (questionLineEnd >= 0) {
+      String salvaged = cardMd.substring(0, questionLineEnd) + "\n?\n"
+          + cardMd.substring(questionLineEnd).stripLeading();
+      log.warn("Malformed card salvaged — inserted missing '?' separator line. Check prompt strictness.\n%s", cardMd);
+      return salvaged;
+    }
+
+    log.error("Malformed card detected — no question mark found, cannot form a Q&A:\n%s", cardMd);
+    return cardMd;
+  }
+
+  /** Same contract as {@code DefaultCardsParser.extractTitle}; {@code null} when there is none. */
+  private static String extractTitle(String md) {
+    int len = md.length();
+    for (int i = 0; i < len; i = nextLineStart(md, i)) {
+      if (!isLineStart(md, i) || !md.startsWith("title:", i)) continue;
+
+      // ^title:\s*(.+)\s*$ — \s* may run across lines; (.+) cannot
+      int p = i + "title:".length();
+      int r = skipWhitespace(md, p);
+      int groupStart;
+      int groupEnd;
+      if (r < len && !isLineTerminator(md.charAt(r))) {
+        groupStart = r;
+        groupEnd = lineEnd(md, r);
+      } else {
+        // Backtracking: (.+) takes the last non-terminator whitespace char of the run
+        int a = r - 1;
+        while (a >= p && isLineTerminator(md.charAt(a))) a--;
+        if (a < p) continue;
+        groupStart = a;
+        groupEnd = a + 1;
+      }
+
+      String t = md.substring(groupStart, groupEnd).trim();
+      // replaceAll("^\"|\"$", "")
+      int from = t.startsWith("\"") ? 1 : 0;
+      int to = t.length();
+      if (to > from && t.charAt(to - 1) == '"') to--;
+      t = t.substring(from, to);
+      return t.isBlank() ? null : t;
+    }
+    return null;
+  }
+
+  /**
+   * If a {@code ^---\s*$} match starts at {@code i}, returns its end (as {@code Matcher.end()}
+   * would report it); otherwise -1.
+   */
+  private static int matchSplitLine(String md, int i) {
+    if (!isLineStart(md, i) || !md.startsWith("---", i)) return -1;
+    return dollarAfterWhitespace(md, i + 3);
+  }
+
+  /**
+   * Greedy {@code \s*$} starting at {@code p}: the end of the longest whitespace prefix after which
+   * {@code $} matches, or -1 if there is none.
+   */
+  private static int dollarAfterWhitespace(String md, int p) {
+    int r = skipWhitespace(md, p);
+    if (isDollar(md, r)) return r;
+    for (int k = r - 1; k >= p; k--) {
+      if (isDollar(md, k)) return k;
+    }
+    return -1;
+  }
+
+  /** Multiline {@code $}: at end of input or before a line terminator, but not inside {@code \r\n}. */
+  private static boolean isDollar(String md, int k) {
+    if (k >= md.length()) return true;
+    char c = md.charAt(k);
+    if (c == '\n') return k == 0 || md.charAt(k - 1) != '\r';
+    return c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  /** Multiline {@code ^}: not at end of input, and not between {@code \r} and {@code \n}. */
+  private static boolean isLineStart(String md, int i) {
+    if (i >= md.length()) return false;
+    if (i == 0) return true;
+    char prev = md.charAt(i - 1);
+    if (!isLineTerminator(prev)) return false;
+    return !(prev == '\r' && md.charAt(i) == '\n');
+  }
+
+  /** {@code ^(.+\?)[\t ]*$} on the line {@code [start, end)}. */
+  private static boolean endsWithQuestionMark(String md, int start, int end) {
+    int j = end;
+    while (j > start && (md.charAt(j - 1) == ' ' || md.charAt(j - 1) == '\t')) j--;
+    // j - 1 is the '?', and (.+) needs at least one char before it
+    return j - 1 > start && md.charAt(j - 1) == '?';
+  }
+
+  private static int lineEnd(String md, int i) {
+    int len = md.length();
+    while (i < len && !isLineTerminator(md.charAt(i))) i++;
+    return i;
+  }
+
+  /** Index just past the line terminator that ends the line containing {@code i}. */
+  private static int nextLineStart(String md, int i) {
+    int end = lineEnd(md, i);
+    return end < md.length() ? end + 1 : end;
+  }
+
+  /** Skips {@code \s} ({@code [ \t\n\x0B\f\r]}). */
+  private static int skipWhitespace(String md, int i) {
+    int len = md.length();
+    while (i < len) {
+      char c = md.charAt(i);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') break;
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+}
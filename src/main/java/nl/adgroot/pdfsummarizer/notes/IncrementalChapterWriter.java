@@ -0,0 +1,109 @@
+package nl.adgroot.pdfsummarizer.notes;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.adgroot.pdfsummarizer.notes.records.CardsPage;
+
+/**
+ * Streams a chapter's cards into its notes file while the chapter is still being processed.
+ *
+ * <p>Batches finish out of order, so completed pages wait in a reassembly buffer until every page
+ * before them is done; cards are therefore always appended in page order. Only the cards of pages
+ * that are ahead of the write position are held in memory. After {@link #finish()} the file is
+ * byte-identical to {@link CardsPage#toString()} of the whole chapter, and like
+ * {@link NotesWriter#writeCard} no file is created for a chapter without cards.
+ */
+public class IncrementalChapterWriter {
+
+  /** Creates the (empty) target file; called when the first card is written. */
+  @FunctionalInterface
+  interface FileOpener {
+    Path open() throws IOException;
+  }
+
+  private final FileOpener opener;
+  private final String footer;
+  private final Map<Integer, Integer> positionByIndex = new HashMap<>();
+  private final List<String>[] buffered;
+  private final boolean[] done;
+
+  private int nextPosition;
+  private BufferedWriter out;
+  private Path file;
+  private boolean finished;
+
+  @SuppressWarnings("unchecked")
+  IncrementalChapterWriter(FileOpener opener, String footer, List<Integer> pageIndexes) {
+    this.opener = opener;
+    this.footer = footer;
+    this.buffered = (List<String>[]) new List<?>[pageIndexes.size()];
+    this.done = new boolean[pageIndexes.size()];
+    for (int i = 0; i < pageIndexes.size(); i++) {
+      positionByIndex.put(pageIndexes.get(i), i);
+    }
+  }
+
+  /**
+   * Marks page {@code pageIndex} as done with {@code cards} (empty for a page without cards or
+   * whose batch failed) and appends every page that is now next in line.
+   */
+  public synchronized void complete(int pageIndex, List<String> cards) throws IOException {
+    Integer position = positionByIndex.get(pageIndex);
+    if (finished || position == null || done[position]) return;
+
+    done[position] = true;
+    buffered[position] = cards;
+    drain();
+  }
+
+  /**
+   * Appends whatever is still buffered, writes the tag footer and closes the file.
+   *
+   * @return the chapter file, or {@code null} when the chapter produced no cards
+   */
+  public synchronized Path finish() throws IOException {
+    if (finished) return file;
+    // Pages that never completed (failed without a result) no longer hold up the rest
+    for (int i = nextPosition; i < done.length; i++) {
+      done[i] = true;
+    }
+    drain();
+    finished = true;
+
+    if (out != null) {
+      out.write("\n\n");
+      out.write(footer);
+      out.close();
+    }
+    return file;
+  }
+
+  private void drain() throws IOException {
+    while (nextPosition < done.length && done[nextPosition]) {
+      List<String> cards = buffered[nextPosition];
+      buffered[nextPosition] = null;
+      nextPosition++;
+
+      if (cards == null) continue;
+      for (String card : cards) {
+        if (card == null || card.isBlank()) continue;
+        if (out == null) {
+          file = opener.open();
+          out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } else {
+          out.write(CardsPage.SEPARATOR);
+        }
+        out.write(card);
+      }
+    }
+    if (out != null) out.flush();
+  }
+}
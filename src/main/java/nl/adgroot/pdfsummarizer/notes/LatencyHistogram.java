@@ -0,0 +1,121 @@
+package nl.adgroot.pdfsummarizer.notes;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram: microsecond values, 32 linear
+ * sub-buckets per power of two, so every recorded value is kept to within about 3%. Recording is a
+ * few atomic increments on preallocated arrays: no locks and no allocation, so pipeline threads
+ * can record every call. Values above ~38 hours are counted in the last bucket.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  // Top bucket ends at 2^37 µs ≈ 38 h
+  private static final int MAX_EXPONENT = 36;
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+  private static final long MAX_MICROS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sumMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  public void recordNanos(long nanos) {
+    recordMicros(nanos / 1_000);
+  }
+
+  public void recordMicros(long micros) {
+    long v = Math.min(Math.max(0, micros), MAX_MICROS);
+    counts.incrementAndGet(indexOf(v));
+    count.incrementAndGet();
+    sumMicros.addAndGet(v);
+    maxMicros.accumulateAndGet(v, Math::max);
+  }
+
+  public long count() {
+    return count.get();
+  }
+
+  public long sumMicros() {
+    return sumMicros.get();
+  }
+
+  public long maxMicros() {
+    return maxMicros.get();
+  }
+
+  public double meanMicros() {
+    long n = count.get();
+    return n == 0 ? 0 : sumMicros.get() / (double) n;
+  }
+
+  /**
+   * Value at or below which {@code percentile} percent of the recorded values lie, as the middle of
+   * its bucket; 0 when nothing was recorded. Concurrent recordings may or may not be included.
+   */
+  public long percentileMicros(double percentile) {
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts.get(i);
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100.0 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(middleOf(i), maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+  /** Adds every value recorded in {@code other} to this histogram. */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      long c = other.counts.get(i);
+      if (c != 0) counts.addAndGet(i, c);
+    }
+    count.addAndGet(other.count.get());
+    sumMicros.addAndGet(other.sumMicros.get());
+    maxMicros.accumulateAndGet(other.maxMicros.get(), Math::max);
+  }
+
+  /** Number of buckets; bucket {@code i} holds values from {@link #lowerBoundMicros(int)}. */
+  public static int buckets() {
+    return BUCKETS;
+  }
+
+  /** Count in bucket {@code i}. */
+  public long countAt(int i) {
+    return counts.get(i);
+  }
+
+  public static long lowerBoundMicros(int i) {
+    if (i < 2 * SUB_BUCKETS) {
+      return i;
+    }
+    int shift = i / SUB_BUCKETS - 1;
+    return (long) (i - shift * SUB_BUCKETS) << shift;
+  }
+
+  private static long middleOf(int i) {
+    if (i < 2 * SUB_BUCKETS) {
+      return i;
+    }
+    int shift = i / SUB_BUCKETS - 1;
+    return lowerBoundMicros(i) + ((1L << shift) >> 1);
+  }
+
+  // Values below 64 get a bucket each; above, the top six bits select the bucket
+  static int indexOf(long micros) {
+    int exponent = 63 - Long.numberOfLeadingZeros(micros | 1);
+    int shift = Math.max(0, exponent - SUB_BITS);
+    return shift * SUB_BUCKETS + (int) (micros >>> shift);
+  }
+}
@@ -5,16 +5,55 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.List;
 import nl.adgroot.pdfsummarizer.notes.records.CardsPage;
 
 public class NotesWriter {
 
+  private final boolean replaceExisting;
+
+  public NotesWriter() {
+    this(false);
+  }
+
+  /**
+   * @param replaceExisting overwrite a chapter file of the same name instead of writing
+   *                        {@code "name (2).md"}; used when resuming into an existing output dir
+   */
+  public NotesWriter(boolean replaceExisting) {
+    this.replaceExisting = replaceExisting;
+  }
+
   public void writeCard(Path outDir, CardsPage cardsPage) throws IOException {
     String fileName = safeFileName(cardsPage.topic()+"-"+cardsPage.chapter()) + ".md";
+    if (replaceExisting) {
+      Files.writeString(outDir.resolve(fileName), cardsPage.toString(), StandardCharsets.UTF_8);
+      return;
+    }
     Path target = uniquify(outDir.resolve(fileName));
     Files.writeString(target, cardsPage.toString(), StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW);
   }
 
+  /**
+   * Opens an incremental chapter file for the pages with {@code pageIndexes}, in chapter order. The
+   * file itself is only created once the first card arrives.
+   */
+  public IncrementalChapterWriter openChapter(
+      Path outDir, String topic, String chapter, List<Integer> pageIndexes
+  ) {
+    CardsPage header = new CardsPage(topic, chapter);
+    return new IncrementalChapterWriter(() -> createChapterFile(outDir, header), header.getHashtag(),
+        pageIndexes);
+  }
+
+  private Path createChapterFile(Path outDir, CardsPage cardsPage) throws IOException {
+    String fileName = safeFileName(cardsPage.topic()+"-"+cardsPage.chapter()) + ".md";
+    if (replaceExisting) {
+      return Files.write(outDir.resolve(fileName), new byte[0]);
+    }
+    return Files.write(uniquify(outDir.resolve(fileName)), new byte[0], StandardOpenOption.CREATE_NEW);
+  }
+
   public static String safeFileName(String s) {
     String cleaned = (s == null ? "" : s)
         .trim()
@@ -2,15 +2,49 @@ package nl.adgroot.pdfsummarizer.notes;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
 import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
 
 public class ProgressTracker {
+
+  /** What a latency sample measures. */
+  public enum Phase {
+    PERMIT_WAIT("Permit wait"),
+    HTTP_ROUND_TRIP("HTTP round trip"),
+    PROMPT_EVAL("Prompt eval"),
+    GENERATION("Generation"),
+    PARSE("Parse");
+
+    private final String label;
+
+    Phase(String label) {
+      this.label = label;
+    }
+
+    public String label() {
+      return label;
+    }
+  }
+
+  /** Pipeline stages latencies are split by; any other stage name counts as {@code single}. */
+  public static final List<String> STAGES = List.of("single", "step1", "step2", "step3");
+
+  private static final Phase[] PHASES = Phase.values();
+
   private final int totalPages;
   private final AtomicInteger donePages = new AtomicInteger();
+  private final AtomicInteger restoredPages = new AtomicInteger();
   private final Instant startAll = Instant.now();
+  private final LongAdder stageRetries = new LongAdder();
+  private final LongAdder failedBatches = new LongAdder();
+  private final LongAdder finishedBatches = new LongAdder();
+  private final LongAdder writeNs = new LongAdder();
 
   // Rolling totals for averages (thread-safe & fast under contention)
   private final LongAdder sumPromptEvalNs = new LongAdder();
@@ -22,8 +56,40 @@ public class ProgressTracker {
   // Keep the last page metrics for display (atomic snapshot)
   private final AtomicReference<LlmMetrics> lastMetrics = new AtomicReference<>();
 
+  private final EtaModel eta;
+
+  // Per server index; created on first use, then recorded into without allocating
+  private final Map<Integer, ServerStats> servers = new ConcurrentHashMap<>();
+
+  private static final class ServerStats {
+    final LatencyHistogram[][] latency = new LatencyHistogram[STAGES.size()][PHASES.length];
+    final LongAdder calls = new LongAdder();
+    final LongAdder promptTokens = new LongAdder();
+    final LongAdder promptNs = new LongAdder();
+    final LongAdder evalTokens = new LongAdder();
+    final LongAdder evalNs = new LongAdder();
+
+    ServerStats() {
+      for (LatencyHistogram[] perStage : latency) {
+        for (int i = 0; i < perStage.length; i++) {
+          perStage[i] = new LatencyHistogram();
+        }
+      }
+    }
+  }
+
   public ProgressTracker(int totalPages) {
+    this(totalPages, new EtaModel());
+  }
+
+  ProgressTracker(int totalPages, EtaModel eta) {
     this.totalPages = totalPages;
+    this.eta = eta;
+  }
+
+  /** Token-based remaining-time model; the pipelines report planned, in-flight and finished work. */
+  public EtaModel eta() {
+    return eta;
   }
 
   /** Backwards compatible: if you don’t have metrics, call this. */
@@ -36,9 +102,27 @@ public class ProgressTracker {
     finishBatch(1, metrics);
   }
 
+  /**
+   * Counts pages restored from a checkpoint as done. They are excluded from throughput so the ETA
+   * reflects the pages that still need the LLM.
+   */
+  public void restorePages(int pageCount) {
+    donePages.addAndGet(pageCount);
+    restoredPages.addAndGet(pageCount);
+  }
+
+  /**
+   * Un-counts pages that a completed batch left without cards and that are being asked for again;
+   * the follow-up batch counts them once more when it finishes.
+   */
+  public void reopenPages(int pageCount) {
+    donePages.addAndGet(-pageCount);
+  }
+
   /** Call once per completed batch; increments by the number of pages in the batch. */
   public void finishBatch(int pageCount, LlmMetrics metrics) {
     donePages.addAndGet(pageCount);
+    finishedBatches.increment();
 
     if (metrics != null) {
       lastMetrics.set(metrics);
@@ -51,6 +135,146 @@ public class ProgressTracker {
     }
   }
 
+  /** Counts a batch stage that is tried again on another server. */
+  public void recordStageRetry() {
+    stageRetries.increment();
+  }
+
+  /** Counts a batch attempt that failed; a dead-letter replay may still rescue its pages. */
+  public void recordFailedBatch() {
+    failedBatches.increment();
+  }
+
+  /** Adds time spent writing chapter files. */
+  public void recordWrite(long nanos) {
+    writeNs.add(nanos);
+  }
+
+  public int totalPages() {
+    return totalPages;
+  }
+
+  /** Pages with a result so far, including restored ones. */
+  public int donePages() {
+    return donePages.get();
+  }
+
+  /** Pages taken from the checkpoint journal instead of the LLM. */
+  public int restoredPages() {
+    return restoredPages.get();
+  }
+
+  public long promptTokens() {
+    return sumPromptTokens.sum();
+  }
+
+  public long generatedTokens() {
+    return sumEvalTokens.sum();
+  }
+
+  public long stageRetries() {
+    return stageRetries.sum();
+  }
+
+  public long failedBatches() {
+    return failedBatches.sum();
+  }
+
+  public long finishedBatches() {
+    return finishedBatches.sum();
+  }
+
+  public long writeNanos() {
+    return writeNs.sum();
+  }
+
+  /** Completed LLM calls on a server. */
+  public long serverCalls(int server) {
+    ServerStats st = servers.get(server);
+    return st == null ? 0 : st.calls.sum();
+  }
+
+  public long serverPromptTokens(int server) {
+    ServerStats st = servers.get(server);
+    return st == null ? 0 : st.promptTokens.sum();
+  }
+
+  public long serverGeneratedTokens(int server) {
+    ServerStats st = servers.get(server);
+    return st == null ? 0 : st.evalTokens.sum();
+  }
+
+  /** Records one latency sample of a batch stage on a server. */
+  public void recordLatency(int server, String stage, Phase phase, long nanos) {
+    stats(server).latency[stageIndex(stage)][phase.ordinal()].recordNanos(nanos);
+  }
+
+  /**
+   * Records a completed LLM call: its round trip as seen by the client and, from the server's
+   * metrics, prompt evaluation and generation time and the tokens behind the per-server tok/s.
+   */
+  public void recordCall(int server, String stage, long roundTripNs, LlmMetrics metrics) {
+    ServerStats st = stats(server);
+    LatencyHistogram[] perPhase = st.latency[stageIndex(stage)];
+    perPhase[Phase.HTTP_ROUND_TRIP.ordinal()].recordNanos(roundTripNs);
+    st.calls.increment();
+    if (metrics != null) {
+      perPhase[Phase.PROMPT_EVAL.ordinal()].recordNanos(metrics.promptEvalDurationNs());
+      perPhase[Phase.GENERATION.ordinal()].recordNanos(metrics.evalDurationNs());
+      st.promptTokens.add(metrics.promptEvalCount());
+      st.promptNs.add(metrics.promptEvalDurationNs());
+      st.evalTokens.add(metrics.evalCount());
+      st.evalNs.add(metrics.evalDurationNs());
+    }
+    eta.recordCall(server, metrics);
+  }
+
+  /** Live histogram of one server, stage and phase. */
+  public LatencyHistogram latency(int server, String stage, Phase phase) {
+    return stats(server).latency[stageIndex(stage)][phase.ordinal()];
+  }
+
+  /** Snapshot of a phase over all servers and stages. */
+  public LatencyHistogram latency(Phase phase) {
+    LatencyHistogram merged = new LatencyHistogram();
+    for (ServerStats st : servers.values()) {
+      for (LatencyHistogram[] perStage : st.latency) {
+        merged.add(perStage[phase.ordinal()]);
+      }
+    }
+    return merged;
+  }
+
+  /** Snapshot of a phase on one server, over all stages. */
+  public LatencyHistogram serverLatency(int server, Phase phase) {
+    LatencyHistogram merged = new LatencyHistogram();
+    ServerStats st = servers.get(server);
+    if (st != null) {
+      for (LatencyHistogram[] perStage : st.latency) {
+        merged.add(perStage[phase.ordinal()]);
+      }
+    }
+    return merged;
+  }
+
+  /** Indexes of the servers that recorded anything, ascending. */
+  public List<Integer> serverIndexes() {
+    return servers.keySet().stream().sorted().toList();
+  }
+
+  private ServerStats stats(int server) {
+    return servers.computeIfAbsent(server, s -> new ServerStats());
+  }
+
+  private static int stageIndex(String stage) {
+    return switch (stage == null ? "" : stage) {
+      case "step1" -> 1;
+      case "step2" -> 2;
+      case "step3" -> 3;
+      default -> 0;
+    };
+  }
+
   public String formatStatus(long lastPageMillis) {
     int done = donePages.get();
     int remaining = totalPages - done;
@@ -58,8 +282,8 @@ public class ProgressTracker {
     Duration elapsed = Duration.between(startAll, Instant.now());
     double elapsedSec = Math.max(0.001, elapsed.toMillis() / 1000.0);
 
-    double throughput = done / elapsedSec; // pages/sec
-    long etaSec = (throughput <= 0) ? 0 : (long) Math.ceil(remaining / throughput);
+    double throughput = (done - restoredPages.get()) / elapsedSec; // pages/sec
+    String etaPart = formatEta(remaining, throughput);
 
     double pct = (done * 100.0) / totalPages;
 
@@ -99,17 +323,77 @@ public class ProgressTracker {
     }
 
     return String.format(
-        "Page %d/%d (%.2f%%) | last=%s | elapsed=%s | throughput=%.2f pages/s | ETA=%s%s%s",
+        "Page %d/%d (%.2f%%) | last=%s | elapsed=%s | throughput=%.2f pages/s | ETA=%s%s%s%s%s",
         done, totalPages, pct,
         fmtDuration(Duration.ofMillis(lastPageMillis)),
         fmtDuration(elapsed),
         throughput,
-        fmtDuration(Duration.ofSeconds(etaSec)),
+        etaPart,
         llmPart,
-        avgPart
+        avgPart,
+        formatLatencies(),
+        formatServers()
     );
   }
 
+  /**
+   * ETA from {@link EtaModel} with its 90% band. Until the model has a rate sample it falls back to
+   * pages left over pages per second, marked as such.
+   */
+  private String formatEta(int remainingPages, double pagesPerSecond) {
+    if (remainingPages <= 0) {
+      return fmtDuration(Duration.ZERO);
+    }
+    EtaModel.Estimate estimate = eta.estimate();
+    if (estimate == null) {
+      if (pagesPerSecond <= 0) {
+        return "warming up";
+      }
+      long sec = (long) Math.ceil(remainingPages / pagesPerSecond);
+      return fmtDuration(Duration.ofSeconds(sec)) + " (by pages, warming up)";
+    }
+    return String.format("%s (90%%: %s – %s, %.0f cost tok/s)",
+        fmtDuration(Duration.ofSeconds((long) Math.ceil(estimate.seconds()))),
+        fmtDuration(Duration.ofSeconds((long) Math.floor(estimate.lowSeconds()))),
+        fmtDuration(Duration.ofSeconds((long) Math.ceil(estimate.highSeconds()))),
+        estimate.costPerSecond());
+  }
+
+  private String formatLatencies() {
+    StringBuilder sb = new StringBuilder();
+    for (Phase phase : PHASES) {
+      LatencyHistogram h = latency(phase);
+      if (h.count() == 0) continue;
+      sb.append(String.format("  %-16s: %7s / %7s / %7s (n=%d)%n", phase.label(),
+          fmtMicros(h.percentileMicros(50)), fmtMicros(h.percentileMicros(95)),
+          fmtMicros(h.percentileMicros(99)), h.count()));
+    }
+    return sb.isEmpty() ? "" : "Latency p50 / p95 / p99:\n" + sb;
+  }
+
+  private String formatServers() {
+    Map<Integer, ServerStats> snapshot = new TreeMap<>(servers);
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<Integer, ServerStats> e : snapshot.entrySet()) {
+      ServerStats st = e.getValue();
+      if (st.calls.sum() == 0) continue;
+      LatencyHistogram roundTrip = serverLatency(e.getKey(), Phase.HTTP_ROUND_TRIP);
+      sb.append(String.format(
+          "  #%-3d %5d calls | gen %7.1f tok/s | prompt %7.1f tok/s | round trip p50 %s p95 %s%n",
+          e.getKey(), st.calls.sum(),
+          tokPerSec(st.evalTokens.sum(), st.evalNs.sum()),
+          tokPerSec(st.promptTokens.sum(), st.promptNs.sum()),
+          fmtMicros(roundTrip.percentileMicros(50)), fmtMicros(roundTrip.percentileMicros(95))));
+    }
+    return sb.isEmpty() ? "" : "Servers:\n" + sb;
+  }
+
+  private static String fmtMicros(long micros) {
+    if (micros < 1_000) return micros + "µs";
+    if (micros < 1_000_000) return String.format("%.1fms", micros / 1_000.0);
+    return String.format("%.2fs", micros / 1_000_000.0);
+  }
+
   private static double tokPerSec(long tokens, long durationNs) {
     if (tokens <= 0 || durationNs <= 0) return 0.0;
     return tokens / (durationNs / 1_000_000_000.0);
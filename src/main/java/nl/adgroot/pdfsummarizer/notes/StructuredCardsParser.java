@@ -0,0 +1,114 @@
+package nl.adgroot.pdfsummarizer.notes;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import nl.adgroot.pdfsummarizer.notes.records.Card;
+
+/**
+ * Parses structured-output responses of the form
+ * {@code {"pages":[{"page":1,"cards":[{"q":"...","a":"..."}]}]}} with a streaming Jackson reader.
+ *
+ * <p>Cards get the same markdown as a well-formed text card ({@code question\n?\nanswer\n}), so
+ * everything downstream of the parser is unaware of the output mode.
+ */
+public final class StructuredCardsParser {
+
+  /** JSON schema sent as Ollama's {@code format} / OpenAI's {@code text.format}. */
+  public static final JsonNode SCHEMA = loadSchema();
+
+  private static final JsonFactory JSON = new JsonFactory();
+
+  private StructuredCardsParser() {}
+
+  /**
+   * Returns the cards per page number (1-based, as numbered in the prompt). Pages listed twice
+   * have their cards combined; cards with a blank question or answer are dropped.
+   *
+   * @throws IllegalArgumentException if the response is not valid JSON of the expected shape
+   */
+  public static Map<Integer, List<Card>> parse(String json) {
+    Map<Integer, List<Card>> out = new HashMap<>();
+    if (json == null || json.isBlank()) return out;
+
+    try (JsonParser p = JSON.createParser(json)) {
+      expect(p.nextToken(), JsonToken.START_OBJECT, p);
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.currentName();
+        p.nextToken();
+        if ("pages".equals(field) && p.currentToken() == JsonToken.START_ARRAY) {
+          while (p.nextToken() == JsonToken.START_OBJECT) {
+            readPage(p, out);
+          }
+        } else {
+          p.skipChildren();
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Structured response is not valid JSON: " + e.getMessage(), e);
+    }
+    return out;
+  }
+
+  private static void readPage(JsonParser p, Map<Integer, List<Card>> out) throws IOException {
+    int page = -1;
+    List<Card> cards = new ArrayList<>();
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.currentName();
+      p.nextToken();
+      if ("page".equals(field)) {
+        page = p.getValueAsInt(-1);
+      } else if ("cards".equals(field) && p.currentToken() == JsonToken.START_ARRAY) {
+        while (p.nextToken() == JsonToken.START_OBJECT) {
+          Card card = readCard(p);
+          if (card != null) cards.add(card);
+        }
+      } else {
+        p.skipChildren();
+      }
+    }
+    if (page >= 0) {
+      out.computeIfAbsent(page, k -> new ArrayList<>()).addAll(cards);
+    }
+  }
+
+  private static Card readCard(JsonParser p) throws IOException {
+    String q = null;
+    String a = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.currentName();
+      p.nextToken();
+      switch (field) {
+        case "q" -> q = p.getValueAsString();
+        case "a" -> a = p.getValueAsString();
+        default -> p.skipChildren();
+      }
+    }
+    if (q == null || q.isBlank() || a == null || a.isBlank()) return null;
+    return new Card("Untitled Card", q.strip() + "\n?\n" + a.strip() + "\n");
+  }
+
+  private static void expect(JsonToken actual, JsonToken expected, JsonParser p) throws IOException {
+    if (actual != expected) {
+      throw new IOException("expected " + expected + " but got " + actual + " at " + p.currentLocation());
+    }
+  }
+
+  private static JsonNode loadSchema() {
+    try (InputStream is = StructuredCardsParser.class.getClassLoader().getResourceAsStream("cards_schema.json")) {
+      if (is == null) throw new IOException("Classpath resource not found: cards_schema.json");
+      return new ObjectMapper().readTree(is);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
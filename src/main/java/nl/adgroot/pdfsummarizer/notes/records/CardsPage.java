@@ -12,7 +12,7 @@ public record CardsPage(
     String chapter
 ) {
 
-  private static final String SEPARATOR =
+  public static final String SEPARATOR =
       "\n\n--------------------------------------------------\n\n";
 
   // Canonical constructor (ensures mutable list + non-null strings)
@@ -40,7 +40,8 @@ public record CardsPage(
     return !content.isEmpty();
   }
 
-  private String getHashtag() {
+  /** The tag lines that end every chapter file. */
+  public String getHashtag() {
     return "#flashcards/" + topic + "\n" +
         "#flashcards/" + topic + "/" + chapter;
   }
@@ -3,8 +3,13 @@ package nl.adgroot.pdfsummarizer.pdf.parsing;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.metrics.JfrEvents.PdfPreparationEvent;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder.Span;
 import nl.adgroot.pdfsummarizer.pdf.reader.PdfBoxPdfSplitter;
 import nl.adgroot.pdfsummarizer.pdf.reader.PdfBoxTextExtractor;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -14,6 +19,8 @@ public class PdfPreparationService {
   private final PdfBoxTextExtractor extractor;
   private final PdfBoxPdfSplitter pdfSplitter;
   private final PreviewSelectionService selector = new PreviewSelectionService();
+  private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+  private long phaseStartNs;
 
   public PdfPreparationService(PdfBoxTextExtractor extractor, PdfBoxPdfSplitter pdfSplitter) {
     this.extractor = extractor;
@@ -26,14 +33,32 @@ public class PdfPreparationService {
   }
 
   public PreparedPdf loadAndPrepare(Path pdfPath, AppConfig cfg) throws IOException {
+    String file = pdfPath.getFileName().toString();
+    Span preparation = TraceRecorder.active().beginOnThread("prepare " + file, "pdf");
+    PdfPreparationEvent extract = begin();
+    Span extractSpan = preparation.child("extract", "pdf");
     List<String> pagesWithTOC = extractor.extractPages(pdfPath);
+    extractSpan.end();
+    commit(extract, file, "extract", pagesWithTOC.size(), 0);
+
+    PdfPreparationEvent split = begin();
+    Span splitSpan = preparation.child("split", "pdf");
     List<PDDocument> pdfPagesAll = pdfSplitter.splitInMemory(pdfPath);
+    splitSpan.end();
+    commit(split, file, "split", pdfPagesAll.size(), 0);
 
+    PdfPreparationEvent toc = begin();
+    Span tocSpan = preparation.child("toc", "pdf");
     ParsedPDF parsedPdf = new ParsedPDF(pagesWithTOC);
     List<Chapter> tableOfContent = parsedPdf.getTableOfContent();
     List<String> strippedPages = parsedPdf.getStrippedPages();
     int contentStartIndex = parsedPdf.getContentStartIndex();
     int offset = -tableOfContent.getFirst().start;
+    tocSpan.end();
+    commit(toc, file, "toc", strippedPages.size(), tableOfContent.size());
+
+    PdfPreparationEvent pages = begin();
+    Span pagesSpan = preparation.child("pages", "pdf");
 
     int chapterIdx = 0;
     Chapter currentChapter = tableOfContent.getFirst();
@@ -67,6 +92,9 @@ public class PdfPreparationService {
     }
 
     int total = allObjects.size();
+    pagesSpan.end();
+    commit(pages, file, "pages", total, tableOfContent.size());
+    preparation.arg("pages", total).arg("chapters", tableOfContent.size()).end();
     List<Integer> selectedIndexes = selector.selectIndexes(cfg, total);
 
     if (cfg != null && cfg.preview != null && cfg.preview.enabled) {
@@ -75,4 +103,28 @@ public class PdfPreparationService {
 
     return new PreparedPdf(tableOfContent, allObjects);
   }
+
+  /** Wall time of the phases (extract, split, toc, pages) of the last {@link #loadAndPrepare} call. */
+  public Map<String, Long> phaseNanos() {
+    return Map.copyOf(phaseNanos);
+  }
+
+  private PdfPreparationEvent begin() {
+    phaseStartNs = System.nanoTime();
+    PdfPreparationEvent event = new PdfPreparationEvent();
+    event.begin();
+    return event;
+  }
+
+  private void commit(PdfPreparationEvent event, String file, String phase, int pages, int chapters) {
+    event.end();
+    phaseNanos.put(phase, System.nanoTime() - phaseStartNs);
+    if (event.shouldCommit()) {
+      event.file = file;
+      event.phase = phase;
+      event.pages = pages;
+      event.chapters = chapters;
+      event.commit();
+    }
+  }
 }
\ No newline at end of file
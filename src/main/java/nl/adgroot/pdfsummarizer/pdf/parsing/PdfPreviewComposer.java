@@ -1,10 +1,13 @@
 package nl.adgroot.pdfsummarizer.pdf.parsing;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import nl.adgroot.pdfsummarizer.AppLogger;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -70,13 +73,21 @@ public class PdfPreviewComposer {
     return sb.toString();
   }
 
+  // Read from the classpath once; a daemon composes many previews with the same font
+  private static final Map<String, byte[]> FONT_BYTES = new ConcurrentHashMap<>();
+
   private static PDFont loadFont(PDDocument doc, String classpathResource) throws IOException {
-    try (InputStream is = PdfPreviewComposer.class.getResourceAsStream(classpathResource)) {
-      if (is == null) {
-        throw new IllegalStateException("Font not found on classpath: " + classpathResource);
+    byte[] bytes = FONT_BYTES.get(classpathResource);
+    if (bytes == null) {
+      try (InputStream is = PdfPreviewComposer.class.getResourceAsStream(classpathResource)) {
+        if (is == null) {
+          throw new IllegalStateException("Font not found on classpath: " + classpathResource);
+        }
+        bytes = is.readAllBytes();
       }
-      return PDType0Font.load(doc, is);
+      FONT_BYTES.putIfAbsent(classpathResource, bytes);
     }
+    return PDType0Font.load(doc, new ByteArrayInputStream(bytes));
   }
 
   private void writeWrappedText(PDDocument doc, PDRectangle mediaBox, String text, PDFont font) throws IOException {
@@ -0,0 +1,148 @@
+package nl.adgroot.pdfsummarizer.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
+
+/**
+ * Content-token budget for the requests that are about to be sent.
+ *
+ * <p>{@link #fixed(int)} always answers {@code maxTokensPerChunk}. {@link #adaptive(int, int)}
+ * hill-climbs over budget levels from {@code maxTokensPerChunk} down to {@code minTokensPerChunk}
+ * (each 20% below the previous). Every completed batch is attributed to the level closest to its
+ * size, and each level keeps a moving average of pages per second of server time. After a few
+ * batches at the current level, the budget steps to the neighbouring level. It steps back when
+ * that level turns out slower, and stays put when both neighbours are slower.
+ *
+ * <p>{@link ChapterProcessor} cuts each batch from its chapter's pending pages when the batch is
+ * dispatched, at the budget of that moment, so a change takes effect with the next batch whether
+ * the budget shrank or grew.
+ */
+public final class AdaptiveBatchBudget {
+
+  private static final AppLogger log = AppLogger.getLogger(AdaptiveBatchBudget.class);
+
+  // Completed batches at the current level before the next decision
+  private static final int SAMPLES_PER_DECISION = 3;
+  private static final double LEVEL_STEP = 0.8;
+  private static final double EWMA_ALPHA = 0.3;
+  // A neighbour must be this much faster to be worth moving to
+  private static final double MIN_GAIN = 1.03;
+
+  private final int[] levels;
+  private final double[] pagesPerSecond;
+  private final int[] samples;
+  private final boolean adaptive;
+
+  private int current;
+  private int direction = 1; // +1 = towards smaller budgets
+  private int samplesSinceDecision;
+
+  private AdaptiveBatchBudget(int[] levels, boolean adaptive) {
+    this.levels = levels;
+    this.pagesPerSecond = new double[levels.length];
+    this.samples = new int[levels.length];
+    this.adaptive = adaptive;
+  }
+
+  public static AdaptiveBatchBudget fixed(int maxTokens) {
+    return new AdaptiveBatchBudget(new int[] {Math.max(1, maxTokens)}, false);
+  }
+
+  public static AdaptiveBatchBudget adaptive(int minTokens, int maxTokens) {
+    int max = Math.max(1, maxTokens);
+    int min = Math.max(1, Math.min(minTokens, max));
+    List<Integer> levels = new ArrayList<>();
+    // Stop a full step above min, so the last two levels are not near-duplicates
+    for (double level = max; level * LEVEL_STEP >= min; level *= LEVEL_STEP) {
+      levels.add((int) Math.round(level));
+    }
+    levels.add(min);
+    return new AdaptiveBatchBudget(levels.stream().mapToInt(Integer::intValue).toArray(), true);
+  }
+
+  /** Largest estimated content tokens a request dispatched now may carry. */
+  public synchronized int current() {
+    return levels[current];
+  }
+
+  /**
+   * Records a completed batch.
+   *
+   * @param metrics server-reported timings, summed over all calls the batch needed
+   */
+  public void observe(int pages, int contentTokens, LlmMetrics metrics) {
+    if (!adaptive || pages <= 0 || metrics == null || metrics.totalDurationNs() <= 0) {
+      return;
+    }
+    double rate = pages / (metrics.totalDurationNs() / 1_000_000_000.0);
+
+    synchronized (this) {
+      int level = nearestLevel(contentTokens);
+      pagesPerSecond[level] = samples[level] == 0
+          ? rate
+          : EWMA_ALPHA * rate + (1 - EWMA_ALPHA) * pagesPerSecond[level];
+      samples[level]++;
+
+      if (level == current && ++samplesSinceDecision >= SAMPLES_PER_DECISION) {
+        samplesSinceDecision = 0;
+        decide();
+      }
+    }
+  }
+
+  private void decide() {
+    int back = current - direction;
+    if (measured(back) && pagesPerSecond[back] > pagesPerSecond[current]) {
+      direction = -direction;
+      move(back, "previous level was faster");
+      return;
+    }
+
+    int next = current + direction;
+    if (!inRange(next)) {
+      direction = -direction;
+      next = current + direction;
+    }
+    if (!inRange(next)) {
+      return; // single level
+    }
+    if (!measured(next)) {
+      move(next, "exploring");
+    } else if (pagesPerSecond[next] > pagesPerSecond[current] * MIN_GAIN) {
+      move(next, "neighbour is faster");
+    } else {
+      log.info("BUDGET hold tokens=%d at %.3f pages/s; neighbour tokens=%d at %.3f pages/s",
+          levels[current], pagesPerSecond[current], levels[next], pagesPerSecond[next]);
+    }
+  }
+
+  private void move(int to, String reason) {
+    log.info("BUDGET %d -> %d tokens (%s): %.3f pages/s at %d, %s at %d",
+        levels[current], levels[to], reason, pagesPerSecond[current], levels[current],
+        measured(to) ? String.format("%.3f pages/s", pagesPerSecond[to]) : "not measured",
+        levels[to]);
+    current = to;
+  }
+
+  private int nearestLevel(int contentTokens) {
+    double t = Math.log(Math.max(1, contentTokens));
+    int best = 0;
+    for (int i = 1; i < levels.length; i++) {
+      if (Math.abs(Math.log(levels[i]) - t) < Math.abs(Math.log(levels[best]) - t)) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  private boolean measured(int level) {
+    return inRange(level) && samples[level] >= SAMPLES_PER_DECISION;
+  }
+
+  private boolean inRange(int level) {
+    return level >= 0 && level < levels.length;
+  }
+}
@@ -3,7 +3,10 @@ package nl.adgroot.pdfsummarizer.pipeline;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 
+import nl.adgroot.pdfsummarizer.checkpoint.CheckpointJournal;
+import nl.adgroot.pdfsummarizer.checkpoint.DeadLetterQueue;
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 import nl.adgroot.pdfsummarizer.llm.LlmClient;
 import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
@@ -23,5 +26,74 @@ public record BatchContext(
     AppConfig cfg,
     String topic,
     ProgressTracker tracker,
-    Path outDir
-) {}
+    Path outDir,
+    DebugSink debug,
+    CheckpointJournal checkpoint,
+    DeadLetterQueue deadLetters,
+    FollowUpBudget followUps,
+    BatchScheduler scheduler,
+    TokenEstimator tokens,
+    AdaptiveBatchBudget batchBudget,
+    CancellationScope scope
+) {
+
+  /**
+   * Context without run-scoped services: debug output is discarded, nothing is journaled, failed
+   * batches are not parked for replay, missing pages are not re-asked, batches start as soon as
+   * they are submitted, tokens are estimated as ceil(length/4), the batch budget is fixed and the
+   * run has no deadline.
+   */
+  public BatchContext(
+      List<LlmClient> llms,
+      ServerPermitPool permits,
+      ExecutorService permitPoolExecutor,
+      ExecutorService cpuPoolExecutor,
+      PromptTemplates prompts,
+      AppConfig cfg,
+      String topic,
+      ProgressTracker tracker,
+      Path outDir
+  ) {
+    this(llms, permits, permitPoolExecutor, cpuPoolExecutor, prompts, cfg, topic, tracker, outDir,
+        DebugSink.disabled(), CheckpointJournal.disabled(), DeadLetterQueue.disabled(),
+        FollowUpBudget.disabled(), BatchScheduler.immediate(), TokenEstimator.fixed(),
+        AdaptiveBatchBudget.fixed(cfg.chunking.maxTokensPerChunk), CancellationScope.root("run"));
+  }
+
+  /**
+   * The run-scoped components a {@link #with} call may replace; each starts as the context's own.
+   */
+  public static final class Overrides {
+    public DebugSink debug;
+    public CheckpointJournal checkpoint;
+    public DeadLetterQueue deadLetters;
+    public FollowUpBudget followUps;
+    public BatchScheduler scheduler;
+    public TokenEstimator tokens;
+    public AdaptiveBatchBudget batchBudget;
+    public CancellationScope scope;
+
+    private Overrides(BatchContext ctx) {
+      debug = ctx.debug;
+      checkpoint = ctx.checkpoint;
+      deadLetters = ctx.deadLetters;
+      followUps = ctx.followUps;
+      scheduler = ctx.scheduler;
+      tokens = ctx.tokens;
+      batchBudget = ctx.batchBudget;
+      scope = ctx.scope;
+    }
+  }
+
+  /**
+   * Same context with the components {@code overrides} sets replaced, e.g.
+   * {@code ctx.with(o -> o.scope = chapterScope)} to scope batches below a chapter.
+   */
+  public BatchContext with(Consumer<Overrides> overrides) {
+    Overrides o = new Overrides(this);
+    overrides.accept(o);
+    return new BatchContext(llms, permits, permitPoolExecutor, cpuPoolExecutor, prompts, cfg, topic,
+        tracker, outDir, o.debug, o.checkpoint, o.deadLetters, o.followUps, o.scheduler, o.tokens,
+        o.batchBudget, o.scope);
+  }
+}
@@ -11,4 +11,17 @@ public interface BatchPipeline {
       String chapterTitle,
       List<PdfObject> batch
   );
+
+  /**
+   * Replays a batch that failed earlier. Pipelines with several stages can skip the stages whose
+   * output {@code failure} carries; by default the batch simply runs again.
+   */
+  default CompletableFuture<Map<Integer, List<String>>> resumeBatchAsync(
+      BatchContext ctx,
+      String chapterTitle,
+      List<PdfObject> batch,
+      StageFailedException failure
+  ) {
+    return processBatchAsync(ctx, chapterTitle, batch);
+  }
 }
@@ -0,0 +1,42 @@
+package nl.adgroot.pdfsummarizer.pipeline;
+
+import java.util.Locale;
+
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+
+/**
+ * Priority class of a batch in the {@link BatchScheduler}, highest first. Users read chapter files
+ * as they appear, so a preview, the chapters they asked for and the first chapters of the book go
+ * before the rest.
+ */
+public enum BatchPriority {
+  /** Pages of a preview run. */
+  PREVIEW,
+  /** Chapters listed in {@code chunking.priorityChapters}. */
+  SELECTED,
+  /** The first {@code chunking.earlyChapters} chapters of the table of contents. */
+  EARLY,
+  REST;
+
+  /**
+   * @param tocOrder position of the chapter in the table of contents, from 0
+   */
+  public static BatchPriority of(AppConfig cfg, int tocOrder, String chapterHeader) {
+    if (cfg.preview.enabled) {
+      return PREVIEW;
+    }
+    String header = chapterHeader == null ? "" : chapterHeader.toLowerCase(Locale.ROOT);
+    for (String selected : cfg.chunking.priorityChapters) {
+      if (selected != null && !selected.isBlank()
+          && header.contains(selected.strip().toLowerCase(Locale.ROOT))) {
+        return SELECTED;
+      }
+    }
+    return tocOrder < cfg.chunking.earlyChapters ? EARLY : REST;
+  }
+
+  /** The higher of two priorities, e.g. for a request packing pages of several chapters. */
+  public static BatchPriority max(BatchPriority a, BatchPriority b) {
+    return a.ordinal() <= b.ordinal() ? a : b;
+  }
+}
@@ -0,0 +1,228 @@
+package nl.adgroot.pdfsummarizer.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+
+/**
+ * Run-wide dispatcher for batches of all chapters.
+ *
+ * <p>Batches are collected up front and, once {@link #start()} is called, handed to the pipeline
+ * longest-processing-time first (largest estimated token count first; TOC order breaks ties).
+ * Only as many batches as there are server permits are in flight, so the order in which batches
+ * reach the servers is decided here rather than by whichever thread wins
+ * {@code ServerPermitPool.acquireAny}.
+ *
+ * <p>So that chapters can still be written early, a chapter whose other batches have all been
+ * dispatched gets its last batch dispatched next, ahead of the LPT order. Those are usually short
+ * tail batches, which barely affect the makespan.
+ *
+ * <p>{@link #bounded(int)} keeps submission order and starts right away; it only caps how many
+ * batches are handed to the pipeline ahead of free permits, so a large book does not materialise
+ * all of its requests at once.
+ *
+ * <p>With priorities (an aging step), the queue orders batches by {@link BatchPriority} first:
+ * each class is treated as if it had been queued one aging step later than the class above it.
+ * A higher-priority batch therefore jumps ahead of lower ones queued less than that long before
+ * it, but a batch never waits behind later arrivals for longer than its class's lag, so lower
+ * classes are not starved. Batches queued before {@link #start()} count as queued at the start.
+ */
+public class BatchScheduler {
+
+  private static final AppLogger log = AppLogger.getLogger(BatchScheduler.class);
+
+  private final class Task {
+    final long seq;
+    final String chapter;
+    final int estimatedTokens;
+    final BatchPriority priority;
+    final Supplier<CompletableFuture<Object>> work;
+    final CompletableFuture<Object> result = new CompletableFuture<>();
+    long queuedAtNs;
+
+    Task(long seq, String chapter, int estimatedTokens, BatchPriority priority,
+        Supplier<CompletableFuture<Object>> work) {
+      this.seq = seq;
+      this.chapter = chapter;
+      this.estimatedTokens = estimatedTokens;
+      this.priority = priority;
+      this.work = work;
+    }
+
+    /** When the batch is due, counting its class's lag; the queue order for prioritised dispatch. */
+    long dueNs() {
+      return queuedAtNs + priority.ordinal() * agingNs;
+    }
+  }
+
+  private static final Comparator<Task> LONGEST_FIRST = Comparator
+      .comparingInt((Task t) -> t.estimatedTokens).reversed()
+      .thenComparingLong(t -> t.seq);
+  private static final Comparator<Task> SUBMISSION_ORDER = Comparator.comparingLong(t -> t.seq);
+
+  private final int window;
+  private final boolean longestFirst;
+  // 0 = priorities ignored
+  private final long agingNs;
+  private final PriorityQueue<Task> queue;
+  private final Deque<Task> chapterTails = new ArrayDeque<>();
+  private final Map<String, Integer> undispatchedPerChapter = new HashMap<>();
+  private long nextSeq;
+  private int inFlight;
+  private boolean started;
+
+  private BatchScheduler(int window, boolean longestFirst, Duration aging) {
+    this.window = window;
+    this.longestFirst = longestFirst;
+    this.agingNs = aging == null || aging.isNegative() ? 0 : aging.toNanos();
+    Comparator<Task> order = longestFirst ? LONGEST_FIRST : SUBMISSION_ORDER;
+    // Due time differences below a millisecond are submission jitter, not priority
+    this.queue = new PriorityQueue<>(agingNs > 0
+        ? Comparator.comparingLong((Task t) -> t.dueNs() / 1_000_000).thenComparing(order)
+        : order);
+    // Only longest-first needs to see every batch before choosing
+    this.started = !longestFirst;
+  }
+
+  /** Runs every batch as soon as it is submitted, in submission order; the behaviour without a scheduler. */
+  public static BatchScheduler immediate() {
+    return new BatchScheduler(0, false, null);
+  }
+
+  /** Longest-processing-time-first dispatch with at most {@code window} batches in flight. */
+  public static BatchScheduler longestFirst(int window) {
+    return longestFirst(window, null);
+  }
+
+  /** {@link #longestFirst(int)} within each priority class, classes {@code aging} apart. */
+  public static BatchScheduler longestFirst(int window, Duration aging) {
+    return new BatchScheduler(Math.max(1, window), true, aging);
+  }
+
+  /** Submission-order dispatch with at most {@code window} batches in flight; no {@link #start()} needed. */
+  public static BatchScheduler bounded(int window) {
+    return bounded(window, null);
+  }
+
+  /** {@link #bounded(int)} within each priority class, classes {@code aging} apart. */
+  public static BatchScheduler bounded(int window, Duration aging) {
+    return new BatchScheduler(Math.max(1, window), false, aging);
+  }
+
+  /**
+   * Queues a batch. The returned future completes with the batch result once the batch has been
+   * dispatched and finished; with {@link #immediate()} the batch starts right away.
+   */
+  public <T> CompletableFuture<T> submit(String chapter, int estimatedTokens, Supplier<CompletableFuture<T>> work) {
+    return submit(chapter, estimatedTokens, BatchPriority.REST, work);
+  }
+
+  /** {@link #submit(String, int, Supplier)} in a priority class; ignored without an aging step. */
+  @SuppressWarnings("unchecked")
+  public <T> CompletableFuture<T> submit(
+      String chapter, int estimatedTokens, BatchPriority priority, Supplier<CompletableFuture<T>> work
+  ) {
+    if (window == 0) {
+      return work.get();
+    }
+
+    Task task;
+    synchronized (this) {
+      task = new Task(nextSeq++, chapter, estimatedTokens, priority,
+          () -> (CompletableFuture<Object>) work.get());
+      task.queuedAtNs = System.nanoTime();
+      queue.add(task);
+      undispatchedPerChapter.merge(chapter, 1, Integer::sum);
+    }
+    dispatchMore();
+    return (CompletableFuture<T>) task.result;
+  }
+
+  /** Starts dispatching; call once every chapter has submitted its batches. */
+  public void start() {
+    if (!longestFirst) return;
+    synchronized (this) {
+      if (started) return;
+      started = true;
+      if (agingNs > 0) {
+        // Everything planned so far is queued as of now; re-add, as due times are heap keys
+        List<Task> planned = new ArrayList<>(queue);
+        queue.clear();
+        long now = System.nanoTime();
+        planned.forEach(t -> t.queuedAtNs = now);
+        queue.addAll(planned);
+        logPriorities(planned);
+      }
+      if (!queue.isEmpty()) {
+        int largest = queue.stream().mapToInt(t -> t.estimatedTokens).max().orElse(0);
+        log.info("SCHEDULER longest-first: %d batches across %d chapters, window=%d, largest≈%d tokens",
+            queue.size(), undispatchedPerChapter.size(), window, largest);
+      }
+    }
+    dispatchMore();
+  }
+
+  private void logPriorities(List<Task> planned) {
+    Map<BatchPriority, Integer> perClass = new EnumMap<>(BatchPriority.class);
+    planned.forEach(t -> perClass.merge(t.priority, 1, Integer::sum));
+    log.info("SCHEDULER priorities: %s, aging=%ds per class", perClass, agingNs / 1_000_000_000);
+  }
+
+  private void dispatchMore() {
+    List<Task> toRun = new ArrayList<>();
+    synchronized (this) {
+      if (!started) return;
+      while (inFlight < window) {
+        Task next = chapterTails.isEmpty() ? queue.poll() : chapterTails.poll();
+        if (next == null) break;
+        inFlight++;
+        markDispatched(next);
+        toRun.add(next);
+      }
+    }
+    toRun.forEach(this::run);
+  }
+
+  /** Caller holds the lock. */
+  private void markDispatched(Task task) {
+    int left = undispatchedPerChapter.merge(task.chapter, -1, Integer::sum);
+    if (left == 1 && longestFirst) {
+      // Promote the chapter's last batch so the chapter can be written as soon as possible
+      for (Task t : queue) {
+        if (t.chapter.equals(task.chapter)) {
+          queue.remove(t);
+          chapterTails.add(t);
+          break;
+        }
+      }
+    }
+  }
+
+  private void run(Task task) {
+    CompletableFuture<Object> f;
+    try {
+      f = task.work.get();
+    } catch (RuntimeException e) {
+      f = CompletableFuture.failedFuture(e);
+    }
+    f.whenComplete((res, ex) -> {
+      synchronized (this) {
+        inFlight--;
+      }
+      dispatchMore();
+      if (ex != null) task.result.completeExceptionally(ex);
+      else task.result.complete(res);
+    });
+  }
+}
@@ -0,0 +1,216 @@
+package nl.adgroot.pdfsummarizer.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+
+/**
+ * One node of a run's cancellation tree: run → chapter → batch → stage. Cancelling a scope
+ * cancels all of its children and fails every future bound to it or to a descendant with the
+ * cancellation cause. LLM futures are bound at stage level, and failing them hangs up their HTTP
+ * call, so the server stops generating for a batch nobody waits for any more.
+ *
+ * <p>A scope with a deadline cancels itself with a {@link TimeoutException} when the deadline
+ * passes before it is closed. Closing a scope detaches it from its parent without cancelling
+ * anything. This is the tree {@code StructuredTaskScope} would give, built for the
+ * {@link CompletableFuture} chains the pipelines already are.
+ */
+public final class CancellationScope implements AutoCloseable {
+
+  private static final AppLogger log = AppLogger.getLogger(CancellationScope.class);
+
+  private static final ScheduledThreadPoolExecutor DEADLINES = createDeadlineTimer();
+
+  private final String name;
+  private final CancellationScope parent;
+  private final Set<CancellationScope> children = new LinkedHashSet<>();
+  private final List<Runnable> onCancel = new ArrayList<>();
+  // Undo the registrations of linkedChild with scopes other than the parent
+  private final List<Runnable> unlinks = new ArrayList<>();
+  private volatile Throwable cause;
+  private ScheduledFuture<?> deadline;
+  private boolean closed;
+
+  private CancellationScope(String name, CancellationScope parent) {
+    this.name = name;
+    this.parent = parent;
+  }
+
+  public static CancellationScope root(String name) {
+    return new CancellationScope(name, null);
+  }
+
+  public static CancellationScope root(String name, Duration deadline) {
+    CancellationScope scope = root(name);
+    scope.startDeadline(deadline);
+    return scope;
+  }
+
+  public CancellationScope child(String childName) {
+    return child(childName, null);
+  }
+
+  /** @param deadline time the child may stay open; {@code null} or non-positive for none */
+  public CancellationScope child(String childName, Duration deadline) {
+    CancellationScope child = new CancellationScope(childName, this);
+    Throwable inherited;
+    synchronized (this) {
+      inherited = cause;
+      if (inherited == null) children.add(child);
+    }
+    if (inherited != null) {
+      child.cancel(inherited);
+    } else {
+      child.startDeadline(deadline);
+    }
+    return child;
+  }
+
+  /**
+   * A child of this scope that the {@code links} cancel as well, with their own cause: for work
+   * shared by several subtrees, such as one request for the pages of several chapters. Closing it
+   * detaches it from all of them.
+   */
+  public CancellationScope linkedChild(String childName, List<CancellationScope> links) {
+    CancellationScope child = child(childName);
+    for (CancellationScope link : links) {
+      Runnable cancelChild = () -> child.cancel(link.cause);
+      if (!link.register(cancelChild)) {
+        child.cancel(link.cause);
+        continue;
+      }
+      synchronized (child) {
+        child.unlinks.add(() -> link.unregister(cancelChild));
+      }
+    }
+    return child;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public boolean isCancelled() {
+    return cause != null;
+  }
+
+  /** Why this scope was cancelled, or {@code null} while it is not. */
+  public Throwable cause() {
+    return cause;
+  }
+
+  /** Cancels this scope and everything below it. Only the first cause counts. */
+  public void cancel(Throwable reason) {
+    List<CancellationScope> kids;
+    List<Runnable> callbacks;
+    synchronized (this) {
+      if (cause != null) return;
+      cause = reason;
+      kids = new ArrayList<>(children);
+      callbacks = new ArrayList<>(onCancel);
+      children.clear();
+      onCancel.clear();
+      if (deadline != null) deadline.cancel(false);
+    }
+    kids.forEach(k -> k.cancel(reason));
+    for (Runnable callback : callbacks) {
+      try {
+        callback.run();
+      } catch (RuntimeException e) {
+        log.warn("CANCEL callback of scope '%s' failed: %s", name, e);
+      }
+    }
+  }
+
+  /** Cancels with a {@link CancellationException} naming this scope and the reason. */
+  public void cancel(String reason) {
+    cancel(new CancellationException(name + " cancelled: " + reason));
+  }
+
+  /**
+   * Fails {@code future} with the cancellation cause when this scope is cancelled before the
+   * future completes. Fails it right away when the scope already is.
+   */
+  public <T> CompletableFuture<T> bind(CompletableFuture<T> future) {
+    Runnable fail = () -> future.completeExceptionally(cause);
+    if (!register(fail)) {
+      fail.run();
+      return future;
+    }
+    future.whenComplete((r, ex) -> unregister(fail));
+    return future;
+  }
+
+  /** A future that is already failed with the cancellation cause. */
+  public <T> CompletableFuture<T> failed() {
+    return CompletableFuture.failedFuture(cause);
+  }
+
+  /** Detaches this scope from its parent and stops its deadline. Does not cancel anything. */
+  @Override
+  public void close() {
+    List<Runnable> links;
+    synchronized (this) {
+      if (closed) return;
+      closed = true;
+      onCancel.clear();
+      links = new ArrayList<>(unlinks);
+      unlinks.clear();
+      if (deadline != null) deadline.cancel(false);
+    }
+    if (parent != null) parent.detach(this);
+    links.forEach(Runnable::run);
+  }
+
+  private synchronized boolean register(Runnable callback) {
+    if (cause != null) return false;
+    onCancel.add(callback);
+    return true;
+  }
+
+  private synchronized void unregister(Runnable callback) {
+    onCancel.remove(callback);
+  }
+
+  private synchronized void detach(CancellationScope child) {
+    children.remove(child);
+  }
+
+  private void startDeadline(Duration after) {
+    if (after == null || after.isZero() || after.isNegative()) return;
+    ScheduledFuture<?> timer = DEADLINES.schedule(
+        () -> {
+          log.warn("DEADLINE %s exceeded %s", name, after);
+          cancel(new TimeoutException(name + " exceeded its deadline of " + after));
+        },
+        after.toMillis(), TimeUnit.MILLISECONDS);
+    synchronized (this) {
+      if (closed || cause != null) {
+        timer.cancel(false);
+      } else {
+        deadline = timer;
+      }
+    }
+  }
+
+  private static ScheduledThreadPoolExecutor createDeadlineTimer() {
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "deadline-timer");
+      t.setDaemon(true);
+      return t;
+    });
+    // Batches finish well before their deadline: do not keep thousands of dead timers queued
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+}
@@ -1,13 +1,25 @@
 package nl.adgroot.pdfsummarizer.pipeline;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.checkpoint.records.DeadLetter;
+import nl.adgroot.pdfsummarizer.notes.IncrementalChapterWriter;
 import nl.adgroot.pdfsummarizer.notes.NotesWriter;
 import nl.adgroot.pdfsummarizer.notes.records.CardsPage;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
@@ -24,6 +36,78 @@ public class ChapterProcessor {
       BatchContext ctx,
       ExecutorService writerPool,
       NotesWriter writer
+  ) {
+    ChapterRun run = prepareChapter(0, chapter, pages, ctx, writer);
+    scheduleChapterBatches(run, pipeline, ctx, writerPool);
+    return finishChapter(run, ctx, writerPool, writer);
+  }
+
+  /**
+   * Schedules every chapter of a run. With {@code chunking.packSmallChapters}, chapters whose
+   * pending pages stay below {@code minTokensPerChunk} are packed first-fit-decreasing into shared
+   * requests of at most {@code maxTokensPerChunk}, so a book of one-page sections does not pay for
+   * the prompt template once per section. The cards are split back per chapter by page index.
+   * Every batch is submitted with the {@link BatchPriority} of its chapter's place in the TOC.
+   */
+  public List<CompletableFuture<Void>> processChaptersAsync(
+      List<Chapter> chapters,
+      List<PdfObject> pages,
+      BatchPipeline pipeline,
+      BatchContext ctx,
+      ExecutorService writerPool,
+      NotesWriter writer
+  ) {
+    List<ChapterRun> runs = new ArrayList<>(chapters.size());
+    for (int i = 0; i < chapters.size(); i++) {
+      runs.add(prepareChapter(i, chapters.get(i), pages, ctx, writer));
+    }
+
+    if (!ctx.cfg().chunking.packSmallChapters || !ctx.cfg().ollama.localBatching) {
+      List<CompletableFuture<Void>> chapterWrites = new ArrayList<>(runs.size());
+      for (ChapterRun run : runs) {
+        scheduleChapterBatches(run, pipeline, ctx, writerPool);
+        chapterWrites.add(finishChapter(run, ctx, writerPool, writer));
+      }
+      return chapterWrites;
+    }
+
+    int minTokens = ctx.cfg().chunking.minTokensPerChunk;
+    int maxTokens = Math.max(1, ctx.cfg().chunking.maxTokensPerChunk);
+    List<ChapterRun> small = runs.stream()
+        .filter(r -> !r.pendingPages().isEmpty() && ctx.tokens().estimatePages(r.pendingPages()) < minTokens)
+        .toList();
+
+    Set<String> packed = new HashSet<>();
+    for (List<ChapterRun> bin : packFirstFitDecreasing(small, maxTokens, ctx.tokens())) {
+      if (bin.size() < 2) continue; // nothing to share: scheduled as a normal chapter below
+      bin.forEach(r -> packed.add(r.header()));
+      schedulePackedBatch(bin, pipeline, ctx, writerPool);
+    }
+
+    List<CompletableFuture<Void>> chapterWrites = new ArrayList<>(runs.size());
+    for (ChapterRun run : runs) {
+      if (!packed.contains(run.header())) {
+        scheduleChapterBatches(run, pipeline, ctx, writerPool);
+      }
+      chapterWrites.add(finishChapter(run, ctx, writerPool, writer));
+    }
+    return chapterWrites;
+  }
+
+  /** A chapter being processed: its pages, the ones still needing the LLM and its batch futures. */
+  private record ChapterRun(
+      int order,
+      String header,
+      List<PdfObject> pagesInChapter,
+      List<PdfObject> pendingPages,
+      IncrementalChapterWriter chapterFile,
+      List<CompletableFuture<Void>> batchFutures,
+      CancellationScope scope,
+      BatchPriority priority
+  ) {}
+
+  private static ChapterRun prepareChapter(
+      int order, Chapter chapter, List<PdfObject> pages, BatchContext ctx, NotesWriter writer
   ) {
     final String chapterHeader = chapter.header;
     log.info("Scheduling chapter: " + chapterHeader);
@@ -32,22 +116,409 @@ public class ChapterProcessor {
         .filter(p -> chapterHeader.equals(p.getChapter()))
         .toList();
 
-    List<List<PdfObject>> batches = buildBatches(ctx, chapterHeader, pagesInChapter);
+    IncrementalChapterWriter chapterFile = ctx.cfg().output.incrementalChapterFiles
+        ? writer.openChapter(ctx.outDir(), ctx.topic(), chapterHeader,
+            pagesInChapter.stream().map(PdfObject::getIndex).toList())
+        : null;
+
+    List<PdfObject> pendingPages = restoreFromCheckpoint(pagesInChapter, chapterHeader, ctx);
+    if (chapterFile != null && pendingPages.size() < pagesInChapter.size()) {
+      Set<PdfObject> pending = new HashSet<>(pendingPages);
+      appendToChapterFile(chapterFile, pagesInChapter.stream().filter(p -> !pending.contains(p)).toList(), ctx);
+    }
+    return new ChapterRun(order, chapterHeader, pagesInChapter, pendingPages, chapterFile,
+        new ArrayList<>(), ctx.scope().child("chapter '" + chapterHeader + "'"),
+        BatchPriority.of(ctx.cfg(), order, chapterHeader));
+  }
+
+  private static void scheduleChapterBatches(
+      ChapterRun run, BatchPipeline pipeline, BatchContext ctx, ExecutorService writerPool
+  ) {
+    BatchContext chapterCtx = ctx.with(o -> o.scope = run.scope());
+    List<List<PdfObject>> planned = buildBatches(ctx, run.header(), run.pendingPages());
+    PendingPages pending = new PendingPages(run.pendingPages(), planned.size());
+    for (List<PdfObject> plan : planned) {
+      Supplier<List<PdfObject>> batch = ctx.cfg().ollama.localBatching
+          ? () -> pending.take(ctx.batchBudget().current(), ctx.tokens())
+          : () -> plan;
+      CompletableFuture<SentBatch> sent = runBatch(pipeline, chapterCtx, run.header(), run.priority(),
+          ctx.tokens().estimatePages(plan), batch);
+      run.batchFutures().add(applyBatch(sent, run, ctx, writerPool));
+    }
+  }
+
+  /**
+   * The pending pages of a chapter, handed out as its batches are dispatched. A batch is cut with
+   * the token budget and the calibrated estimate of that moment, not the ones it was planned with,
+   * so it may take more or fewer pages than planned. The chapter's last batch takes whatever is left, which
+   * {@link #dispatch} splits if it no longer fits; a batch that finds nothing left is not sent.
+   */
+  private static final class PendingPages {
+    private final Deque<PdfObject> pages;
+    private int batchesLeft;
+
+    PendingPages(List<PdfObject> pages, int batches) {
+      this.pages = new ArrayDeque<>(pages);
+      this.batchesLeft = batches;
+    }
 
-    List<CompletableFuture<Void>> batchFutures = new ArrayList<>(batches.size());
-    for (List<PdfObject> batch : batches) {
-      CompletableFuture<Void> bf = pipeline.processBatchAsync(ctx, chapterHeader, batch)
-          .thenAcceptAsync(cards -> applyBatchResults(cards, batch, chapterHeader, ctx.topic()),
-              writerPool)
-          .whenComplete((res, ex) -> {
-            if (ex != null) log.error("Batch failed in chapter '" + chapterHeader + "': " + ex);
+    synchronized List<PdfObject> take(int maxTokens, TokenEstimator estimator) {
+      boolean last = --batchesLeft <= 0;
+      List<PdfObject> batch = new ArrayList<>();
+      int tokens = 0;
+      while (!pages.isEmpty()) {
+        int pageTokens = estimator.estimate(pages.peekFirst().getTextReadFromPdf());
+        // Always at least one page per batch
+        if (!last && !batch.isEmpty() && tokens + pageTokens > maxTokens) break;
+        batch.add(pages.pollFirst());
+        tokens += pageTokens;
+      }
+      return batch;
+    }
+  }
+
+  /** The pages a batch went out with and the cards that came back for them. */
+  private record SentBatch(List<PdfObject> pages, Map<Integer, List<String>> cards) {}
+
+  /** Sends the pending pages of several small chapters as one request, each page labelled with its section. */
+  private static void schedulePackedBatch(
+      List<ChapterRun> bin, BatchPipeline pipeline, BatchContext ctx, ExecutorService writerPool
+  ) {
+    List<PdfObject> batch = new ArrayList<>();
+    List<String> headers = new ArrayList<>(bin.size());
+    BatchPriority priority = BatchPriority.REST;
+    int chars = 0;
+    for (ChapterRun run : bin) {
+      batch.addAll(run.pendingPages());
+      headers.add(run.header());
+      priority = BatchPriority.max(priority, run.priority());
+      for (PdfObject p : run.pendingPages()) {
+        chars += p.getTextReadFromPdf() == null ? 0 : p.getTextReadFromPdf().length();
+      }
+    }
+    String label = String.join(" | ", headers);
+    int basePromptTokens = estimateBasePromptTokens(ctx, label);
+    int contentTokens = ctx.tokens().estimatePages(batch);
+    int sectionLineTokens = batch.stream()
+        .mapToInt(p -> ctx.tokens().estimate("Section: " + p.getChapter() + "\n"))
+        .sum();
+    log.info("PACKED sections=%d pages=%s chars=%d contentTokens≈%d promptTokens≈%d savedPromptTokens≈%d",
+        bin.size(), batch.stream().map(PdfObject::getIndex).toList(), chars, contentTokens,
+        basePromptTokens + contentTokens + sectionLineTokens, (bin.size() - 1) * basePromptTokens);
+
+    // Cancelling any member chapter cancels the shared request, like any batch of that chapter
+    CancellationScope scope = ctx.scope().linkedChild("packed '" + label + "'",
+        bin.stream().map(ChapterRun::scope).toList());
+    CompletableFuture<SentBatch> sent = runBatch(pipeline, ctx.with(o -> o.scope = scope), label, priority,
+        contentTokens, () -> batch);
+    sent.whenComplete((r, ex) -> scope.close());
+    for (ChapterRun run : bin) {
+      run.batchFutures().add(applyBatch(sent, run, ctx, writerPool));
+    }
+  }
+
+  /**
+   * First-fit-decreasing over the packed size of whole chapters: largest chapter first, each into
+   * the first bin it still fits in. Chapters within a bin keep their TOC order.
+   */
+  private static List<List<ChapterRun>> packFirstFitDecreasing(
+      List<ChapterRun> chapters, int maxTokens, TokenEstimator estimator
+  ) {
+    Map<String, Integer> sizes = new HashMap<>();
+    chapters.forEach(r -> sizes.put(r.header(), packedTokens(r, estimator)));
+    List<ChapterRun> bySize = new ArrayList<>(chapters);
+    bySize.sort(Comparator.comparingInt((ChapterRun r) -> sizes.get(r.header())).reversed());
+
+    List<List<ChapterRun>> bins = new ArrayList<>();
+    List<Integer> loads = new ArrayList<>();
+    for (ChapterRun run : bySize) {
+      int tokens = sizes.get(run.header());
+      int target = -1;
+      for (int i = 0; i < bins.size(); i++) {
+        if (loads.get(i) + tokens <= maxTokens) {
+          target = i;
+          break;
+        }
+      }
+      if (target < 0) {
+        bins.add(new ArrayList<>());
+        loads.add(0);
+        target = bins.size() - 1;
+      }
+      bins.get(target).add(run);
+      loads.set(target, loads.get(target) + tokens);
+    }
+
+    bins.forEach(bin -> bin.sort(Comparator.comparingInt(ChapterRun::order)));
+    return bins;
+  }
+
+  /**
+   * What a chapter adds to a packed request: the content tokens of its pending pages, the
+   * {@code Section:} line in front of each of them, and its header in the prompt's section list.
+   * The template itself is sent once per request and, as for any batch, is not counted against
+   * the content budget.
+   */
+  private static int packedTokens(ChapterRun run, TokenEstimator estimator) {
+    int sectionLine = estimator.estimate("Section: " + run.header() + "\n");
+    return estimator.estimatePages(run.pendingPages())
+        + run.pendingPages().size() * sectionLine
+        + estimator.estimate(" | " + run.header());
+  }
+
+  /**
+   * Primary call through the scheduler, then dead-letter replay and follow-up re-ask. Each of them
+   * runs in its own batch scope below {@code ctx.scope()}, whose deadline starts when it is sent.
+   * The pages are taken from {@code batchAtDispatch} once the scheduler dispatches the batch;
+   * {@code plannedTokens} only orders it in the queue.
+   */
+  private static CompletableFuture<SentBatch> runBatch(
+      BatchPipeline pipeline, BatchContext ctx, String label, BatchPriority priority,
+      int plannedTokens, Supplier<List<PdfObject>> batchAtDispatch
+  ) {
+    AtomicReference<List<PdfObject>> sent = new AtomicReference<>(List.of());
+    CompletableFuture<Map<Integer, List<String>>> primary = ctx.scheduler().submit(
+        label, plannedTokens, priority, () -> {
+          List<PdfObject> batch = batchAtDispatch.get();
+          sent.set(batch);
+          if (batch.isEmpty()) {
+            return CompletableFuture.completedFuture(Map.of());
+          }
+          return inBatchScope(ctx, label, batchCtx -> dispatch(pipeline, batchCtx, label, batch));
+        });
+    ctx.deadLetters().track(primary);
+
+    return primary
+        .exceptionallyCompose(ex -> deadLetter(ex, pipeline, ctx, label, sent.get()))
+        .thenCompose(cards -> reaskMissingPages(cards, pipeline, ctx, label, sent.get()))
+        .thenApply(cards -> new SentBatch(sent.get(), cards));
+  }
+
+  /**
+   * Sends a batch that was sized before the latest server reports. When the calibrated estimate now
+   * puts it over the current token budget ({@code maxTokensPerChunk}, or less with an adaptive
+   * budget), it goes out as several smaller requests whose cards are merged.
+   */
+  private static CompletableFuture<Map<Integer, List<String>>> dispatch(
+      BatchPipeline pipeline, BatchContext ctx, String label, List<PdfObject> batch
+  ) {
+    int budget = ctx.batchBudget().current();
+    if (batch.size() < 2 || ctx.tokens().estimatePages(batch) <= budget) {
+      return pipeline.processBatchAsync(ctx, label, batch);
+    }
+
+    List<List<PdfObject>> parts = splitIntoBatchesByEstimatedTokens(label, batch, budget,
+        estimateBasePromptTokens(ctx, label), ctx.tokens());
+    log.info("RESPLIT chapter='%s' pages=%s into %d requests (budget %d tokens, calibrated factor %.2f)",
+        label, batch.stream().map(PdfObject::getIndex).toList(), parts.size(), budget,
+        ctx.tokens().factor());
+
+    List<CompletableFuture<Map<Integer, List<String>>>> calls = parts.stream()
+        // Parts share the batch scope: the deadline covers the batch, however it is split
+        .map(part -> pipeline.processBatchAsync(ctx, label, part))
+        .toList();
+    return CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0]))
+        .<Map<Integer, List<String>>>thenApply(v -> {
+          Map<Integer, List<String>> merged = new HashMap<>();
+          calls.forEach(c -> merged.putAll(c.join()));
+          return merged;
+        })
+        .exceptionallyCompose(ex -> {
+          // Stage outputs of one part say nothing about the whole batch: a replay starts over
+          Throwable cause = PagePipeline.unwrap(ex);
+          String stage = cause instanceof StageFailedException sfe ? sfe.stage() : "single";
+          Throwable root = cause instanceof StageFailedException sfe ? sfe.getCause() : cause;
+          return CompletableFuture.failedFuture(new StageFailedException(stage, null, null, root));
+        });
+  }
+
+  /**
+   * Runs {@code call} with a batch scope below {@code ctx.scope()}, bounded by
+   * {@code execution.batchDeadlineMinutes}. A batch whose chapter or run is already cancelled
+   * fails without waiting for a server permit, and a cancelled batch fails at once instead of when
+   * its last stage notices.
+   */
+  private static <T> CompletableFuture<T> inBatchScope(
+      BatchContext ctx, String label, Function<BatchContext, CompletableFuture<T>> call
+  ) {
+    long deadlineMinutes = ctx.cfg().execution.batchDeadlineMinutes;
+    CancellationScope scope = ctx.scope().child("batch '" + label + "'",
+        deadlineMinutes > 0 ? Duration.ofMinutes(deadlineMinutes) : null);
+    if (scope.isCancelled()) {
+      scope.close();
+      return scope.failed();
+    }
+    CompletableFuture<T> result;
+    try {
+      result = call.apply(ctx.with(o -> o.scope = scope));
+    } catch (RuntimeException e) {
+      scope.close();
+      throw e;
+    }
+    // Bound to a copy: failing the pipeline's own future would skip its permit release
+    return scope.bind(result.thenApply(r -> r)).whenComplete((r, ex) -> scope.close());
+  }
+
+  /** Applies the cards of one chapter's pages in a (possibly shared) batch and journals them. */
+  private static CompletableFuture<Void> applyBatch(
+      CompletableFuture<SentBatch> sent,
+      ChapterRun run,
+      BatchContext ctx,
+      ExecutorService writerPool
+  ) {
+    String chapterHeader = run.header();
+    return sent
+        .thenAcceptAsync(batch -> {
+          List<PdfObject> pages = batch.pages().stream()
+              .filter(p -> chapterHeader.equals(p.getChapter()))
+              .toList();
+          if (pages.isEmpty()) return;
+          applyBatchResults(batch.cards(), pages, chapterHeader, ctx.topic());
+          ctx.checkpoint().record(chapterHeader, pages, batch.cards());
+          if (run.chapterFile() != null) {
+            long startNs = System.nanoTime();
+            appendToChapterFile(run.chapterFile(), pages, ctx);
+            ctx.tracker().recordWrite(System.nanoTime() - startNs);
+          }
+        }, writerPool)
+        .whenComplete((res, ex) -> {
+          if (ex != null) log.error("Batch failed in chapter '" + chapterHeader + "': " + ex);
+        });
+  }
+
+  private static CompletableFuture<Void> finishChapter(
+      ChapterRun run, BatchContext ctx, ExecutorService writerPool, NotesWriter writer
+  ) {
+    CompletableFuture<Void> all = CompletableFuture.allOf(run.batchFutures().toArray(new CompletableFuture<?>[0]));
+    CompletableFuture<Void> written;
+    if (run.chapterFile() != null) {
+      // Failed batches count as pages without cards, so the rest of the chapter is still written
+      written = all.whenCompleteAsync((v, ex) -> {
+        long startNs = System.nanoTime();
+        finishChapterFile(run.chapterFile(), run.pagesInChapter(), run.header(), ctx);
+        ctx.tracker().recordWrite(System.nanoTime() - startNs);
+      }, writerPool);
+    } else {
+      written = all.thenAcceptAsync(v -> {
+        long startNs = System.nanoTime();
+        writeChapterFile(run.pagesInChapter(), run.header(), ctx, writer);
+        ctx.tracker().recordWrite(System.nanoTime() - startNs);
+      }, writerPool);
+    }
+    return written.whenComplete((v, ex) -> run.scope().close());
+  }
+
+  /**
+   * Sends the pages a batched response left without cards back to the LLM in one follow-up batch
+   * and merges what comes back. Only pages with enough text to be expected to yield cards are
+   * re-asked, each batch gets at most one follow-up, and the run-wide budget bounds the total.
+   */
+  private static CompletableFuture<Map<Integer, List<String>>> reaskMissingPages(
+      Map<Integer, List<String>> cards,
+      BatchPipeline pipeline,
+      BatchContext ctx,
+      String chapterHeader,
+      List<PdfObject> batch
+  ) {
+    if (batch.size() < 2 || !ctx.cfg().followUp.enabled) {
+      return CompletableFuture.completedFuture(cards);
+    }
+
+    int minChars = ctx.cfg().followUp.minPageChars;
+    List<PdfObject> missing = batch.stream()
+        .filter(p -> cards.getOrDefault(p.getIndex(), List.of()).isEmpty())
+        .filter(p -> p.getTextReadFromPdf() != null && p.getTextReadFromPdf().strip().length() >= minChars)
+        .toList();
+    if (missing.isEmpty() || missing.size() == batch.size()) {
+      // Nothing missing, or nothing came back at all: a re-ask would just repeat the batch
+      return CompletableFuture.completedFuture(cards);
+    }
+    if (!ctx.followUps().tryAcquire()) {
+      log.warn("FOLLOW-UP budget spent; chapter='%s' pages=%s keep no cards", chapterHeader,
+          missing.stream().map(PdfObject::getIndex).toList());
+      return CompletableFuture.completedFuture(cards);
+    }
+
+    log.info("FOLLOW-UP chapter='%s' pages=%s (%d/%d of budget)", chapterHeader,
+        missing.stream().map(PdfObject::getIndex).toList(), ctx.followUps().used(),
+        ctx.followUps().maxRequests());
+    ctx.tracker().reopenPages(missing.size());
+    int missingTokens = ctx.tokens().estimatePages(missing);
+    ctx.tracker().eta().plan(missingTokens);
+
+    return inBatchScope(ctx, chapterHeader, batchCtx -> pipeline.processBatchAsync(batchCtx, chapterHeader, missing))
+        .handle((followUp, ex) -> {
+          if (ex != null) {
+            log.warn("FOLLOW-UP failed in chapter '%s': %s", chapterHeader, ex);
+            ctx.tracker().finishBatch(missing.size(), null);
+            ctx.tracker().eta().settle(missingTokens);
+            return cards;
+          }
+          Map<Integer, List<String>> merged = new HashMap<>(cards);
+          followUp.forEach((index, pageCards) -> {
+            if (!pageCards.isEmpty()) merged.put(index, pageCards);
           });
-      batchFutures.add(bf);
+          return merged;
+        });
+  }
+
+  /** Parks a batch that failed all stage retries; it is replayed once the main workload drains. */
+  private static CompletableFuture<Map<Integer, List<String>>> deadLetter(
+      Throwable ex, BatchPipeline pipeline, BatchContext ctx, String chapterHeader, List<PdfObject> batch
+  ) {
+    Throwable cause = PagePipeline.unwrap(ex);
+    StageFailedException failure = cause instanceof StageFailedException sfe
+        ? sfe
+        : new StageFailedException("single", null, null, cause);
+
+    DeadLetter letter = new DeadLetter(
+        chapterHeader,
+        batch.stream().map(PdfObject::getIndex).toList(),
+        failure.stage(),
+        failure.concepts(),
+        failure.rawCards(),
+        String.valueOf(failure.getCause()),
+        System.currentTimeMillis());
+    return ctx.deadLetters().defer(letter, ex,
+        () -> inBatchScope(ctx, chapterHeader,
+            batchCtx -> pipeline.resumeBatchAsync(batchCtx, chapterHeader, batch, failure)));
+  }
+
+  /**
+   * Applies journaled results to pages that already completed in an interrupted run and returns
+   * the pages that still need the LLM.
+   */
+  private static List<PdfObject> restoreFromCheckpoint(
+      List<PdfObject> pagesInChapter, String chapterHeader, BatchContext ctx
+  ) {
+    if (ctx.checkpoint().restorableCount() == 0) {
+      return pagesInChapter;
+    }
+
+    List<PdfObject> pending = new ArrayList<>();
+    int restored = 0;
+    for (PdfObject p : pagesInChapter) {
+      var entry = ctx.checkpoint().lookup(p);
+      if (entry.isEmpty()) {
+        pending.add(p);
+        continue;
+      }
+      var e = entry.get();
+      if (e.concepts() != null || e.rawCards() != null) {
+        p.setStageDebugInfo(new PdfObject.StageDebugInfo(
+            e.concepts() == null ? "" : e.concepts(),
+            e.rawCards() == null ? "" : e.rawCards()));
+      }
+      applyPageResults(p, e.cards().getOrDefault(p.getIndex(), List.of()), chapterHeader, ctx.topic());
+      restored++;
     }
 
-    return CompletableFuture.allOf(batchFutures.toArray(new CompletableFuture[0]))
-        .thenAcceptAsync(v -> writeChapterFile(pagesInChapter, chapterHeader, ctx, writer),
-            writerPool);
+    if (restored > 0) {
+      ctx.tracker().restorePages(restored);
+      ctx.tracker().eta().settle(ctx.tokens().estimatePages(pagesInChapter) - ctx.tokens().estimatePages(pending));
+      log.info("RESUME chapter='%s' restored=%d pending=%d", chapterHeader, restored, pending.size());
+    }
+    return pending;
   }
 
   private static void applyBatchResults(
@@ -57,17 +528,20 @@ public class ChapterProcessor {
       String topic
   ) {
     for (PdfObject p : batch) {
-      List<String> cards = cardsByIndex.getOrDefault(p.getIndex(), List.of());
-      p.setCards(cards);
-
-      PdfObject.StageDebugInfo debug = p.getStageDebugInfo();
-      if (debug != null) {
-        p.setNotes(formatThreeStageNotes(debug, cards));
-      } else {
-        CardsPage perPage = new CardsPage(topic, chapterHeader);
-        cards.forEach(perPage::addCard);
-        p.setNotes(perPage.hasContent() ? perPage.toString() : "");
-      }
+      applyPageResults(p, cardsByIndex.getOrDefault(p.getIndex(), List.of()), chapterHeader, topic);
+    }
+  }
+
+  private static void applyPageResults(PdfObject p, List<String> cards, String chapterHeader, String topic) {
+    p.setCards(cards);
+
+    PdfObject.StageDebugInfo debug = p.getStageDebugInfo();
+    if (debug != null) {
+      p.setNotes(formatThreeStageNotes(debug, cards));
+    } else {
+      CardsPage perPage = new CardsPage(topic, chapterHeader);
+      cards.forEach(perPage::addCard);
+      p.setNotes(perPage.hasContent() ? perPage.toString() : "");
     }
   }
 
@@ -98,6 +572,52 @@ public class ChapterProcessor {
     return sb.toString().strip();
   }
 
+  private static void appendToChapterFile(
+      IncrementalChapterWriter chapterFile, List<PdfObject> pages, BatchContext ctx
+  ) {
+    try {
+      for (PdfObject p : pages) {
+        chapterFile.complete(p.getIndex(), p.getCards());
+        releaseWrittenPage(p, ctx);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Drops what nothing reads any more once a page's cards are in its chapter file, so a large book
+   * does not hold every card until the run ends. The page manifest still needs the cards and stage
+   * outputs, and the preview PDF the notes.
+   */
+  private static void releaseWrittenPage(PdfObject p, BatchContext ctx) {
+    if (!ctx.cfg().checkpoint.pageManifest) {
+      p.setCards(List.of());
+      p.setStageDebugInfo(null);
+    }
+    if (!ctx.cfg().preview.enabled || !ctx.cfg().preview.combinePdfWithNotes) {
+      // Not null: the page still counts as done
+      p.setNotes("");
+    }
+  }
+
+  private static void finishChapterFile(
+      IncrementalChapterWriter chapterFile,
+      List<PdfObject> pagesInChapter,
+      String chapterHeader,
+      BatchContext ctx
+  ) {
+    try {
+      if (chapterFile.finish() != null) {
+        log.info("WROTE chapter: " + chapterHeader + " -> " + ctx.outDir().toAbsolutePath());
+      } else if (!pagesInChapter.isEmpty()) {
+        log.info("No notes were taken for " + chapterHeader);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   private static void writeChapterFile(
       List<PdfObject> pagesInChapter,
       String chapterHeader,
@@ -128,21 +648,22 @@ public class ChapterProcessor {
     if (!ctx.cfg().ollama.localBatching) {
       return pagesInChapter.stream().map(List::of).toList();
     }
-    int maxTokens = Math.max(1, ctx.cfg().chunking.maxTokensPerChunk);
+    int maxTokens = ctx.batchBudget().current();
     int basePromptTokens = estimateBasePromptTokens(ctx, chapterHeader);
     return splitIntoBatchesByEstimatedTokens(chapterHeader, pagesInChapter, maxTokens,
-        basePromptTokens);
+        basePromptTokens, ctx.tokens());
   }
 
   /**
-   * Splits pages into batches so sum(ceil(len/4)) <= maxTokensPerChunk. Always puts at least 1 page
-   * into a batch.
+   * Splits pages into batches so the sum of estimated page tokens <= maxTokensPerChunk. Always puts
+   * at least 1 page into a batch.
    */
   private static List<List<PdfObject>> splitIntoBatchesByEstimatedTokens(
       String chapterHeader,
       List<PdfObject> pages,
       int maxTokensPerChunk,
-      int basePromptTokens
+      int basePromptTokens,
+      TokenEstimator estimator
   ) {
     if (pages == null || pages.isEmpty()) {
       return List.of();
@@ -158,7 +679,7 @@ public class ChapterProcessor {
     for (PdfObject p : pages) {
       String text = p.getTextReadFromPdf();
       int pageChars = (text == null) ? 0 : text.length();
-      int pageTokens = estimateTokens(text);
+      int pageTokens = estimator.estimate(text);
 
       // Always at least one page per batch
       if (current.isEmpty()) {
@@ -216,16 +737,6 @@ public class ChapterProcessor {
         promptTokens);
   }
 
-  /**
-   * Token estimate: ceil(length/4).
-   */
-  private static int estimateTokens(String s) {
-    if (s == null || s.isEmpty()) {
-      return 0;
-    }
-    return (s.length() + 3) / 4;
-  }
-
   /**
    * Estimate base prompt token count by rendering the primary template with empty content.
    */
@@ -237,7 +748,7 @@ public class ChapterProcessor {
         "maxConcepts", String.valueOf(ctx.cfg().cards.maxConceptsPerPage),
         "content", ""
     ));
-    return estimateTokens(base);
+    return ctx.tokens().estimate(base);
   }
 
 }
\ No newline at end of file
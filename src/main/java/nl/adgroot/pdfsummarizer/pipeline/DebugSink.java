@@ -0,0 +1,168 @@
+package nl.adgroot.pdfsummarizer.pipeline;
+
+import static nl.adgroot.pdfsummarizer.notes.NotesWriter.safeFileName;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+
+/**
+ * Single-writer sink for intermediate LLM outputs (three-stage concepts and raw cards).
+ *
+ * <p>Pipeline threads only enqueue records; one background thread owns every file handle, so
+ * records of concurrent batches never interleave and the LLM critical path never touches the
+ * disk. Files stay open for the whole run and are flushed whenever the queue runs dry and on
+ * {@link #close()}.
+ */
+public class DebugSink implements AutoCloseable {
+
+  private static final AppLogger log = AppLogger.getLogger(DebugSink.class);
+
+  /** Marks the end of the queue; compared by identity. */
+  private static final Entry POISON = new Entry(null, null, null, null);
+
+  private record Entry(String prefix, String chapterTitle, String batchTag, String content) {}
+
+  private final Path debugDir;
+  private final BlockingQueue<Entry> queue;
+  private final Thread writerThread;
+  private final Map<Path, BufferedWriter> openFiles = new LinkedHashMap<>();
+  private volatile boolean closed;
+
+  private DebugSink(Path debugDir, int queueCapacity) {
+    this.debugDir = debugDir;
+    this.queue = debugDir == null ? null : new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    this.writerThread = debugDir == null ? null : startWriter();
+  }
+
+  /** A sink that drops every record without touching the filesystem. */
+  public static DebugSink disabled() {
+    return new DebugSink(null, 0);
+  }
+
+  /**
+   * Creates a sink writing into {@code debugDir}. The directory is created lazily when the first
+   * record arrives, so runs that never produce debug output leave no empty folder behind.
+   */
+  public static DebugSink create(Path debugDir, int queueCapacity) {
+    return new DebugSink(debugDir, queueCapacity);
+  }
+
+  public boolean isEnabled() {
+    return debugDir != null;
+  }
+
+  /**
+   * Queues one batch's output for {@code <debugDir>/<prefix>_<chapter>.md}. Blocks only when the
+   * writer has fallen {@code queueCapacity} records behind.
+   */
+  public void append(String prefix, String chapterTitle, String batchTag, String content) {
+    if (debugDir == null) return;
+    if (closed) {
+      log.warn("Debug sink already closed; dropping %s output for '%s'", prefix, chapterTitle);
+      return;
+    }
+    try {
+      queue.put(new Entry(prefix, chapterTitle, batchTag, content == null ? "" : content));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Interrupted while queueing debug output for '%s'", chapterTitle);
+    }
+  }
+
+  /** Flushes everything still queued, closes all files and stops the writer thread. */
+  @Override
+  public void close() {
+    if (debugDir == null || closed) return;
+    closed = true;
+    try {
+      queue.put(POISON);
+      writerThread.join(TimeUnit.SECONDS.toMillis(30));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (writerThread.isAlive()) {
+      log.error("Debug writer did not finish within 30s; some debug output may be missing");
+    }
+  }
+
+  private Thread startWriter() {
+    Thread t = new Thread(this::drainLoop, "debug-writer");
+    t.setDaemon(true);
+    t.start();
+    return t;
+  }
+
+  private void drainLoop() {
+    List<Entry> drained = new ArrayList<>();
+    try {
+      for (;;) {
+        drained.add(queue.take());
+        queue.drainTo(drained);
+
+        for (Entry e : drained) {
+          if (e == POISON) {
+            closeAll();
+            return;
+          }
+          write(e);
+        }
+        drained.clear();
+        flushAll();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      closeAll();
+    }
+  }
+
+  private void write(Entry e) {
+    Path file = debugDir.resolve(e.prefix() + "_" + safeFileName(e.chapterTitle()) + ".md");
+    try {
+      BufferedWriter w = openFiles.get(file);
+      if (w == null) {
+        Files.createDirectories(debugDir);
+        w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        openFiles.put(file, w);
+      }
+      w.write("\n\n=== BATCH " + e.batchTag() + " ===\n\n");
+      w.write(e.content());
+    } catch (IOException ex) {
+      log.error("Warning: could not write debug file: " + ex.getMessage());
+    }
+  }
+
+  private void flushAll() {
+    for (var entry : openFiles.entrySet()) {
+      try {
+        entry.getValue().flush();
+      } catch (IOException ex) {
+        log.error("Warning: could not flush debug file " + entry.getKey() + ": " + ex.getMessage());
+      }
+    }
+  }
+
+  private void closeAll() {
+    for (var entry : openFiles.entrySet()) {
+      try {
+        entry.getValue().close();
+      } catch (IOException ex) {
+        log.error("Warning: could not close debug file " + entry.getKey() + ": " + ex.getMessage());
+      }
+    }
+    openFiles.clear();
+  }
+}
@@ -0,0 +1,43 @@
+package nl.adgroot.pdfsummarizer.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run-wide cap on follow-up requests for pages a batched response left out. Shared by all
+ * chapters, so one badly behaving model cannot double the number of LLM calls of a run.
+ */
+public class FollowUpBudget {
+
+  private final int maxRequests;
+  private final AtomicInteger used = new AtomicInteger();
+
+  private FollowUpBudget(int maxRequests) {
+    this.maxRequests = Math.max(0, maxRequests);
+  }
+
+  /** A budget that never allows a follow-up. */
+  public static FollowUpBudget disabled() {
+    return new FollowUpBudget(0);
+  }
+
+  public static FollowUpBudget of(int maxRequests) {
+    return new FollowUpBudget(maxRequests);
+  }
+
+  /** Claims one follow-up request; {@code false} once the budget is spent. */
+  public boolean tryAcquire() {
+    for (;;) {
+      int current = used.get();
+      if (current >= maxRequests) return false;
+      if (used.compareAndSet(current, current + 1)) return true;
+    }
+  }
+
+  public int used() {
+    return used.get();
+  }
+
+  public int maxRequests() {
+    return maxRequests;
+  }
+}
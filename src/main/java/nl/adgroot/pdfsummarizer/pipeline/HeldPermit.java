@@ -0,0 +1,69 @@
+package nl.adgroot.pdfsummarizer.pipeline;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder.Span;
+
+/**
+ * The server permit a batch currently holds. It moves to another server when a stage fails over,
+ * and is released exactly once when the batch finishes, whether it succeeded or not.
+ *
+ * <p>While a permit is held, the batch has a span on its server's track of the run timeline.
+ */
+final class HeldPermit {
+
+  private final ServerPermitPool permits;
+  private final AtomicBoolean released = new AtomicBoolean();
+  private final String traceName;
+  private volatile int server;
+  private volatile Span span;
+
+  HeldPermit(ServerPermitPool permits, int server) {
+    this(permits, server, "batch");
+  }
+
+  /** @param traceName name of the batch's spans in the run timeline */
+  HeldPermit(ServerPermitPool permits, int server, String traceName) {
+    this.permits = permits;
+    this.server = server;
+    this.traceName = traceName;
+    this.span = TraceRecorder.active().begin("server " + server, traceName, "batch");
+  }
+
+  /** The batch's span on the server it is running on now. */
+  Span span() {
+    return span;
+  }
+
+  /** Index of the server this batch is running on; -1 while a failover is acquiring a new one. */
+  int server() {
+    return server;
+  }
+
+  /** Hands the current permit back and acquires one on a different server where possible. */
+  CompletableFuture<Integer> moveAway(Executor executor) {
+    int failed = server;
+    server = -1;
+    Span previous = span;
+    previous.arg("failedOver", true).end();
+    permits.release(failed);
+    return permits.acquireAnyExceptAsync(executor, failed).thenApply(next -> {
+      span = TraceRecorder.active().begin("server " + next, traceName, "batch")
+          .argsFrom(previous).arg("failedOver", false).arg("from", failed);
+      server = next;
+      return next;
+    });
+  }
+
+  void release() {
+    int s = server;
+    if (s >= 0 && released.compareAndSet(false, true)) {
+      span.end();
+      permits.release(s);
+    }
+  }
+}
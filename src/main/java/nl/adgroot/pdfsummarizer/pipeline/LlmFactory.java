@@ -1,6 +1,8 @@
 package nl.adgroot.pdfsummarizer.pipeline;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import nl.adgroot.pdfsummarizer.AppExecutors;
 import nl.adgroot.pdfsummarizer.AppLogger;
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 import nl.adgroot.pdfsummarizer.llm.ChatGptClient;
@@ -21,8 +23,10 @@ public final class LlmFactory {
       log.info("Both Ollama and OpenAI are enabled; Ollama will be used.");
     }
 
+    ExecutorService httpExecutor = cfg.execution.virtualThreads ? AppExecutors.virtualThreads("http-") : null;
+
     if (ollamaEnabled) {
-      List<LlmClient> llms = List.copyOf(OllamaClientsFactory.create(cfg.ollama));
+      List<LlmClient> llms = List.copyOf(OllamaClientsFactory.create(cfg.ollama, httpExecutor));
       int servers = Math.max(1, cfg.ollama.servers);
       int perServerMax = Math.max(1, cfg.ollama.concurrency);
       return new LlmSetup(llms, new ServerPermitPool(servers, perServerMax, true));
@@ -42,7 +46,7 @@ public final class LlmFactory {
                 setx OPENAI_API_KEY "sk-..."
             """);
       }
-      List<LlmClient> llms = List.of(new ChatGptClient(cfg.openai, apiKey));
+      List<LlmClient> llms = List.of(new ChatGptClient(cfg.openai, apiKey, httpExecutor));
       int maxConcurrency = Math.max(1, cfg.openai.concurrency);
       return new LlmSetup(llms, new ServerPermitPool(1, maxConcurrency, true));
     }
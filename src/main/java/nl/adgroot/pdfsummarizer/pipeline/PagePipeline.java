@@ -4,12 +4,20 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
 
 import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.metrics.JfrEvents;
+import nl.adgroot.pdfsummarizer.metrics.JfrEvents.BatchEvent;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder.Span;
 import nl.adgroot.pdfsummarizer.notes.CardsParser;
-import nl.adgroot.pdfsummarizer.notes.DefaultCardsParser;
+import nl.adgroot.pdfsummarizer.notes.EtaModel;
+import nl.adgroot.pdfsummarizer.notes.FastCardsParser;
+import nl.adgroot.pdfsummarizer.notes.ProgressTracker.Phase;
+import nl.adgroot.pdfsummarizer.notes.StructuredCardsParser;
 import nl.adgroot.pdfsummarizer.notes.records.Card;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
 
@@ -21,9 +29,14 @@ public class PagePipeline implements BatchPipeline {
 
   private final CardsParser cardsParser;
 
+  /** Batches of this pipeline that are waiting for a permit or running, in this JVM. */
+  public static int inFlight() {
+    return IN_FLIGHT.get();
+  }
+
   /** Production default */
   public PagePipeline() {
-    this(new DefaultCardsParser());
+    this(new FastCardsParser());
   }
 
   /** Injectable for tests / alternative parsers */
@@ -35,31 +48,70 @@ public class PagePipeline implements BatchPipeline {
   // Batching support
   // -------------------------
 
-  // Matches:
+  // Matches the regex (?s)===PAGE\s+(\d+)===\s*(.*?)\s*===END PAGE===, i.e.
   // ===PAGE 7===
   // ...content...
   // ===END PAGE===
-  private static final Pattern PAGE_BLOCK =
-      Pattern.compile("(?s)===PAGE\\s+(\\d+)===\\s*(.*?)\\s*===END PAGE===");
+  // scanned by index so a large response is not walked by a backtracking matcher.
+  private static final String PAGE_HEADER = "===PAGE";
+  private static final String PAGE_FOOTER = "===END PAGE===";
 
   public static Map<Integer, String> splitPageBlocks(String md) {
     Map<Integer, String> out = new HashMap<>();
     if (md == null || md.isBlank()) return out;
 
-    var m = PAGE_BLOCK.matcher(md);
-    while (m.find()) {
-      int idx = Integer.parseInt(m.group(1));
-      String body = m.group(2).trim();
-      out.put(idx, body);
+    int from = 0;
+    for (;;) {
+      int start = md.indexOf(PAGE_HEADER, from);
+      if (start < 0) break;
+
+      // \s+(\d+)===
+      int p = start + PAGE_HEADER.length();
+      int digits = skipAsciiWhitespace(md, p);
+      int digitsEnd = digits;
+      while (digitsEnd < md.length() && md.charAt(digitsEnd) >= '0' && md.charAt(digitsEnd) <= '9') {
+        digitsEnd++;
+      }
+      if (digits == p || digitsEnd == digits || !md.startsWith("===", digitsEnd)) {
+        from = start + 1;
+        continue;
+      }
+
+      int bodyStart = digitsEnd + 3;
+      int footer = md.indexOf(PAGE_FOOTER, bodyStart);
+      if (footer < 0) break;
+
+      // Same as trim(), which also drops the \s* on both sides of the lazy body group, but
+      // without copying the body twice
+      int bodyEnd = footer;
+      while (bodyStart < bodyEnd && md.charAt(bodyStart) <= ' ') bodyStart++;
+      while (bodyEnd > bodyStart && md.charAt(bodyEnd - 1) <= ' ') bodyEnd--;
+      out.put(Integer.parseInt(md.substring(digits, digitsEnd)), md.substring(bodyStart, bodyEnd));
+      from = footer + PAGE_FOOTER.length();
     }
     return out;
   }
 
+  private static int skipAsciiWhitespace(String s, int i) {
+    while (i < s.length()) {
+      char c = s.charAt(i);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') break;
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Renders the pages of a batch as numbered page blocks. When the batch packs pages of several
+   * chapters, every page starts with a {@code Section:} line naming its chapter.
+   */
   public static String renderBatchContent(List<PdfObject> batch) {
+    boolean packed = batch.stream().map(PdfObject::getChapter).distinct().count() > 1;
     StringBuilder sb = new StringBuilder();
     for (int i = 0; i < batch.size(); i++) {
       PdfObject p = batch.get(i);
       sb.append("===PAGE ").append(i + 1).append("===\n");
+      if (packed) sb.append("Section: ").append(p.getChapter()).append("\n");
 
       String text = p.getTextReadFromPdf() == null ? "" : p.getTextReadFromPdf();
       sb.append(text);
@@ -82,32 +134,100 @@ public class PagePipeline implements BatchPipeline {
   ) {
     long startNs = System.nanoTime();
     int nowInflight = IN_FLIGHT.incrementAndGet();
-    String prompt = buildPrompt(ctx, chapterTitle, batch);
+    long batchId = JfrEvents.nextBatchId();
+    BatchEvent event = new BatchEvent();
+    event.begin();
+    // -1 until a permit is held
+    AtomicInteger server = new AtomicInteger(-1);
 
     return ctx.permits().acquireAnyAsync(ctx.permitPoolExecutor()).thenCompose(serverIndex -> {
-      var llm = ctx.llms().get(serverIndex);
+      server.set(serverIndex);
+      HeldPermit held = holdPermit(ctx, serverIndex, batchId, chapterTitle, batch);
+      EtaModel.InFlight running = ctx.tracker().eta().start(serverIndex, ctx.tokens().estimatePages(batch));
+      ctx.tracker().recordLatency(serverIndex, "single", Phase.PERMIT_WAIT, System.nanoTime() - startNs);
       log.info("START BATCH pages=%d chapter='%s' inflight=%d server=%d url=%s%n",
-          batch.size(), chapterTitle, nowInflight, serverIndex, llm.getUrl());
+          batch.size(), chapterTitle, nowInflight, serverIndex, ctx.llms().get(serverIndex).getUrl());
 
-      return llm.generateAsync(prompt)
+      boolean structured = ctx.cfg().ollama.structuredOutput;
+      // Rendered only once a permit is held, so waiting batches do not keep prompts on the heap
+      return CompletableFuture.supplyAsync(() -> buildPrompt(ctx, chapterTitle, batch), ctx.cpuPoolExecutor())
+          .thenCompose(prompt -> StageRunner.call(ctx, held, "single", chapterTitle, batchId, prompt,
+              structured ? StructuredCardsParser.SCHEMA : null))
           .thenApplyAsync(result -> {
-            try {
-              ctx.tracker().finishBatch(batch.size(), result.metrics());
-              return parseCards(result.response(), batch, cardsParser);
-            } finally {
-              ctx.permits().release(serverIndex);
-            }
+            ctx.tracker().finishBatch(batch.size(), result.metrics());
+            ctx.batchBudget().observe(batch.size(), ctx.tokens().estimatePages(batch), result.metrics());
+            long parseNs = System.nanoTime();
+            Span parse = TraceRecorder.active().beginOnThread("parse", "parse").arg("batchId", batchId);
+            Map<Integer, List<String>> cards = structured
+                ? parseStructuredCards(result.response(), batch)
+                : parseCards(result.response(), batch, cardsParser);
+            parse.end();
+            ctx.tracker().recordLatency(held.server(), "single", Phase.PARSE, System.nanoTime() - parseNs);
+            return cards;
           }, ctx.cpuPoolExecutor())
-          .whenComplete((res, ex) -> {
+          .<Map<Integer, List<String>>>handle((res, ex) -> {
+            held.span().arg("failed", ex != null);
+            held.release();
+            running.finish(held.server(), ex == null);
+            if (ex != null) {
+              ctx.tracker().recordFailedBatch();
+              throw new StageFailedException("single", null, null, unwrap(ex));
+            }
             long millis = (System.nanoTime() - startNs) / 1_000_000;
-            log.info("END   BATCH pages=%d chapter='%s' took=%dms inflight=%d server=%d %s%n",
-                batch.size(), chapterTitle, millis, IN_FLIGHT.decrementAndGet(), serverIndex,
-                (ex != null ? "ERROR=" + ex : ""));
-            if (ex == null) log.info(ctx.tracker().formatStatus(millis));
+            log.info(() -> ctx.tracker().formatStatus(millis));
+            return res;
           });
+    }).whenComplete((res, ex) -> {
+      // Also when no permit was acquired, so the in-flight gauge and the JFR event stay right
+      commitBatchEvent(event, batchId, "single", ctx, chapterTitle, batch, server.get(), ex != null);
+      long millis = (System.nanoTime() - startNs) / 1_000_000;
+      log.info("END   BATCH pages=%d chapter='%s' took=%dms inflight=%d server=%d %s%n",
+          batch.size(), chapterTitle, millis, IN_FLIGHT.decrementAndGet(), server.get(),
+          (ex != null ? "ERROR=" + ex : ""));
     });
   }
 
+  /** Wraps the permit a batch got, naming its span in the run timeline. */
+  static HeldPermit holdPermit(
+      BatchContext ctx, int serverIndex, long batchId, String chapterTitle, List<PdfObject> batch
+  ) {
+    if (!TraceRecorder.active().isEnabled()) {
+      return new HeldPermit(ctx.permits(), serverIndex);
+    }
+    HeldPermit held = new HeldPermit(ctx.permits(), serverIndex, chapterTitle + " " + batch.size() + "p");
+    held.span()
+        .arg("batchId", batchId)
+        .arg("chapter", chapterTitle)
+        .arg("pages", batch.stream().map(PdfObject::getIndex).toList())
+        .arg("url", ctx.llms().get(serverIndex).getUrl());
+    return held;
+  }
+
+  static void commitBatchEvent(
+      BatchEvent event, long batchId, String pipeline, BatchContext ctx, String chapterTitle,
+      List<PdfObject> batch, int server, boolean failed
+  ) {
+    if (!event.shouldCommit()) return;
+    event.batchId = batchId;
+    event.pipeline = pipeline;
+    event.chapter = chapterTitle;
+    event.pageIndexes = batch.stream().map(PdfObject::getIndex).toList().toString();
+    event.pages = batch.size();
+    event.server = server;
+    event.estimatedTokens = ctx.tokens().estimatePages(batch);
+    event.failed = failed;
+    event.commit();
+  }
+
+  /** Strips the wrappers CompletableFuture puts around a failure. */
+  static Throwable unwrap(Throwable ex) {
+    while ((ex instanceof CompletionException
+        || ex instanceof ExecutionException) && ex.getCause() != null) {
+      ex = ex.getCause();
+    }
+    return ex;
+  }
+
   private String buildPrompt(BatchContext ctx, String chapterTitle, List<PdfObject> batch) {
     return ctx.prompts().single().render(Map.of(
         "topic", ctx.topic(),
@@ -127,4 +247,15 @@ public class PagePipeline implements BatchPipeline {
     }
     return result;
   }
-}
\ No newline at end of file
+
+  /** Structured-output counterpart of {@link #parseCards}: page numbers in the JSON are batch positions. */
+  public static Map<Integer, List<String>> parseStructuredCards(String json, List<PdfObject> batch) {
+    Map<Integer, List<Card>> byPage = StructuredCardsParser.parse(json);
+    Map<Integer, List<String>> result = new HashMap<>();
+    for (int i = 0; i < batch.size(); i++) {
+      List<Card> cards = byPage.getOrDefault(i + 1, List.of());
+      result.put(batch.get(i).getIndex(), cards.stream().map(Card::toString).toList());
+    }
+    return result;
+  }
+}
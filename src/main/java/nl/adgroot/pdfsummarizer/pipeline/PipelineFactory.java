@@ -21,14 +21,17 @@ public final class PipelineFactory {
               null,
               PromptTemplate.loadResource("prompt_step1_concepts.txt"),
               PromptTemplate.loadResource("prompt_step2_cards.txt"),
-              PromptTemplate.loadResource("prompt_step3_refine.txt")
+              PromptTemplate.loadResource(cfg.ollama.structuredOutput
+                  ? "prompt_step3_refine_json.txt"
+                  : "prompt_step3_refine.txt")
           )
       );
     }
     log.info("Pipeline: single-stage");
     return new PipelineSetup(
         new PagePipeline(),
-        new PromptTemplates(PromptTemplate.loadResource("prompt.txt"), null, null, null)
+        new PromptTemplates(PromptTemplate.loadResource(
+            cfg.ollama.structuredOutput ? "prompt_json.txt" : "prompt.txt"), null, null, null)
     );
   }
 }
\ No newline at end of file
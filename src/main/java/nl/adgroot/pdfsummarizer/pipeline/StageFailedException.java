@@ -0,0 +1,38 @@
+package nl.adgroot.pdfsummarizer.pipeline;
+
+/**
+ * A batch stage that still failed after all retries. Carries the output of the stages that did
+ * complete, so a later replay can continue from the failed stage instead of starting over.
+ */
+public class StageFailedException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String stage;
+  private final String concepts;
+  private final String rawCards;
+
+  /**
+   * @param stage    the stage that failed: {@code single}, {@code step1}, {@code step2} or {@code step3}
+   * @param concepts step 1 output, or {@code null} if step 1 did not complete
+   * @param rawCards step 2 output, or {@code null} if step 2 did not complete
+   */
+  public StageFailedException(String stage, String concepts, String rawCards, Throwable cause) {
+    super("Stage " + stage + " failed: " + cause, cause);
+    this.stage = stage;
+    this.concepts = concepts;
+    this.rawCards = rawCards;
+  }
+
+  public String stage() {
+    return stage;
+  }
+
+  public String concepts() {
+    return concepts;
+  }
+
+  public String rawCards() {
+    return rawCards;
+  }
+}
@@ -0,0 +1,103 @@
+package nl.adgroot.pdfsummarizer.pipeline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.concurrent.CompletableFuture;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
+import nl.adgroot.pdfsummarizer.metrics.JfrEvents.StageEvent;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder.Span;
+import nl.adgroot.pdfsummarizer.notes.ProgressTracker.Phase;
+
+/**
+ * Runs the LLM call of one batch stage. The client's RetryPolicy already retries transient HTTP
+ * failures on the same server; when the call still fails, only this stage is retried, on another
+ * server whenever one has capacity ({@code retry.stageRetries} times).
+ *
+ * <p>Each attempt runs in a stage scope below the batch's {@link CancellationScope}: cancelling the
+ * batch or run fails the LLM future, which hangs up its HTTP call, and a cancelled stage is not
+ * retried.
+ */
+final class StageRunner {
+
+  private static final AppLogger log = AppLogger.getLogger(StageRunner.class);
+
+  private StageRunner() {}
+
+  static CompletableFuture<LlmResult> call(
+      BatchContext ctx, HeldPermit held, String stage, String chapterTitle, long batchId, String prompt
+  ) {
+    return call(ctx, held, stage, chapterTitle, batchId, prompt, null);
+  }
+
+  /**
+   * @param batchId id of the batch attempt, for the JFR stage events
+   * @param schema JSON schema the response must follow, or {@code null} for free text
+   */
+  static CompletableFuture<LlmResult> call(
+      BatchContext ctx, HeldPermit held, String stage, String chapterTitle, long batchId, String prompt,
+      JsonNode schema
+  ) {
+    return attempt(ctx, held, stage, chapterTitle, batchId, prompt, schema, 0)
+        .thenApply(result -> {
+          ctx.tokens().observe(prompt, result.metrics());
+          return result;
+        });
+  }
+
+  private static CompletableFuture<LlmResult> attempt(
+      BatchContext ctx, HeldPermit held, String stage, String chapterTitle, long batchId, String prompt,
+      JsonNode schema, int retry
+  ) {
+    CancellationScope scope = ctx.scope().child("stage " + stage);
+    if (scope.isCancelled()) {
+      scope.close();
+      return scope.failed();
+    }
+    int server = held.server();
+    StageEvent event = new StageEvent();
+    event.begin();
+    Span span = held.span().child(stage, "stage").arg("attempt", retry).arg("promptChars", prompt.length());
+    long sentNs = System.nanoTime();
+    return scope.bind(ctx.llms().get(server).generateAsync(prompt, schema))
+        .whenComplete((r, ex) -> {
+          scope.close();
+          if (r != null && r.metrics() != null) {
+            span.arg("promptTokens", r.metrics().promptEvalCount()).arg("generatedTokens", r.metrics().evalCount());
+          }
+          span.arg("failed", ex != null).end();
+          if (event.shouldCommit()) {
+            event.batchId = batchId;
+            event.chapter = chapterTitle;
+            event.stage = stage;
+            event.server = server;
+            event.attempt = retry;
+            event.promptChars = prompt.length();
+            event.failed = ex != null;
+            if (r != null && r.metrics() != null) {
+              event.promptTokens = r.metrics().promptEvalCount();
+              event.generatedTokens = r.metrics().evalCount();
+            }
+            event.commit();
+          }
+        })
+        .thenApply(result -> {
+          ctx.tracker().recordCall(server, stage, System.nanoTime() - sentNs, result.metrics());
+          return result;
+        })
+        .exceptionallyCompose(ex -> {
+          if (retry >= ctx.cfg().retry.stageRetries || ctx.scope().isCancelled()) {
+            return CompletableFuture.failedFuture(ex);
+          }
+          log.warn("STAGE RETRY stage=%s chapter='%s' failedServer=%d retry=%d error=%s",
+              stage, chapterTitle, server, retry + 1, ex);
+          ctx.tracker().recordStageRetry();
+          long waitNs = System.nanoTime();
+          return held.moveAway(ctx.permitPoolExecutor())
+              .thenCompose(next -> {
+                ctx.tracker().recordLatency(next, stage, Phase.PERMIT_WAIT, System.nanoTime() - waitNs);
+                return attempt(ctx, held, stage, chapterTitle, batchId, prompt, schema, retry + 1);
+              });
+        });
+  }
+}
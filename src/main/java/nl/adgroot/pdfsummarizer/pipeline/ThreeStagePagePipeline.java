@@ -1,29 +1,30 @@
 package nl.adgroot.pdfsummarizer.pipeline;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import nl.adgroot.pdfsummarizer.AppLogger;
-import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
+import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
+import nl.adgroot.pdfsummarizer.metrics.JfrEvents;
+import nl.adgroot.pdfsummarizer.metrics.JfrEvents.BatchEvent;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder.Span;
 import nl.adgroot.pdfsummarizer.notes.CardsParser;
-import nl.adgroot.pdfsummarizer.notes.DefaultCardsParser;
+import nl.adgroot.pdfsummarizer.notes.EtaModel;
+import nl.adgroot.pdfsummarizer.notes.FastCardsParser;
+import nl.adgroot.pdfsummarizer.notes.ProgressTracker.Phase;
+import nl.adgroot.pdfsummarizer.notes.StructuredCardsParser;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
 
-import static nl.adgroot.pdfsummarizer.notes.NotesWriter.safeFileName;
-
 /**
  * Three-stage local LLM pipeline:
  *   Step 1 — Concept extraction  (prompt_step1_concepts.txt)
  *   Step 2 — Flashcard generation (prompt_step2_cards.txt)
  *   Step 3 — Card refinement + deduplication (prompt_step3_refine.txt)
  *
- * Intermediate outputs (concepts and raw cards) are saved under
- * <outDir>/debug/ for grading / prompt tuning.
+ * Intermediate outputs (concepts and raw cards) are handed to the run's {@link DebugSink},
+ * which writes them under <outDir>/debug/ for grading / prompt tuning.
  */
 public class ThreeStagePagePipeline implements BatchPipeline {
 
@@ -32,14 +33,36 @@ public class ThreeStagePagePipeline implements BatchPipeline {
 
   private final CardsParser cardsParser;
 
-  /** Carries step 1 + step 2 outputs through the async chain. */
-  private record IntermediateStages(String concepts, String rawCards) {}
+  /**
+   * Outputs of the stages that completed so far; read when a later stage fails so the batch can
+   * be replayed from that stage.
+   */
+  private static final class Progress {
+    volatile String stage = "step1";
+    volatile String concepts;
+    volatile String rawCards;
+    // Server time of the stages run in this attempt; only complete when no stage was skipped
+    volatile LlmMetrics metrics;
+    final boolean fromStart;
+
+    Progress(String concepts, String rawCards) {
+      this.concepts = concepts;
+      this.rawCards = rawCards;
+      this.fromStart = concepts == null && rawCards == null;
+    }
+
+    void add(LlmMetrics m) {
+      metrics = metrics == null ? m : metrics.plus(m);
+    }
+  }
 
-  /** Carries all three stage outputs to the final apply step. */
-  private record AllStages(String concepts, String rawCards, LlmResult step3Result) {}
+  /** Batches of this pipeline that are waiting for a permit or running, in this JVM. */
+  public static int inFlight() {
+    return IN_FLIGHT.get();
+  }
 
   public ThreeStagePagePipeline() {
-    this(new DefaultCardsParser());
+    this(new FastCardsParser());
   }
 
   public ThreeStagePagePipeline(CardsParser cardsParser) {
@@ -52,31 +75,74 @@ public class ThreeStagePagePipeline implements BatchPipeline {
       String chapterTitle,
       List<PdfObject> batch
   ) {
-    long startNs = System.nanoTime();
-    int nowInflight = IN_FLIGHT.incrementAndGet();
+    return runStagesAsync(ctx, chapterTitle, batch, new Progress(null, null));
+  }
 
-    String batchContent = PagePipeline.renderBatchContent(batch);
+  /** Continues from the failed stage; concepts and raw cards that were already produced are reused. */
+  @Override
+  public CompletableFuture<Map<Integer, List<String>>> resumeBatchAsync(
+      BatchContext ctx,
+      String chapterTitle,
+      List<PdfObject> batch,
+      StageFailedException failure
+  ) {
+    return runStagesAsync(ctx, chapterTitle, batch, new Progress(failure.concepts(), failure.rawCards()));
+  }
 
-    String step1Prompt = ctx.prompts().step1().render(Map.of(
-        "topic", ctx.topic(),
-        "section", chapterTitle,
-        "maxConcepts", String.valueOf(ctx.cfg().cards.maxConceptsPerPage),
-        "content", batchContent
-    ));
+  private CompletableFuture<Map<Integer, List<String>>> runStagesAsync(
+      BatchContext ctx,
+      String chapterTitle,
+      List<PdfObject> batch,
+      Progress progress
+  ) {
+    long startNs = System.nanoTime();
+    int nowInflight = IN_FLIGHT.incrementAndGet();
+    String batchTag = batchTag(batch);
+    long batchId = JfrEvents.nextBatchId();
+    BatchEvent event = new BatchEvent();
+    event.begin();
+    // -1 until a permit is held
+    AtomicInteger server = new AtomicInteger(-1);
 
     return ctx.permits().acquireAnyAsync(ctx.permitPoolExecutor())
         .thenCompose(serverIndex -> {
-          var llm = ctx.llms().get(serverIndex);
+          server.set(serverIndex);
+          HeldPermit held = PagePipeline.holdPermit(ctx, serverIndex, batchId, chapterTitle, batch);
+          EtaModel.InFlight running = ctx.tracker().eta().start(serverIndex, ctx.tokens().estimatePages(batch));
+          ctx.tracker().recordLatency(serverIndex, progress.stage, Phase.PERMIT_WAIT,
+              System.nanoTime() - startNs);
 
           log.info("START 3-STAGE BATCH pages=%d chapter='%s' inflight=%d server=%d url=%s%n",
-              batch.size(), chapterTitle, nowInflight, serverIndex, llm.getUrl());
+              batch.size(), chapterTitle, nowInflight, serverIndex,
+              ctx.llms().get(serverIndex).getUrl());
 
           // ── Step 1: extract concepts ──────────────────────────────────────
-          return llm.generateAsync(step1Prompt)
-              .thenComposeAsync(step1Result -> {
-                String concepts = step1Result.response();
-                logStep(1, chapterTitle, batch.size());
-                appendDebugFile(ctx.outDir(), "step1_concepts", chapterTitle, concepts);
+          CompletableFuture<String> step1;
+          if (progress.concepts != null) {
+            step1 = CompletableFuture.completedFuture(progress.concepts);
+          } else {
+            String step1Prompt = ctx.prompts().step1().render(Map.of(
+                "topic", ctx.topic(),
+                "section", chapterTitle,
+                "maxConcepts", String.valueOf(ctx.cfg().cards.maxConceptsPerPage),
+                "content", PagePipeline.renderBatchContent(batch)
+            ));
+            step1 = StageRunner.call(ctx, held, "step1", chapterTitle, batchId, step1Prompt)
+                .thenApplyAsync(r -> {
+                  progress.add(r.metrics());
+                  logStep(1, chapterTitle, batch.size());
+                  ctx.debug().append("step1_concepts", chapterTitle, batchTag, r.response());
+                  return r.response();
+                }, ctx.cpuPoolExecutor());
+          }
+
+          return step1
+              .thenComposeAsync(concepts -> {
+                progress.concepts = concepts;
+                progress.stage = "step2";
+                if (progress.rawCards != null) {
+                  return CompletableFuture.completedFuture(progress.rawCards);
+                }
 
                 String step2Prompt = ctx.prompts().step2().render(Map.of(
                     "topic", ctx.topic(),
@@ -85,14 +151,18 @@ public class ThreeStagePagePipeline implements BatchPipeline {
                 ));
 
                 // ── Step 2: generate cards from concepts ──────────────────
-                return llm.generateAsync(step2Prompt)
-                    .thenApply(r -> new IntermediateStages(concepts, r.response()));
+                return StageRunner.call(ctx, held, "step2", chapterTitle, batchId, step2Prompt)
+                    .thenApplyAsync(r -> {
+                      progress.add(r.metrics());
+                      logStep(2, chapterTitle, batch.size());
+                      ctx.debug().append("step2_cards", chapterTitle, batchTag, r.response());
+                      return r.response();
+                    }, ctx.cpuPoolExecutor());
               }, ctx.cpuPoolExecutor())
 
-              .thenComposeAsync(intermediate -> {
-                String rawCards = intermediate.rawCards();
-                logStep(2, chapterTitle, batch.size());
-                appendDebugFile(ctx.outDir(), "step2_cards", chapterTitle, rawCards);
+              .thenComposeAsync(rawCards -> {
+                progress.rawCards = rawCards;
+                progress.stage = "step3";
 
                 String step3Prompt = ctx.prompts().step3().render(Map.of(
                     "topic", ctx.topic(),
@@ -100,33 +170,53 @@ public class ThreeStagePagePipeline implements BatchPipeline {
                 ));
 
                 // ── Step 3: refine + deduplicate ──────────────────────────
-                return llm.generateAsync(step3Prompt)
-                    .thenApply(r -> new AllStages(intermediate.concepts(), rawCards, r));
+                return StageRunner.call(ctx, held, "step3", chapterTitle, batchId, step3Prompt,
+                    ctx.cfg().ollama.structuredOutput ? StructuredCardsParser.SCHEMA : null);
               }, ctx.cpuPoolExecutor())
 
-              .thenApplyAsync(stages -> {
-                try {
-                  ctx.tracker().finishBatch(batch.size(), stages.step3Result().metrics());
-                  logStep(3, chapterTitle, batch.size());
-
-                  var debugInfo = new PdfObject.StageDebugInfo(
-                      stages.concepts(), stages.rawCards());
-                  batch.forEach(p -> p.setStageDebugInfo(debugInfo));
-
-                  return PagePipeline.parseCards(
-                      stages.step3Result().response(), batch, cardsParser);
-                } finally {
-                  ctx.permits().release(serverIndex);
+              .thenApplyAsync(step3Result -> {
+                ctx.tracker().finishBatch(batch.size(), step3Result.metrics());
+                progress.add(step3Result.metrics());
+                if (progress.fromStart) {
+                  ctx.batchBudget().observe(batch.size(), ctx.tokens().estimatePages(batch), progress.metrics);
                 }
+                logStep(3, chapterTitle, batch.size());
+
+                var debugInfo = new PdfObject.StageDebugInfo(progress.concepts, progress.rawCards);
+                batch.forEach(p -> p.setStageDebugInfo(debugInfo));
+
+                long parseNs = System.nanoTime();
+                Span parse = TraceRecorder.active().beginOnThread("parse", "parse").arg("batchId", batchId);
+                Map<Integer, List<String>> cards = ctx.cfg().ollama.structuredOutput
+                    ? PagePipeline.parseStructuredCards(step3Result.response(), batch)
+                    : PagePipeline.parseCards(step3Result.response(), batch, cardsParser);
+                parse.end();
+                ctx.tracker().recordLatency(held.server(), "step3", Phase.PARSE, System.nanoTime() - parseNs);
+                return cards;
               }, ctx.cpuPoolExecutor())
 
-              .whenComplete((res, ex) -> {
+              .<Map<Integer, List<String>>>handle((res, ex) -> {
+                held.span().arg("failed", ex != null);
+                held.release();
+                running.finish(held.server(), ex == null);
+                if (ex != null) {
+                  ctx.tracker().recordFailedBatch();
+                  throw new StageFailedException(
+                      progress.stage, progress.concepts, progress.rawCards, PagePipeline.unwrap(ex));
+                }
                 long millis = (System.nanoTime() - startNs) / 1_000_000;
-                log.info("END   3-STAGE BATCH pages=%d chapter='%s' took=%dms inflight=%d server=%d %s%n",
-                    batch.size(), chapterTitle, millis, IN_FLIGHT.decrementAndGet(), serverIndex,
-                    (ex != null ? "ERROR=" + ex : ""));
-                if (ex == null) log.info(ctx.tracker().formatStatus(millis));
+                log.info(() -> ctx.tracker().formatStatus(millis));
+                return res;
               });
+        })
+        .whenComplete((res, ex) -> {
+          // Also when no permit was acquired, so the in-flight gauge and the JFR event stay right
+          PagePipeline.commitBatchEvent(
+              event, batchId, "three-stage", ctx, chapterTitle, batch, server.get(), ex != null);
+          long millis = (System.nanoTime() - startNs) / 1_000_000;
+          log.info("END   3-STAGE BATCH pages=%d chapter='%s' took=%dms inflight=%d server=%d %s%n",
+              batch.size(), chapterTitle, millis, IN_FLIGHT.decrementAndGet(), server.get(),
+              (ex != null ? "ERROR=" + ex : ""));
         });
   }
 
@@ -134,22 +224,8 @@ public class ThreeStagePagePipeline implements BatchPipeline {
     log.debug("  STEP %d done chapter='%s' pages=%d%n", step, chapter, pages);
   }
 
-  /**
-   * Appends the LLM output for one batch to a per-chapter debug file.
-   * Files land in <outDir>/debug/  and are safe to open in any text editor.
-   */
-  private static void appendDebugFile(Path outDir, String prefix, String chapterTitle, String content) {
-    try {
-      Path debugDir = outDir.resolve("debug");
-      Files.createDirectories(debugDir);
-      Path file = debugDir.resolve(prefix + "_" + safeFileName(chapterTitle) + ".md");
-      Files.writeString(
-          file,
-          "\n\n=== BATCH ===\n\n" + content,
-          StandardOpenOption.CREATE, StandardOpenOption.APPEND
-      );
-    } catch (IOException e) {
-      log.error("Warning: could not write debug file: " + e.getMessage());
-    }
+  /** Identifies a batch in debug output by its page indexes, e.g. {@code pages=[3, 4, 5]}. */
+  private static String batchTag(List<PdfObject> batch) {
+    return "pages=" + batch.stream().map(PdfObject::getIndex).toList();
   }
-}
\ No newline at end of file
+}
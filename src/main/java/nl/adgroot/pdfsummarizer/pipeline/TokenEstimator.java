@@ -0,0 +1,144 @@
+package nl.adgroot.pdfsummarizer.pipeline;
+
+import java.util.List;
+
+import nl.adgroot.pdfsummarizer.AppLogger;
+import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
+
+/**
+ * Estimates how many tokens an LLM server will count for a piece of text.
+ *
+ * <p>{@link #fixed()} is the plain ceil(length/4) rule. {@link #calibrating()} starts from
+ * {@link #tokenizerEstimate(String)} and scales it by what the servers report: every completed call
+ * feeds its prompt and {@code prompt_eval_count} to {@link #observe}, so a code- or math-heavy
+ * document converges on its own chars-per-token ratio within a few requests.
+ */
+public final class TokenEstimator {
+
+  private static final AppLogger log = AppLogger.getLogger(TokenEstimator.class);
+
+  // Weight of the prior, in tokens: the first requests move the factor, a single outlier does not
+  private static final double PRIOR_WEIGHT_TOKENS = 2_000;
+  // Counts this far from the estimate are prompt-cache hits or truncation, not calibration data
+  private static final double MIN_PLAUSIBLE_RATIO = 0.3;
+  private static final double MAX_PLAUSIBLE_RATIO = 4.0;
+
+  private final boolean calibrating;
+
+  private long observedChars;
+  private long observedTokens;
+  private long estimatedTokens;
+  private int observations;
+
+  private TokenEstimator(boolean calibrating) {
+    this.calibrating = calibrating;
+  }
+
+  /** ceil(length/4), never adjusted. */
+  public static TokenEstimator fixed() {
+    return new TokenEstimator(false);
+  }
+
+  /** Tokenizer-like prior, corrected online by the token counts servers report. */
+  public static TokenEstimator calibrating() {
+    return new TokenEstimator(true);
+  }
+
+  public int estimate(String text) {
+    if (text == null || text.isEmpty()) {
+      return 0;
+    }
+    if (!calibrating) {
+      return (text.length() + 3) / 4;
+    }
+    return (int) Math.ceil(tokenizerEstimate(text) * factor());
+  }
+
+  /** Estimated content tokens of the page texts. */
+  public int estimatePages(List<PdfObject> pages) {
+    int tokens = 0;
+    for (PdfObject p : pages) {
+      tokens += estimate(p.getTextReadFromPdf());
+    }
+    return tokens;
+  }
+
+  /** Reported tokens per prior-estimated token so far; 1.0 until the first observation. */
+  public synchronized double factor() {
+    return (observedTokens + PRIOR_WEIGHT_TOKENS) / (estimatedTokens + PRIOR_WEIGHT_TOKENS);
+  }
+
+  /** Learns from a completed call. Calls without a reported prompt token count are ignored. */
+  public void observe(String prompt, LlmMetrics metrics) {
+    if (!calibrating || prompt == null || metrics == null || metrics.promptEvalCount() <= 0) {
+      return;
+    }
+    int prior = tokenizerEstimate(prompt);
+    double ratio = metrics.promptEvalCount() / (double) Math.max(1, prior);
+    if (ratio < MIN_PLAUSIBLE_RATIO || ratio > MAX_PLAUSIBLE_RATIO) {
+      log.debug("TOKENS ignoring observation: estimated=%d reported=%d", prior, metrics.promptEvalCount());
+      return;
+    }
+
+    double charsPerToken;
+    double factor;
+    int n;
+    synchronized (this) {
+      observedChars += prompt.length();
+      observedTokens += metrics.promptEvalCount();
+      estimatedTokens += prior;
+      n = ++observations;
+      charsPerToken = observedChars / (double) observedTokens;
+      factor = factor();
+    }
+    log.debug("TOKENS observation=%d chars/token=%.2f factor=%.3f", n, charsPerToken, factor);
+  }
+
+  public synchronized int observations() {
+    return observations;
+  }
+
+  /**
+   * Approximates a BPE tokenizer without its vocabulary: a word of Latin letters costs one token
+   * per five letters, digits group by three, a run of line breaks or of one repeated ASCII symbol
+   * ("----", "====") costs one token per four characters, other ASCII punctuation one token each,
+   * and every other character (Greek, math symbols, CJK) one token. Spaces attach to the next word.
+   */
+  public static int tokenizerEstimate(String text) {
+    if (text == null || text.isEmpty()) {
+      return 0;
+    }
+    int tokens = 0;
+    int len = text.length();
+    int i = 0;
+    while (i < len) {
+      char c = text.charAt(i);
+      int start = i;
+      if (isLatinLetter(c)) {
+        while (i < len && isLatinLetter(text.charAt(i))) i++;
+        tokens += (i - start + 4) / 5;
+      } else if (c >= '0' && c <= '9') {
+        while (i < len && text.charAt(i) >= '0' && text.charAt(i) <= '9') i++;
+        tokens += (i - start + 2) / 3;
+      } else if (c == ' ' || c == '\t') {
+        i++;
+      } else if (c == '\n' || c == '\r') {
+        while (i < len && (text.charAt(i) == '\n' || text.charAt(i) == '\r')) i++;
+        tokens += (i - start + 3) / 4;
+      } else if (c < 128) {
+        while (i < len && text.charAt(i) == c) i++;
+        tokens += (i - start + 3) / 4;
+      } else {
+        i += Character.charCount(text.codePointAt(i));
+        tokens++;
+      }
+    }
+    return tokens;
+  }
+
+  private static boolean isLatinLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+        || (c >= 'À' && c <= 'ɏ' && Character.isLetter(c));
+  }
+}
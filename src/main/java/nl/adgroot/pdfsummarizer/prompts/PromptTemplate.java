@@ -27,6 +27,11 @@ public class PromptTemplate {
     }
   }
 
+  /** The raw, unrendered template text. */
+  public String text() {
+    return template;
+  }
+
   public String render(Map<String, String> vars) {
     String result = template;
 
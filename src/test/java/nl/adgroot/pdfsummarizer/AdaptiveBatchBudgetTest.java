@@ -0,0 +1,68 @@
+package nl.adgroot.pdfsummarizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.function.IntToDoubleFunction;
+
+import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
+import nl.adgroot.pdfsummarizer.pipeline.AdaptiveBatchBudget;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveBatchBudgetTest {
+
+  private static LlmMetrics took(double seconds) {
+    return new LlmMetrics((long) (seconds * 1_000_000_000L), 0, 0, 0, 0);
+  }
+
+  /** Runs batches at whatever the budget currently is, each taking as long as the model says. */
+  private static void run(AdaptiveBatchBudget budget, int batches, IntToDoubleFunction pagesPerSecond) {
+    for (int i = 0; i < batches; i++) {
+      int tokens = budget.current();
+      int pages = Math.max(1, tokens / 500);
+      budget.observe(pages, tokens, took(pages / pagesPerSecond.applyAsDouble(tokens)));
+    }
+  }
+
+  @Test
+  void fixed_alwaysAnswersMaxTokens() {
+    AdaptiveBatchBudget budget = AdaptiveBatchBudget.fixed(12000);
+    run(budget, 20, tokens -> 100.0 / tokens);
+
+    assertEquals(12000, budget.current());
+  }
+
+  @Test
+  void adaptive_startsAtMax_andExploresSmallerBudgets() {
+    AdaptiveBatchBudget budget = AdaptiveBatchBudget.adaptive(2000, 12000);
+    assertEquals(12000, budget.current());
+
+    run(budget, 3, tokens -> 1.0);
+
+    assertEquals(9600, budget.current());
+  }
+
+  @Test
+  void adaptive_settlesOnTheLevelWithMostPagesPerSecond() {
+    AdaptiveBatchBudget budget = AdaptiveBatchBudget.adaptive(2000, 12000);
+    // Throughput peaks at 6144 tokens: larger prompts evaluate slower, smaller ones pay overhead
+    IntToDoubleFunction model = tokens -> {
+      double distance = Math.log(tokens / 6144.0);
+      return 1.0 / (1.0 + distance * distance);
+    };
+
+    run(budget, 100, model);
+
+    assertEquals(6144, budget.current());
+  }
+
+  @Test
+  void adaptive_neverLeavesTheConfiguredRange() {
+    AdaptiveBatchBudget budget = AdaptiveBatchBudget.adaptive(2000, 12000);
+    run(budget, 200, tokens -> 1000.0 / tokens); // smaller is always faster
+
+    assertEquals(2000, budget.current());
+    run(budget, 200, tokens -> tokens / 1000.0); // now larger is always faster
+    assertTrue(budget.current() <= 12000);
+  }
+}
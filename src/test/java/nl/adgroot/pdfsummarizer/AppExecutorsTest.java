@@ -0,0 +1,51 @@
+package nl.adgroot.pdfsummarizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import org.junit.jupiter.api.Test;
+
+class AppExecutorsTest {
+
+  private static Thread threadOf(java.util.concurrent.ExecutorService es) throws Exception {
+    return CompletableFuture.supplyAsync(Thread::currentThread, es).get(2, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void defaultMode_usesPlatformThreads() throws Exception {
+    try (AppExecutors exec = AppExecutors.create(new AppConfig())) {
+      assertFalse(threadOf(exec.permitPoolExecutor()).isVirtual());
+      assertFalse(threadOf(exec.writerPool()).isVirtual());
+    }
+  }
+
+  @Test
+  void virtualMode_blockingWorkOnVirtualThreads_cpuWorkOnPlatformThreads() throws Exception {
+    AppConfig cfg = new AppConfig();
+    cfg.execution.virtualThreads = true;
+
+    try (AppExecutors exec = AppExecutors.create(cfg)) {
+      assertTrue(threadOf(exec.permitPoolExecutor()).isVirtual());
+      assertTrue(threadOf(exec.writerPool()).isVirtual());
+
+      Thread cpu = threadOf(exec.cpuPool());
+      assertFalse(cpu.isVirtual());
+      assertTrue(cpu.getName().startsWith("cpu-worker-"));
+    }
+  }
+
+  @Test
+  void virtualMode_writerStaysSingleThreaded() throws Exception {
+    AppConfig cfg = new AppConfig();
+    cfg.execution.virtualThreads = true;
+
+    try (AppExecutors exec = AppExecutors.create(cfg)) {
+      assertEquals(threadOf(exec.writerPool()), threadOf(exec.writerPool()));
+    }
+  }
+}
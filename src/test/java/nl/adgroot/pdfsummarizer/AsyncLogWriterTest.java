@@ -0,0 +1,161 @@
+package nl.adgroot.pdfsummarizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AsyncLogWriterTest {
+
+  @TempDir
+  Path dir;
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+  private AsyncLogWriter writer(int bufferSize, Path file, boolean json) throws Exception {
+    return new AsyncLogWriter(bufferSize, file, json,
+        new PrintStream(out, false, StandardCharsets.UTF_8), new PrintStream(err, false, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void ringBuffer_deliversEveryItemFromConcurrentProducersAndRejectsWhenFull() throws Exception {
+    LogRingBuffer<Integer> ring = new LogRingBuffer<>(1000);
+    assertEquals(1024, ring.capacity());
+    int producers = 4;
+    int perProducer = 20_000;
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      int base = p * perProducer;
+      Thread t = new Thread(() -> {
+        for (int i = 0; i < perProducer; i++) {
+          while (!ring.offer(base + i)) {
+            Thread.onSpinWait();
+          }
+        }
+      });
+      threads.add(t);
+      t.start();
+    }
+    BitSet seen = new BitSet();
+    int received = 0;
+    while (received < producers * perProducer) {
+      Integer item = ring.poll();
+      if (item != null) {
+        assertFalse(seen.get(item), "delivered twice: " + item);
+        seen.set(item);
+        received++;
+      }
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertNull(ring.poll());
+    assertTrue(ring.isEmpty());
+
+    LogRingBuffer<Integer> small = new LogRingBuffer<>(2);
+    assertTrue(small.offer(1));
+    assertTrue(small.offer(2));
+    assertFalse(small.offer(3));
+    assertEquals(1, small.poll());
+    assertTrue(small.offer(3));
+  }
+
+  @Test
+  void writesTextToConsoleAndFile_withArgumentsCapturedAtTheCall() throws Exception {
+    Path file = dir.resolve("app.log");
+    AsyncLogWriter writer = writer(64, file, false);
+    List<String> pages = new ArrayList<>(List.of("p1"));
+
+    writer.enqueue(Level.INFO, "test", "pages %s of %d", new Object[] {pages, 3}, null, null);
+    pages.add("p2");
+    writer.enqueue(Level.FINE, "test", null, null, () -> "lazy " + pages.size(), null);
+    writer.enqueue(Level.SEVERE, "test", "boom", null, null, new IllegalStateException("bad"));
+    writer.close();
+
+    String log = Files.readString(file);
+    assertTrue(log.contains("[INFO] pages [p1] of 3"), log);
+    assertTrue(log.contains("[DEBUG] lazy 2"), log);
+    assertTrue(log.contains("[ERROR] boom"), log);
+    assertTrue(log.contains("IllegalStateException: bad"), log);
+    assertTrue(out.toString(StandardCharsets.UTF_8).contains("pages [p1] of 3"));
+    assertTrue(err.toString(StandardCharsets.UTF_8).contains("boom"));
+  }
+
+  @Test
+  void awaitFlushed_returnsOnceTheRecordsAreInTheFile() throws Exception {
+    Path file = dir.resolve("app.log");
+    AsyncLogWriter writer = writer(64, file, false);
+    try {
+      for (int i = 0; i < 50; i++) {
+        writer.enqueue(Level.INFO, "test", "record " + i, null, null, null);
+      }
+
+      writer.awaitFlushed(Duration.ofSeconds(5));
+
+      String log = Files.readString(file);
+      assertTrue(log.contains("[INFO] record 0"), log);
+      assertTrue(log.contains("[INFO] record 49"), log);
+      assertTrue(out.toString(StandardCharsets.UTF_8).contains("record 49"));
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  void jsonFormat_writesOneEscapedObjectPerLine() throws Exception {
+    Path file = dir.resolve("app.log");
+    AsyncLogWriter writer = writer(64, file, true);
+
+    writer.enqueue(Level.WARNING, "nl.test.Logger", "quote \" slash \\ tab \t done", null, null, null);
+    writer.enqueue(Level.INFO, "nl.test.Logger", "second", null, null, null);
+    writer.close();
+
+    List<String> lines = Files.readAllLines(file);
+    assertEquals(2, lines.size());
+    JsonNode first = new ObjectMapper().readTree(lines.get(0));
+    assertEquals("WARN", first.get("level").asText());
+    assertEquals("nl.test.Logger", first.get("logger").asText());
+    assertEquals("quote \" slash \\ tab \t done", first.get("msg").asText());
+    assertTrue(first.has("ts"));
+    assertTrue(first.has("thread"));
+  }
+
+  @Test
+  void fullBuffer_dropsInfoButNotWarnings_andReportsTheDrops() throws Exception {
+    Path file = dir.resolve("app.log");
+    AsyncLogWriter writer = writer(2, file, false);
+    int records = 20_000;
+    for (int i = 0; i < records; i++) {
+      writer.enqueue(Level.INFO, "test", "info " + i, null, null, null);
+    }
+    for (int i = 0; i < 100; i++) {
+      writer.enqueue(Level.WARNING, "test", "warn " + i, null, null, null);
+    }
+    writer.close();
+
+    List<String> lines = Files.readAllLines(file);
+    assertEquals(100, lines.stream().filter(l -> l.startsWith("[WARN] warn ")).count());
+    long infos = lines.stream().filter(l -> l.startsWith("[INFO] info ")).count();
+    long reportedDrops = lines.stream().filter(l -> l.contains("log records dropped"))
+        .mapToLong(l -> Long.parseLong(l.replaceAll("\\D*(\\d+) log records dropped.*", "$1")))
+        .sum() + writer.dropped();
+    assertEquals(records, infos + reportedDrops);
+  }
+}
@@ -0,0 +1,172 @@
+package nl.adgroot.pdfsummarizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.pipeline.BatchPriority;
+import nl.adgroot.pdfsummarizer.pipeline.BatchScheduler;
+import org.junit.jupiter.api.Test;
+
+class BatchSchedulerTest {
+
+  private final List<String> started = new CopyOnWriteArrayList<>();
+
+  private CompletableFuture<String> submit(BatchScheduler scheduler, String chapter, int tokens) {
+    String name = chapter + tokens;
+    return scheduler.submit(chapter, tokens, () -> {
+      started.add(name);
+      return CompletableFuture.completedFuture(name);
+    });
+  }
+
+  @Test
+  void longestFirst_holdsBatchesUntilStart_thenDispatchesLargestFirst() throws Exception {
+    BatchScheduler scheduler = BatchScheduler.longestFirst(1);
+    CompletableFuture<String> small = submit(scheduler, "A", 10);
+    submit(scheduler, "B", 300);
+    submit(scheduler, "C", 200);
+
+    assertTrue(started.isEmpty(), "nothing may run before start()");
+    scheduler.start();
+
+    assertEquals(List.of("B300", "C200", "A10"), started);
+    assertEquals("A10", small.get());
+  }
+
+  @Test
+  void lastBatchOfAStartedChapter_jumpsAheadSoTheChapterCanBeWritten() {
+    BatchScheduler scheduler = BatchScheduler.longestFirst(1);
+    submit(scheduler, "A", 100);
+    submit(scheduler, "A", 90);
+    submit(scheduler, "A", 10);
+    submit(scheduler, "B", 95);
+    submit(scheduler, "C", 50);
+
+    scheduler.start();
+
+    // Plain LPT would run C50 before A10
+    assertEquals(List.of("A100", "B95", "A90", "A10", "C50"), started);
+  }
+
+  @Test
+  void longestFirst_keepsAtMostWindowBatchesInFlight() {
+    BatchScheduler scheduler = BatchScheduler.longestFirst(2);
+    List<CompletableFuture<String>> running = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      int tokens = 100 - i;
+      scheduler.submit("A" + i, tokens, () -> {
+        started.add("A" + tokens);
+        CompletableFuture<String> f = new CompletableFuture<>();
+        running.add(f);
+        return f;
+      });
+    }
+
+    scheduler.start();
+    assertEquals(2, started.size());
+
+    running.getFirst().complete("done");
+    assertEquals(List.of("A100", "A99", "A98"), started);
+  }
+
+  @Test
+  void immediate_runsBatchOnSubmit() {
+    submit(BatchScheduler.immediate(), "A", 1);
+
+    assertEquals(List.of("A1"), started);
+  }
+
+  @Test
+  void bounded_runsInSubmissionOrderWithoutStart_andCapsInFlight() {
+    BatchScheduler scheduler = BatchScheduler.bounded(2);
+    List<CompletableFuture<String>> running = new CopyOnWriteArrayList<>();
+    for (int tokens : new int[] {10, 300, 200}) {
+      scheduler.submit("A", tokens, () -> {
+        started.add("A" + tokens);
+        CompletableFuture<String> f = new CompletableFuture<>();
+        running.add(f);
+        return f;
+      });
+    }
+
+    assertEquals(List.of("A10", "A300"), started, "submission order, at most two in flight");
+
+    running.getFirst().complete("done");
+    assertEquals(List.of("A10", "A300", "A200"), started);
+  }
+
+  @Test
+  void priorities_dispatchHigherClassesFirst_longestFirstWithinAClass() {
+    BatchScheduler scheduler = BatchScheduler.longestFirst(1, Duration.ofMinutes(2));
+    submit(scheduler, "Rest", 500, BatchPriority.REST);
+    submit(scheduler, "Early", 100, BatchPriority.EARLY);
+    submit(scheduler, "Early", 300, BatchPriority.EARLY);
+    submit(scheduler, "Selected", 50, BatchPriority.SELECTED);
+
+    scheduler.start();
+
+    assertEquals(List.of("Selected50", "Early300", "Early100", "Rest500"), started);
+  }
+
+  @Test
+  void priorities_higherClassJumpsAheadOfRecentLowerOnes() {
+    BatchScheduler scheduler = BatchScheduler.bounded(1, Duration.ofSeconds(10));
+    CompletableFuture<String> busy = occupyWindow(scheduler);
+    submit(scheduler, "Rest", 1, BatchPriority.REST);
+    submit(scheduler, "Preview", 1, BatchPriority.PREVIEW);
+
+    busy.complete("done");
+
+    assertEquals(List.of("busy", "Preview1", "Rest1"), started);
+  }
+
+  @Test
+  void priorities_lowerClassIsNotStarvedByLaterArrivals() throws Exception {
+    BatchScheduler scheduler = BatchScheduler.bounded(1, Duration.ofMillis(20));
+    CompletableFuture<String> busy = occupyWindow(scheduler);
+    submit(scheduler, "Rest", 1, BatchPriority.REST);
+    Thread.sleep(150); // longer than the three aging steps between REST and PREVIEW
+    submit(scheduler, "Preview", 1, BatchPriority.PREVIEW);
+
+    busy.complete("done");
+
+    assertEquals(List.of("busy", "Rest1", "Preview1"), started);
+  }
+
+  @Test
+  void priorityOf_previewThenSelectedThenEarlyTocChapters() {
+    AppConfig cfg = new AppConfig();
+    cfg.chunking.priorityChapters = new String[] {"recursion"};
+    cfg.chunking.earlyChapters = 2;
+
+    assertEquals(BatchPriority.SELECTED, BatchPriority.of(cfg, 7, "Chapter 8: Recursion"));
+    assertEquals(BatchPriority.EARLY, BatchPriority.of(cfg, 1, "Chapter 2: Loops"));
+    assertEquals(BatchPriority.REST, BatchPriority.of(cfg, 2, "Chapter 3: Classes"));
+
+    cfg.preview.enabled = true;
+    assertEquals(BatchPriority.PREVIEW, BatchPriority.of(cfg, 2, "Chapter 3: Classes"));
+  }
+
+  private CompletableFuture<String> submit(BatchScheduler scheduler, String chapter, int tokens, BatchPriority priority) {
+    String name = chapter + tokens;
+    return scheduler.submit(chapter, tokens, priority, () -> {
+      started.add(name);
+      return CompletableFuture.completedFuture(name);
+    });
+  }
+
+  private CompletableFuture<String> occupyWindow(BatchScheduler scheduler) {
+    CompletableFuture<String> busy = new CompletableFuture<>();
+    scheduler.submit("Busy", 1, BatchPriority.REST, () -> {
+      started.add("busy");
+      return busy;
+    });
+    return busy;
+  }
+}
@@ -0,0 +1,113 @@
+package nl.adgroot.pdfsummarizer;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import nl.adgroot.pdfsummarizer.pipeline.CancellationScope;
+import org.junit.jupiter.api.Test;
+
+class CancellationScopeTest {
+
+  @Test
+  void cancelReachesEveryDescendantAndItsBoundFutures() {
+    CancellationScope run = CancellationScope.root("run");
+    CancellationScope chapter = run.child("chapter");
+    CancellationScope batch = chapter.child("batch");
+    CompletableFuture<String> call = batch.child("stage").bind(new CompletableFuture<>());
+
+    run.cancel("aborted");
+
+    assertTrue(chapter.isCancelled());
+    assertTrue(batch.isCancelled());
+    assertTrue(call.isCompletedExceptionally());
+    assertSame(run.cause(), call.handle((r, ex) -> ex).join());
+  }
+
+  @Test
+  void cancellingABatchLeavesItsSiblingsRunning() {
+    CancellationScope chapter = CancellationScope.root("chapter");
+    CancellationScope first = chapter.child("batch 1");
+    CancellationScope second = chapter.child("batch 2");
+    CompletableFuture<String> secondCall = second.bind(new CompletableFuture<>());
+
+    first.cancel("deadline");
+
+    assertFalse(chapter.isCancelled());
+    assertFalse(second.isCancelled());
+    assertFalse(secondCall.isDone());
+  }
+
+  @Test
+  void childOfACancelledScopeStartsCancelled() {
+    CancellationScope run = CancellationScope.root("run");
+    run.cancel("aborted");
+
+    CancellationScope late = run.child("batch");
+    CompletableFuture<String> call = late.bind(new CompletableFuture<>());
+
+    assertTrue(late.isCancelled());
+    assertTrue(call.isCompletedExceptionally());
+  }
+
+  @Test
+  void deadlineCancelsWithATimeout() throws Exception {
+    CancellationScope run = CancellationScope.root("run");
+    CompletableFuture<String> call = run.child("batch", Duration.ofMillis(20)).bind(new CompletableFuture<>());
+
+    ExecutionException e = assertThrows(ExecutionException.class, () -> call.get(2, TimeUnit.SECONDS));
+    assertInstanceOf(TimeoutException.class, e.getCause());
+    assertFalse(run.isCancelled(), "a batch deadline must not cancel the run");
+  }
+
+  @Test
+  void linkedChildIsCancelledByAnyOfItsLinks() {
+    CancellationScope run = CancellationScope.root("run");
+    CancellationScope a = run.child("chapter A");
+    CancellationScope b = run.child("chapter B");
+    CancellationScope packed = run.linkedChild("packed", List.of(a, b));
+    CompletableFuture<String> call = packed.bind(new CompletableFuture<>());
+
+    b.cancel("skipped");
+
+    assertTrue(packed.isCancelled());
+    assertSame(b.cause(), packed.cause());
+    assertTrue(call.isCompletedExceptionally());
+    assertFalse(a.isCancelled());
+  }
+
+  @Test
+  void closedLinkedChildIsNotCancelledByItsLinks() {
+    CancellationScope run = CancellationScope.root("run");
+    CancellationScope a = run.child("chapter A");
+    CancellationScope packed = run.linkedChild("packed", List.of(a));
+    packed.close();
+
+    a.cancel("skipped");
+
+    assertFalse(packed.isCancelled());
+  }
+
+  @Test
+  void closedScopeKeepsNoDeadlineAndIsNotCancelledByItsParent() throws Exception {
+    CancellationScope run = CancellationScope.root("run");
+    CancellationScope batch = run.child("batch", Duration.ofMillis(20));
+    batch.close();
+    Thread.sleep(60);
+    assertFalse(batch.isCancelled());
+
+    run.cancel("aborted");
+    assertFalse(batch.isCancelled());
+    assertInstanceOf(CancellationException.class, run.cause());
+  }
+}
@@ -13,16 +13,24 @@ import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 
+import nl.adgroot.pdfsummarizer.checkpoint.CheckpointJournal;
+import nl.adgroot.pdfsummarizer.checkpoint.DeadLetterQueue;
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
 import nl.adgroot.pdfsummarizer.notes.NotesWriter;
 import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
 import nl.adgroot.pdfsummarizer.notes.records.CardsPage;
 import nl.adgroot.pdfsummarizer.pdf.parsing.Chapter;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
+import nl.adgroot.pdfsummarizer.pipeline.AdaptiveBatchBudget;
 import nl.adgroot.pdfsummarizer.pipeline.BatchContext;
 import nl.adgroot.pdfsummarizer.pipeline.BatchPipeline;
+import nl.adgroot.pdfsummarizer.pipeline.BatchScheduler;
 import nl.adgroot.pdfsummarizer.pipeline.ChapterProcessor;
+import nl.adgroot.pdfsummarizer.pipeline.FollowUpBudget;
+import nl.adgroot.pdfsummarizer.pipeline.StageFailedException;
+import nl.adgroot.pdfsummarizer.pipeline.TokenEstimator;
 import nl.adgroot.pdfsummarizer.prompts.PromptTemplate;
 import nl.adgroot.pdfsummarizer.prompts.PromptTemplates;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -311,10 +319,446 @@ class ChapterProcessorTest {
     assertEquals(List.of(2, 3), batches.get(1), "Second batch should contain pages 2 and 3 in order");
   }
 
+  @Test
+  void packing_smallChaptersShareOneRequest_andCardsAreSplitBackPerChapter() throws Exception {
+    AppConfig cfg = batchingCfg(true, 300);
+    cfg.chunking.minTokensPerChunk = 1000;
+    cfg.chunking.packSmallChapters = true;
+
+    // A=100, B=90 and D=150 content tokens are small, C=3000 is not. Packed, each also costs its
+    // Section: lines (3 tokens per page) and its header in the section list (1 token).
+    // First-fit-decreasing with max=300: D then A share a request, B does not fit anymore.
+    List<PdfObject> pages = new ArrayList<>();
+    pages.add(page(0, "A", 100));
+    pages.add(page(1, "B", 45));
+    pages.add(page(2, "B", 45));
+    pages.add(page(3, "C", 3000));
+    pages.add(page(4, "D", 150));
+    List<Chapter> toc = List.of(
+        new Chapter("A", 1, 1), new Chapter("B", 2, 3), new Chapter("C", 4, 4), new Chapter("D", 5, 5));
+
+    CapturingPipeline capturing = new CapturingPipeline();
+    List<CardsPage> written = new CopyOnWriteArrayList<>();
+    NotesWriter writer = new NotesWriter() {
+      @Override
+      public void writeCard(Path outDir, CardsPage page) {
+        written.add(page);
+      }
+    };
+    BatchContext ctx = new BatchContext(
+        List.of(), new ServerPermitPool(1, 1, true),
+        permitExec, cpuExec,
+        new PromptTemplates(new PromptTemplate(""), null, null, null),
+        cfg, "Topic", new ProgressTracker(pages.size()),
+        Files.createTempDirectory("packing-test-")
+    );
+
+    List<CompletableFuture<Void>> chapterWrites = new ChapterProcessor().processChaptersAsync(
+        toc, pages, capturing, ctx, writerExec, writer);
+    CompletableFuture.allOf(chapterWrites.toArray(new CompletableFuture[0])).get(2, TimeUnit.SECONDS);
+
+    assertEquals(3, capturing.batches.size());
+    assertTrue(capturing.batches.contains(List.of(0, 4)), "A and D should be packed in TOC order");
+    assertTrue(capturing.batches.contains(List.of(1, 2)));
+    assertTrue(capturing.batches.contains(List.of(3)));
+    assertTrue(capturing.titles.contains("A | D"));
+
+    assertEquals(4, written.size(), "Every chapter still gets its own file");
+    for (PdfObject p : pages) {
+      assertEquals(List.of("Card for index=" + p.getIndex()), p.getCards());
+    }
+    CardsPage d = written.stream().filter(w -> w.toString().contains("Card for index=4")).findFirst().orElseThrow();
+    assertFalse(d.toString().contains("Card for index=0"), "Packed cards must be split back per chapter");
+  }
+
+  @Test
+  void packing_countsTheSectionLinesAgainstTheBudget() throws Exception {
+    AppConfig cfg = batchingCfg(true, 300);
+    cfg.chunking.minTokensPerChunk = 1000;
+    cfg.chunking.packSmallChapters = true;
+
+    // 150 + 150 content tokens fill the budget exactly; the Section: lines would overflow it
+    List<PdfObject> pages = List.of(page(0, "A", 150), page(1, "B", 150));
+    List<Chapter> toc = List.of(new Chapter("A", 1, 1), new Chapter("B", 2, 2));
+
+    CapturingPipeline capturing = new CapturingPipeline();
+    BatchContext ctx = new BatchContext(
+        List.of(), new ServerPermitPool(1, 1, true),
+        permitExec, cpuExec,
+        new PromptTemplates(new PromptTemplate(""), null, null, null),
+        cfg, "Topic", new ProgressTracker(pages.size()),
+        Files.createTempDirectory("packing-test-")
+    );
+
+    List<CompletableFuture<Void>> chapterWrites = new ChapterProcessor().processChaptersAsync(
+        toc, pages, capturing, ctx, writerExec, new NoopNotesWriter());
+    CompletableFuture.allOf(chapterWrites.toArray(new CompletableFuture[0])).get(2, TimeUnit.SECONDS);
+
+    assertEquals(List.of(List.of(0), List.of(1)), capturing.batches);
+    assertEquals(List.of("A", "B"), capturing.titles);
+  }
+
+  @Test
+  void calibratedEstimate_splitsABatchThatNoLongerFits_beforeSendingIt() throws Exception {
+    AppConfig cfg = batchingCfg(true, 250);
+    List<PdfObject> pages = pagesInChapter("Ch", 3, 100);
+    CapturingPipeline capturing = new CapturingPipeline();
+    TokenEstimator tokens = TokenEstimator.calibrating();
+    BatchScheduler scheduler = BatchScheduler.longestFirst(1);
+    BatchContext ctx = new BatchContext(
+        List.of(), new ServerPermitPool(1, 1, true),
+        permitExec, cpuExec,
+        new PromptTemplates(new PromptTemplate(""), null, null, null),
+        cfg, "Topic", new ProgressTracker(pages.size()),
+        Files.createTempDirectory("calibration-test-")
+    ).with(o -> {
+      o.tokens = tokens;
+      o.scheduler = scheduler;
+    });
+
+    // Planned with the prior: 3 × 80 tokens fit in one batch
+    CompletableFuture<Void> done = new ChapterProcessor().processChapterAsync(
+        new Chapter("Ch", 1, 3), pages, capturing, ctx, writerExec, new NoopNotesWriter());
+
+    // Before it is dispatched, servers report about twice the estimated tokens
+    String prompt = "x".repeat(4000);
+    for (int i = 0; i < 10; i++) {
+      tokens.observe(prompt, new LlmMetrics(0, 0, 0, 2 * TokenEstimator.tokenizerEstimate(prompt), 0));
+    }
+    scheduler.start();
+    done.get(2, TimeUnit.SECONDS);
+
+    assertEquals(List.of(List.of(0), List.of(1), List.of(2)), capturing.batches);
+    for (PdfObject p : pages) {
+      assertEquals(List.of("Card for index=" + p.getIndex()), p.getCards());
+    }
+  }
+
+  @Test
+  void calibratedEstimate_growsBatchesThatNowHaveRoom_whenTheyAreDispatched() throws Exception {
+    AppConfig cfg = batchingCfg(true, 250);
+    List<PdfObject> pages = pagesInChapter("Ch", 6, 100);
+    CapturingPipeline capturing = new CapturingPipeline();
+    TokenEstimator tokens = TokenEstimator.calibrating();
+    BatchScheduler scheduler = BatchScheduler.longestFirst(1);
+    BatchContext ctx = new BatchContext(
+        List.of(), new ServerPermitPool(1, 1, true),
+        permitExec, cpuExec,
+        new PromptTemplates(new PromptTemplate(""), null, null, null),
+        cfg, "Topic", new ProgressTracker(pages.size()),
+        Files.createTempDirectory("calibration-test-")
+    ).with(o -> {
+      o.tokens = tokens;
+      o.scheduler = scheduler;
+    });
+
+    // Planned with the prior: 3 × 80 tokens per batch, two batches
+    CompletableFuture<Void> done = new ChapterProcessor().processChapterAsync(
+        new Chapter("Ch", 1, 6), pages, capturing, ctx, writerExec, new NoopNotesWriter());
+
+    // Servers report half the estimated tokens: a page is now 48 tokens, so 5 fit in 250
+    String prompt = "x".repeat(4000);
+    for (int i = 0; i < 10; i++) {
+      tokens.observe(prompt, new LlmMetrics(0, 0, 0, TokenEstimator.tokenizerEstimate(prompt) / 2, 0));
+    }
+    scheduler.start();
+    done.get(2, TimeUnit.SECONDS);
+
+    assertEquals(List.of(List.of(0, 1, 2, 3, 4), List.of(5)), capturing.batches);
+    for (PdfObject p : pages) {
+      assertEquals(List.of("Card for index=" + p.getIndex()), p.getCards());
+    }
+  }
+
+  @Test
+  void adaptiveBudget_thatGrowsMidChapter_sendsFewerLargerBatches() throws Exception {
+    AppConfig cfg = batchingCfg(true, 250);
+    List<PdfObject> pages = pagesInChapter("Ch", 8, 80);
+    // Levels 250, 200 and 160 tokens; three batches at 250 move it on to explore 200
+    AdaptiveBatchBudget budget = AdaptiveBatchBudget.adaptive(160, 250);
+    for (int i = 0; i < 3; i++) {
+      budget.observe(1, 250, new LlmMetrics(1_000_000_000L, 0, 0, 0, 0));
+    }
+    assertEquals(200, budget.current());
+
+    CapturingPipeline capturing = new CapturingPipeline() {
+      @Override
+      public CompletableFuture<Map<Integer, List<String>>> processBatchAsync(
+          BatchContext ctx, String chapterTitle, List<PdfObject> batch
+      ) {
+        if (batches.isEmpty()) {
+          // 200 turns out slower, so the budget grows back to 250 after the first batch
+          for (int i = 0; i < 3; i++) {
+            budget.observe(1, 200, new LlmMetrics(2_000_000_000L, 0, 0, 0, 0));
+          }
+        }
+        return super.processBatchAsync(ctx, chapterTitle, batch);
+      }
+    };
+    BatchScheduler scheduler = BatchScheduler.longestFirst(1);
+    BatchContext ctx = new BatchContext(
+        List.of(), new ServerPermitPool(1, 1, true),
+        permitExec, cpuExec,
+        new PromptTemplates(new PromptTemplate(""), null, null, null),
+        cfg, "Topic", new ProgressTracker(pages.size()),
+        Files.createTempDirectory("budget-test-")
+    ).with(o -> {
+      o.batchBudget = budget;
+      o.scheduler = scheduler;
+    });
+
+    // Planned at 200: four batches of 2 pages
+    CompletableFuture<Void> done = new ChapterProcessor().processChapterAsync(
+        new Chapter("Ch", 1, 8), pages, capturing, ctx, writerExec, new NoopNotesWriter());
+    scheduler.start();
+    done.get(2, TimeUnit.SECONDS);
+
+    assertEquals(250, budget.current());
+    assertEquals(List.of(List.of(0, 1), List.of(2, 3, 4), List.of(5, 6, 7)), capturing.batches);
+    for (PdfObject p : pages) {
+      assertEquals(List.of("Card for index=" + p.getIndex()), p.getCards());
+    }
+  }
+
+  private PdfObject page(int index, String chapter, int tokens) {
+    PDDocument d = new PDDocument();
+    d.addPage(new PDPage());
+    docsToClose.add(d);
+    return new PdfObject(index, chapter, d, textOfTokens(tokens));
+  }
+
+  // ----------------------------
+  // Resume from checkpoint
+  // ----------------------------
+
+  @Test
+  void processChapterAsync_resume_onlySchedulesPagesMissingFromCheckpoint() throws Exception {
+    String chapter = "Ch";
+    List<PdfObject> pages = pagesInChapter(chapter, 4, 10);
+    AppConfig cfg = batchingCfg(false, 99999);
+    Path outDir = Files.createTempDirectory("resume-test-");
+
+    // First run journaled pages 0 and 1, then got interrupted
+    try (CheckpointJournal journal = CheckpointJournal.open(outDir, "fp", false)) {
+      journal.record(chapter, pages.subList(0, 2),
+          Map.of(0, List.of("Restored card 0"), 1, List.of("Restored card 1")));
+    }
+
+    CapturingPipeline capturing = new CapturingPipeline();
+    try (CheckpointJournal journal = CheckpointJournal.open(outDir, "fp", true)) {
+      BatchContext ctx = new BatchContext(
+          List.of(), new ServerPermitPool(1, 1, true),
+          permitExec, cpuExec,
+          new PromptTemplates(new PromptTemplate(""), null, null, null),
+          cfg, "Topic", new ProgressTracker(pages.size()), outDir
+      ).with(o -> o.checkpoint = journal);
+
+      new ChapterProcessor().processChapterAsync(
+          new Chapter(chapter, 1, 0), pages, capturing, ctx, writerExec, new NoopNotesWriter()
+      ).get(2, TimeUnit.SECONDS);
+    }
+
+    assertEquals(List.of(List.of(2), List.of(3)), capturing.batches,
+        "Only the pages without a checkpoint should reach the pipeline");
+    assertEquals(List.of("Restored card 0"), pages.get(0).getCards());
+    assertTrue(pages.get(1).getNotes().contains("Restored card 1"));
+    assertEquals(List.of("Card for index=3"), pages.get(3).getCards());
+  }
+
+  // ----------------------------
+  // Incremental chapter files
+  // ----------------------------
+
+  @Test
+  void processChapterAsync_incrementalFile_matchesChapterWrittenAtTheEnd() throws Exception {
+    String chapter = "Ch";
+    List<PdfObject> pages = pagesInChapter(chapter, 3, 10);
+    AppConfig cfg = batchingCfg(false, 99999);
+    cfg.output.incrementalChapterFiles = true;
+    Path outDir = Files.createTempDirectory("incremental-test-");
+
+    // Completes the batches in reverse order
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    BatchPipeline reversed = new StubPipeline() {
+      @Override
+      public CompletableFuture<Map<Integer, List<String>>> processBatchAsync(
+          BatchContext ctx, String chapterTitle, List<PdfObject> batch
+      ) {
+        long delay = 30L * (3 - batch.getFirst().getIndex());
+        return release.thenCompose(v -> CompletableFuture.supplyAsync(
+            () -> super.processBatchAsync(ctx, chapterTitle, batch).join(),
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)));
+      }
+    };
+
+    BatchContext ctx = new BatchContext(
+        List.of(), new ServerPermitPool(1, 1, true),
+        permitExec, cpuExec,
+        new PromptTemplates(new PromptTemplate(""), null, null, null),
+        cfg, "Topic", new ProgressTracker(pages.size()), outDir
+    );
+    CompletableFuture<Void> done = new ChapterProcessor().processChapterAsync(
+        new Chapter(chapter, 1, 0), pages, reversed, ctx, writerExec, new NotesWriter());
+    release.complete(null);
+    done.get(2, TimeUnit.SECONDS);
+
+    CardsPage expected = new CardsPage("Topic", chapter);
+    pages.forEach(p -> expected.addCard("Card for index=" + p.getIndex()));
+    assertEquals(expected.toString(), Files.readString(outDir.resolve("Topic-Ch.md")));
+    // Written pages keep no cards or notes without a page manifest or preview to read them
+    for (PdfObject p : pages) {
+      assertTrue(p.getCards().isEmpty());
+      assertEquals("", p.getNotes());
+    }
+  }
+
+  @Test
+  void processChapterAsync_incrementalFile_keepsTheCardsThePageManifestNeeds() throws Exception {
+    String chapter = "Ch";
+    List<PdfObject> pages = pagesInChapter(chapter, 2, 10);
+    AppConfig cfg = batchingCfg(false, 99999);
+    cfg.output.incrementalChapterFiles = true;
+    cfg.checkpoint.pageManifest = true;
+    Path outDir = Files.createTempDirectory("incremental-test-");
+
+    BatchContext ctx = new BatchContext(
+        List.of(), new ServerPermitPool(1, 1, true),
+        permitExec, cpuExec,
+        new PromptTemplates(new PromptTemplate(""), null, null, null),
+        cfg, "Topic", new ProgressTracker(pages.size()), outDir
+    );
+    new ChapterProcessor().processChapterAsync(
+        new Chapter(chapter, 1, 0), pages, new StubPipeline(), ctx, writerExec, new NotesWriter()
+    ).get(2, TimeUnit.SECONDS);
+
+    for (PdfObject p : pages) {
+      assertEquals(List.of("Card for index=" + p.getIndex()), p.getCards());
+      assertEquals("", p.getNotes());
+    }
+  }
+
+  // ----------------------------
+  // Follow-up for missing pages
+  // ----------------------------
+
+  /** Leaves page 1 out of every batch with more than one page. */
+  static class DropsPageOnePipeline extends CapturingPipeline {
+    @Override
+    public CompletableFuture<Map<Integer, List<String>>> processBatchAsync(
+        BatchContext ctx, String chapterTitle, List<PdfObject> batch
+    ) {
+      Map<Integer, List<String>> out = new java.util.HashMap<>(super.processBatchAsync(ctx, chapterTitle, batch).join());
+      if (batch.size() > 1) out.remove(1);
+      return CompletableFuture.completedFuture(out);
+    }
+  }
+
+  private List<List<Integer>> runWithFollowUps(List<PdfObject> pages, FollowUpBudget budget,
+      CapturingPipeline pipeline) throws Exception {
+    AppConfig cfg = batchingCfg(true, 99999);
+    cfg.followUp.enabled = true;
+    cfg.followUp.minPageChars = 10;
+
+    BatchContext ctx = new BatchContext(
+        List.of(), new ServerPermitPool(1, 1, true),
+        permitExec, cpuExec,
+        new PromptTemplates(new PromptTemplate(""), null, null, null),
+        cfg, "Topic", new ProgressTracker(pages.size()), Files.createTempDirectory("followup-test-")
+    ).with(o -> o.followUps = budget);
+
+    new ChapterProcessor().processChapterAsync(
+        new Chapter("Ch", 1, 0), pages, pipeline, ctx, writerExec, new NoopNotesWriter()
+    ).get(2, TimeUnit.SECONDS);
+    return pipeline.batches;
+  }
+
+  @Test
+  void processChapterAsync_pageMissingFromBatch_isReaskedAlone_andMerged() throws Exception {
+    List<PdfObject> pages = pagesInChapter("Ch", 3, 10);
+
+    List<List<Integer>> batches = runWithFollowUps(pages, FollowUpBudget.of(5), new DropsPageOnePipeline());
+
+    assertEquals(List.of(List.of(0, 1, 2), List.of(1)), batches);
+    assertEquals(List.of("Card for index=1"), pages.get(1).getCards());
+    assertEquals(List.of("Card for index=2"), pages.get(2).getCards());
+  }
+
+  @Test
+  void processChapterAsync_spentFollowUpBudget_keepsPageEmpty() throws Exception {
+    List<PdfObject> pages = pagesInChapter("Ch", 3, 10);
+
+    List<List<Integer>> batches = runWithFollowUps(pages, FollowUpBudget.of(0), new DropsPageOnePipeline());
+
+    assertEquals(List.of(List.of(0, 1, 2)), batches);
+    assertTrue(pages.get(1).getCards().isEmpty());
+  }
+
+  // ----------------------------
+  // Dead-letter queue
+  // ----------------------------
+
+  @Test
+  void processChapterAsync_failedBatch_isReplayedFromFailedStageAfterSeal() throws Exception {
+    String chapter = "Ch";
+    List<PdfObject> pages = pagesInChapter(chapter, 2, 10);
+    AppConfig cfg = batchingCfg(false, 99999);
+    Path outDir = Files.createTempDirectory("dlq-test-");
+
+    FailOncePipeline pipeline = new FailOncePipeline(1);
+    try (DeadLetterQueue dlq = DeadLetterQueue.open(outDir)) {
+      BatchContext ctx = new BatchContext(
+          List.of(), new ServerPermitPool(1, 1, true),
+          permitExec, cpuExec,
+          new PromptTemplates(new PromptTemplate(""), null, null, null),
+          cfg, "Topic", new ProgressTracker(pages.size()), outDir
+      ).with(o -> o.deadLetters = dlq);
+
+      CompletableFuture<Void> done = new ChapterProcessor().processChapterAsync(
+          new Chapter(chapter, 1, 0), pages, pipeline, ctx, writerExec, new NoopNotesWriter());
+      dlq.seal();
+      done.get(2, TimeUnit.SECONDS);
+    }
+
+    assertEquals("step3", pipeline.resumedFrom.get());
+    assertEquals(List.of("Replayed card 1"), pages.get(1).getCards());
+    assertEquals(List.of("Card for index=0"), pages.get(0).getCards());
+    assertFalse(Files.exists(outDir.resolve(DeadLetterQueue.FILE_NAME)));
+  }
+
   // ----------------------------
   // Stubs
   // ----------------------------
 
+  /** Fails the batch holding {@code failingIndex} in step 3; the replay succeeds. */
+  static class FailOncePipeline extends StubPipeline {
+    private final int failingIndex;
+    final AtomicReference<String> resumedFrom = new AtomicReference<>();
+
+    FailOncePipeline(int failingIndex) {
+      this.failingIndex = failingIndex;
+    }
+
+    @Override
+    public CompletableFuture<Map<Integer, List<String>>> processBatchAsync(
+        BatchContext ctx, String chapterTitle, List<PdfObject> batch
+    ) {
+      if (batch.getFirst().getIndex() == failingIndex) {
+        return CompletableFuture.failedFuture(
+            new StageFailedException("step3", "concepts", "raw", new RuntimeException("down")));
+      }
+      return super.processBatchAsync(ctx, chapterTitle, batch);
+    }
+
+    @Override
+    public CompletableFuture<Map<Integer, List<String>>> resumeBatchAsync(
+        BatchContext ctx, String chapterTitle, List<PdfObject> batch, StageFailedException failure
+    ) {
+      resumedFrom.set(failure.stage());
+      return CompletableFuture.completedFuture(
+          Map.of(batch.getFirst().getIndex(), List.of("Replayed card " + batch.getFirst().getIndex())));
+    }
+  }
+
   /** A pipeline stub that returns a deterministic result without calling LLMs. */
   static class StubPipeline implements BatchPipeline {
 
@@ -333,12 +777,14 @@ class ChapterProcessorTest {
   /** Records the index list of each batch received, for batching assertions. */
   static class CapturingPipeline implements BatchPipeline {
     final List<List<Integer>> batches = new java.util.concurrent.CopyOnWriteArrayList<>();
+    final List<String> titles = new java.util.concurrent.CopyOnWriteArrayList<>();
 
     @Override
     public CompletableFuture<Map<Integer, List<String>>> processBatchAsync(
         BatchContext ctx, String chapterTitle, List<PdfObject> batch
     ) {
       batches.add(batch.stream().map(PdfObject::getIndex).toList());
+      titles.add(chapterTitle);
       Map<Integer, List<String>> out = new java.util.HashMap<>();
       for (var p : batch) out.put(p.getIndex(), List.of("Card for index=" + p.getIndex()));
       return CompletableFuture.completedFuture(out);
@@ -0,0 +1,83 @@
+package nl.adgroot.pdfsummarizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nl.adgroot.pdfsummarizer.pipeline.DebugSink;
+import org.junit.jupiter.api.Test;
+
+class DebugSinkTest {
+
+  @Test
+  void close_flushesEverythingQueued() throws Exception {
+    Path dir = Files.createTempDirectory("debugsink-").resolve("debug");
+
+    try (DebugSink sink = DebugSink.create(dir, 4)) {
+      for (int i = 0; i < 50; i++) {
+        sink.append("step1_concepts", "Chapter 1", "pages=[" + i + "]", "content-" + i);
+      }
+    }
+
+    String content = Files.readString(dir.resolve("step1_concepts_Chapter-1.md"));
+    for (int i = 0; i < 50; i++) {
+      assertTrue(content.contains("=== BATCH pages=[" + i + "] ===\n\ncontent-" + i),
+          "record " + i + " should be written after close");
+    }
+  }
+
+  @Test
+  void concurrentBatches_recordsNeverInterleave() throws Exception {
+    Path dir = Files.createTempDirectory("debugsink-concurrent-").resolve("debug");
+    int threads = 8;
+    int perThread = 100;
+    String body = "line\n".repeat(200);
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try (DebugSink sink = DebugSink.create(dir, 16)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        futures.add(pool.submit(() -> {
+          for (int i = 0; i < perThread; i++) {
+            sink.append("step2_cards", "Same chapter", "t" + thread + "-" + i, body);
+          }
+        }));
+      }
+      for (Future<?> f : futures) f.get();
+    } finally {
+      pool.shutdownNow();
+    }
+
+    String content = Files.readString(dir.resolve("step2_cards_Same-chapter.md"));
+    Matcher m = Pattern.compile("=== BATCH (\\S+) ===\n\n((?:line\n)*)").matcher(content);
+    int records = 0;
+    while (m.find()) {
+      assertEquals(body, m.group(2), "record " + m.group(1) + " was interleaved with another one");
+      records++;
+    }
+    assertEquals(threads * perThread, records);
+  }
+
+  @Test
+  void disabled_ignoresRecordsAndCreatesNothing() throws Exception {
+    Path dir = Files.createTempDirectory("debugsink-off-").resolve("debug");
+
+    try (DebugSink sink = DebugSink.disabled()) {
+      assertFalse(sink.isEnabled());
+      sink.append("step1_concepts", "Chapter", "pages=[0]", "content");
+    }
+
+    assertFalse(Files.exists(dir));
+  }
+}
@@ -0,0 +1,153 @@
+package nl.adgroot.pdfsummarizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfPreviewComposer;
+import nl.adgroot.pdfsummarizer.pipeline.PagePipeline;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplate;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplates;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FolderWatcherTest {
+
+  @TempDir
+  Path dir;
+
+  private static final Pattern CONTENT_PAGE = Pattern.compile("CONTENT-\\d+");
+
+  private final AtomicLong clock = new AtomicLong();
+  // Content pages sent to the LLM
+  private final AtomicInteger pagesSent = new AtomicInteger();
+  private AppConfig cfg;
+  private AppExecutors exec;
+  private JobManager jobs;
+  private Path inbox;
+  private Path outputRoot;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    cfg = new AppConfig();
+    cfg.ollama.concurrency = 4;
+    cfg.cards.maxCardsPerChunk = 10;
+    cfg.cards.nrOfLinesUsedForContext = 0;
+    cfg.chunking.maxTokensPerChunk = 100_000;
+    cfg.preview.enabled = false;
+    cfg.debug.enabled = false;
+    cfg.watch.settleSeconds = 5;
+
+    exec = AppExecutors.create(cfg);
+    PipelineEndToEndTest.FakeLlmClient llm = new PipelineEndToEndTest.FakeLlmClient() {
+      @Override
+      public CompletableFuture<LlmResult> generateAsync(String prompt) {
+        Matcher m = CONTENT_PAGE.matcher(prompt);
+        while (m.find()) {
+          pagesSent.incrementAndGet();
+        }
+        return super.generateAsync(prompt);
+      }
+    };
+    jobs = new JobManager(cfg, List.of(llm), new ServerPermitPool(1, 2, true),
+        new PagePipeline(), new PromptTemplates(new PromptTemplate("{{content}}"), null, null, null),
+        exec, new PdfPreviewComposer());
+    inbox = Files.createDirectory(dir.resolve("inbox"));
+    outputRoot = dir.resolve("notes");
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    jobs.close();
+    exec.close();
+  }
+
+  private FolderWatcher watcher() throws Exception {
+    return new FolderWatcher(inbox, outputRoot, cfg.watch, jobs, clock::get);
+  }
+
+  private void advance(int seconds) {
+    clock.addAndGet(Duration.ofSeconds(seconds).toNanos());
+  }
+
+  /** Lets a dropped file settle, waits for its job and records it. */
+  private void settleAndFinish(FolderWatcher watcher) throws Exception {
+    watcher.tick();
+    advance(6);
+    watcher.tick();
+    for (int i = 0; i < 600 && !jobs.jobs().stream().allMatch(JobManager.Job::isFinished); i++) {
+      Thread.sleep(50);
+    }
+    watcher.tick();
+  }
+
+  @Test
+  void processesASettledPdfOnce_andAgainOnlyWhenItChanges() throws Exception {
+    Path pdf = inbox.resolve("book.pdf");
+    Files.copy(PipelineEndToEndTest.buildTestPdf(4), pdf);
+
+    try (FolderWatcher watcher = watcher()) {
+      settleAndFinish(watcher);
+    }
+    assertEquals(1, jobs.jobs().size());
+    assertEquals(JobManager.State.SUCCEEDED, jobs.jobs().get(0).state(), jobs.jobs().get(0).error());
+    assertTrue(Files.isDirectory(outputRoot.resolve("book")));
+    assertTrue(Files.readString(outputRoot.resolve(cfg.watch.ledgerFile)).contains(FolderWatcher.sha256(pdf)));
+    assertEquals(4, pagesSent.get());
+
+    // A restart finds the same file and leaves it alone
+    try (FolderWatcher watcher = watcher()) {
+      settleAndFinish(watcher);
+    }
+    assertEquals(1, jobs.jobs().size());
+
+    // A changed file is processed again; only its two new pages go to the LLM
+    Path stale = Files.writeString(outputRoot.resolve("book").resolve("book-Renamed chapter.md"), "old");
+    pagesSent.set(0);
+    Files.copy(PipelineEndToEndTest.buildTestPdf(6), pdf, StandardCopyOption.REPLACE_EXISTING);
+    try (FolderWatcher watcher = watcher()) {
+      settleAndFinish(watcher);
+    }
+    assertEquals(2, jobs.jobs().size());
+    JobManager.Job second = jobs.jobs().get(1);
+    assertEquals(JobManager.State.SUCCEEDED, second.state(), second.error());
+    assertEquals(2, pagesSent.get());
+    assertFalse(Files.exists(stale));
+    assertFalse(Files.exists(outputRoot.resolve(".book.previous")));
+  }
+
+  @Test
+  void waitsWhileAFileIsStillBeingWritten() throws Exception {
+    Path pdf = inbox.resolve("partial.pdf");
+    Files.writeString(pdf, "%PDF-1.7\n");
+
+    try (FolderWatcher watcher = watcher()) {
+      watcher.tick();
+      advance(4);
+      Files.writeString(pdf, "more bytes\n", StandardOpenOption.APPEND);
+      watcher.tick();
+      advance(4);
+      watcher.tick();
+
+      assertEquals(1, watcher.pendingFiles());
+      assertEquals(0, jobs.jobs().size());
+    }
+  }
+}
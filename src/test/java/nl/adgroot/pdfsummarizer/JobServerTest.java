@@ -0,0 +1,191 @@
+package nl.adgroot.pdfsummarizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfPreviewComposer;
+import nl.adgroot.pdfsummarizer.pipeline.PagePipeline;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplate;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplates;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JobServerTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @TempDir
+  Path dir;
+
+  private final HttpClient http = HttpClient.newHttpClient();
+  // LLM calls wait for this; a test replaces it to keep its jobs running
+  private volatile CompletableFuture<Void> gate = CompletableFuture.completedFuture(null);
+  private AppExecutors exec;
+  private JobManager jobs;
+  private JobServer server;
+
+  @BeforeEach
+  void startDaemon() throws Exception {
+    AppConfig cfg = new AppConfig();
+    cfg.ollama.concurrency = 4;
+    cfg.cards.maxCardsPerChunk = 10;
+    cfg.cards.nrOfLinesUsedForContext = 0;
+    cfg.chunking.maxTokensPerChunk = 100_000;
+    cfg.preview.combinePdfWithNotes = false;
+    cfg.debug.enabled = false;
+    cfg.daemon.port = 0;
+    cfg.daemon.maxConcurrentJobs = 2;
+
+    exec = AppExecutors.create(cfg);
+    PipelineEndToEndTest.FakeLlmClient llm = new PipelineEndToEndTest.FakeLlmClient() {
+      @Override
+      public CompletableFuture<LlmResult> generateAsync(String prompt) {
+        return gate.thenCompose(open -> super.generateAsync(prompt));
+      }
+    };
+    jobs = new JobManager(cfg, List.of(llm), new ServerPermitPool(1, 2, true),
+        new PagePipeline(), new PromptTemplates(new PromptTemplate("{{content}}"), null, null, null),
+        exec, new PdfPreviewComposer());
+    server = JobServer.start(cfg.daemon, jobs);
+  }
+
+  @AfterEach
+  void stopDaemon() throws Exception {
+    gate.complete(null);
+    server.close();
+    jobs.close();
+    exec.close();
+  }
+
+  private HttpResponse<String> get(String path) throws Exception {
+    return http.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path)).build(),
+        HttpResponse.BodyHandlers.ofString());
+  }
+
+  private HttpResponse<String> post(String body) throws Exception {
+    return http.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + "/jobs"))
+        .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private JsonNode awaitFinished(String id) throws Exception {
+    for (int i = 0; i < 600; i++) {
+      JsonNode status = MAPPER.readTree(get("/jobs/" + id).body());
+      String state = status.get("state").asText();
+      if (state.equals("SUCCEEDED") || state.equals("FAILED")) {
+        return status;
+      }
+      Thread.sleep(50);
+    }
+    throw new AssertionError("job " + id + " did not finish");
+  }
+
+  @Test
+  void runsConcurrentJobsOnTheSharedServers_andReportsTheirProgress() throws Exception {
+    Path pdf = PipelineEndToEndTest.buildTestPdf(PipelineEndToEndTest.TOTAL_CONTENT_PAGES);
+    try {
+      List<String> ids = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        String body = MAPPER.createObjectNode()
+            .put("pdf", pdf.toString())
+            .put("outputDir", dir.resolve("out-" + i).toString())
+            .set("config", MAPPER.readTree("{\"preview\": {\"enabled\": false}}"))
+            .toString();
+        HttpResponse<String> response = post(body);
+        assertEquals(202, response.statusCode(), response.body());
+        ids.add(MAPPER.readTree(response.body()).get("id").asText());
+      }
+
+      for (int i = 0; i < ids.size(); i++) {
+        JsonNode status = awaitFinished(ids.get(i));
+        assertEquals("SUCCEEDED", status.get("state").asText(), status.toString());
+        JsonNode progress = MAPPER.readTree(get("/jobs/" + ids.get(i) + "/progress").body());
+        assertEquals(PipelineEndToEndTest.TOTAL_CONTENT_PAGES, progress.get("pages").get("done").asInt());
+        try (Stream<Path> files = Files.list(dir.resolve("out-" + i))) {
+          assertTrue(files.anyMatch(f -> f.getFileName().toString().endsWith(".md")), "no chapter written");
+        }
+      }
+      assertEquals(3, MAPPER.readTree(get("/jobs").body()).size());
+    } finally {
+      Files.deleteIfExists(pdf);
+    }
+  }
+
+  @Test
+  void refusesBadJobsAndSharedSettings() throws Exception {
+    Path pdf = PipelineEndToEndTest.buildTestPdf(2);
+    try {
+      assertEquals(400, post("{\"outputDir\": \"x\"}").statusCode());
+      assertEquals(400, post("{\"pdf\": \"" + dir.resolve("missing.pdf") + "\", \"outputDir\": \"" + dir + "\"}")
+          .statusCode());
+      HttpResponse<String> shared = post(MAPPER.createObjectNode()
+          .put("pdf", pdf.toString())
+          .put("outputDir", dir.resolve("out").toString())
+          .set("config", MAPPER.readTree("{\"ollama\": {\"servers\": 8}}"))
+          .toString());
+      assertEquals(400, shared.statusCode());
+      assertTrue(shared.body().contains("ollama"), shared.body());
+      assertEquals(404, get("/jobs/42").statusCode());
+      assertEquals(404, get("/jobs/42/progress").statusCode());
+    } finally {
+      Files.deleteIfExists(pdf);
+    }
+  }
+
+  @Test
+  void refusesAnOutputDirectoryInUseByAnUnfinishedJob() throws Exception {
+    Path pdf = PipelineEndToEndTest.buildTestPdf(2);
+    gate = new CompletableFuture<>();
+    try {
+      String job = MAPPER.createObjectNode()
+          .put("pdf", pdf.toString())
+          .put("outputDir", dir.resolve("out").toString())
+          .toString();
+      HttpResponse<String> first = post(job);
+      assertEquals(202, first.statusCode(), first.body());
+
+      HttpResponse<String> same = post(MAPPER.createObjectNode()
+          .put("pdf", pdf.toString())
+          .put("outputDir", dir.resolve("other/../out").toString())
+          .toString());
+      assertEquals(400, same.statusCode());
+      assertTrue(same.body().contains("in use"), same.body());
+
+      gate.complete(null);
+      assertEquals("SUCCEEDED", awaitFinished(MAPPER.readTree(first.body()).get("id").asText()).get("state").asText());
+      // Free again once that job finished
+      HttpResponse<String> again = post(job);
+      assertEquals(202, again.statusCode(), again.body());
+      awaitFinished(MAPPER.readTree(again.body()).get("id").asText());
+    } finally {
+      Files.deleteIfExists(pdf);
+    }
+  }
+
+  @Test
+  void configOverridesMergeIntoTheDaemonsConfig() throws Exception {
+    AppConfig cfg = jobs.configFor(MAPPER.readTree("{\"chunking\": {\"maxTokensPerChunk\": 500}}"));
+
+    assertEquals(500, cfg.chunking.maxTokensPerChunk);
+    // Untouched siblings keep the daemon's values
+    assertEquals(10, cfg.cards.maxCardsPerChunk);
+    assertEquals(false, cfg.metrics.enabled);
+  }
+}
@@ -1,13 +1,27 @@
 package nl.adgroot.pdfsummarizer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import java.nio.file.Files;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 import nl.adgroot.pdfsummarizer.llm.LlmClient;
@@ -16,8 +30,10 @@ import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
 import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
 import nl.adgroot.pdfsummarizer.notes.DefaultCardsParser;
 import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
+import nl.adgroot.pdfsummarizer.notes.StructuredCardsParser;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
 import nl.adgroot.pdfsummarizer.pipeline.BatchContext;
+import nl.adgroot.pdfsummarizer.pipeline.CancellationScope;
 import nl.adgroot.pdfsummarizer.pipeline.PagePipeline;
 import nl.adgroot.pdfsummarizer.prompts.PromptTemplate;
 import nl.adgroot.pdfsummarizer.prompts.PromptTemplates;
@@ -78,6 +94,30 @@ class PagePipelineTest {
     assertTrue(PagePipeline.splitPageBlocks("no blocks here").isEmpty());
   }
 
+  @Test
+  void splitPageBlocks_matchesOriginalRegexOnRandomInput() {
+    // The regex splitPageBlocks used before it was rewritten as an index scan
+    Pattern regex = Pattern.compile("(?s)===PAGE\\s+(\\d+)===\\s*(.*?)\\s*===END PAGE===");
+    String[] fragments = {
+        "===PAGE 1===", "===PAGE  2===", "===PAGE 3", "===PAGE===", "===PAGE\n4===", "===PAGE 12===PAGE 5===",
+        "===END PAGE===", "===END PAGE", "text", "Q?\n?\nA.", " ", "\n", "\t", "\r\n", "=", "7",
+    };
+    Random random = new Random(7);
+
+    for (int run = 0; run < 20_000; run++) {
+      StringBuilder sb = new StringBuilder();
+      int n = 1 + random.nextInt(12);
+      for (int i = 0; i < n; i++) sb.append(fragments[random.nextInt(fragments.length)]);
+      String md = sb.toString();
+
+      Map<Integer, String> expected = new HashMap<>();
+      Matcher m = regex.matcher(md);
+      while (m.find()) expected.put(Integer.parseInt(m.group(1)), m.group(2).trim());
+
+      assertEquals(expected, PagePipeline.splitPageBlocks(md), md);
+    }
+  }
+
   // ── renderBatchContent ───────────────────────────────────────────────────
 
   @Test
@@ -116,6 +156,24 @@ class PagePipelineTest {
     assertTrue(result.contains("has newline\n===END PAGE==="));
   }
 
+  @Test
+  void renderBatchContent_pagesOfSeveralChapters_labelEachPageWithItsSection() {
+    List<PdfObject> batch = List.of(
+        new PdfObject(0, "1.1 Intro", null, "A"),
+        new PdfObject(1, "1.2 Scope", null, "B"));
+
+    String result = PagePipeline.renderBatchContent(batch);
+
+    assertTrue(result.contains("===PAGE 1===\nSection: 1.1 Intro\nA\n"));
+    assertTrue(result.contains("===PAGE 2===\nSection: 1.2 Scope\nB\n"));
+  }
+
+  @Test
+  void renderBatchContent_singleChapter_hasNoSectionLabels() {
+    String result = PagePipeline.renderBatchContent(List.of(page(0, "A"), page(1, "B")));
+    assertFalse(result.contains("Section:"));
+  }
+
   // ── parseCards ───────────────────────────────────────────────────────────
 
   @Test
@@ -217,6 +275,148 @@ class PagePipelineTest {
     assertTrue(tracker.formatStatus(0).startsWith("Page 3/3"));
   }
 
+  @Test
+  void processBatchAsync_structuredOutput_sendsSchemaAndParsesJson() throws Exception {
+    List<PdfObject> batch = List.of(page(10, "text A"), page(11, "text B"));
+    AtomicReference<JsonNode> sentSchema = new AtomicReference<>();
+    LlmClient stub = new LlmClient() {
+      @Override public CompletableFuture<LlmResult> generateAsync(String prompt) {
+        throw new AssertionError("structured mode must pass the schema");
+      }
+      @Override public CompletableFuture<LlmResult> generateAsync(String prompt, JsonNode schema) {
+        sentSchema.set(schema);
+        String json = """
+            {"pages":[{"page":2,"cards":[{"q":"Why?","a":"Because."}]},{"page":1,"cards":[]}]}""";
+        return CompletableFuture.completedFuture(new LlmResult(json, ZERO_METRICS));
+      }
+      @Override public String getName() { return "stub"; }
+      @Override public String getUrl()  { return "stub://test"; }
+    };
+
+    AppConfig cfg = new AppConfig();
+    cfg.ollama.structuredOutput = true;
+    BatchContext ctx = new BatchContext(
+        List.of(stub),
+        new ServerPermitPool(1, 1, true),
+        Executors.newSingleThreadExecutor(),
+        Executors.newSingleThreadExecutor(),
+        new PromptTemplates(new PromptTemplate("{{content}}"), null, null, null),
+        cfg, "topic", new ProgressTracker(batch.size()),
+        Files.createTempDirectory("pagepipeline-test-")
+    );
+
+    Map<Integer, List<String>> result = new PagePipeline().processBatchAsync(ctx, "chapter", batch).get();
+
+    assertEquals(StructuredCardsParser.SCHEMA, sentSchema.get());
+    assertTrue(result.get(10).isEmpty());
+    assertEquals(List.of("Why?\n?\nBecause.\n"), result.get(11));
+  }
+
+  @Test
+  void processBatchAsync_rendersPromptOnlyOnceAPermitIsHeld() throws Exception {
+    java.util.concurrent.atomic.AtomicInteger renders = new java.util.concurrent.atomic.AtomicInteger();
+    PromptTemplate counting = new PromptTemplate("{{content}}") {
+      @Override public String render(Map<String, String> vars) {
+        renders.incrementAndGet();
+        return super.render(vars);
+      }
+    };
+    LlmClient stub = new LlmClient() {
+      @Override public CompletableFuture<LlmResult> generateAsync(String prompt) {
+        return CompletableFuture.completedFuture(new LlmResult("", ZERO_METRICS));
+      }
+      @Override public String getName() { return "stub"; }
+      @Override public String getUrl()  { return "stub://test"; }
+    };
+    ServerPermitPool permits = new ServerPermitPool(1, 1, true);
+    BatchContext ctx = new BatchContext(
+        List.of(stub), permits,
+        Executors.newSingleThreadExecutor(), Executors.newSingleThreadExecutor(),
+        new PromptTemplates(counting, null, null, null),
+        new AppConfig(), "topic", new ProgressTracker(1),
+        Files.createTempDirectory("pagepipeline-test-")
+    );
+
+    int held = permits.acquireAny();
+    CompletableFuture<Map<Integer, List<String>>> result =
+        new PagePipeline().processBatchAsync(ctx, "chapter", List.of(page(0, "text")));
+    Thread.sleep(50);
+    assertEquals(0, renders.get(), "a batch waiting for a permit must not render its prompt");
+
+    permits.release(held);
+    result.get(2, java.util.concurrent.TimeUnit.SECONDS);
+    assertEquals(1, renders.get());
+  }
+
+  @Test
+  void processBatchAsync_failedPermitWaitStillLeavesTheInFlightCount() throws Exception {
+    LlmClient unused = new LlmClient() {
+      @Override public CompletableFuture<LlmResult> generateAsync(String prompt) {
+        throw new AssertionError("no permit, no call");
+      }
+      @Override public String getName() { return "stub"; }
+      @Override public String getUrl()  { return "stub://test"; }
+    };
+    ServerPermitPool permits = new ServerPermitPool(1, 1, true);
+    ExecutorService permitWaiter = Executors.newSingleThreadExecutor();
+    BatchContext ctx = new BatchContext(
+        List.of(unused), permits,
+        permitWaiter, Executors.newSingleThreadExecutor(),
+        new PromptTemplates(new PromptTemplate("{{content}}"), null, null, null),
+        new AppConfig(), "topic", new ProgressTracker(1),
+        Files.createTempDirectory("pagepipeline-test-")
+    );
+    int before = PagePipeline.inFlight();
+
+    permits.acquireAny();
+    CompletableFuture<Map<Integer, List<String>>> result =
+        new PagePipeline().processBatchAsync(ctx, "chapter", List.of(page(0, "text")));
+    assertEquals(before + 1, PagePipeline.inFlight());
+    // Interrupts the thread waiting for the permit, as an abort does
+    permitWaiter.shutdownNow();
+
+    assertThrows(ExecutionException.class, () -> result.get(2, TimeUnit.SECONDS));
+    assertEquals(before, PagePipeline.inFlight());
+  }
+
+  @Test
+  void processBatchAsync_cancelledScopeFailsTheCallAndReleasesThePermit() throws Exception {
+    CompletableFuture<LlmResult> call = new CompletableFuture<>();
+    java.util.concurrent.atomic.AtomicInteger calls = new java.util.concurrent.atomic.AtomicInteger();
+    CountDownLatch sent = new CountDownLatch(1);
+    LlmClient hanging = new LlmClient() {
+      @Override public CompletableFuture<LlmResult> generateAsync(String prompt) {
+        calls.incrementAndGet();
+        sent.countDown();
+        return call;
+      }
+      @Override public String getName() { return "stub"; }
+      @Override public String getUrl()  { return "stub://test"; }
+    };
+    ServerPermitPool permits = new ServerPermitPool(1, 1, true);
+    CancellationScope run = CancellationScope.root("run");
+    BatchContext ctx = new BatchContext(
+        List.of(hanging), permits,
+        Executors.newSingleThreadExecutor(), Executors.newSingleThreadExecutor(),
+        new PromptTemplates(new PromptTemplate("{{content}}"), null, null, null),
+        new AppConfig(), "topic", new ProgressTracker(1),
+        Files.createTempDirectory("pagepipeline-test-")
+    ).with(o -> o.scope = run.child("batch"));
+
+    CompletableFuture<Map<Integer, List<String>>> result =
+        new PagePipeline().processBatchAsync(ctx, "chapter", List.of(page(0, "text")));
+    assertTrue(sent.await(2, TimeUnit.SECONDS));
+
+    run.cancel("aborted");
+
+    ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(2, TimeUnit.SECONDS));
+    // StageFailedException("single") around the cancellation cause
+    assertInstanceOf(CancellationException.class, failure.getCause().getCause());
+    assertTrue(call.isCompletedExceptionally(), "the LLM call must be failed so it hangs up");
+    assertEquals(1, calls.get(), "a cancelled stage must not be retried");
+    permits.release(permits.acquireAnyAsync(Executors.newSingleThreadExecutor()).get(2, TimeUnit.SECONDS));
+  }
+
   // ── Helpers ──────────────────────────────────────────────────────────────
 
   private Map<Integer, List<String>> runPipeline(List<PdfObject> batch, String llmResponse) throws Exception {
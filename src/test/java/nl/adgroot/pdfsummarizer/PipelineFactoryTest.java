@@ -3,6 +3,7 @@ package nl.adgroot.pdfsummarizer;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import nl.adgroot.pdfsummarizer.config.AppConfig;
 import nl.adgroot.pdfsummarizer.pipeline.PagePipeline;
@@ -57,4 +58,16 @@ class PipelineFactoryTest {
     assertNotNull(setup.prompts().step2(), "step2 must be loaded");
     assertNotNull(setup.prompts().step3(), "step3 must be loaded");
   }
-}
\ No newline at end of file
+
+  @Test
+  void create_structuredOutput_loadsJsonPrompts() throws Exception {
+    AppConfig cfg = new AppConfig();
+    cfg.ollama.structuredOutput = true;
+
+    cfg.ollama.pipeline3StepsMode = false;
+    assertTrue(PipelineFactory.create(cfg).prompts().single().text().contains("\"pages\""));
+
+    cfg.ollama.pipeline3StepsMode = true;
+    assertTrue(PipelineFactory.create(cfg).prompts().step3().text().contains("\"pages\""));
+  }
+}
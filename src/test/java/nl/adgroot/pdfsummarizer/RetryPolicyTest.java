@@ -0,0 +1,70 @@
+package nl.adgroot.pdfsummarizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.adgroot.pdfsummarizer.llm.RetryPolicy;
+import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.junit.jupiter.api.Test;
+
+class RetryPolicyTest {
+
+  @Test
+  void failingTheFutureCancelsTheCallInFlight() throws Exception {
+    CountDownLatch received = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger requests = new AtomicInteger();
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      requests.incrementAndGet();
+      received.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS); // a server still generating
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.close();
+    });
+    server.start();
+
+    CountDownLatch canceled = new CountDownLatch(1);
+    OkHttpClient http = new OkHttpClient.Builder()
+        .eventListener(new EventListener() {
+          @Override public void canceled(Call call) {
+            canceled.countDown();
+          }
+        })
+        .build();
+    try {
+      Request request = new Request.Builder()
+          .url("http://127.0.0.1:" + server.getAddress().getPort() + "/")
+          .build();
+      CompletableFuture<LlmResult> future = new CompletableFuture<>();
+      new RetryPolicy(3, 1).enqueue(http, request, future, r -> new LlmResult("", null));
+      assertTrue(received.await(2, TimeUnit.SECONDS));
+
+      future.completeExceptionally(new CancellationException("batch cancelled"));
+
+      assertTrue(canceled.await(2, TimeUnit.SECONDS), "the HTTP call must be cancelled");
+      Thread.sleep(50);
+      assertEquals(1, requests.get(), "a cancelled call must not be retried");
+    } finally {
+      release.countDown();
+      server.stop(0);
+      http.dispatcher().executorService().shutdown();
+    }
+  }
+}
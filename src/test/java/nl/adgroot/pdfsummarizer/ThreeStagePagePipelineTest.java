@@ -1,6 +1,9 @@
 package nl.adgroot.pdfsummarizer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Files;
@@ -8,7 +11,10 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import nl.adgroot.pdfsummarizer.config.AppConfig;
@@ -19,6 +25,8 @@ import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
 import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
 import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
 import nl.adgroot.pdfsummarizer.pipeline.BatchContext;
+import nl.adgroot.pdfsummarizer.pipeline.DebugSink;
+import nl.adgroot.pdfsummarizer.pipeline.StageFailedException;
 import nl.adgroot.pdfsummarizer.pipeline.ThreeStagePagePipeline;
 import nl.adgroot.pdfsummarizer.prompts.PromptTemplate;
 import nl.adgroot.pdfsummarizer.prompts.PromptTemplates;
@@ -58,6 +66,15 @@ class ThreeStagePagePipelineTest {
 
   private Map<Integer, List<String>> runPipeline(
       List<PdfObject> batch, LlmClient stub, ProgressTracker tracker, Path outDir) throws Exception {
+    // Closing the sink flushes all queued debug output before the test inspects the files
+    try (DebugSink debug = DebugSink.create(outDir.resolve("debug"), 16)) {
+      return runPipeline(batch, stub, tracker, outDir, debug);
+    }
+  }
+
+  private Map<Integer, List<String>> runPipeline(
+      List<PdfObject> batch, LlmClient stub, ProgressTracker tracker, Path outDir, DebugSink debug)
+      throws Exception {
 
     AppConfig cfg = new AppConfig();
     cfg.cards.maxConceptsPerPage = 5;
@@ -69,7 +86,7 @@ class ThreeStagePagePipelineTest {
         Executors.newSingleThreadExecutor(),
         threeStagePrompts(),
         cfg, "topic", tracker, outDir
-    );
+    ).with(o -> o.debug = debug);
 
     return new ThreeStagePagePipeline().processBatchAsync(ctx, "chapter", batch).get();
   }
@@ -206,4 +223,123 @@ class ThreeStagePagePipelineTest {
     assertTrue(step1Content.contains("CONCEPTS_OUTPUT"), "step1 debug file should contain step 1 LLM output");
     assertTrue(step2Content.contains("CARDS_OUTPUT"), "step2 debug file should contain step 2 LLM output");
   }
-}
\ No newline at end of file
+
+  @Test
+  void processBatchAsync_debugRecordsAreTaggedWithPageIndexes() throws Exception {
+    LlmClient stub = sequentialStub("CONCEPTS_OUTPUT", "CARDS_OUTPUT", "");
+    Path outDir = Files.createTempDirectory("3stage-debug-tag-");
+
+    runPipeline(List.of(page(4, "a"), page(5, "b")), stub, new ProgressTracker(2), outDir);
+
+    String step1Content = Files.readString(outDir.resolve("debug").resolve("step1_concepts_chapter.md"));
+    assertTrue(step1Content.contains("=== BATCH pages=[4, 5] ==="),
+        "debug record should identify its batch, got: " + step1Content);
+  }
+
+  @Test
+  void processBatchAsync_disabledDebugSink_writesNoDebugFiles() throws Exception {
+    LlmClient stub = sequentialStub("concepts", "cards", "");
+    Path outDir = Files.createTempDirectory("3stage-debug-off-");
+
+    runPipeline(List.of(page(0, "text")), stub, new ProgressTracker(1), outDir, DebugSink.disabled());
+
+    assertFalse(Files.exists(outDir.resolve("debug")), "disabled sink must not create debug/");
+  }
+
+  // ── Stage-level retry ────────────────────────────────────────────────────
+
+  /** Stub that fails every call whose prompt starts with {@code failingPrompt}. */
+  private static LlmClient failingOn(String failingPrompt, List<String> calls) {
+    return new LlmClient() {
+      @Override
+      public CompletableFuture<LlmResult> generateAsync(String prompt) {
+        calls.add("down:" + prompt);
+        if (prompt.startsWith(failingPrompt)) {
+          return CompletableFuture.failedFuture(new RuntimeException("server down"));
+        }
+        return CompletableFuture.completedFuture(new LlmResult(prompt.toLowerCase(), ZERO_METRICS));
+      }
+      @Override public String getName() { return "down"; }
+      @Override public String getUrl()  { return "stub://down"; }
+    };
+  }
+
+  private static LlmClient recording(List<String> calls) {
+    return new LlmClient() {
+      @Override
+      public CompletableFuture<LlmResult> generateAsync(String prompt) {
+        calls.add("up:" + prompt);
+        return CompletableFuture.completedFuture(new LlmResult(prompt.toLowerCase(), ZERO_METRICS));
+      }
+      @Override public String getName() { return "up"; }
+      @Override public String getUrl()  { return "stub://up"; }
+    };
+  }
+
+  private static BatchContext twoServerContext(LlmClient first, LlmClient second, ServerPermitPool permits)
+      throws Exception {
+    return new BatchContext(
+        List.of(first, second),
+        permits,
+        Executors.newCachedThreadPool(),
+        Executors.newSingleThreadExecutor(),
+        threeStagePrompts(),
+        new AppConfig(), "topic", new ProgressTracker(1), Files.createTempDirectory("3stage-")
+    );
+  }
+
+  private static void assertAllPermitsFree(ServerPermitPool permits) throws Exception {
+    var executor = Executors.newSingleThreadExecutor();
+    for (int i = 0; i < permits.servers(); i++) {
+      permits.acquireAnyAsync(executor).get(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void failedStage_isRetriedOnAnotherServer_withoutRepeatingEarlierStages() throws Exception {
+    List<String> calls = new CopyOnWriteArrayList<>();
+    // Server 1 is busy at first, so the batch starts on server 0, which cannot do step 3
+    ServerPermitPool permits = new ServerPermitPool(2, 1, true);
+    assertEquals(0, permits.acquireAny());
+    assertEquals(1, permits.acquireAny());
+    permits.release(0);
+    BatchContext ctx = twoServerContext(failingOn("STEP3", calls), recording(calls), permits);
+
+    CompletableFuture<Map<Integer, List<String>>> result =
+        new ThreeStagePagePipeline().processBatchAsync(ctx, "chapter", List.of(page(0, "text")));
+    Thread.sleep(50);
+    permits.release(1);
+    result.get(5, TimeUnit.SECONDS);
+
+    assertEquals(List.of("down:STEP1", "down:STEP2", "down:STEP3", "up:STEP3"), calls);
+    assertAllPermitsFree(permits);
+  }
+
+  @Test
+  void stageFailingAllRetries_carriesCompletedStageOutputs_andReleasesPermit() throws Exception {
+    List<String> calls = new CopyOnWriteArrayList<>();
+    ServerPermitPool permits = new ServerPermitPool(2, 1, true);
+    BatchContext ctx = twoServerContext(failingOn("STEP3", calls), failingOn("STEP3", calls), permits);
+
+    var future = new ThreeStagePagePipeline().processBatchAsync(ctx, "chapter", List.of(page(0, "text")));
+    ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+
+    StageFailedException failure = assertInstanceOf(StageFailedException.class, ex.getCause());
+    assertEquals("step3", failure.stage());
+    assertEquals("step1", failure.concepts());
+    assertEquals("step2", failure.rawCards());
+    assertAllPermitsFree(permits);
+  }
+
+  @Test
+  void resumeBatchAsync_skipsStagesWithKnownOutput() throws Exception {
+    List<String> calls = new CopyOnWriteArrayList<>();
+    BatchContext ctx = twoServerContext(recording(calls), recording(calls), new ServerPermitPool(2, 1, true));
+    var failure = new StageFailedException("step3", "concepts", "raw cards", new RuntimeException());
+
+    new ThreeStagePagePipeline().resumeBatchAsync(ctx, "chapter", List.of(page(0, "text")), failure)
+        .get(5, TimeUnit.SECONDS);
+
+    assertEquals(List.of("up:STEP3"), calls);
+  }
+}
@@ -0,0 +1,76 @@
+package nl.adgroot.pdfsummarizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
+import nl.adgroot.pdfsummarizer.pipeline.TokenEstimator;
+import org.junit.jupiter.api.Test;
+
+class TokenEstimatorTest {
+
+  private static LlmMetrics promptTokens(int count) {
+    return new LlmMetrics(0, 0, 0, count, 0);
+  }
+
+  @Test
+  void fixed_isCeilOfLengthOverFour_andIgnoresObservations() {
+    TokenEstimator fixed = TokenEstimator.fixed();
+    fixed.observe("x".repeat(400), promptTokens(1000));
+
+    assertEquals(0, fixed.estimate(null));
+    assertEquals(1, fixed.estimate("abc"));
+    assertEquals(3, fixed.estimate("x".repeat(9)));
+  }
+
+  @Test
+  void tokenizerEstimate_countsWordsDigitGroupsAndSymbols() {
+    // 9 short words and a full stop
+    assertEquals(10, TokenEstimator.tokenizerEstimate("The quick brown fox jumps over the lazy dog."));
+    // 1234567 -> 123|456|7
+    assertEquals(3, TokenEstimator.tokenizerEstimate("1234567"));
+    // Each Greek letter and math symbol is its own token
+    assertEquals(5, TokenEstimator.tokenizerEstimate("∑ α β ∫ ∂"));
+    // A ruler of one repeated symbol merges
+    assertEquals(2, TokenEstimator.tokenizerEstimate("--------"));
+  }
+
+  @Test
+  void tokenizerEstimate_codeCostsMoreTokensPerCharThanProse() {
+    String prose = "Garbage collection reclaims memory that the program can no longer reach.";
+    String code = "if (a[i] != b[j]) { x += f(i, j); } else { y -= g(j); }";
+
+    double proseCharsPerToken = prose.length() / (double) TokenEstimator.tokenizerEstimate(prose);
+    double codeCharsPerToken = code.length() / (double) TokenEstimator.tokenizerEstimate(code);
+    assertTrue(codeCharsPerToken < proseCharsPerToken);
+  }
+
+  @Test
+  void calibrating_convergesOnTheReportedRatio() {
+    TokenEstimator estimator = TokenEstimator.calibrating();
+    String prompt = "word ".repeat(1000);
+    int prior = TokenEstimator.tokenizerEstimate(prompt);
+    assertEquals(prior, estimator.estimate(prompt), "no observations yet: the prior is used as is");
+
+    for (int i = 0; i < 50; i++) {
+      estimator.observe(prompt, promptTokens(prior * 2));
+    }
+
+    assertEquals(50, estimator.observations());
+    assertEquals(2.0, estimator.factor(), 0.05);
+    assertEquals(prior * 2, estimator.estimate(prompt), prior * 0.05);
+  }
+
+  @Test
+  void calibrating_ignoresMissingAndImplausibleCounts() {
+    TokenEstimator estimator = TokenEstimator.calibrating();
+    String prompt = "word ".repeat(1000);
+
+    estimator.observe(prompt, promptTokens(0));   // server reported nothing
+    estimator.observe(prompt, promptTokens(5));   // prompt cache hit
+    estimator.observe(prompt, null);
+
+    assertEquals(0, estimator.observations());
+    assertEquals(1.0, estimator.factor());
+  }
+}
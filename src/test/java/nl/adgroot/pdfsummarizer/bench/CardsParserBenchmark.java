@@ -0,0 +1,117 @@
+package nl.adgroot.pdfsummarizer.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import nl.adgroot.pdfsummarizer.notes.CardsParser;
+import nl.adgroot.pdfsummarizer.notes.DefaultCardsParser;
+import nl.adgroot.pdfsummarizer.notes.FastCardsParser;
+import nl.adgroot.pdfsummarizer.pipeline.PagePipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Parses a 20-card response, the typical size of one batch, with both card parsers, and splits a
+ * 10-page batch response into page blocks with the old regex and the index scan.
+ *
+ * <p>Runs with the GC profiler, which reports allocation per operation ({@code gc.alloc.rate.norm}):
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     nl.adgroot.pdfsummarizer.bench.CardsParserBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CardsParserBenchmark {
+
+  static final int CARDS = 20;
+
+  private static final Pattern PAGE_BLOCK =
+      Pattern.compile("(?s)===PAGE\\s+(\\d+)===\\s*(.*?)\\s*===END PAGE===");
+
+  @State(Scope.Benchmark)
+  public static class Cards {
+    @Param({"default", "fast"})
+    public String parserName;
+
+    CardsParser parser;
+    String markdown = cardsResponse();
+
+    @Setup
+    public void setup() {
+      parser = "fast".equals(parserName) ? new FastCardsParser() : new DefaultCardsParser();
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Pages {
+    String markdown = pagesResponse();
+  }
+
+  @Benchmark
+  public Object parseCards(Cards state) {
+    return state.parser.parse(state.markdown);
+  }
+
+  @Benchmark
+  public Object splitPageBlocksRegex(Pages state) {
+    Map<Integer, String> out = new HashMap<>();
+    Matcher m = PAGE_BLOCK.matcher(state.markdown);
+    while (m.find()) out.put(Integer.parseInt(m.group(1)), m.group(2).trim());
+    return out;
+  }
+
+  @Benchmark
+  public Object splitPageBlocksScan(Pages state) {
+    return PagePipeline.splitPageBlocks(state.markdown);
+  }
+
+  static String cardsResponse() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < CARDS; i++) {
+      if (i > 0) sb.append("---\n");
+      sb.append("What does the generational hypothesis say about object number ").append(i).append("?\n");
+      sb.append("?\n");
+      sb.append("Most objects die young, so collecting the young generation often reclaims most garbage ")
+          .append("cheaply while long-lived objects are promoted and scanned rarely.\n");
+    }
+    return sb.toString();
+  }
+
+  static String pagesResponse() {
+    String cards = cardsResponse();
+    StringBuilder sb = new StringBuilder();
+    for (int p = 1; p <= 10; p++) {
+      sb.append("===PAGE ").append(p).append("===\n").append(cards, 0, cards.length() / 10)
+          .append("\n===END PAGE===\n");
+    }
+    return sb.toString();
+  }
+
+  public static void main(String[] args) throws Exception {
+    // Input sizes, to turn ops/s into MB/s (the inputs are ASCII, so chars == bytes)
+    System.out.printf("parseCards input: %d bytes, %d cards%n", cardsResponse().length(), CARDS);
+    System.out.printf("splitPageBlocks input: %d bytes%n", pagesResponse().length());
+    new Runner(new OptionsBuilder()
+        .include(CardsParserBenchmark.class.getSimpleName())
+        .addProfiler("gc")
+        .build()).run();
+  }
+}
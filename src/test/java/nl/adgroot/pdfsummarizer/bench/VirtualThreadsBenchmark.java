@@ -0,0 +1,160 @@
+package nl.adgroot.pdfsummarizer.bench;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import nl.adgroot.pdfsummarizer.AppExecutors;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.OllamaClient;
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
+import nl.adgroot.pdfsummarizer.pipeline.BatchContext;
+import nl.adgroot.pdfsummarizer.pipeline.PagePipeline;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplate;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplates;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Sends 1,000 concurrent one-page batches through {@link PagePipeline} and {@link OllamaClient} to
+ * a fake Ollama server that answers every request after 50 ms. It runs once with the default
+ * executors (platform threads) and once with {@code execution.virtualThreads}. The fake server
+ * handles requests on virtual threads in both modes, so it adds the same to each.
+ *
+ * <p>The score is the time for all 1,000 batches. After every iteration the forked JVM prints the
+ * peak number of live platform threads and the heap in use:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     nl.adgroot.pdfsummarizer.bench.VirtualThreadsBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dpdfsummarizer.test=true")
+@State(Scope.Benchmark)
+public class VirtualThreadsBenchmark {
+
+  static final int BATCHES = 1_000;
+  static final long LATENCY_MS = 50;
+
+  private static final byte[] RESPONSE = """
+      {"response":"===PAGE 1===\\nWhy?\\n?\\nBecause.\\n===END PAGE===","total_duration":50000000,\
+      "prompt_eval_count":20,"eval_count":10}"""
+      .getBytes(StandardCharsets.UTF_8);
+
+  @Param({"platform", "virtual"})
+  public String threads;
+
+  private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private AppExecutors exec;
+  private BatchContext ctx;
+  private final PagePipeline pipeline = new PagePipeline();
+  private final List<List<PdfObject>> batches = new ArrayList<>();
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), BATCHES * 2);
+    server.createContext("/api/generate", exchange -> {
+      exchange.getRequestBody().readAllBytes();
+      try {
+        Thread.sleep(LATENCY_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.sendResponseHeaders(200, RESPONSE.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(RESPONSE);
+      }
+    });
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    AppConfig cfg = new AppConfig();
+    cfg.execution.virtualThreads = "virtual".equals(threads);
+    cfg.ollama.concurrency = BATCHES;
+    exec = AppExecutors.create(cfg);
+
+    String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/generate";
+    OllamaClient llm = new OllamaClient(cfg.ollama, url, "fake",
+        cfg.execution.virtualThreads ? AppExecutors.virtualThreads("http-") : null);
+    ctx = new BatchContext(
+        List.of(llm), new ServerPermitPool(1, BATCHES, true),
+        exec.permitPoolExecutor(), exec.cpuPool(),
+        new PromptTemplates(new PromptTemplate("{{content}}"), null, null, null),
+        cfg, "Benchmark", new ProgressTracker(Integer.MAX_VALUE),
+        Files.createTempDirectory("virtual-threads-bench-"));
+
+    for (int i = 0; i < BATCHES; i++) {
+      batches.add(List.of(new PdfObject(i, "Chapter", null, "Page text " + i)));
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void resetPeak() {
+    threadBean.resetPeakThreadCount();
+  }
+
+  @Benchmark
+  public int concurrentBatches() {
+    List<CompletableFuture<Map<Integer, List<String>>>> futures = new ArrayList<>(BATCHES);
+    for (List<PdfObject> batch : batches) {
+      futures.add(pipeline.processBatchAsync(ctx, "Chapter", batch));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    return futures.size();
+  }
+
+  @TearDown(Level.Iteration)
+  public void report() {
+    Runtime rt = Runtime.getRuntime();
+    System.out.printf("%n[%s] peak platform threads=%d, heap used=%d MB%n", threads,
+        threadBean.getPeakThreadCount(), (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    server.stop(0);
+    exec.close();
+    serverExecutor.close();
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder()
+        .include(VirtualThreadsBenchmark.class.getSimpleName())
+        .addProfiler("gc")
+        .build()).run();
+  }
+}
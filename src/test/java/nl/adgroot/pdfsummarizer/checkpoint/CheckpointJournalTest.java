@@ -0,0 +1,131 @@
+package nl.adgroot.pdfsummarizer.checkpoint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import nl.adgroot.pdfsummarizer.checkpoint.records.CheckpointEntry;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.LlmClient;
+import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplate;
+import nl.adgroot.pdfsummarizer.prompts.PromptTemplates;
+import org.junit.jupiter.api.Test;
+
+class CheckpointJournalTest {
+
+  private static PdfObject page(int index, String text) {
+    return new PdfObject(index, "Chapter", null, text);
+  }
+
+  private static void recordOneBatch(Path outDir, String fingerprint, PdfObject... pages) throws Exception {
+    try (CheckpointJournal journal = CheckpointJournal.open(outDir, fingerprint, false)) {
+      Map<Integer, List<String>> cards = new java.util.HashMap<>();
+      for (PdfObject p : pages) cards.put(p.getIndex(), List.of("card " + p.getIndex()));
+      journal.record("Chapter", List.of(pages), cards);
+    }
+  }
+
+  @Test
+  void resume_restoresJournaledPagesWithSameFingerprint() throws Exception {
+    Path outDir = Files.createTempDirectory("checkpoint-");
+    recordOneBatch(outDir, "fp", page(0, "a"), page(1, "b"));
+
+    try (CheckpointJournal journal = CheckpointJournal.open(outDir, "fp", true)) {
+      assertEquals(2, journal.restorableCount());
+      CheckpointEntry entry = journal.lookup(page(1, "b")).orElseThrow();
+      assertEquals(List.of("card 1"), entry.cards().get(1));
+      assertEquals(List.of(0, 1), entry.pages());
+      assertTrue(journal.lookup(page(2, "c")).isEmpty(), "page 2 was never journaled");
+    }
+  }
+
+  @Test
+  void resume_ignoresEntriesWithDifferentFingerprint() throws Exception {
+    Path outDir = Files.createTempDirectory("checkpoint-fp-");
+    recordOneBatch(outDir, "old-prompts", page(0, "a"));
+
+    try (CheckpointJournal journal = CheckpointJournal.open(outDir, "new-prompts", true)) {
+      assertEquals(0, journal.restorableCount());
+    }
+  }
+
+  @Test
+  void resume_pageWithChangedText_isNotRestored() throws Exception {
+    Path outDir = Files.createTempDirectory("checkpoint-text-");
+    recordOneBatch(outDir, "fp", page(0, "original text"));
+
+    try (CheckpointJournal journal = CheckpointJournal.open(outDir, "fp", true)) {
+      assertTrue(journal.lookup(page(0, "edited text")).isEmpty());
+    }
+  }
+
+  @Test
+  void resume_truncatedLastLine_isSkipped() throws Exception {
+    Path outDir = Files.createTempDirectory("checkpoint-crash-");
+    recordOneBatch(outDir, "fp", page(0, "a"));
+    // simulate a crash in the middle of writing the next entry
+    Files.writeString(outDir.resolve(CheckpointJournal.FILE_NAME), "{\"chapter\":\"Chap",
+        StandardOpenOption.APPEND);
+
+    try (CheckpointJournal journal = CheckpointJournal.open(outDir, "fp", true)) {
+      assertEquals(1, journal.restorableCount());
+    }
+  }
+
+  @Test
+  void freshRun_truncatesPreviousJournal() throws Exception {
+    Path outDir = Files.createTempDirectory("checkpoint-fresh-");
+    recordOneBatch(outDir, "fp", page(0, "a"));
+
+    CheckpointJournal.open(outDir, "fp", false).close();
+
+    try (CheckpointJournal journal = CheckpointJournal.open(outDir, "fp", true)) {
+      assertEquals(0, journal.restorableCount());
+    }
+  }
+
+  @Test
+  void record_storesThreeStageOutputs() throws Exception {
+    Path outDir = Files.createTempDirectory("checkpoint-stages-");
+    PdfObject p = page(0, "a");
+    p.setStageDebugInfo(new PdfObject.StageDebugInfo("CONCEPTS", "RAW"));
+    recordOneBatch(outDir, "fp", p);
+
+    try (CheckpointJournal journal = CheckpointJournal.open(outDir, "fp", true)) {
+      CheckpointEntry entry = journal.lookup(page(0, "a")).orElseThrow();
+      assertEquals("CONCEPTS", entry.concepts());
+      assertEquals("RAW", entry.rawCards());
+    }
+  }
+
+  @Test
+  void fingerprint_changesWithPromptAndModel() {
+    AppConfig cfg = new AppConfig();
+    PromptTemplates prompts = new PromptTemplates(new PromptTemplate("prompt v1"), null, null, null);
+
+    String base = CheckpointJournal.fingerprint(cfg, prompts, List.of(stub("llama")), "topic");
+
+    assertEquals(base, CheckpointJournal.fingerprint(cfg, prompts, List.of(stub("llama")), "topic"));
+    assertNotEquals(base, CheckpointJournal.fingerprint(cfg,
+        new PromptTemplates(new PromptTemplate("prompt v2"), null, null, null), List.of(stub("llama")), "topic"));
+    assertNotEquals(base, CheckpointJournal.fingerprint(cfg, prompts, List.of(stub("qwen")), "topic"));
+  }
+
+  private static LlmClient stub(String model) {
+    return new LlmClient() {
+      @Override public CompletableFuture<LlmResult> generateAsync(String prompt) { return null; }
+      @Override public String getName() { return "stub"; }
+      @Override public String getUrl() { return "stub://"; }
+      @Override public String getModel() { return model; }
+    };
+  }
+}
@@ -0,0 +1,86 @@
+package nl.adgroot.pdfsummarizer.checkpoint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.adgroot.pdfsummarizer.checkpoint.records.DeadLetter;
+import org.junit.jupiter.api.Test;
+
+class DeadLetterQueueTest {
+
+  private static DeadLetter letter(int page) {
+    return new DeadLetter("Chapter", List.of(page), "step3", "concepts", "raw", "boom", 0L);
+  }
+
+  @Test
+  void replay_waitsUntilSealedAndAllPrimariesDrained() throws Exception {
+    Path outDir = Files.createTempDirectory("dlq-");
+    AtomicInteger replays = new AtomicInteger();
+
+    try (DeadLetterQueue dlq = DeadLetterQueue.open(outDir)) {
+      CompletableFuture<String> stillRunning = new CompletableFuture<>();
+      dlq.track(stillRunning);
+      CompletableFuture<String> failed = CompletableFuture.failedFuture(new RuntimeException("boom"));
+      dlq.track(failed);
+
+      CompletableFuture<String> outcome = dlq.defer(letter(3), new RuntimeException("boom"), () -> {
+        replays.incrementAndGet();
+        return CompletableFuture.completedFuture("replayed");
+      });
+
+      assertTrue(Files.readString(outDir.resolve(DeadLetterQueue.FILE_NAME)).contains("\"pages\":[3]"),
+          "dead letter must be on disk before the replay");
+
+      dlq.seal();
+      assertEquals(0, replays.get(), "a primary batch is still running");
+
+      stillRunning.complete("done");
+      assertEquals("replayed", outcome.get(1, TimeUnit.SECONDS));
+      assertEquals(1, replays.get());
+    }
+
+    assertFalse(Files.exists(outDir.resolve(DeadLetterQueue.FILE_NAME)),
+        "a fully recovered run leaves no dead-letter file");
+  }
+
+  @Test
+  void failedReplay_staysInDeadLetterFile() throws Exception {
+    Path outDir = Files.createTempDirectory("dlq-");
+
+    try (DeadLetterQueue dlq = DeadLetterQueue.open(outDir)) {
+      CompletableFuture<String> ok = dlq.defer(letter(1), new RuntimeException("boom"),
+          () -> CompletableFuture.completedFuture("fine"));
+      CompletableFuture<String> bad = dlq.defer(letter(2), new RuntimeException("boom"),
+          () -> CompletableFuture.failedFuture(new RuntimeException("still down")));
+      dlq.seal();
+
+      assertEquals("fine", ok.get(1, TimeUnit.SECONDS));
+      assertTrue(bad.isCompletedExceptionally());
+      assertEquals(2, dlq.size());
+    }
+
+    List<String> lines = Files.readAllLines(outDir.resolve(DeadLetterQueue.FILE_NAME));
+    assertEquals(1, lines.size());
+    assertTrue(lines.getFirst().contains("\"pages\":[2]"));
+  }
+
+  @Test
+  void disabledQueue_failsImmediatelyWithoutReplay() {
+    DeadLetterQueue dlq = DeadLetterQueue.disabled();
+    RuntimeException failure = new RuntimeException("boom");
+
+    CompletableFuture<String> outcome = dlq.defer(letter(1), failure,
+        () -> CompletableFuture.completedFuture("never"));
+
+    assertTrue(outcome.isCompletedExceptionally());
+    assertFalse(dlq.isEnabled());
+  }
+}
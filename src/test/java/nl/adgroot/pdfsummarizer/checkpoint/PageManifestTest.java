@@ -0,0 +1,70 @@
+package nl.adgroot.pdfsummarizer.checkpoint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import nl.adgroot.pdfsummarizer.checkpoint.records.CheckpointEntry;
+import nl.adgroot.pdfsummarizer.pdf.parsing.PdfObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PageManifestTest {
+
+  @TempDir
+  Path dir;
+
+  private static PdfObject done(int index, String text, String... cards) {
+    PdfObject p = new PdfObject(index, "Chapter", null, text);
+    p.setCards(List.of(cards));
+    p.setNotes(String.join("\n", cards));
+    return p;
+  }
+
+  @Test
+  void textFingerprint_ignoresPageNumbersHyphenationAndWhitespace() {
+    String first = "Caching\nA cache keeps recently used data close to the proces-\nsor.\n\n17\n";
+    String second = "  Caching\r\nA cache keeps recently  used data close to the processor.\n  xii  \n";
+
+    assertEquals(PageManifest.textFingerprint(first), PageManifest.textFingerprint(second));
+    assertNotEquals(PageManifest.textFingerprint(first),
+        PageManifest.textFingerprint("Caching\nA cache keeps recently used data close to the CPU."));
+  }
+
+  @Test
+  void writtenManifest_findsPagesByTextWhereverTheyMoved_andLeavesOutFailedPages() throws Exception {
+    PdfObject failed = new PdfObject(2, "Chapter", null, "never summarized");
+    PageManifest.write(dir, "fp", List.of(done(0, "intro text", "card A"), done(1, "body text", "card B"), failed));
+
+    PageManifest manifest = PageManifest.load(dir);
+
+    assertEquals("fp", manifest.fingerprint());
+    assertEquals(2, manifest.size());
+    PageManifest.Page moved = manifest.lookup(new PdfObject(7, "New chapter", null, "body  text\n42")).orElseThrow();
+    assertEquals(List.of("card B"), moved.cards());
+    assertTrue(manifest.lookup(new PdfObject(2, "Chapter", null, "never summarized")).isEmpty());
+  }
+
+  @Test
+  void journal_reusesPreviousEditionPages_andJournalsThemForResume() throws Exception {
+    Path oldRun = dir.resolve("old");
+    Path newRun = dir.resolve("new");
+    PageManifest.write(oldRun, "fp", List.of(done(0, "unchanged page", "old card")));
+    PdfObject moved = new PdfObject(3, "Chapter", null, "unchanged page");
+    PdfObject changed = new PdfObject(4, "Chapter", null, "rewritten page");
+
+    try (CheckpointJournal journal = CheckpointJournal.open(newRun, "run-fp", false, PageManifest.load(oldRun))) {
+      CheckpointEntry reused = journal.lookup(moved).orElseThrow();
+      assertEquals(List.of("old card"), reused.cards().get(3));
+      assertTrue(journal.lookup(changed).isEmpty());
+      assertEquals(1, journal.reusedCount());
+    }
+
+    try (CheckpointJournal resumed = CheckpointJournal.open(newRun, "run-fp", true)) {
+      assertEquals(List.of("old card"), resumed.lookup(moved).orElseThrow().cards().get(3));
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package nl.adgroot.pdfsummarizer.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JfrRecordingTest {
+
+  @TempDir
+  Path outDir;
+
+  @Test
+  void presetEnablesEveryPipelineEvent() throws Exception {
+    Map<String, String> settings = JfrRecording.pipelineSettings();
+
+    for (String event : List.of("Batch", "Stage", "PermitWait", "HttpCall", "PdfPreparation")) {
+      assertEquals("true", settings.get("pdfsummarizer." + event + "#enabled"), event);
+      assertEquals("0 ms", settings.get("pdfsummarizer." + event + "#threshold"), event);
+    }
+  }
+
+  @Test
+  void recordingFromConfigContainsPipelineEvents() throws Exception {
+    AppConfig.JfrConfig cfg = new AppConfig.JfrConfig();
+    cfg.enabled = true;
+    cfg.baseSettings = "default";
+
+    Path file;
+    try (JfrRecording jfr = JfrRecording.start(cfg, outDir)) {
+      file = jfr.file();
+      new ServerPermitPool(2, 1, true).acquireAnyExcept(0);
+    }
+
+    assertTrue(Files.size(file) > 0);
+    List<RecordedEvent> waits = RecordingFile.readAllEvents(file).stream()
+        .filter(e -> e.getEventType().getName().equals("pdfsummarizer.PermitWait"))
+        .toList();
+    assertEquals(1, waits.size());
+    assertEquals(1, waits.getFirst().getInt("server"));
+    assertEquals(0, waits.getFirst().getInt("avoidedServer"));
+  }
+
+  @Test
+  void disabledRecordingHasNoFile() {
+    try (JfrRecording jfr = JfrRecording.disabled()) {
+      assertEquals(null, jfr.file());
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package nl.adgroot.pdfsummarizer.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import nl.adgroot.pdfsummarizer.checkpoint.DeadLetterQueue;
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
+import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
+import org.junit.jupiter.api.Test;
+
+class MetricsServerTest {
+
+  private static AppConfig.MetricsConfig anyPort() {
+    AppConfig.MetricsConfig cfg = new AppConfig.MetricsConfig();
+    cfg.port = 0;
+    return cfg;
+  }
+
+  @Test
+  void servesRunMetricsInPrometheusTextFormat() throws Exception {
+    ProgressTracker tracker = new ProgressTracker(10);
+    tracker.restorePages(2);
+    tracker.finishBatch(3, new LlmMetrics(2_000_000_000L, 500_000_000L, 1_000_000_000L, 400, 50));
+    tracker.recordCall(1, "step2", 1_500_000_000L,
+        new LlmMetrics(2_000_000_000L, 500_000_000L, 1_000_000_000L, 400, 50));
+    tracker.recordStageRetry();
+    ServerPermitPool permits = new ServerPermitPool(2, 3, true);
+    permits.acquireAny();
+
+    try (MetricsServer server = MetricsServer.start(anyPort(), tracker, permits, DeadLetterQueue.disabled())) {
+      HttpResponse<String> response = HttpClient.newHttpClient().send(
+          HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + "/metrics")).build(),
+          HttpResponse.BodyHandlers.ofString());
+
+      assertEquals(200, response.statusCode());
+      assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain; version=0.0.4"));
+      String body = response.body();
+      assertTrue(body.contains("# TYPE pdfsummarizer_pages_done gauge\npdfsummarizer_pages_done 5\n"), body);
+      assertTrue(body.contains("pdfsummarizer_pages_restored_total 2\n"), body);
+      assertTrue(body.contains("pdfsummarizer_stage_retries_total 1\n"), body);
+      assertTrue(body.contains("pdfsummarizer_permits_free{server=\"0\"} 2\n"), body);
+      assertTrue(body.contains("pdfsummarizer_permits_free{server=\"1\"} 3\n"), body);
+      assertTrue(body.contains("pdfsummarizer_generated_tokens_total{server=\"1\"} 50\n"), body);
+      assertTrue(body.contains(
+          "pdfsummarizer_latency_seconds_count{server=\"1\",stage=\"step2\",phase=\"http_round_trip\"} 1\n"), body);
+      assertTrue(body.contains("jvm_memory_heap_used_bytes "), body);
+      assertTrue(body.contains("jvm_gc_collections_total{gc=\""), body);
+    }
+  }
+
+  @Test
+  void portInUse_runsWithoutTheEndpoint() {
+    try (MetricsServer first = MetricsServer.start(anyPort(), new ProgressTracker(1), null, null)) {
+      AppConfig.MetricsConfig samePort = anyPort();
+      samePort.port = first.port();
+
+      try (MetricsServer second = MetricsServer.start(samePort, new ProgressTracker(1), null, null)) {
+        assertEquals(-1, second.port());
+      }
+    }
+  }
+}
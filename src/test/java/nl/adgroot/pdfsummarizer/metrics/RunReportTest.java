@@ -0,0 +1,130 @@
+package nl.adgroot.pdfsummarizer.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.LlmClient;
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
+import nl.adgroot.pdfsummarizer.llm.records.LlmResult;
+import nl.adgroot.pdfsummarizer.notes.ProgressTracker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RunReportTest {
+
+  @TempDir
+  Path outDir;
+
+  private static LlmClient server(String url, String model) {
+    return new LlmClient() {
+      @Override
+      public CompletableFuture<LlmResult> generateAsync(String prompt) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public String getName() {
+        return model;
+      }
+
+      @Override
+      public String getUrl() {
+        return url;
+      }
+    };
+  }
+
+  private static ProgressTracker trackerWithOneBatch() {
+    ProgressTracker tracker = new ProgressTracker(10);
+    tracker.restorePages(2);
+    LlmMetrics metrics = new LlmMetrics(4_000_000_000L, 1_000_000_000L, 2_000_000_000L, 800, 120);
+    tracker.recordCall(0, "single", 4_000_000_000L, metrics);
+    tracker.finishBatch(3, metrics);
+    tracker.recordFailedBatch();
+    return tracker;
+  }
+
+  @Test
+  void reportHoldsPhasesServersTokensAndConfig() throws Exception {
+    RunReport report = new RunReport("book.pdf");
+    report.preparation(Map.of("extract", 2_000_000_000L, "split", 1_000_000_000L,
+        "toc", 200_000_000L, "pages", 300_000_000L));
+    report.phase("llm", 8_000_000_000L);
+    AppConfig cfg = new AppConfig();
+    Path file = outDir.resolve("run-report.json");
+
+    report.write(file, cfg, List.of(server("http://a:11434", "llama3")), trackerWithOneBatch(),
+        new ServerPermitPool(1, 1, true));
+
+    JsonNode json = new ObjectMapper().readTree(file.toFile());
+    assertEquals(RunReport.SCHEMA_VERSION, json.get("schemaVersion").asInt());
+    assertEquals(1.0, json.get("phases").get("load").asDouble(), 1e-9);
+    assertEquals(2.0, json.get("phases").get("extraction").asDouble(), 1e-9);
+    assertEquals(0.5, json.get("phases").get("toc").asDouble(), 1e-9);
+    assertEquals(5, json.get("pages").get("done").asInt());
+    assertEquals(1, json.get("batches").get("failed").asInt());
+    assertEquals(800, json.get("tokens").get("prompt").asInt());
+    assertEquals(0.2, json.get("cache").get("checkpointHitRate").asDouble(), 1e-9);
+    JsonNode server = json.get("servers").get(0);
+    assertEquals("llama3", server.get("model").asText());
+    // 4 s of calls during 8 s of LLM phase on one permit
+    assertEquals(0.5, server.get("utilisation").asDouble(), 0.05);
+    assertEquals(cfg.chunking.maxTokensPerChunk, json.get("config").get("chunking").get("maxTokensPerChunk").asInt());
+    assertTrue(json.get("jvm").get("peakHeapBytes").asLong() > 0);
+  }
+
+  @Test
+  void reportOfADaemonJobLeavesOutProcessWideCounters() {
+    RunReport report = RunReport.forSharedProcess("book.pdf");
+
+    ObjectNode json = report.toJson(new AppConfig(), List.of(server("http://a:11434", "llama3")),
+        trackerWithOneBatch(), new ServerPermitPool(1, 1, true));
+
+    assertFalse(json.get("batches").has("httpRetries"));
+    assertFalse(json.get("jvm").has("peakHeapBytes"));
+    assertFalse(json.get("jvm").has("gcCollections"));
+    assertTrue(json.get("jvm").get("maxHeapBytes").asLong() > 0);
+    assertEquals(1, json.get("batches").get("failed").asInt());
+  }
+
+  @Test
+  void diffShowsRelativeChangesVerdictsAndConfigChanges() {
+    RunReport report = new RunReport("book.pdf");
+    report.phase("llm", 10_000_000_000L);
+    AppConfig cfg = new AppConfig();
+    List<LlmClient> llms = List.of(server("http://a:11434", "llama3"));
+    ServerPermitPool permits = new ServerPermitPool(1, 1, true);
+    ObjectNode before = report.toJson(cfg, llms, trackerWithOneBatch(), permits);
+    ObjectNode after = before.deepCopy();
+    ((ObjectNode) after.get("phases")).put("llm", 12.0);
+    ((ObjectNode) after.get("config").get("chunking")).put("maxTokensPerChunk", 9999);
+
+    String diff = RunReportDiff.diff(before, after);
+
+    assertTrue(diff.contains("phases.llm"), diff);
+    assertTrue(diff.lines().anyMatch(l -> l.startsWith("phases.llm") && l.contains("+20.0%") && l.endsWith("WORSE")),
+        diff);
+    assertTrue(diff.contains("config.chunking.maxTokensPerChunk: " + cfg.chunking.maxTokensPerChunk + " -> 9999"),
+        diff);
+    assertTrue(diff.lines().anyMatch(l -> l.startsWith("servers[0].calls")), diff);
+  }
+
+  @Test
+  void directionKnowsWhichWayIsBetter() {
+    assertEquals(-1, RunReportDiff.direction("wallSeconds"));
+    assertEquals(-1, RunReportDiff.direction("batches.failed"));
+    assertEquals(1, RunReportDiff.direction("servers[1].utilisation"));
+    assertEquals(0, RunReportDiff.direction("tokens.prompt"));
+  }
+}
@@ -0,0 +1,113 @@
+package nl.adgroot.pdfsummarizer.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.adgroot.pdfsummarizer.config.AppConfig;
+import nl.adgroot.pdfsummarizer.llm.ServerPermitPool;
+import nl.adgroot.pdfsummarizer.metrics.TraceRecorder.Span;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TraceRecorderTest {
+
+  @TempDir
+  Path outDir;
+
+  @Test
+  void writesChromeTraceWithALanePerConcurrentSpan() throws Exception {
+    Path file;
+    try (TraceRecorder trace = TraceRecorder.start(new AppConfig.TraceConfig(), outDir)) {
+      file = trace.file();
+      assertSame(trace, TraceRecorder.active());
+
+      Span first = trace.begin("server 0", "batch A", "batch").arg("pages", List.of(1, 2));
+      Span second = trace.begin("server 0", "batch B", "batch");
+      Span stage = first.child("step1", "stage");
+      stage.end();
+      first.end();
+      first.end();
+      // Lane 1 is still busy, lane 0 is free again
+      Span third = trace.begin("server 0", "batch C", "batch");
+      third.end();
+      second.end();
+      new ServerPermitPool(1, 1, true).acquireAny();
+    }
+    assertFalse(TraceRecorder.active().isEnabled());
+
+    JsonNode events = new ObjectMapper().readTree(file.toFile()).get("traceEvents");
+    Map<Integer, String> laneNames = new HashMap<>();
+    Map<String, JsonNode> spans = new HashMap<>();
+    List<String> categories = new ArrayList<>();
+    for (JsonNode e : events) {
+      if (e.get("ph").asText().equals("M") && e.get("name").asText().equals("thread_name")) {
+        laneNames.put(e.get("tid").asInt(), e.get("args").get("name").asText());
+      } else if (e.get("ph").asText().equals("X")) {
+        spans.put(e.get("name").asText(), e);
+        categories.add(e.get("cat").asText());
+      }
+    }
+
+    assertEquals(5, spans.size());
+    assertEquals("server 0", laneNames.get(spans.get("batch A").get("tid").asInt()));
+    assertEquals("server 0 #2", laneNames.get(spans.get("batch B").get("tid").asInt()));
+    assertEquals("server 0", laneNames.get(spans.get("batch C").get("tid").asInt()));
+    assertEquals(spans.get("batch A").get("tid"), spans.get("step1").get("tid"));
+    assertEquals("[1, 2]", spans.get("batch A").get("args").get("pages").asText());
+    assertTrue(spans.get("batch A").get("dur").asDouble() >= spans.get("step1").get("dur").asDouble());
+    assertTrue(categories.contains("permit"));
+    assertEquals("main", laneNames.get(spans.get("permit wait").get("tid").asInt()));
+    assertEquals(0, spans.get("permit wait").get("args").get("server").asInt());
+  }
+
+  @Test
+  void spansBeyondMaxSpansAreDroppedAndCounted() throws Exception {
+    AppConfig.TraceConfig cfg = new AppConfig.TraceConfig();
+    cfg.maxSpans = 2;
+    Path file;
+    try (TraceRecorder trace = TraceRecorder.start(cfg, outDir)) {
+      file = trace.file();
+      for (int i = 0; i < 5; i++) {
+        trace.begin("server 0", "batch " + i, "batch").end();
+      }
+      assertEquals(2, trace.spans());
+      assertEquals(3, trace.droppedSpans());
+    }
+
+    List<String> written = new ArrayList<>();
+    for (JsonNode e : new ObjectMapper().readTree(file.toFile()).get("traceEvents")) {
+      if (e.get("ph").asText().equals("X")) {
+        written.add(e.get("name").asText());
+      }
+    }
+    assertEquals(List.of("batch 0", "batch 1"), written);
+  }
+
+  @Test
+  void disabledRecorderHandsOutNoOpSpans() {
+    TraceRecorder trace = TraceRecorder.disabled();
+
+    Span span = trace.begin("server 0", "batch", "batch").arg("pages", 3);
+    span.child("step1", "stage").end();
+    span.end();
+
+    assertSame(Span.NONE, span);
+    assertEquals(0, trace.spans());
+  }
+
+  @Test
+  void executorNameDropsThePoolCounter() {
+    assertEquals("cpu-worker", TraceRecorder.executorName(new Thread("cpu-worker-12")));
+    assertEquals("llm-permit", TraceRecorder.executorName(new Thread("llm-permit")));
+  }
+}
@@ -9,7 +9,12 @@ import org.junit.jupiter.api.Test;
 
 class DefaultCardsParserTest {
 
-  private final DefaultCardsParser parser = new DefaultCardsParser();
+  final CardsParser parser = createParser();
+
+  /** Overridden by {@link FastCardsParserTest} to run every case against the fast parser. */
+  CardsParser createParser() {
+    return new DefaultCardsParser();
+  }
 
   // ── Empty / blank input ──────────────────────────────────────────────────
 
@@ -0,0 +1,110 @@
+package nl.adgroot.pdfsummarizer.notes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
+import org.junit.jupiter.api.Test;
+
+class EtaModelTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final EtaModel eta = new EtaModel(now::get);
+
+  private void advanceSeconds(double seconds) {
+    now.addAndGet((long) (seconds * 1e9));
+  }
+
+  // One second of prompt eval for 1000 tokens, then 100 tokens at one second per 10
+  private static LlmMetrics call(int promptTokens, int generatedTokens) {
+    return new LlmMetrics(0, promptTokens * 1_000_000L, generatedTokens * 100_000_000L,
+        promptTokens, generatedTokens);
+  }
+
+  /** Runs {@code batches} one-call batches of {@code tokens} content tokens, each {@code seconds} long. */
+  private void runBatches(int server, int batches, long tokens, double seconds, LlmMetrics metrics) {
+    for (int i = 0; i < batches; i++) {
+      EtaModel.InFlight batch = eta.start(server, tokens);
+      advanceSeconds(seconds);
+      eta.recordCall(server, metrics);
+      batch.finish(server, true);
+    }
+  }
+
+  @Test
+  void warmingUpUntilABatchCompletes() {
+    eta.plan(10_000);
+    assertNull(eta.estimate());
+
+    eta.start(0, 1_000);
+    advanceSeconds(30);
+    assertNull(eta.estimate());
+  }
+
+  @Test
+  void etaFollowsTheWorkLeftAtTheMeasuredRate() {
+    eta.plan(20_000);
+    runBatches(0, 10, 1_000, 20, call(1_000, 100));
+
+    EtaModel.Estimate estimate = eta.estimate();
+    // Half the work done in 200 s at a steady rate: about 200 s to go
+    assertEquals(200, estimate.seconds(), 5);
+    assertTrue(estimate.lowSeconds() <= estimate.seconds());
+    assertTrue(estimate.highSeconds() >= estimate.seconds());
+  }
+
+  @Test
+  void generatedTokensWeighMoreThanPromptTokens() {
+    runBatches(0, 2, 1_000, 20, call(1_000, 100));
+
+    // 1 ms per prompt token, 100 ms per generated token
+    assertEquals(100, eta.generationWeight(), 0.001);
+  }
+
+  @Test
+  void secondServerShortensTheEta() {
+    eta.plan(40_000);
+    runBatches(0, 10, 1_000, 20, call(1_000, 100));
+    double oneServer = eta.estimate().seconds();
+    double oneRate = eta.estimate().costPerSecond();
+
+    runBatches(1, 10, 1_000, 20, call(1_000, 100));
+    // Server 0 is idle meanwhile, so its rate is not refreshed, but it is not stale yet either
+    EtaModel.Estimate both = eta.estimate();
+
+    assertEquals(2 * oneRate, both.costPerSecond(), 1);
+    assertTrue(both.seconds() < oneServer, both.seconds() + " vs " + oneServer);
+  }
+
+  @Test
+  void inFlightBatchesCountAsPartlyDone() {
+    eta.plan(10_000);
+    runBatches(0, 2, 1_000, 20, call(1_000, 100));
+    double before = eta.remainingTokens();
+
+    eta.start(0, 1_000);
+    advanceSeconds(10);
+
+    // Half-way through a 20-second batch
+    assertEquals(before - 500, eta.remainingTokens(), 1);
+  }
+
+  @Test
+  void failedBatchesStayInTheWorkLeft() {
+    eta.plan(10_000);
+    eta.start(0, 1_000).finish(0, false);
+
+    assertEquals(10_000, eta.remainingTokens(), 0.001);
+  }
+
+  @Test
+  void settledAndCompletedWorkEndsAtZero() {
+    eta.plan(3_000);
+    eta.settle(1_000);
+    runBatches(0, 2, 1_000, 20, call(1_000, 100));
+
+    assertEquals(0, eta.estimate().seconds());
+  }
+}
@@ -0,0 +1,80 @@
+package nl.adgroot.pdfsummarizer.notes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+import nl.adgroot.pdfsummarizer.notes.records.Card;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs every {@link DefaultCardsParserTest} case against {@link FastCardsParser}, plus a
+ * differential test comparing both parsers on randomly assembled LLM-like output.
+ */
+class FastCardsParserTest extends DefaultCardsParserTest {
+
+  // Fragments that exercise the regex edge cases: every line terminator, trailing whitespace,
+  // YAML titles, quotes, glued question marks and separator look-alikes
+  private static final String[] FRAGMENTS = {
+      "---", "----", "--- ", "---\t", "?", "? ", "??", " ?", "?x",
+      "title:", "title: ", "title: \"Quoted\"", "title:\"", "title: Plain", "Title: no",
+      "What is it?", "What is it?  ", "What\t?", "a?b", "Answer.", "x", "   ", "\t",
+      "\n", "\r", "\r\n", "\n\n", "\u0085", " ", " ", "\u000B", "\f", "\"",
+  };
+
+  @Override
+  CardsParser createParser() {
+    return new FastCardsParser();
+  }
+
+  @Test
+  void randomInput_producesSameCardsAsRegexParser() {
+    DefaultCardsParser reference = new DefaultCardsParser();
+    Random random = new Random(42);
+
+    for (int run = 0; run < 20_000; run++) {
+      StringBuilder sb = new StringBuilder();
+      int n = 1 + random.nextInt(14);
+      for (int i = 0; i < n; i++) {
+        sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        if (random.nextInt(3) == 0) sb.append('\n');
+      }
+      String md = sb.toString();
+
+      assertSameCards(reference.parse(md), parser.parse(md), md);
+    }
+  }
+
+  @Test
+  void realisticResponse_producesSameCardsAsRegexParser() {
+    String md = """
+        ---
+        title: "Garbage collection"
+        ---
+        What does the young generation hold?
+        ?
+        Newly allocated objects.
+        ---
+        title: Escape analysis
+        Why can an object live on the stack?  
+        It never escapes the method.
+        ---
+        Card without any question
+        """.replace("\n", "\r\n");
+
+    assertSameCards(new DefaultCardsParser().parse(md), parser.parse(md), md);
+  }
+
+  private static void assertSameCards(List<Card> expected, List<Card> actual, String input) {
+    assertEquals(expected, actual, () -> "Parsers disagree on input: " + escape(input));
+  }
+
+  private static String escape(String s) {
+    StringBuilder sb = new StringBuilder();
+    for (char c : s.toCharArray()) {
+      if (c < ' ' || c > '~') sb.append(String.format("\\u%04x", (int) c));
+      else sb.append(c);
+    }
+    return sb.toString();
+  }
+}
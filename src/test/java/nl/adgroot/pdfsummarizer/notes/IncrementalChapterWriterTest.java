@@ -0,0 +1,70 @@
+package nl.adgroot.pdfsummarizer.notes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import nl.adgroot.pdfsummarizer.notes.records.CardsPage;
+import org.junit.jupiter.api.Test;
+
+class IncrementalChapterWriterTest {
+
+  private static CardsPage expected(String... cards) {
+    CardsPage page = new CardsPage("Topic", "Chapter 1");
+    for (String c : cards) page.addCard(c);
+    return page;
+  }
+
+  @Test
+  void outOfOrderPages_areWrittenInPageOrder_identicalToCardsPage() throws Exception {
+    Path outDir = Files.createTempDirectory("incremental-");
+    IncrementalChapterWriter w = new NotesWriter().openChapter(outDir, "Topic", "Chapter 1", List.of(4, 5, 6));
+
+    w.complete(6, List.of("C6"));
+    w.complete(5, List.of("B5a", " ", "B5b"));
+    assertEquals(0, listFiles(outDir), "page 4 is still missing, nothing may be written yet");
+
+    w.complete(4, List.of("A4"));
+    Path file = w.finish();
+
+    assertEquals(expected("A4", "B5a", "B5b", "C6").toString(), Files.readString(file));
+  }
+
+  @Test
+  void cardsInPageOrder_areVisibleBeforeTheChapterFinishes() throws Exception {
+    Path outDir = Files.createTempDirectory("incremental-");
+    IncrementalChapterWriter w = new NotesWriter().openChapter(outDir, "Topic", "Chapter 1", List.of(0, 1));
+
+    w.complete(0, List.of("First"));
+
+    Path file = outDir.resolve("Topic-Chapter-1.md");
+    assertEquals("First", Files.readString(file));
+    assertEquals(file, w.finish());
+    assertTrue(Files.readString(file).endsWith(new CardsPage("Topic", "Chapter 1").getHashtag()));
+  }
+
+  @Test
+  void missingPages_doNotBlockFinish_andChapterWithoutCardsWritesNoFile() throws Exception {
+    Path outDir = Files.createTempDirectory("incremental-");
+
+    IncrementalChapterWriter partial = new NotesWriter().openChapter(outDir, "Topic", "A", List.of(0, 1, 2));
+    partial.complete(2, List.of("Late"));
+    assertEquals(expected("Late").toString().replace("Chapter-1", "A"), Files.readString(partial.finish()));
+
+    IncrementalChapterWriter empty = new NotesWriter().openChapter(outDir, "Topic", "B", List.of(0));
+    empty.complete(0, List.of());
+    assertNull(empty.finish());
+    assertFalse(Files.exists(outDir.resolve("Topic-B.md")));
+  }
+
+  private static long listFiles(Path dir) throws Exception {
+    try (var s = Files.list(dir)) {
+      return s.count();
+    }
+  }
+}
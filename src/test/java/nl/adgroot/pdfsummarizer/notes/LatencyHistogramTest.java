@@ -0,0 +1,78 @@
+package nl.adgroot.pdfsummarizer.notes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void percentiles_areWithinThreePercentOfTheRecordedValues() {
+    LatencyHistogram h = new LatencyHistogram();
+    for (long ms = 1; ms <= 1_000; ms++) {
+      h.recordMicros(ms * 1_000);
+    }
+
+    assertEquals(1_000, h.count());
+    assertWithin(500_000, h.percentileMicros(50));
+    assertWithin(950_000, h.percentileMicros(95));
+    assertWithin(990_000, h.percentileMicros(99));
+    assertEquals(1_000_000, h.maxMicros());
+    assertEquals(500_500.0, h.meanMicros(), 0.001);
+  }
+
+  @Test
+  void smallValuesAreExact_andHugeValuesLandInTheLastBucket() {
+    LatencyHistogram h = new LatencyHistogram();
+    h.recordMicros(7);
+    assertEquals(7, h.percentileMicros(100));
+
+    h.recordMicros(Long.MAX_VALUE);
+    assertEquals(1, h.countAt(LatencyHistogram.buckets() - 1));
+  }
+
+  @Test
+  void bucketsAreContiguousAndIncreasing() {
+    for (int i = 1; i < LatencyHistogram.buckets(); i++) {
+      long lower = LatencyHistogram.lowerBoundMicros(i);
+      assertTrue(lower > LatencyHistogram.lowerBoundMicros(i - 1));
+      assertEquals(i, LatencyHistogram.indexOf(lower));
+      assertEquals(i - 1, LatencyHistogram.indexOf(lower - 1));
+    }
+  }
+
+  @Test
+  void add_mergesCountsAndMax() {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    a.recordMicros(100);
+    b.recordMicros(200_000);
+
+    a.add(b);
+
+    assertEquals(2, a.count());
+    assertEquals(200_000, a.maxMicros());
+  }
+
+  @Test
+  void recording_doesNotAllocate() {
+    var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    LatencyHistogram h = new LatencyHistogram();
+    for (int i = 0; i < 20_000; i++) h.recordNanos(i * 997L); // warm up
+
+    long before = threads.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < 100_000; i++) {
+      h.recordNanos(i * 7_919L);
+    }
+    long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+    assertTrue(allocated < 16_384, "allocated " + allocated + " bytes for 100k recordings");
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(Math.abs(actual - expected) <= expected * 0.03,
+        "expected ~" + expected + " but was " + actual);
+  }
+}
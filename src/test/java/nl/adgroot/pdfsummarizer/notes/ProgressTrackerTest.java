@@ -4,6 +4,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 import nl.adgroot.pdfsummarizer.llm.records.LlmMetrics;
 import org.junit.jupiter.api.Test;
 
@@ -132,4 +135,63 @@ class ProgressTrackerTest {
     String status = tracker.formatStatus(3_661_000); // 1h 1m 1s
     assertTrue(status.contains("last=1h 01m 01s"), "Expected last=1h 01m 01s, got: " + status);
   }
-}
\ No newline at end of file
+
+  // ── latency histograms and per-server table ─────────────────────────────
+
+  @Test
+  void recordCall_splitsLatencyPerServerAndStage() {
+    ProgressTracker tracker = new ProgressTracker(10);
+    LlmMetrics metrics = new LlmMetrics(3_000_000_000L, 1_000_000_000L, 2_000_000_000L, 400, 100);
+
+    tracker.recordCall(0, "step1", 3_100_000_000L, metrics);
+    tracker.recordCall(1, "step3", 1_000_000_000L, metrics);
+    tracker.recordLatency(1, "step1", ProgressTracker.Phase.PERMIT_WAIT, 5_000_000L);
+
+    assertEquals(1, tracker.latency(0, "step1", ProgressTracker.Phase.HTTP_ROUND_TRIP).count());
+    assertEquals(0, tracker.latency(0, "step3", ProgressTracker.Phase.HTTP_ROUND_TRIP).count());
+    assertEquals(2, tracker.latency(ProgressTracker.Phase.GENERATION).count());
+    assertEquals(1, tracker.latency(ProgressTracker.Phase.PERMIT_WAIT).count());
+    assertEquals(List.of(0, 1), tracker.serverIndexes());
+  }
+
+  @Test
+  void formatStatus_showsPercentilesAndPerServerTokensPerSecond() {
+    ProgressTracker tracker = new ProgressTracker(10);
+    tracker.recordCall(0, "single", 2_000_000_000L,
+        new LlmMetrics(2_000_000_000L, 500_000_000L, 1_000_000_000L, 400, 50));
+
+    String status = tracker.formatStatus(0);
+
+    assertTrue(status.contains("Latency p50 / p95 / p99:"), status);
+    assertTrue(status.contains("HTTP round trip"), status);
+    assertTrue(status.contains("Servers:"), status);
+    assertTrue(status.contains("gen    50.0 tok/s | prompt   800.0 tok/s"), status);
+  }
+
+  @Test
+  void formatStatus_withoutSamples_hasNoLatencySection() {
+    ProgressTracker tracker = new ProgressTracker(10);
+    tracker.finishPage();
+
+    assertFalse(tracker.formatStatus(0).contains("Latency"));
+  }
+
+  @Test
+  void formatStatus_usesTheTokenModelOnceItHasARate() {
+    AtomicLong now = new AtomicLong();
+    ProgressTracker tracker = new ProgressTracker(10, new EtaModel(now::get));
+    tracker.eta().plan(10_000);
+    assertTrue(tracker.formatStatus(0).contains("ETA=warming up"), tracker.formatStatus(0));
+
+    EtaModel.InFlight batch = tracker.eta().start(0, 1_000);
+    now.addAndGet(20_000_000_000L);
+    tracker.recordCall(0, "step3", 20_000_000_000L,
+        new LlmMetrics(20_000_000_000L, 1_000_000_000L, 10_000_000_000L, 1_000, 100));
+    batch.finish(0, true);
+    tracker.finishBatch(1, null);
+
+    String status = tracker.formatStatus(0);
+    // 9000 tokens left at 1000 tokens per 20 s
+    assertTrue(status.contains("ETA=3m 00s (90%: 3m 00s – 3m 00s"), status);
+  }
+}
@@ -0,0 +1,69 @@
+package nl.adgroot.pdfsummarizer.notes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import nl.adgroot.pdfsummarizer.notes.records.Card;
+import org.junit.jupiter.api.Test;
+
+class StructuredCardsParserTest {
+
+  @Test
+  void parse_cardsKeyedByPage_inTextCardFormat() {
+    String json = """
+        {"pages":[
+          {"page":1,"cards":[{"q":" What is a TLAB? ","a":"A thread-local allocation buffer.\\n"}]},
+          {"page":2,"cards":[]}
+        ]}""";
+
+    Map<Integer, List<Card>> pages = StructuredCardsParser.parse(json);
+
+    assertEquals(1, pages.get(1).size());
+    assertEquals("What is a TLAB?\n?\nA thread-local allocation buffer.\n", pages.get(1).getFirst().markdown());
+    assertTrue(pages.get(2).isEmpty());
+  }
+
+  @Test
+  void parse_sameOutputAsTextParserForWellFormedCard() {
+    Card fromJson = StructuredCardsParser.parse("""
+        {"pages":[{"page":1,"cards":[{"q":"Why?","a":"Because."}]}]}""").get(1).getFirst();
+    Card fromText = new DefaultCardsParser().parse("Why?\n?\nBecause.\n").getFirst();
+
+    assertEquals(fromText, fromJson);
+  }
+
+  @Test
+  void parse_skipsUnknownFieldsAndBlankCards_andMergesRepeatedPages() {
+    String json = """
+        {"model":"x","pages":[
+          {"page":1,"extra":{"nested":[1,2]},"cards":[{"q":"Q1?","a":"A1","note":"ignored"}]},
+          {"page":1,"cards":[{"q":"  ","a":"no question"},{"q":"Q2?","a":"A2"}]}
+        ]}""";
+
+    List<Card> cards = StructuredCardsParser.parse(json).get(1);
+
+    assertEquals(List.of("Q1?\n?\nA1\n", "Q2?\n?\nA2\n"), cards.stream().map(Card::markdown).toList());
+  }
+
+  @Test
+  void parse_blankResponse_returnsNoPages() {
+    assertTrue(StructuredCardsParser.parse("").isEmpty());
+    assertTrue(StructuredCardsParser.parse(null).isEmpty());
+  }
+
+  @Test
+  void parse_invalidJson_throws() {
+    assertThrows(IllegalArgumentException.class, () -> StructuredCardsParser.parse("===PAGE 1==="));
+    assertThrows(IllegalArgumentException.class, () -> StructuredCardsParser.parse("{\"pages\":[{\"page\":1,"));
+  }
+
+  @Test
+  void schema_requiresPagesWithQuestionAnswerCards() {
+    assertEquals("object", StructuredCardsParser.SCHEMA.path("type").asText());
+    assertEquals("string", StructuredCardsParser.SCHEMA
+        .at("/properties/pages/items/properties/cards/items/properties/q/type").asText());
+  }
+}